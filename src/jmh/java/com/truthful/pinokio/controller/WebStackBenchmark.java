@@ -0,0 +1,123 @@
+package com.truthful.pinokio.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.truthful.pinokio.PinokioApplication;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Redirects served end to end by the whole application, once on Spring MVC and Tomcat and once on
+ * the functional router and Netty of the reactive profile, over loopback HTTP. The embedded local
+ * store keeps the storage out of the numbers and every link is cached after the first request, so
+ * the difference between the two is the cost of the web stack. Each stack also runs with click
+ * counting on and off, the difference between which is what counting a click adds to a redirect,
+ * flushes to the store included. Throughput gives the requests per second and sample time the p99
+ * latency.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class WebStackBenchmark {
+
+  private static final int LINKS = 1_000;
+
+  @Param({"servlet", "reactive"})
+  public String webApplicationType;
+
+  @Param({"true", "false"})
+  public boolean clickCounting;
+
+  private ConfigurableApplicationContext context;
+  private Path directory;
+  private HttpClient httpClient;
+  private List<URI> redirectUris;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    directory = Files.createTempDirectory("pinokio-web-stack");
+    context = new SpringApplicationBuilder(PinokioApplication.class)
+        .properties(
+            "server.port=0",
+            "spring.main.web-application-type=" + webApplicationType,
+            "application.storage.type=LOCAL",
+            "application.storage.local.directory=" + directory,
+            "application.storage.local.log-capacity=64MB",
+            "application.cache.warm-up.enabled=false",
+            "application.clicks.enabled=" + clickCounting,
+            "application.logging.sample-rate=0",
+            "logging.level.root=WARN")
+        .run();
+    String baseUri = "http://localhost:" + context.getEnvironment()
+        .getProperty("local.server.port");
+    ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+    httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .build();
+    // The servlet stack resolves links under the API path, the reactive one at the root
+    String redirectPath = "servlet".equals(webApplicationType) ? "/api/url/" : "/";
+    redirectUris = new ArrayList<>(LINKS);
+    for (int i = 0; i < LINKS; i++) {
+      HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder()
+              .uri(URI.create(baseUri + "/api/url"))
+              .header("Content-Type", "application/json")
+              .POST(HttpRequest.BodyPublishers.ofString(
+                  "{\"longUrl\":\"https://www.catnipcoder.com/posts/" + i + "\"}"))
+              .build(),
+          HttpResponse.BodyHandlers.ofString());
+      String shortUrl = objectMapper.readTree(response.body()).get("shortUrl").asText();
+      String hash = shortUrl.substring(shortUrl.lastIndexOf('/') + 1);
+      redirectUris.add(URI.create(baseUri + redirectPath + hash));
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    context.close();
+    try (var files = Files.walk(directory)) {
+      files.sorted((left, right) -> right.compareTo(left)).forEach(path -> {
+        try {
+          Files.delete(path);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+  }
+
+  @Benchmark
+  public int redirect() throws IOException, InterruptedException {
+    URI uri = redirectUris.get(ThreadLocalRandom.current().nextInt(LINKS));
+    return httpClient.send(HttpRequest.newBuilder(uri).GET().build(),
+        HttpResponse.BodyHandlers.discarding()).statusCode();
+  }
+}
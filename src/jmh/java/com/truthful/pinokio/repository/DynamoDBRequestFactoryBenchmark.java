@@ -0,0 +1,58 @@
+package com.truthful.pinokio.repository;
+
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties.AsyncHttpClientProperties;
+import com.truthful.pinokio.config.model.DynamoDbClientMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+/**
+ * Cost of building the DynamoDB requests of the write path, without sending them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DynamoDBRequestFactoryBenchmark {
+
+  private static final String HASH = "1a2b3c4d";
+  private static final String LONG_URL = "https://www.catnipcoder.com/posts/jmh-benchmarks";
+
+  private DynamoDBRequestFactory dynamoDBRequestFactory;
+  private LocalDateTime createdAt;
+
+  @Setup
+  public void setUp() {
+    dynamoDBRequestFactory = new DynamoDBRequestFactory(new DynamoDBConfigurationProperties(
+        "pinokio", "us-east-1", "test", "test", null, DynamoDbClientMode.SYNC,
+        new AsyncHttpClientProperties(200, 10_000, Duration.ofSeconds(2)),
+        Duration.ofSeconds(2), Duration.ofMillis(500)));
+    createdAt = LocalDateTime.of(2024, 6, 1, 12, 0);
+  }
+
+  @Benchmark
+  public AttributeValue createNumberAttribute() {
+    return dynamoDBRequestFactory.createNumberAttribute(createdAt);
+  }
+
+  @Benchmark
+  public PutItemRequest constructPutItemRequest() {
+    return dynamoDBRequestFactory.constructPutItemRequest(
+        dynamoDBRequestFactory.createItem(HASH, LONG_URL, createdAt, createdAt.plusDays(90)));
+  }
+}
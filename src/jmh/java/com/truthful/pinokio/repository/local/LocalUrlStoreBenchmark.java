@@ -0,0 +1,93 @@
+package com.truthful.pinokio.repository.local;
+
+import com.soumakis.control.Either;
+import com.truthful.pinokio.config.model.StorageConfigurationProperties;
+import com.truthful.pinokio.config.model.StorageConfigurationProperties.LocalStoreProperties;
+import com.truthful.pinokio.config.model.StorageType;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.RequestLogger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Latency of lookups in the embedded store, which should stay under a microsecond: a probe of the
+ * off-heap index, a comparison of the key in the mapped log and the decoding of the URL.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LocalUrlStoreBenchmark {
+
+  @Param({"100000", "1000000"})
+  public int entries;
+
+  private Path directory;
+  private LocalUrlStore localUrlStore;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("local-url-store");
+    localUrlStore = new LocalUrlStore(
+        new StorageConfigurationProperties(StorageType.LOCAL, new LocalStoreProperties(
+            directory.toString(), DataSize.ofMegabytes(512), entries, 0.5, Duration.ofHours(1),
+            false)),
+        new RequestLogger(0.0, Duration.ofSeconds(10), 10.0),
+        Clock.systemUTC(),
+        new SimpleMeterRegistry());
+    localUrlStore.start();
+    LocalDateTime createdAt = LocalDateTime.now();
+    for (int i = 0; i < entries; i++) {
+      localUrlStore.save(Integer.toHexString(i), "https://example.com/" + i, createdAt,
+          createdAt.plusDays(90)).toCompletableFuture().join();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, InterruptedException {
+    localUrlStore.stop();
+    try (var files = Files.list(directory)) {
+      for (Path file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public Either<UrlShortenerError, UrlEntry> getUrlEntry() {
+    String hash = Integer.toHexString(ThreadLocalRandom.current().nextInt(entries));
+    return localUrlStore.getUrlEntry(hash).toCompletableFuture().join();
+  }
+
+  @Benchmark
+  public Either<UrlShortenerError, UrlEntry> getMissingUrlEntry() {
+    String hash = "_" + ThreadLocalRandom.current().nextInt(entries);
+    return localUrlStore.getUrlEntry(hash).toCompletableFuture().join();
+  }
+}
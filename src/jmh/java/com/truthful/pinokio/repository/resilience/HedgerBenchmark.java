@@ -0,0 +1,73 @@
+package com.truthful.pinokio.repository.resilience;
+
+import com.truthful.pinokio.config.model.HedgingConfigurationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency distribution of a read from a storage stub that answers most reads in a millisecond and
+ * the given share of them after fifty, with and without hedging. The p99 of the sample time shows
+ * the tail the hedges cut.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HedgerBenchmark {
+
+  private static final long FAST_MILLIS = 1;
+  private static final long SLOW_MILLIS = 50;
+
+  @Param({"false", "true"})
+  private boolean hedging;
+
+  @Param({"0.02"})
+  private double slowRatio;
+
+  private ScheduledExecutorService scheduler;
+  private Hedger hedger;
+
+  @Setup
+  public void setUp() {
+    scheduler = Executors.newScheduledThreadPool(2);
+    hedger = new Hedger(new HedgingConfigurationProperties(
+        hedging, 0.95, Duration.ofMillis(1), 0.05, 1000), new SimpleMeterRegistry());
+  }
+
+  @TearDown
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Benchmark
+  public String read() {
+    return hedger.hedge(this::storageRead).join();
+  }
+
+  private CompletableFuture<String> storageRead() {
+    long latencyMillis =
+        ThreadLocalRandom.current().nextDouble() < slowRatio ? SLOW_MILLIS : FAST_MILLIS;
+    CompletableFuture<String> read = new CompletableFuture<>();
+    scheduler.schedule(() -> read.complete("entry"), latencyMillis, TimeUnit.MILLISECONDS);
+    return read;
+  }
+}
@@ -0,0 +1,68 @@
+package com.truthful.pinokio.service;
+
+import com.truthful.pinokio.config.model.ClickCountingConfigurationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost added to every redirect by {@link ClickCounter#recordClick(String)}, with every thread
+ * clicking the same viral link and with the clicks spread over many links. The baseline is a
+ * single shared {@link AtomicLong}, the contention the striped counters avoid. The flusher is not
+ * started, so only the redirect path is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ClickCounterBenchmark {
+
+  private static final int LINKS = 10_000;
+  private static final String HOT_LINK = "1a2b3c4d";
+
+  private final AtomicLong hotLinkClicks = new AtomicLong();
+  private final String[] links = new String[LINKS];
+
+  private ClickCounter clickCounter;
+
+  @Setup
+  public void setUp() {
+    clickCounter = new ClickCounter(null, new ClickCountingConfigurationProperties(
+            true, Duration.ofSeconds(10), LINKS * 2, 16),
+        Runnable::run, new SimpleMeterRegistry());
+    for (int i = 0; i < LINKS; i++) {
+      links[i] = Integer.toHexString(i);
+    }
+  }
+
+  @Benchmark
+  public void hotLink() {
+    clickCounter.recordClick(HOT_LINK);
+  }
+
+  @Benchmark
+  public long hotLinkBaseline() {
+    return hotLinkClicks.incrementAndGet();
+  }
+
+  @Benchmark
+  public void spreadLinks() {
+    clickCounter.recordClick(links[ThreadLocalRandom.current().nextInt(LINKS)]);
+  }
+}
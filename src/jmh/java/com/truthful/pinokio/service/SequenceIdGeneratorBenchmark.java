@@ -0,0 +1,57 @@
+package com.truthful.pinokio.service;
+
+import com.truthful.pinokio.config.model.SequenceConfigurationProperties;
+import com.truthful.pinokio.repository.IdLeaseStore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of taking an id from {@link SequenceIdGenerator}, from one and from many threads. Leases
+ * are served by an in-memory counter, so only the node-local path is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SequenceIdGeneratorBenchmark {
+
+  @Param({"1000", "100000"})
+  private long leaseSize;
+
+  private SequenceIdGenerator sequenceIdGenerator;
+
+  @Setup
+  public void setUp() {
+    AtomicLong counter = new AtomicLong();
+    IdLeaseStore inMemoryCounter = (counterKey, size) -> counter.addAndGet(size);
+    sequenceIdGenerator = new SequenceIdGenerator(
+        inMemoryCounter,
+        new SequenceConfigurationProperties("_sequence", leaseSize, 0.8),
+        Runnable::run);
+  }
+
+  @Benchmark
+  public String nextCode() {
+    return sequenceIdGenerator.nextCode();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public String nextCodeContended() {
+    return sequenceIdGenerator.nextCode();
+  }
+}
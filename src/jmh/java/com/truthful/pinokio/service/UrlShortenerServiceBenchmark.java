@@ -0,0 +1,166 @@
+package com.truthful.pinokio.service;
+
+import com.soumakis.control.EitherT;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.model.ApplicationConfigurationProperties;
+import com.truthful.pinokio.config.model.BatchConfigurationProperties;
+import com.truthful.pinokio.config.model.CacheConfigurationProperties;
+import com.truthful.pinokio.config.model.ClickCountingConfigurationProperties;
+import com.truthful.pinokio.config.model.HedgingConfigurationProperties;
+import com.truthful.pinokio.config.model.HotLinksConfigurationProperties;
+import com.truthful.pinokio.config.model.IdGenerator;
+import com.truthful.pinokio.config.model.LongUrlCacheConfigurationProperties;
+import com.truthful.pinokio.config.model.NegativeLookupConfigurationProperties;
+import com.truthful.pinokio.config.model.ReaperConfigurationProperties;
+import com.truthful.pinokio.config.model.ResilienceConfigurationProperties;
+import com.truthful.pinokio.config.model.SequenceConfigurationProperties;
+import com.truthful.pinokio.repository.LookupCoalescer;
+import com.truthful.pinokio.repository.StorageRepositoryFacade;
+import com.truthful.pinokio.repository.UrlStore;
+import com.truthful.pinokio.repository.cache.LongUrlCache;
+import com.truthful.pinokio.repository.cache.NegativeLookupFilter;
+import com.truthful.pinokio.repository.cache.UrlCache;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.repository.resilience.Hedger;
+import com.truthful.pinokio.repository.resilience.StorageGuard;
+import com.truthful.pinokio.service.model.HashEncoding;
+import com.truthful.pinokio.service.model.HashingAlgorithm;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RetryPolicies;
+import com.truthful.pinokio.util.RetryPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Request hot path of {@link UrlShortenerService} against a store that answers immediately, so the
+ * numbers show the cost of the service itself. {@link #shortenUrlBaseline()} does the same work
+ * with plain {@link CompletableFuture}s, the difference to {@link #shortenUrl()} is the overhead of
+ * the {@code EitherT} composition and the retry wrappers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlShortenerServiceBenchmark {
+
+  private static final String BASE_URL = "http://localhost:9999";
+  private static final String LONG_URL = "https://www.catnipcoder.com/posts/jmh-benchmarks";
+  private static final String SHORT_URL = BASE_URL + "/1a2b3c4d";
+  private static final HashingAlgorithm ALGORITHM = HashingAlgorithm.MURMUR32;
+
+  private UrlShortenerService urlShortenerService;
+
+  @Setup
+  public void setUp() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    Clock clock = Clock.systemUTC();
+    RetryPolicy retryPolicy = RetryPolicy.immediate(3);
+    StorageRepositoryFacade storageRepositoryFacade = new StorageRepositoryFacade(
+        new ImmediateUrlStore(),
+        new UrlCache(new CacheConfigurationProperties(false, DataSize.ofBytes(1),
+            DataSize.ofBytes(0), DataSize.ofBytes(1), Duration.ofMinutes(1)), clock,
+            meterRegistry),
+        new LongUrlCache(
+            new LongUrlCacheConfigurationProperties(false, 1L, Duration.ofMinutes(1)),
+            meterRegistry),
+        new NegativeLookupFilter(new NegativeLookupConfigurationProperties(
+            false, 1L, 0.01, false, 1L, Duration.ofSeconds(1)), meterRegistry),
+        new RetryPolicies(retryPolicy, retryPolicy, retryPolicy),
+        new StorageGuard(new ResilienceConfigurationProperties(
+            new ResilienceConfigurationProperties.CircuitBreakerProperties(
+                true, 100, 20, 0.5, Duration.ofSeconds(5), 3),
+            new ResilienceConfigurationProperties.ConcurrencyLimitProperties(
+                true, 200, 20, 2000, Duration.ofMillis(250), 0.9),
+            new ResilienceConfigurationProperties.BulkheadProperties(false, null, null, null),
+            Duration.ofSeconds(5)), clock, meterRegistry),
+        new Hedger(new HedgingConfigurationProperties(
+            false, 0.95, Duration.ofMillis(1), 0.05, 100), meterRegistry),
+        new LookupCoalescer(meterRegistry),
+        clock);
+    urlShortenerService = new UrlShortenerService(
+        new ApplicationConfigurationProperties(
+            IdGenerator.HASH, ALGORITHM, 3, BASE_URL, 90, HashEncoding.HEX, null),
+        storageRepositoryFacade,
+        new BatchConfigurationProperties(10_000, 64, 100, Duration.ofMinutes(5)),
+        ALGORITHM::generateHash,
+        new UrlShortenerMetrics(meterRegistry),
+        new ClickCounter(null, new ClickCountingConfigurationProperties(
+            false, Duration.ofSeconds(10), 1, 1), Runnable::run, meterRegistry),
+        new HotLinkTracker(new HotLinksConfigurationProperties(
+            true, Duration.ofMinutes(1), 6, 4096, 4, 100, false, 1000L),
+            storageRepositoryFacade, clock, meterRegistry),
+        new SequenceConfigurationProperties("_sequence", 1000L, 0.8),
+        new ReaperConfigurationProperties(
+            false, Duration.ofHours(1), 4, 500, 2000.0, 200.0, "_reaper"));
+  }
+
+  @Benchmark
+  public String extractHashFromUrl() {
+    return UrlShortenerService.extractHashFromUrl(SHORT_URL);
+  }
+
+  @Benchmark
+  public Object shortenUrl() {
+    return urlShortenerService.shortenUrl(LONG_URL, Deadline.none()).toCompletableFuture().join();
+  }
+
+  @Benchmark
+  public String shortenUrlBaseline() {
+    return CompletableFuture.completedFuture(ALGORITHM.generateHash(LONG_URL))
+        .thenApply(hash -> BASE_URL + "/" + hash)
+        .join();
+  }
+
+  private static final class ImmediateUrlStore implements UrlStore {
+
+    @Override
+    public EitherT<UrlShortenerError, String> save(
+        String hash,
+        String originalUrl,
+        LocalDateTime createdAt,
+        LocalDateTime expiresAt,
+        Deadline deadline) {
+      return EitherT.right(hash);
+    }
+
+    @Override
+    public EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash, Deadline deadline) {
+      return EitherT.left(UrlShortenerError.HASH_NOT_FOUND);
+    }
+
+    @Override
+    public TryT<Void> delete(String hash, Deadline deadline) {
+      return TryT.of(null);
+    }
+
+    @Override
+    public Stream<String> scanHashes() {
+      return Stream.empty();
+    }
+
+    @Override
+    public Stream<UrlEntry> scanCreatedSince(Instant since, int segment, int totalSegments) {
+      return Stream.empty();
+    }
+  }
+}
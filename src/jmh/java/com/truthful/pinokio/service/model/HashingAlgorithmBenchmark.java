@@ -0,0 +1,50 @@
+package com.truthful.pinokio.service.model;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashingAlgorithmBenchmark {
+
+  @Param({"MURMUR32", "MURMUR128", "SHA256"})
+  private HashingAlgorithm algorithm;
+
+  @Param({"HEX", "BASE62", "BASE64URL"})
+  private HashEncoding encoding;
+
+  @Param({"32", "256", "1000"})
+  private int urlLength;
+
+  private String longUrl;
+  private int hashLength;
+
+  @Setup
+  public void setUp() {
+    StringBuilder builder = new StringBuilder("https://www.catnipcoder.com/");
+    while (builder.length() < urlLength) {
+      builder.append((char) ('a' + builder.length() % 26));
+    }
+    longUrl = builder.substring(0, urlLength);
+    hashLength = algorithm.maxLength(encoding);
+  }
+
+  @Benchmark
+  public String generateHash() {
+    return algorithm.generateHash(longUrl, encoding, hashLength);
+  }
+}
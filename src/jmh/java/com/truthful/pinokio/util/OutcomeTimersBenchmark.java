@@ -0,0 +1,81 @@
+package com.truthful.pinokio.util;
+
+import com.soumakis.control.Either;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording the latency of a request on the Prometheus registry, with the histogram
+ * buckets and SLOs of {@code application.yaml}. A request records one timer per layer, so three
+ * times {@link #record()} minus {@link #baseline()} must stay well under a microsecond. Run with
+ * several threads, as the timers are shared by every request in flight.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class OutcomeTimersBenchmark {
+
+  private static final Either<UrlShortenerError, String> SUCCESS = Either.right("url");
+  private static final Either<UrlShortenerError, String> NOT_FOUND =
+      Either.left(UrlShortenerError.HASH_NOT_FOUND);
+
+  private OutcomeTimers outcomeTimers;
+
+  @Setup
+  public void setUp() {
+    PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    meterRegistry.config().meterFilter(new MeterFilter() {
+      @Override
+      public DistributionStatisticConfig configure(
+          Meter.Id id, DistributionStatisticConfig config) {
+        return DistributionStatisticConfig.builder()
+            .percentilesHistogram(true)
+            .minimumExpectedValue((double) TimeUnit.MICROSECONDS.toNanos(100))
+            .maximumExpectedValue((double) Duration.ofSeconds(10).toNanos())
+            .serviceLevelObjectives(
+                Duration.ofMillis(5).toNanos(), Duration.ofMillis(10).toNanos(),
+                Duration.ofMillis(25).toNanos(), Duration.ofMillis(50).toNanos(),
+                Duration.ofMillis(100).toNanos(), Duration.ofMillis(250).toNanos())
+            .build()
+            .merge(config);
+      }
+    });
+    outcomeTimers = new OutcomeTimers(meterRegistry, "url.service.requests", "", "resolve");
+  }
+
+  @Benchmark
+  public long baseline() {
+    return System.nanoTime();
+  }
+
+  @Benchmark
+  public void record() {
+    outcomeTimers.record(System.nanoTime(), SUCCESS, null);
+  }
+
+  @Benchmark
+  public void recordError() {
+    outcomeTimers.record(System.nanoTime(), NOT_FOUND, null);
+  }
+}
@@ -0,0 +1,109 @@
+package com.truthful.pinokio.util;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the logging done for one redirect, before and after sampling. {@link #formatted()}
+ * is the former formatted INFO line per request written synchronously, {@link #sampled()} goes
+ * through {@link RequestLogger} and the async appender of {@code logback-spring.xml} at the sample
+ * rate of the {@code sampleRate} parameter, which {@link #formatted()} ignores. Both write to a
+ * discarding stream with the console pattern, so the difference is the cost paid on the request
+ * thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RequestLoggerBenchmark {
+
+  private static final String PATTERN =
+      "%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%t] %-40.40logger{39} : %m %kvp%n";
+
+  @Param({"1.0", "0.01"})
+  public double sampleRate;
+
+  private LoggerContext loggerContext;
+  private Logger syncLogger;
+  private Logger asyncLogger;
+  private RequestLogger requestLogger;
+
+  @Setup
+  public void setUp() {
+    loggerContext = new LoggerContext();
+
+    OutputStreamAppender<ILoggingEvent> syncAppender = discardingAppender("SYNC");
+    syncLogger = loggerContext.getLogger("sync");
+    syncLogger.setAdditive(false);
+    syncLogger.setLevel(Level.INFO);
+    syncLogger.addAppender(syncAppender);
+
+    AsyncAppender asyncAppender = new AsyncAppender();
+    asyncAppender.setContext(loggerContext);
+    asyncAppender.setName("ASYNC");
+    asyncAppender.setQueueSize(8192);
+    asyncAppender.setNeverBlock(true);
+    asyncAppender.addAppender(discardingAppender("DISCARD"));
+    asyncAppender.start();
+    asyncLogger = loggerContext.getLogger("async");
+    asyncLogger.setAdditive(false);
+    asyncLogger.setLevel(Level.INFO);
+    asyncLogger.addAppender(asyncAppender);
+
+    requestLogger = new RequestLogger(sampleRate, Duration.ofSeconds(10), 10.0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    loggerContext.stop();
+  }
+
+  @Benchmark
+  public void formatted() {
+    syncLogger.info("Found item in DynamoDB for hash {}", "abc123");
+  }
+
+  @Benchmark
+  public void sampled() {
+    requestLogger.logRequest(asyncLogger, "dynamodb.get", "abc123", System.nanoTime(), "found");
+  }
+
+  private OutputStreamAppender<ILoggingEvent> discardingAppender(String name) {
+    PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+    encoder.setContext(loggerContext);
+    encoder.setPattern(PATTERN);
+    encoder.start();
+
+    OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+    appender.setContext(loggerContext);
+    appender.setName(name);
+    appender.setEncoder(encoder);
+    appender.setOutputStream(OutputStream.nullOutputStream());
+    appender.start();
+    return appender;
+  }
+}
@@ -0,0 +1,58 @@
+package com.truthful.pinokio.util;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the blocking and the non-blocking retry of an {@code Either} result when the attempt
+ * succeeds after the given amount of retryable failures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RetryUtilBenchmark {
+
+  private static final Either<UrlShortenerError, String> SUCCESS = Either.right("hash");
+  private static final Either<UrlShortenerError, String> FAILURE =
+      Either.left(UrlShortenerError.TRANSIENT_ERROR);
+
+  private static final RetryPolicy POLICY = RetryPolicy.immediate(3);
+
+  @Param({"0", "2"})
+  private int failuresBeforeSuccess;
+
+  private int attempts;
+
+  @Benchmark
+  public Either<UrlShortenerError, String> retryEither() {
+    attempts = 0;
+    return RetryUtil.retryEither(
+        POLICY, () -> attempts++ < failuresBeforeSuccess ? FAILURE : SUCCESS);
+  }
+
+  @Benchmark
+  public Either<UrlShortenerError, String> retryEitherAsync() {
+    attempts = 0;
+    return RetryUtil.retryEitherAsync(POLICY, () -> EitherT.fromFuture(
+            CompletableFuture.completedFuture(
+                attempts++ < failuresBeforeSuccess ? FAILURE : SUCCESS)))
+        .toCompletableFuture()
+        .join();
+  }
+}
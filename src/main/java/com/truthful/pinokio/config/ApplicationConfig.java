@@ -1,6 +1,11 @@
 package com.truthful.pinokio.config;
 
+import com.truthful.pinokio.config.model.ApplicationConfigurationProperties;
+import com.truthful.pinokio.service.HashGenerator;
+import com.truthful.pinokio.service.model.HashEncoding;
+import com.truthful.pinokio.service.model.HashingAlgorithm;
 import java.time.Clock;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,4 +16,26 @@ public class ApplicationConfig {
   public Clock clock() {
     return Clock.systemUTC();
   }
+
+  /**
+   * Hashes the URLs when {@code application.id-generator} is {@code HASH}, otherwise the
+   * {@link com.truthful.pinokio.service.SequenceIdGenerator} is the {@link HashGenerator}.
+   */
+  @Bean
+  @ConditionalOnProperty(
+      prefix = "application",
+      name = "id-generator",
+      havingValue = "HASH",
+      matchIfMissing = true)
+  public HashGenerator hashGenerator(
+      ApplicationConfigurationProperties applicationConfigurationProperties) {
+    HashingAlgorithm algorithm = applicationConfigurationProperties.algorithm();
+    HashEncoding hashEncoding = applicationConfigurationProperties.hashEncoding();
+    int hashLength = applicationConfigurationProperties.effectiveHashLength();
+    if (hashLength > algorithm.maxLength(hashEncoding)) {
+      throw new IllegalStateException("application.hash-length must be at most "
+          + algorithm.maxLength(hashEncoding) + " for " + algorithm + " with " + hashEncoding);
+    }
+    return longUrl -> algorithm.generateHash(longUrl, hashEncoding, hashLength);
+  }
 }
@@ -1,5 +1,8 @@
 package com.truthful.pinokio.config;
 
+import com.truthful.pinokio.util.InFlightTrackingExecutor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import org.springframework.context.annotation.Bean;
@@ -10,7 +13,13 @@ import org.springframework.scheduling.annotation.AsyncConfigurer;
 public class AsyncConfig implements AsyncConfigurer {
     
     @Bean(name = "virtualTaskExecutor")
-    public Executor taskExecutor() {
-        return Executors.newVirtualThreadPerTaskExecutor();
+    public Executor taskExecutor(MeterRegistry meterRegistry) {
+        InFlightTrackingExecutor executor =
+            new InFlightTrackingExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        Gauge.builder("url.executor.virtual.threads.in.flight", executor,
+                InFlightTrackingExecutor::inFlight)
+            .description("Virtual threads started by the task executor that are still running")
+            .register(meterRegistry);
+        return executor;
     }
 }
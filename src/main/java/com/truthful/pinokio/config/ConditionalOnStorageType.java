@@ -0,0 +1,23 @@
+package com.truthful.pinokio.config;
+
+import com.truthful.pinokio.config.model.StorageType;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.springframework.context.annotation.Conditional;
+
+/**
+ * Registers the annotated bean only when {@code application.storage.type} selects the given
+ * storage, which is {@link StorageType#DYNAMODB} when the property is not set. Unlike
+ * {@code ConditionalOnProperty}, it can be combined with a property condition on the same bean.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Conditional(OnStorageTypeCondition.class)
+public @interface ConditionalOnStorageType {
+
+  StorageType value();
+}
@@ -1,44 +1,128 @@
 package com.truthful.pinokio.config;
 
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties.AsyncHttpClientProperties;
 import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.config.model.StorageType;
 import java.net.URI;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
 
 @Configuration
+@ConditionalOnStorageType(StorageType.DYNAMODB)
 public class DynamoDbConfig {
 
   @Bean
   @Profile("!local && !test")
   public DynamoDbClient dynamoDbClient(
-      DynamoDBConfigurationProperties dynamoDBConfigurationProperties) {
+      DynamoDBConfigurationProperties dynamoDBConfigurationProperties,
+      DynamoDbMetricsInterceptor dynamoDbMetricsInterceptor) {
     DynamoDbClientBuilder builder =
         DynamoDbClient.builder()
             .region(Region.of(dynamoDBConfigurationProperties.region()))
             .credentialsProvider(StaticCredentialsProvider.create(
                 AwsBasicCredentials.create(dynamoDBConfigurationProperties.accessKeyId(),
-                    dynamoDBConfigurationProperties.secretAccessKey())));
+                    dynamoDBConfigurationProperties.secretAccessKey())))
+            .overrideConfiguration(
+                overrideConfiguration(dynamoDBConfigurationProperties, dynamoDbMetricsInterceptor));
     return builder.build();
   }
 
   @Bean
   @Profile("test | local")
   public DynamoDbClient testDynamoDbClient(
-      DynamoDBConfigurationProperties dynamoDBConfigurationProperties) {
+      DynamoDBConfigurationProperties dynamoDBConfigurationProperties,
+      DynamoDbMetricsInterceptor dynamoDbMetricsInterceptor) {
     DynamoDbClientBuilder builder =
         DynamoDbClient.builder()
             .region(Region.of(dynamoDBConfigurationProperties.region()))
             .credentialsProvider(StaticCredentialsProvider.create(
                 AwsBasicCredentials.create(dynamoDBConfigurationProperties.accessKeyId(),
                     dynamoDBConfigurationProperties.secretAccessKey())))
+            .overrideConfiguration(
+                overrideConfiguration(dynamoDBConfigurationProperties, dynamoDbMetricsInterceptor))
+            .endpointOverride(URI.create(dynamoDBConfigurationProperties.endpointUrl()));
+    return builder.build();
+  }
+
+  @Bean
+  @Profile("!local && !test")
+  @ConditionalOnProperty(
+      prefix = "application.dynamodb",
+      name = "client-mode",
+      havingValue = "async")
+  public DynamoDbAsyncClient dynamoDbAsyncClient(
+      DynamoDBConfigurationProperties dynamoDBConfigurationProperties,
+      DynamoDbMetricsInterceptor dynamoDbMetricsInterceptor) {
+    DynamoDbAsyncClientBuilder builder =
+        DynamoDbAsyncClient.builder()
+            .region(Region.of(dynamoDBConfigurationProperties.region()))
+            .credentialsProvider(StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(dynamoDBConfigurationProperties.accessKeyId(),
+                    dynamoDBConfigurationProperties.secretAccessKey())))
+            .overrideConfiguration(
+                overrideConfiguration(dynamoDBConfigurationProperties, dynamoDbMetricsInterceptor))
+            .httpClientBuilder(
+                nettyHttpClientBuilder(dynamoDBConfigurationProperties.asyncHttpClient()));
+    return builder.build();
+  }
+
+  @Bean
+  @Profile("test | local")
+  @ConditionalOnProperty(
+      prefix = "application.dynamodb",
+      name = "client-mode",
+      havingValue = "async")
+  public DynamoDbAsyncClient testDynamoDbAsyncClient(
+      DynamoDBConfigurationProperties dynamoDBConfigurationProperties,
+      DynamoDbMetricsInterceptor dynamoDbMetricsInterceptor) {
+    DynamoDbAsyncClientBuilder builder =
+        DynamoDbAsyncClient.builder()
+            .region(Region.of(dynamoDBConfigurationProperties.region()))
+            .credentialsProvider(StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(dynamoDBConfigurationProperties.accessKeyId(),
+                    dynamoDBConfigurationProperties.secretAccessKey())))
+            .overrideConfiguration(
+                overrideConfiguration(dynamoDBConfigurationProperties, dynamoDbMetricsInterceptor))
+            .httpClientBuilder(
+                nettyHttpClientBuilder(dynamoDBConfigurationProperties.asyncHttpClient()))
             .endpointOverride(URI.create(dynamoDBConfigurationProperties.endpointUrl()));
     return builder.build();
   }
 
+  /**
+   * Leaves retrying to the {@link com.truthful.pinokio.util.RetryUtil} of the callers, whose
+   * retries are bounded by the retry budget and the deadline of the request. Retries of the SDK on
+   * top of them would multiply the calls made while DynamoDB throttles.
+   */
+  private static ClientOverrideConfiguration overrideConfiguration(
+      DynamoDBConfigurationProperties dynamoDBConfigurationProperties,
+      DynamoDbMetricsInterceptor dynamoDbMetricsInterceptor) {
+    return ClientOverrideConfiguration.builder()
+        .addExecutionInterceptor(dynamoDbMetricsInterceptor)
+        .retryStrategy(AwsRetryStrategy.doNotRetry())
+        .apiCallTimeout(dynamoDBConfigurationProperties.apiCallTimeout())
+        .apiCallAttemptTimeout(dynamoDBConfigurationProperties.apiCallAttemptTimeout())
+        .build();
+  }
+
+  private static NettyNioAsyncHttpClient.Builder nettyHttpClientBuilder(
+      AsyncHttpClientProperties asyncHttpClientProperties) {
+    return NettyNioAsyncHttpClient.builder()
+        .maxConcurrency(asyncHttpClientProperties.maxConcurrency())
+        .maxPendingConnectionAcquires(asyncHttpClientProperties.maxPendingConnectionAcquires())
+        .connectionAcquisitionTimeout(asyncHttpClientProperties.connectionAcquisitionTimeout());
+  }
+
 }
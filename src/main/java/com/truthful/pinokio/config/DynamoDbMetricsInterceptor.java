@@ -0,0 +1,126 @@
+package com.truthful.pinokio.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+/**
+ * Records the latency of every DynamoDB operation made by the blocking and the asynchronous
+ * clients, SDK retries included, and the capacity it consumed as reported by
+ * {@code ReturnConsumedCapacity}.
+ */
+@Component
+public class DynamoDbMetricsInterceptor implements ExecutionInterceptor {
+
+  private static final ExecutionAttribute<Long> START_NANOS =
+      new ExecutionAttribute<>("PinokioMetricsStartNanos");
+
+  private final MeterRegistry meterRegistry;
+  private final Map<String, OperationMeters> operationMeters = new ConcurrentHashMap<>();
+
+  public DynamoDbMetricsInterceptor(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void beforeExecution(
+      Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+    executionAttributes.putAttribute(START_NANOS, System.nanoTime());
+  }
+
+  @Override
+  public void afterExecution(
+      Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+    OperationMeters meters = meters(executionAttributes);
+    meters.success().record(elapsedNanos(executionAttributes), TimeUnit.NANOSECONDS);
+    recordConsumedCapacity(meters.consumedCapacity(), context.response());
+  }
+
+  @Override
+  public void onExecutionFailure(
+      Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+    meters(executionAttributes).failure()
+        .record(elapsedNanos(executionAttributes), TimeUnit.NANOSECONDS);
+  }
+
+  private OperationMeters meters(ExecutionAttributes executionAttributes) {
+    return operationMeters.computeIfAbsent(
+        executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME),
+        this::registerMeters);
+  }
+
+  private OperationMeters registerMeters(String operation) {
+    return new OperationMeters(
+        registerTimer(operation, "success"),
+        registerTimer(operation, "failure"),
+        DistributionSummary.builder("url.dynamodb.consumed.capacity")
+            .description("Capacity units consumed by the DynamoDB operations")
+            .baseUnit("capacity.units")
+            .tag("operation", operation)
+            .register(meterRegistry));
+  }
+
+  private Timer registerTimer(String operation, String outcome) {
+    return Timer.builder("url.dynamodb.requests")
+        .description("Latency of the DynamoDB operations, SDK retries included")
+        .tag("operation", operation)
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  private static long elapsedNanos(ExecutionAttributes executionAttributes) {
+    return System.nanoTime() - executionAttributes.getAttribute(START_NANOS);
+  }
+
+  private static void recordConsumedCapacity(
+      DistributionSummary consumedCapacity, SdkResponse response) {
+    switch (response) {
+      case GetItemResponse r -> record(consumedCapacity, r.consumedCapacity());
+      case PutItemResponse r -> record(consumedCapacity, r.consumedCapacity());
+      case DeleteItemResponse r -> record(consumedCapacity, r.consumedCapacity());
+      case UpdateItemResponse r -> record(consumedCapacity, r.consumedCapacity());
+      case ScanResponse r -> record(consumedCapacity, r.consumedCapacity());
+      case BatchGetItemResponse r -> record(consumedCapacity, r.consumedCapacity());
+      case BatchWriteItemResponse r -> record(consumedCapacity, r.consumedCapacity());
+      case TransactWriteItemsResponse r -> record(consumedCapacity, r.consumedCapacity());
+      default -> {
+      }
+    }
+  }
+
+  private static void record(
+      DistributionSummary consumedCapacity, List<ConsumedCapacity> capacities) {
+    capacities.forEach(capacity -> record(consumedCapacity, capacity));
+  }
+
+  private static void record(DistributionSummary consumedCapacity, ConsumedCapacity capacity) {
+    if (capacity != null && capacity.capacityUnits() != null) {
+      consumedCapacity.record(capacity.capacityUnits());
+    }
+  }
+
+  private record OperationMeters(
+      Timer success, Timer failure, DistributionSummary consumedCapacity) {
+
+  }
+}
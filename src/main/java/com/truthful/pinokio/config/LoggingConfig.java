@@ -0,0 +1,19 @@
+package com.truthful.pinokio.config;
+
+import com.truthful.pinokio.config.model.LoggingConfigurationProperties;
+import com.truthful.pinokio.util.RequestLogger;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LoggingConfig {
+
+  @Bean
+  public RequestLogger requestLogger(
+      LoggingConfigurationProperties loggingConfigurationProperties) {
+    return new RequestLogger(
+        loggingConfigurationProperties.sampleRate(),
+        loggingConfigurationProperties.errorDedupWindow(),
+        loggingConfigurationProperties.errorsPerSecond());
+  }
+}
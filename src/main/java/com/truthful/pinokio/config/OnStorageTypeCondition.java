@@ -0,0 +1,21 @@
+package com.truthful.pinokio.config;
+
+import com.truthful.pinokio.config.model.StorageType;
+import java.util.Map;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+class OnStorageTypeCondition implements Condition {
+
+  @Override
+  public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+    Map<String, Object> attributes =
+        metadata.getAnnotationAttributes(ConditionalOnStorageType.class.getName());
+    StorageType configured = Binder.get(context.getEnvironment())
+        .bind("application.storage.type", StorageType.class)
+        .orElse(StorageType.DYNAMODB);
+    return attributes != null && attributes.get("value") == configured;
+  }
+}
@@ -0,0 +1,36 @@
+package com.truthful.pinokio.config;
+
+import com.truthful.pinokio.controller.UrlShortenerHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Reactive web stack, served on Netty when the {@code reactive} profile sets
+ * {@code spring.main.web-application-type} to {@code reactive}. Spring MVC and Tomcat stay on the
+ * classpath for the default servlet stack, so the Netty server is declared here rather than left
+ * to the auto-configuration, which would pick Tomcat.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig {
+
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+
+  @Bean
+  public RouterFunction<ServerResponse> urlShortenerRoutes(
+      UrlShortenerHandler urlShortenerHandler) {
+    return RouterFunctions.route()
+        .POST("/api/url", urlShortenerHandler::shortenUrl)
+        .GET("/{hash}", urlShortenerHandler::redirectToOriginalUrl)
+        .HEAD("/{hash}", urlShortenerHandler::redirectToOriginalUrl)
+        .build();
+  }
+}
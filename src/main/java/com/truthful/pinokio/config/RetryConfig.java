@@ -0,0 +1,29 @@
+package com.truthful.pinokio.config;
+
+import com.truthful.pinokio.config.model.RetryConfigurationProperties;
+import com.truthful.pinokio.config.model.RetryConfigurationProperties.PolicyProperties;
+import com.truthful.pinokio.util.RetryBudget;
+import com.truthful.pinokio.util.RetryPolicies;
+import com.truthful.pinokio.util.RetryPolicy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RetryConfig {
+
+  @Bean
+  public RetryPolicies retryPolicies(RetryConfigurationProperties retryConfigurationProperties) {
+    RetryBudget budget = new RetryBudget(
+        retryConfigurationProperties.budget().capacity(),
+        retryConfigurationProperties.budget().refillPerSecond());
+    return new RetryPolicies(
+        toRetryPolicy(retryConfigurationProperties.save(), budget),
+        toRetryPolicy(retryConfigurationProperties.get(), budget),
+        toRetryPolicy(retryConfigurationProperties.delete(), budget));
+  }
+
+  private static RetryPolicy toRetryPolicy(PolicyProperties properties, RetryBudget budget) {
+    return new RetryPolicy(
+        properties.maxAttempts(), properties.initialBackoff(), properties.maxBackoff(), budget);
+  }
+}
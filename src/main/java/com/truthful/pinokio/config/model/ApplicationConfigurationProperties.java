@@ -1,5 +1,6 @@
 package com.truthful.pinokio.config.model;
 
+import com.truthful.pinokio.service.model.HashEncoding;
 import com.truthful.pinokio.service.model.HashingAlgorithm;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -10,9 +11,19 @@ import org.springframework.validation.annotation.Validated;
 @ConfigurationProperties(prefix = "application")
 @Validated
 public record ApplicationConfigurationProperties(
+    @NotNull IdGenerator idGenerator,
     @NotNull HashingAlgorithm algorithm,
     @NotNull @Positive Integer maxHashRetries,
     @NotNull @NotEmpty String baseUrl,
-    @NotNull @Positive Integer urlExpirationInDays) {
+    @NotNull @Positive Integer urlExpirationInDays,
+    @NotNull HashEncoding hashEncoding,
+    @Positive Integer hashLength) {
 
+  /**
+   * Returns the length of the generated hashes, the longest the algorithm and encoding allow when
+   * no length is configured.
+   */
+  public int effectiveHashLength() {
+    return hashLength == null ? algorithm.maxLength(hashEncoding) : hashLength;
+  }
 }
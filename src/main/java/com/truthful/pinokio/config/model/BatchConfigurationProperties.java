@@ -0,0 +1,17 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@ConfigurationProperties(prefix = "application.batch")
+@Validated
+public record BatchConfigurationProperties(
+    @NotNull @Positive Integer maxItems,
+    @NotNull @Positive Integer maxConcurrency,
+    @NotNull @Positive Integer resolveChunkSize,
+    @NotNull Duration streamTimeout) {
+
+}
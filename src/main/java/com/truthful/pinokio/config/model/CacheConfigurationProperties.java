@@ -0,0 +1,25 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the two-tier cache of hash to original URL lookups. The hot tier lives on the heap
+ * and is bounded by an estimate of the memory its entries take, while the warm tier keeps the
+ * entries it receives from the hot tier in {@code warmSlabSize} slabs of direct memory, up to
+ * {@code warmMaximumSize}. A zero {@code warmMaximumSize} leaves the warm tier out. No entry is
+ * served for longer than {@code ttl} after it was read from the storage, whichever tier it is in.
+ */
+@ConfigurationProperties(prefix = "application.cache")
+@Validated
+public record CacheConfigurationProperties(
+    boolean enabled,
+    @NotNull DataSize hotMaximumSize,
+    @NotNull DataSize warmMaximumSize,
+    @NotNull DataSize warmSlabSize,
+    @NotNull Duration ttl) {
+
+}
@@ -0,0 +1,33 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the URL cache warm-up. The hottest {@code snapshotEntries} are written to
+ * {@code snapshotFile} on a graceful shutdown and loaded on the next start. Without a usable
+ * snapshot, up to {@code scanMaximumEntries} created within {@code scanWindow} are read from the
+ * storage by a parallel scan over {@code scanTotalSegments} segments, at most
+ * {@code scanEntriesPerSecond}. The node reports itself ready once {@code readyThreshold} of the
+ * entries expected are loaded, or after {@code readyTimeout} at the latest.
+ */
+@ConfigurationProperties(prefix = "application.cache.warm-up")
+@Validated
+public record CacheWarmUpConfigurationProperties(
+    boolean enabled,
+    @NotNull @NotEmpty String snapshotFile,
+    @NotNull @Positive Integer snapshotEntries,
+    @NotNull Duration scanWindow,
+    @NotNull @Positive Integer scanMaximumEntries,
+    @NotNull @Positive Integer scanTotalSegments,
+    @NotNull @Positive Double scanEntriesPerSecond,
+    @NotNull @DecimalMin("0.0") @DecimalMax("1.0") Double readyThreshold,
+    @NotNull Duration readyTimeout) {
+
+}
@@ -0,0 +1,21 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Time budget of the requests of every endpoint, from their arrival to the answer of the storage.
+ * The storage is given up on once it has passed, and the request is answered with a 503.
+ */
+@ConfigurationProperties(prefix = "application.deadline")
+@Validated
+public record DeadlineConfigurationProperties(
+    boolean enabled,
+    @NotNull Duration shorten,
+    @NotNull Duration redirect,
+    @NotNull Duration stats,
+    @NotNull Duration delete) {
+
+}
@@ -1,10 +1,19 @@
 package com.truthful.pinokio.config.model;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+/**
+ * Settings of the DynamoDB clients. {@code apiCallTimeout} bounds a call and
+ * {@code apiCallAttemptTimeout} each of its HTTP attempts, so that a call no request waits for
+ * anymore does not keep running past the longest request deadline. A request with a deadline of
+ * its own is bounded by the time it has left when that is shorter.
+ */
 @ConfigurationProperties(prefix = "application.dynamodb")
 @Validated
 public record DynamoDBConfigurationProperties(
@@ -12,6 +21,19 @@ public record DynamoDBConfigurationProperties(
     @NotNull @NotEmpty String region,
     @NotNull @NotEmpty String accessKeyId,
     @NotNull @NotEmpty String secretAccessKey,
-    String endpointUrl) {
+    String endpointUrl,
+    @NotNull DynamoDbClientMode clientMode,
+    @NotNull @Valid AsyncHttpClientProperties asyncHttpClient,
+    @NotNull Duration apiCallTimeout,
+    @NotNull Duration apiCallAttemptTimeout) {
 
+  /**
+   * Connection pool of the Netty HTTP client used by the asynchronous DynamoDB client.
+   */
+  public record AsyncHttpClientProperties(
+      @NotNull @Positive Integer maxConcurrency,
+      @NotNull @Positive Integer maxPendingConnectionAcquires,
+      @NotNull Duration connectionAcquisitionTimeout) {
+
+  }
 }
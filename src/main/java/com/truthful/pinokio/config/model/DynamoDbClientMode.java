@@ -0,0 +1,6 @@
+package com.truthful.pinokio.config.model;
+
+public enum DynamoDbClientMode {
+  SYNC,
+  ASYNC
+}
@@ -0,0 +1,26 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the hedged redirect reads. A read that has not answered after the given
+ * {@code percentile} of the latency of the last {@code sampleSize} reads, and at least after
+ * {@code minDelay}, is sent a second time. The extra reads are capped at {@code maxHedgeRatio} of
+ * the reads.
+ */
+@ConfigurationProperties(prefix = "application.hedging")
+@Validated
+public record HedgingConfigurationProperties(
+    boolean enabled,
+    @NotNull @Positive @DecimalMax("1") Double percentile,
+    @NotNull Duration minDelay,
+    @NotNull @PositiveOrZero @DecimalMax("1") Double maxHedgeRatio,
+    @NotNull @Positive Integer sampleSize) {
+
+}
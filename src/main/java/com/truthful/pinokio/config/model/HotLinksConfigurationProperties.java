@@ -0,0 +1,21 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@ConfigurationProperties(prefix = "application.hot-links")
+@Validated
+public record HotLinksConfigurationProperties(
+    boolean enabled,
+    @NotNull Duration window,
+    @NotNull @Positive Integer windowBuckets,
+    @NotNull @Positive Integer sketchWidth,
+    @NotNull @Positive Integer sketchDepth,
+    @NotNull @Positive Integer topK,
+    boolean promotionEnabled,
+    @NotNull @Positive Long promotionThreshold) {
+
+}
@@ -0,0 +1,11 @@
+package com.truthful.pinokio.config.model;
+
+/**
+ * Selects how the codes of the shortened URLs are generated. {@link #HASH} hashes the URL with the
+ * configured algorithm and encoding, while {@link #SEQUENCE} hands out unique ids leased from a
+ * shared counter and encoded as base62, which never collide.
+ */
+public enum IdGenerator {
+  HASH,
+  SEQUENCE
+}
@@ -0,0 +1,23 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the per-request logging. {@code sampleRate} is the share of completed requests
+ * logged at INFO, while failures are logged once per {@code errorDedupWindow} for each kind of
+ * failure and at most {@code errorsPerSecond} overall.
+ */
+@ConfigurationProperties(prefix = "application.logging")
+@Validated
+public record LoggingConfigurationProperties(
+    @NotNull @DecimalMin("0.0") @DecimalMax("1.0") Double sampleRate,
+    @NotNull Duration errorDedupWindow,
+    @NotNull @Positive Double errorsPerSecond) {
+
+}
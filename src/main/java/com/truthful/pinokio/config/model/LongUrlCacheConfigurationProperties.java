@@ -0,0 +1,21 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the cache of long URL to hash mappings that answers repeated shorten requests. Only
+ * deletes made through this node invalidate it, so the TTL bounds how long another node's delete
+ * can go unnoticed.
+ */
+@ConfigurationProperties(prefix = "application.long-url-cache")
+@Validated
+public record LongUrlCacheConfigurationProperties(
+    boolean enabled,
+    @NotNull @Positive Long maximumSize,
+    @NotNull Duration ttl) {
+
+}
@@ -0,0 +1,25 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the negative lookup short-circuit. The membership filter only knows about hashes
+ * written through this node since its last rebuild, so it must only be enabled when this node sees
+ * every write to the table.
+ */
+@ConfigurationProperties(prefix = "application.negative-lookup")
+@Validated
+public record NegativeLookupConfigurationProperties(
+    boolean filterEnabled,
+    @NotNull @Positive Long expectedInsertions,
+    @NotNull @Positive @DecimalMax("0.5") Double falsePositiveProbability,
+    boolean cacheEnabled,
+    @NotNull @Positive Long cacheMaximumSize,
+    @NotNull Duration cacheTtl) {
+
+}
@@ -0,0 +1,26 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the expired URL reaper, which deletes expired items from stores without native TTL.
+ * Its progress is checkpointed in an item stored in the URL table under {@code checkpointKey}, a
+ * key the URL endpoints refuse to read, delete or hand out.
+ */
+@ConfigurationProperties(prefix = "application.reaper")
+@Validated
+public record ReaperConfigurationProperties(
+    boolean enabled,
+    @NotNull Duration interval,
+    @NotNull @Positive Integer totalSegments,
+    @NotNull @Positive Integer pageSize,
+    @NotNull @Positive Double scannedItemsPerSecond,
+    @NotNull @Positive Double deletesPerSecond,
+    @NotNull @NotEmpty String checkpointKey) {
+
+}
@@ -0,0 +1,19 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the redirect responses. Browsers and CDNs may cache a redirect until its link
+ * expires, but no longer than {@code maxCacheAge}, which bounds how long a deleted link keeps
+ * redirecting from their caches. A zero {@code maxCacheAge} makes them revalidate every time.
+ */
+@ConfigurationProperties(prefix = "application.redirect")
+@Validated
+public record RedirectConfigurationProperties(
+    @NotNull RedirectStatus status,
+    @NotNull Duration maxCacheAge) {
+
+}
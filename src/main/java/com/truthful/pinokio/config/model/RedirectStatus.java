@@ -0,0 +1,24 @@
+package com.truthful.pinokio.config.model;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * The status a redirect is answered with. The permanent ones let clients remember the redirect,
+ * the 307 and 308 ones oblige them to keep the method and body of the request.
+ */
+public enum RedirectStatus {
+  MOVED_PERMANENTLY(HttpStatus.MOVED_PERMANENTLY),
+  FOUND(HttpStatus.FOUND),
+  TEMPORARY_REDIRECT(HttpStatus.TEMPORARY_REDIRECT),
+  PERMANENT_REDIRECT(HttpStatus.PERMANENT_REDIRECT);
+
+  private final HttpStatus httpStatus;
+
+  RedirectStatus(HttpStatus httpStatus) {
+    this.httpStatus = httpStatus;
+  }
+
+  public HttpStatus httpStatus() {
+    return httpStatus;
+  }
+}
@@ -0,0 +1,79 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Protection of the storage against overload: a circuit breaker and a bulkhead per storage
+ * operation and a concurrency limit shared by all of them.
+ *
+ * @param retryAfter the {@code Retry-After} sent with the responses rejected by either of them
+ */
+@ConfigurationProperties(prefix = "application.resilience")
+@Validated
+public record ResilienceConfigurationProperties(
+    @NotNull @Valid CircuitBreakerProperties circuitBreaker,
+    @NotNull @Valid ConcurrencyLimitProperties concurrencyLimit,
+    @NotNull @Valid BulkheadProperties bulkhead,
+    @NotNull Duration retryAfter) {
+
+  /**
+   * The breaker opens once at least {@code minimumCalls} of the last {@code slidingWindowSize}
+   * calls were made and the share of them that failed reaches {@code failureRateThreshold}. After
+   * {@code openDuration} it lets {@code halfOpenProbes} calls through and closes if all of them
+   * succeed.
+   */
+  public record CircuitBreakerProperties(
+      boolean enabled,
+      @NotNull @Positive Integer slidingWindowSize,
+      @NotNull @Positive Integer minimumCalls,
+      @NotNull @Positive @DecimalMax("1.0") Double failureRateThreshold,
+      @NotNull Duration openDuration,
+      @NotNull @Positive Integer halfOpenProbes) {
+
+  }
+
+  /**
+   * The limit grows by one for every {@code limit} calls that complete within
+   * {@code latencyThreshold} and is multiplied by {@code backoffRatio} whenever a call is slower or
+   * fails because of the storage (AIMD).
+   */
+  public record ConcurrencyLimitProperties(
+      boolean enabled,
+      @NotNull @Positive Integer initialLimit,
+      @NotNull @Positive Integer minLimit,
+      @NotNull @Positive Integer maxLimit,
+      @NotNull Duration latencyThreshold,
+      @NotNull @Positive @DecimalMax("1.0") Double backoffRatio) {
+
+  }
+
+  /**
+   * Permits of the bulkheads of the redirect reads, the writes and the deletes, each of them
+   * taken before a slot of the shared concurrency limit.
+   */
+  public record BulkheadProperties(
+      boolean enabled,
+      @NotNull @Valid OperationBulkheadProperties get,
+      @NotNull @Valid OperationBulkheadProperties save,
+      @NotNull @Valid OperationBulkheadProperties delete) {
+
+  }
+
+  /**
+   * At most {@code maxConcurrentCalls} calls run at once, up to {@code maxQueueDepth} more wait
+   * for a permit for at most {@code maxWait}, and the rest are rejected.
+   */
+  public record OperationBulkheadProperties(
+      @NotNull @Positive Integer maxConcurrentCalls,
+      @NotNull @PositiveOrZero Integer maxQueueDepth,
+      @NotNull Duration maxWait) {
+
+  }
+}
@@ -0,0 +1,36 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Retry policies of the storage operations and the retry budget they share.
+ */
+@ConfigurationProperties(prefix = "application.retry")
+@Validated
+public record RetryConfigurationProperties(
+    @NotNull @Valid BudgetProperties budget,
+    @NotNull @Valid PolicyProperties save,
+    @NotNull @Valid PolicyProperties get,
+    @NotNull @Valid PolicyProperties delete) {
+
+  /**
+   * Token bucket limiting the retries of the whole process.
+   */
+  public record BudgetProperties(
+      @NotNull @Positive Integer capacity,
+      @NotNull @Positive Double refillPerSecond) {
+
+  }
+
+  public record PolicyProperties(
+      @NotNull @Positive Integer maxAttempts,
+      @NotNull Duration initialBackoff,
+      @NotNull Duration maxBackoff) {
+
+  }
+}
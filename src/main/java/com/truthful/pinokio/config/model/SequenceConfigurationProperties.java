@@ -0,0 +1,22 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the {@code SEQUENCE} id generator. Ids are leased from a counter item stored in the
+ * URL table under {@code counterKey}, a key the URL endpoints refuse to read, delete or hand out.
+ */
+@ConfigurationProperties(prefix = "application.sequence")
+@Validated
+public record SequenceConfigurationProperties(
+    @NotNull @NotEmpty String counterKey,
+    @NotNull @Positive Long leaseSize,
+    @NotNull @DecimalMin("0.0") @DecimalMax("1.0") Double prefetchRatio) {
+
+}
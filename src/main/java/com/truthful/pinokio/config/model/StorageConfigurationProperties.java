@@ -0,0 +1,41 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Selects where the URLs are stored. {@link StorageType#DYNAMODB} needs a reachable table, while
+ * {@link StorageType#LOCAL} keeps them in an embedded store on the disk of this node, for
+ * single-node deployments.
+ */
+@ConfigurationProperties(prefix = "application.storage")
+@Validated
+public record StorageConfigurationProperties(
+    @NotNull StorageType type,
+    @NotNull @Valid LocalStoreProperties local) {
+
+  /**
+   * Embedded store made of a memory-mapped append-only log and an off-heap index of it. The log is
+   * mapped with a fixed {@code logCapacity} of at most 2GB and rewritten without its dead records
+   * once they make up {@code compactionGarbageRatio} of it. {@code syncWrites} forces every write
+   * to the disk before it is acknowledged, otherwise writes survive a crash of the process but not
+   * of the host.
+   */
+  public record LocalStoreProperties(
+      @NotNull @NotEmpty String directory,
+      @NotNull DataSize logCapacity,
+      @NotNull @Positive Integer indexCapacity,
+      @NotNull @DecimalMin("0.0") @DecimalMax("1.0") Double compactionGarbageRatio,
+      @NotNull Duration compactionInterval,
+      boolean syncWrites) {
+
+  }
+}
@@ -0,0 +1,18 @@
+package com.truthful.pinokio.config.model;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@ConfigurationProperties(prefix = "application.write-batching")
+@Validated
+public record WriteBatchingConfigurationProperties(
+    boolean enabled,
+    @NotNull @Positive @Max(100) Integer maxBatchSize,
+    @NotNull Duration maxDelay,
+    @NotNull @Positive Integer maxAttempts) {
+
+}
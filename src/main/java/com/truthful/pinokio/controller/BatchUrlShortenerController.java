@@ -0,0 +1,231 @@
+package com.truthful.pinokio.controller;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soumakis.control.Either;
+import com.truthful.pinokio.config.model.BatchConfigurationProperties;
+import com.truthful.pinokio.controller.dto.BatchResolveResultDto;
+import com.truthful.pinokio.controller.dto.BatchShortenResultDto;
+import com.truthful.pinokio.controller.dto.ErrorDto;
+import com.truthful.pinokio.controller.dto.ErrorType;
+import com.truthful.pinokio.controller.dto.ResolveUrlRequestDto;
+import com.truthful.pinokio.controller.dto.ShortenedUrlRequestDto;
+import com.truthful.pinokio.service.UrlShortenerService;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import jakarta.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+/**
+ * Bulk variants of the shorten and resolve endpoints. Both accept either a JSON array, answered
+ * with a JSON array once every item is done, or an NDJSON stream, answered with an NDJSON stream.
+ * Results are always returned in input order and carry an error for every item that failed.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/url")
+@RequiredArgsConstructor
+@Slf4j
+public class BatchUrlShortenerController {
+
+  private static final Either<UrlShortenerError, String> GENERIC_ERROR_RESULT =
+      Either.left(UrlShortenerError.GENERIC_ERROR);
+
+  private final UrlShortenerService urlShortenerService;
+  private final BatchConfigurationProperties batchConfigurationProperties;
+  private final ObjectMapper objectMapper;
+  private final Validator validator;
+
+  @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public CompletableFuture<List<BatchShortenResultDto>> shortenUrls(
+      @RequestBody List<ShortenedUrlRequestDto> shortenedUrlRequestDtos) {
+    checkBatchSize(shortenedUrlRequestDtos.size());
+    return collectInOrder(shortenAll(shortenedUrlRequestDtos));
+  }
+
+  @PostMapping(
+      path = "/batch",
+      consumes = MediaType.APPLICATION_NDJSON_VALUE,
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseBodyEmitter shortenUrlsStream(InputStream body) throws IOException {
+    return streamInOrder(shortenAll(readNdjson(body, ShortenedUrlRequestDto.class)));
+  }
+
+  @PostMapping(path = "/resolve-batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public CompletableFuture<List<BatchResolveResultDto>> resolveUrls(
+      @RequestBody List<ResolveUrlRequestDto> resolveUrlRequestDtos) {
+    checkBatchSize(resolveUrlRequestDtos.size());
+    return collectInOrder(resolveAll(resolveUrlRequestDtos));
+  }
+
+  @PostMapping(
+      path = "/resolve-batch",
+      consumes = MediaType.APPLICATION_NDJSON_VALUE,
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseBodyEmitter resolveUrlsStream(InputStream body) throws IOException {
+    return streamInOrder(resolveAll(readNdjson(body, ResolveUrlRequestDto.class)));
+  }
+
+  private List<CompletableFuture<BatchShortenResultDto>> shortenAll(
+      List<ShortenedUrlRequestDto> shortenedUrlRequestDtos) {
+    return processValid(
+        shortenedUrlRequestDtos,
+        validDtos -> urlShortenerService.shortenUrls(
+            validDtos.stream().map(ShortenedUrlRequestDto::longUrl).toList()),
+        (dto, result) -> {
+          String longUrl = dto == null ? null : dto.longUrl();
+          if (result == null) {
+            return new BatchShortenResultDto(longUrl, null, invalidRequest());
+          }
+          return result.isRight()
+              ? new BatchShortenResultDto(longUrl, result.getRight(), null)
+              : new BatchShortenResultDto(longUrl, null, toErrorDto(result.getLeft()));
+        });
+  }
+
+  private List<CompletableFuture<BatchResolveResultDto>> resolveAll(
+      List<ResolveUrlRequestDto> resolveUrlRequestDtos) {
+    return processValid(
+        resolveUrlRequestDtos,
+        validDtos -> urlShortenerService.getOriginalUrls(
+            validDtos.stream().map(ResolveUrlRequestDto::shortUrl).toList()),
+        (dto, result) -> {
+          String shortUrl = dto == null ? null : dto.shortUrl();
+          if (result == null) {
+            return new BatchResolveResultDto(shortUrl, null, invalidRequest());
+          }
+          return result.isRight()
+              ? new BatchResolveResultDto(shortUrl, result.getRight(), null)
+              : new BatchResolveResultDto(shortUrl, null, toErrorDto(result.getLeft()));
+        });
+  }
+
+  /**
+   * Sends the valid requests to the service in one call and maps every request to its result.
+   * Invalid requests are mapped with a {@code null} result without reaching the service.
+   */
+  private <T, R> List<CompletableFuture<R>> processValid(
+      List<T> requests,
+      Function<List<T>, List<CompletableFuture<Either<UrlShortenerError, String>>>> service,
+      ResultMapper<T, R> resultMapper) {
+    boolean[] valid = new boolean[requests.size()];
+    List<T> validRequests = new ArrayList<>(requests.size());
+    for (int i = 0; i < requests.size(); i++) {
+      T request = requests.get(i);
+      valid[i] = request != null && validator.validate(request).isEmpty();
+      if (valid[i]) {
+        validRequests.add(request);
+      }
+    }
+
+    Iterator<CompletableFuture<Either<UrlShortenerError, String>>> results =
+        service.apply(validRequests).iterator();
+    List<CompletableFuture<R>> mappedResults = new ArrayList<>(requests.size());
+    for (int i = 0; i < requests.size(); i++) {
+      T request = requests.get(i);
+      if (!valid[i]) {
+        mappedResults.add(CompletableFuture.completedFuture(resultMapper.map(request, null)));
+        continue;
+      }
+      mappedResults.add(results.next()
+          .thenApply(result -> resultMapper.map(request, result))
+          .exceptionally(ex -> {
+            log.error("Failed to process batch item", ex);
+            return resultMapper.map(request, GENERIC_ERROR_RESULT);
+          }));
+    }
+    return mappedResults;
+  }
+
+  private <T> List<T> readNdjson(InputStream body, Class<T> type) throws IOException {
+    List<T> requests = new ArrayList<>();
+    try (MappingIterator<T> iterator = objectMapper.readerFor(type).readValues(body)) {
+      while (iterator.hasNext()) {
+        requests.add(iterator.next());
+        checkBatchSize(requests.size());
+      }
+    }
+    return requests;
+  }
+
+  private void checkBatchSize(int size) {
+    if (size > batchConfigurationProperties.maxItems()) {
+      throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+          "A batch may contain at most " + batchConfigurationProperties.maxItems() + " items");
+    }
+  }
+
+  private static <T> CompletableFuture<List<T>> collectInOrder(List<CompletableFuture<T>> results) {
+    return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> results.stream().map(CompletableFuture::join).toList());
+  }
+
+  private <T> ResponseBodyEmitter streamInOrder(List<CompletableFuture<T>> results) {
+    ResponseBodyEmitter emitter =
+        new ResponseBodyEmitter(batchConfigurationProperties.streamTimeout().toMillis());
+    CompletableFuture<Void> sent = CompletableFuture.completedFuture(null);
+    for (CompletableFuture<T> result : results) {
+      // Each line is sent once it and every line before it are done
+      sent = sent.thenCombine(result, (ignored, value) -> {
+        sendLine(emitter, value);
+        return null;
+      });
+    }
+    sent.whenComplete((ignored, throwable) -> {
+      if (throwable != null) {
+        log.error("Failed to stream batch results", throwable);
+        emitter.completeWithError(throwable);
+      } else {
+        emitter.complete();
+      }
+    });
+    return emitter;
+  }
+
+  private void sendLine(ResponseBodyEmitter emitter, Object value) {
+    try {
+      emitter.send(objectMapper.writeValueAsString(value) + "\n",
+          MediaType.APPLICATION_NDJSON);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static ErrorDto invalidRequest() {
+    return new ErrorDto("Invalid request", ErrorType.INVALID_REQUEST);
+  }
+
+  private static ErrorDto toErrorDto(UrlShortenerError urlShortenerError) {
+    return switch (urlShortenerError) {
+      case HASH_NOT_FOUND -> new ErrorDto("Hash not found", ErrorType.HASH_NOT_FOUND);
+      case HASH_ALREADY_EXISTS ->
+          new ErrorDto("Failed to shorten URL", ErrorType.HASH_ALREADY_EXISTS);
+      case TRANSIENT_ERROR, SERVICE_UNAVAILABLE ->
+          new ErrorDto("Service unavailable", ErrorType.SERVICE_UNAVAILABLE);
+      case GENERIC_ERROR -> new ErrorDto("Internal Server Error", ErrorType.GENERIC_ERROR);
+    };
+  }
+
+  @FunctionalInterface
+  private interface ResultMapper<T, R> {
+
+    R map(T request, Either<UrlShortenerError, String> result);
+  }
+}
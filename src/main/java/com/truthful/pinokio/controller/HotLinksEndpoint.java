@@ -0,0 +1,36 @@
+package com.truthful.pinokio.controller;
+
+import com.truthful.pinokio.service.HotLinkTracker;
+import com.truthful.pinokio.service.model.HotLink;
+import java.time.Duration;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint listing the links looked up the most during the sliding window of the
+ * {@link HotLinkTracker}, at {@code /actuator/hotlinks?limit=N}. Lookup counts are estimates that
+ * may exceed, but never fall below, the true ones.
+ */
+@Component
+@Endpoint(id = "hotlinks")
+@RequiredArgsConstructor
+public class HotLinksEndpoint {
+
+  private static final int DEFAULT_LIMIT = 20;
+
+  private final HotLinkTracker hotLinkTracker;
+
+  @ReadOperation
+  public HotLinksDescriptor hotLinks(@Nullable Integer limit) {
+    return new HotLinksDescriptor(hotLinkTracker.window(),
+        hotLinkTracker.hotLinks(limit == null ? DEFAULT_LIMIT : Math.max(0, limit)));
+  }
+
+  public record HotLinksDescriptor(Duration window, List<HotLink> links) {
+
+  }
+}
@@ -0,0 +1,138 @@
+package com.truthful.pinokio.controller;
+
+import com.google.common.hash.Hashing;
+import com.truthful.pinokio.config.model.RedirectConfigurationProperties;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import jakarta.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.function.BiConsumer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes redirects straight to the servlet response, without the {@link HttpHeaders} and
+ * {@code ResponseEntity} built for every request and the return value handling they go through.
+ * The {@code Cache-Control} of links that outlive the maximum cache age, the common case, is built
+ * once and the {@code Expires} date is formatted at most once per second.
+ *
+ * <p>Every redirect carries a strong {@code ETag} derived from the original URL, so a cache that
+ * revalidates it with {@code If-None-Match} is answered with a 304 and no {@code Location}.
+ */
+@Component
+public class RedirectResponseWriter {
+
+  private static final DateTimeFormatter HTTP_DATE =
+      DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+          .withZone(ZoneOffset.UTC);
+
+  private final int status;
+  private final long maxCacheAgeSeconds;
+  private final String maxCacheControl;
+  private final Clock clock;
+
+  private volatile FormattedDate expires = new FormattedDate(Long.MIN_VALUE, "");
+
+  public RedirectResponseWriter(
+      RedirectConfigurationProperties redirectConfigurationProperties, Clock clock) {
+    this.status = redirectConfigurationProperties.status().httpStatus().value();
+    this.maxCacheAgeSeconds =
+        Math.max(0, redirectConfigurationProperties.maxCacheAge().toSeconds());
+    this.maxCacheControl = cacheControl(maxCacheAgeSeconds);
+    this.clock = clock;
+  }
+
+  /**
+   * Writes the redirect to the original URL of the given entry, cacheable until the entry expires
+   * or the maximum cache age has passed, whichever comes first. The response has no body, so it
+   * answers HEAD requests as well.
+   *
+   * @param response the response to write to
+   * @param urlEntry the entry to redirect to
+   * @param ifNoneMatch the {@code If-None-Match} header of the request, if any
+   */
+  public void writeRedirect(HttpServletResponse response, UrlEntry urlEntry, String ifNoneMatch) {
+    response.setStatus(writeRedirect(urlEntry, ifNoneMatch, response::setHeader));
+  }
+
+  /**
+   * Writes the headers of the redirect to the original URL of the given entry with the given
+   * setter, for web stacks other than the servlet one.
+   *
+   * @param urlEntry the entry to redirect to
+   * @param ifNoneMatch the {@code If-None-Match} header of the request, if any
+   * @param headers sets a header of the response
+   * @return the status of the response
+   */
+  public int writeRedirect(
+      UrlEntry urlEntry, String ifNoneMatch, BiConsumer<String, String> headers) {
+    long nowMillis = clock.millis();
+    long maxAge = maxAgeSeconds(urlEntry, nowMillis);
+    String etag = etag(urlEntry.originalUrl());
+    headers.accept(HttpHeaders.ETAG, etag);
+    headers.accept(HttpHeaders.CACHE_CONTROL,
+        maxAge == maxCacheAgeSeconds ? maxCacheControl : cacheControl(maxAge));
+    headers.accept(HttpHeaders.EXPIRES, httpDate(nowMillis / 1000 + maxAge));
+    if (matches(ifNoneMatch, etag)) {
+      return HttpStatus.NOT_MODIFIED.value();
+    }
+    headers.accept(HttpHeaders.LOCATION, urlEntry.originalUrl());
+    return status;
+  }
+
+  private long maxAgeSeconds(UrlEntry urlEntry, long nowMillis) {
+    if (urlEntry.expiresAt() == null) {
+      return maxCacheAgeSeconds;
+    }
+    long secondsLeft = Math.max(0, (urlEntry.expiresAt().toEpochMilli() - nowMillis) / 1000);
+    return Math.min(maxCacheAgeSeconds, secondsLeft);
+  }
+
+  private String httpDate(long epochSecond) {
+    FormattedDate formatted = expires;
+    if (formatted.epochSecond() != epochSecond) {
+      formatted = new FormattedDate(epochSecond,
+          HTTP_DATE.format(Instant.ofEpochSecond(epochSecond)));
+      expires = formatted;
+    }
+    return formatted.value();
+  }
+
+  private static String cacheControl(long maxAgeSeconds) {
+    return maxAgeSeconds == 0 ? "no-cache" : "public, max-age=" + maxAgeSeconds;
+  }
+
+  private static String etag(String originalUrl) {
+    return '"' + Hashing.farmHashFingerprint64()
+        .hashString(originalUrl, StandardCharsets.UTF_8)
+        .toString() + '"';
+  }
+
+  /**
+   * Weak comparison, as required for {@code If-None-Match}, against every tag of the header.
+   */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private record FormattedDate(long epochSecond, String value) {
+
+  }
+}
@@ -1,43 +1,64 @@
 package com.truthful.pinokio.controller;
 
+import com.soumakis.control.Either;
+import com.soumakis.control.Failure;
+import com.soumakis.control.Success;
+import com.truthful.pinokio.config.model.DeadlineConfigurationProperties;
+import com.truthful.pinokio.config.model.ResilienceConfigurationProperties;
+import com.truthful.pinokio.controller.dto.ClickStatsDto;
 import com.truthful.pinokio.controller.dto.ErrorDto;
 import com.truthful.pinokio.controller.dto.ErrorType;
 import com.truthful.pinokio.controller.dto.ShortenedUrlRequestDto;
 import com.truthful.pinokio.controller.dto.ShortenedUrlResponseDto;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.repository.resilience.StorageUnavailableException;
+import com.truthful.pinokio.service.ClickCounter;
 import com.truthful.pinokio.service.UrlShortenerService;
 import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RequestLogger;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/url")
 @RequiredArgsConstructor
 @Slf4j
 public class UrlShortenerController {
 
   private final UrlShortenerService urlShortenerService;
+  private final ResilienceConfigurationProperties resilienceConfigurationProperties;
+  private final RequestLogger requestLogger;
+  private final RedirectResponseWriter redirectResponseWriter;
+  private final ClickCounter clickCounter;
+  private final DeadlineConfigurationProperties deadlineConfigurationProperties;
 
   @PostMapping
-  @Async
   public CompletableFuture<ResponseEntity<?>> shortenUrl(
       @RequestBody @Valid ShortenedUrlRequestDto shortenedUrlRequestDto) {
     return urlShortenerService
-        .shortenUrl(shortenedUrlRequestDto.longUrl())
+        .shortenUrl(shortenedUrlRequestDto.longUrl(),
+            deadline(deadlineConfigurationProperties.shorten()))
         .fold(
-            urlShortenerError -> handleShortenUrlFailure(),
+            this::handleShortenUrlFailure,
             shortUrl -> new ResponseEntity<>(new ShortenedUrlResponseDto(shortUrl,
                 shortenedUrlRequestDto.longUrl()), HttpStatus.OK))
         .toCompletableFuture()
@@ -49,53 +70,149 @@ public class UrlShortenerController {
         });
   }
 
+  /**
+   * Redirects to the original URL of the given short URL. The redirect, or the error, is written
+   * straight to the response once the lookup completes, without the {@code ResponseEntity} and the
+   * return value handling it goes through, and the request thread is not held meanwhile.
+   */
   @GetMapping("/{shortUrl}")
-  @Async
-  public CompletableFuture<ResponseEntity<?>> redirectToOriginalUrl(
-      @PathVariable String shortUrl) {
-    return urlShortenerService.getOriginalUrl(shortUrl)
-        .fold(UrlShortenerController::handleRedirectOriginalUrlError,
-            UrlShortenerController::originalUrlSuccessfulResponse)
+  public CompletableFuture<Void> redirectToOriginalUrl(
+      @PathVariable String shortUrl,
+      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      HttpServletResponse response) {
+    return urlShortenerService
+        .getUrlEntry(shortUrl, deadline(deadlineConfigurationProperties.redirect()))
+        .toCompletableFuture()
+        .thenAccept(urlEntry -> {
+          writeRedirect(response, urlEntry, ifNoneMatch);
+          if (urlEntry.isRight()) {
+            clickCounter.recordClick(urlEntry.getRight().hash());
+          }
+        })
+        .exceptionally(ex -> writeInternalServerError(response, shortUrl, ex));
+  }
+
+  /**
+   * Returns the click count of the given short URL, counting the redirects served until now.
+   */
+  @GetMapping("/{shortUrl}/stats")
+  public CompletableFuture<ResponseEntity<?>> getClickStats(@PathVariable String shortUrl) {
+    return urlShortenerService
+        .getClicks(shortUrl, deadline(deadlineConfigurationProperties.stats()))
+        .fold(
+            this::handleRedirectOriginalUrlError,
+            clicks -> ResponseEntity.ok(new ClickStatsDto(shortUrl, clicks)))
+        .toCompletableFuture()
         .exceptionally(ex -> {
-          log.error("Failed to redirect to original URL", ex);
+          requestLogger.logError(log, "stats", shortUrl, ex);
           return ResponseEntity.internalServerError()
               .body(new ErrorDto("Internal Server Error", ErrorType.GENERIC_ERROR));
         });
   }
 
+  /**
+   * Answers a HEAD request with the status and headers of the redirect, or of the error, and no
+   * body at all.
+   */
+  @RequestMapping(path = "/{shortUrl}", method = RequestMethod.HEAD)
+  public CompletableFuture<Void> headOriginalUrl(
+      @PathVariable String shortUrl,
+      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      HttpServletResponse response) {
+    return urlShortenerService
+        .getUrlEntry(shortUrl, deadline(deadlineConfigurationProperties.redirect()))
+        .toCompletableFuture()
+        .thenAccept(urlEntry -> writeRedirect(response, urlEntry, ifNoneMatch))
+        .exceptionally(ex -> writeInternalServerError(response, shortUrl, ex));
+  }
+
   @DeleteMapping("/{shortUrl}")
-  @Async
   public CompletableFuture<ResponseEntity<Void>> deleteUrl(@PathVariable String shortUrl) {
     return urlShortenerService
-        .deleteUrl(shortUrl)
+        .deleteUrl(shortUrl, deadline(deadlineConfigurationProperties.delete()))
         .map(ResponseEntity::ok)
         .toCompletableFuture()
-        .thenApply(
-            responseEntityTry -> responseEntityTry.getOrElse(
-                () -> ResponseEntity.internalServerError().build()));
+        .thenApply(responseEntityTry -> switch (responseEntityTry) {
+          case Success<ResponseEntity<Void>> success -> success.get();
+          case Failure<ResponseEntity<Void>> failure ->
+              failure.getCause() instanceof StorageUnavailableException
+                  ? serviceUnavailable().build()
+                  : ResponseEntity.internalServerError().build();
+        });
   }
 
-  private static ResponseEntity<?> originalUrlSuccessfulResponse(String originalUrl) {
-    HttpHeaders headers = new HttpHeaders();
-    headers.add("Location", originalUrl);
-    return new ResponseEntity<>(headers,
-        HttpStatus.MOVED_PERMANENTLY);
+  /**
+   * Writes the redirect to the given entry, or the status of the error with no body, the same for
+   * GET and HEAD requests.
+   */
+  private void writeRedirect(
+      HttpServletResponse response, Either<UrlShortenerError, UrlEntry> urlEntry,
+      String ifNoneMatch) {
+    if (urlEntry.isRight()) {
+      redirectResponseWriter.writeRedirect(response, urlEntry.getRight(), ifNoneMatch);
+    } else if (urlEntry.getLeft() == UrlShortenerError.HASH_NOT_FOUND) {
+      response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+    } else if (isUnavailable(urlEntry.getLeft())) {
+      response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds()));
+    } else {
+      response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
   }
 
-  private static ResponseEntity<? extends Record> handleRedirectOriginalUrlError(
+  private Void writeInternalServerError(
+      HttpServletResponse response, String shortUrl, Throwable throwable) {
+    requestLogger.logError(log, "redirect", shortUrl, throwable);
+    response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    return null;
+  }
+
+  private ResponseEntity<?> handleRedirectOriginalUrlError(
       UrlShortenerError urlShortenerError) {
     ResponseEntity<? extends Record> responseEntity;
     if (urlShortenerError == UrlShortenerError.HASH_NOT_FOUND) {
       responseEntity = ResponseEntity.status(HttpStatus.NOT_FOUND)
           .body(new ErrorDto("Hash not found", ErrorType.HASH_NOT_FOUND));
+    } else if (isUnavailable(urlShortenerError)) {
+      responseEntity = serviceUnavailableResponse();
     } else {
       responseEntity = ResponseEntity.internalServerError().build();
     }
     return responseEntity;
   }
 
-  private static ResponseEntity<?> handleShortenUrlFailure() {
+  private ResponseEntity<?> handleShortenUrlFailure(UrlShortenerError urlShortenerError) {
+    if (isUnavailable(urlShortenerError)) {
+      return serviceUnavailableResponse();
+    }
     return new ResponseEntity<>(new ErrorDto("Failed to shorten URL",
         ErrorType.GENERIC_ERROR), HttpStatus.INTERNAL_SERVER_ERROR);
   }
+
+  /**
+   * The storage is shedding load, its circuit breaker is open or it kept failing with retryable
+   * errors. The client is asked to come back later rather than retry straight away.
+   */
+  private static boolean isUnavailable(UrlShortenerError urlShortenerError) {
+    return urlShortenerError == UrlShortenerError.SERVICE_UNAVAILABLE
+        || urlShortenerError == UrlShortenerError.TRANSIENT_ERROR;
+  }
+
+  private ResponseEntity<ErrorDto> serviceUnavailableResponse() {
+    return serviceUnavailable()
+        .body(new ErrorDto("Service unavailable", ErrorType.SERVICE_UNAVAILABLE));
+  }
+
+  private ResponseEntity.BodyBuilder serviceUnavailable() {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds()));
+  }
+
+  private Deadline deadline(Duration budget) {
+    return deadlineConfigurationProperties.enabled() ? Deadline.after(budget) : Deadline.none();
+  }
+
+  private long retryAfterSeconds() {
+    return Math.max(1, resilienceConfigurationProperties.retryAfter().toSeconds());
+  }
 }
@@ -0,0 +1,150 @@
+package com.truthful.pinokio.controller;
+
+import com.truthful.pinokio.config.model.DeadlineConfigurationProperties;
+import com.truthful.pinokio.config.model.ResilienceConfigurationProperties;
+import com.truthful.pinokio.controller.dto.ErrorDto;
+import com.truthful.pinokio.controller.dto.ErrorType;
+import com.truthful.pinokio.controller.dto.ShortenedUrlRequestDto;
+import com.truthful.pinokio.controller.dto.ShortenedUrlResponseDto;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.ClickCounter;
+import com.truthful.pinokio.service.UrlShortenerService;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RequestLogger;
+import jakarta.validation.Validator;
+import java.time.Duration;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Functional counterpart of {@link UrlShortenerController} for the reactive web stack, routed by
+ * {@code ReactiveWebConfig}. The {@code EitherT} results of {@link UrlShortenerService} are
+ * adapted to {@link Mono}s on the Netty event loop, without a thread handoff or the argument
+ * resolution of annotated controllers.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+@Slf4j
+public class UrlShortenerHandler {
+
+  private final UrlShortenerService urlShortenerService;
+  private final ResilienceConfigurationProperties resilienceConfigurationProperties;
+  private final RedirectResponseWriter redirectResponseWriter;
+  private final RequestLogger requestLogger;
+  private final Validator validator;
+  private final ClickCounter clickCounter;
+  private final DeadlineConfigurationProperties deadlineConfigurationProperties;
+
+  public Mono<ServerResponse> shortenUrl(ServerRequest request) {
+    return request.bodyToMono(ShortenedUrlRequestDto.class)
+        .filter(shortenedUrlRequestDto -> validator.validate(shortenedUrlRequestDto).isEmpty())
+        .flatMap(shortenedUrlRequestDto -> Mono.fromFuture(urlShortenerService
+                .shortenUrl(shortenedUrlRequestDto.longUrl(),
+                    deadline(deadlineConfigurationProperties.shorten()))
+                .toCompletableFuture())
+            .flatMap(shortUrl -> shortUrl.isRight()
+                ? ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(new ShortenedUrlResponseDto(shortUrl.getRight(),
+                        shortenedUrlRequestDto.longUrl()))
+                : shortenUrlError(shortUrl.getLeft())))
+        .switchIfEmpty(Mono.defer(UrlShortenerHandler::invalidRequest))
+        .onErrorResume(ServerWebInputException.class, e -> invalidRequest())
+        .onErrorResume(e -> {
+          log.error("Failed to shorten URL", e);
+          return error(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error",
+              ErrorType.GENERIC_ERROR);
+        });
+  }
+
+  /**
+   * Redirects to the original URL of the hash in the path. HEAD requests are answered the same
+   * way, the stack leaves the body out, and are not counted as clicks.
+   */
+  public Mono<ServerResponse> redirectToOriginalUrl(ServerRequest request) {
+    String hash = request.pathVariable("hash");
+    String ifNoneMatch = request.headers().firstHeader(HttpHeaders.IF_NONE_MATCH);
+    boolean click = request.method() == HttpMethod.GET;
+    return Mono.fromFuture(urlShortenerService
+            .getUrlEntry(hash, deadline(deadlineConfigurationProperties.redirect()))
+            .toCompletableFuture())
+        .flatMap(urlEntry -> urlEntry.isRight()
+            ? redirect(urlEntry.getRight(), ifNoneMatch, click)
+            : redirectError(urlEntry.getLeft()))
+        .onErrorResume(e -> {
+          requestLogger.logError(log, "redirect", hash, e);
+          return error(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error",
+              ErrorType.GENERIC_ERROR);
+        });
+  }
+
+  private Mono<ServerResponse> redirect(UrlEntry urlEntry, String ifNoneMatch, boolean click) {
+    HttpHeaders headers = new HttpHeaders();
+    int status = redirectResponseWriter.writeRedirect(urlEntry, ifNoneMatch, headers::set);
+    if (click) {
+      clickCounter.recordClick(urlEntry.hash());
+    }
+    return ServerResponse.status(status)
+        .headers(responseHeaders -> responseHeaders.addAll(headers))
+        .build();
+  }
+
+  private Mono<ServerResponse> redirectError(UrlShortenerError urlShortenerError) {
+    if (urlShortenerError == UrlShortenerError.HASH_NOT_FOUND) {
+      return error(HttpStatus.NOT_FOUND, "Hash not found", ErrorType.HASH_NOT_FOUND);
+    }
+    if (isUnavailable(urlShortenerError)) {
+      return serviceUnavailable();
+    }
+    return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+  }
+
+  private Mono<ServerResponse> shortenUrlError(UrlShortenerError urlShortenerError) {
+    if (isUnavailable(urlShortenerError)) {
+      return serviceUnavailable();
+    }
+    return error(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to shorten URL",
+        ErrorType.GENERIC_ERROR);
+  }
+
+  private static boolean isUnavailable(UrlShortenerError urlShortenerError) {
+    return urlShortenerError == UrlShortenerError.SERVICE_UNAVAILABLE
+        || urlShortenerError == UrlShortenerError.TRANSIENT_ERROR;
+  }
+
+  private Deadline deadline(Duration budget) {
+    return deadlineConfigurationProperties.enabled() ? Deadline.after(budget) : Deadline.none();
+  }
+
+  private Mono<ServerResponse> serviceUnavailable() {
+    long retryAfterSeconds =
+        Math.max(1, resilienceConfigurationProperties.retryAfter().toSeconds());
+    return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new ErrorDto("Service unavailable", ErrorType.SERVICE_UNAVAILABLE));
+  }
+
+  private static Mono<ServerResponse> invalidRequest() {
+    return error(HttpStatus.BAD_REQUEST, "Invalid request", ErrorType.INVALID_REQUEST);
+  }
+
+  private static Mono<ServerResponse> error(
+      HttpStatus status, String message, ErrorType errorType) {
+    return ServerResponse.status(status)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new ErrorDto(message, errorType));
+  }
+}
@@ -0,0 +1,6 @@
+package com.truthful.pinokio.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchResolveResultDto(String shortUrl, String originalUrl, ErrorDto error) {}
@@ -0,0 +1,3 @@
+package com.truthful.pinokio.controller.dto;
+
+public record ClickStatsDto(String hash, long clicks) {}
@@ -3,5 +3,7 @@ package com.truthful.pinokio.controller.dto;
 public enum ErrorType {
   HASH_ALREADY_EXISTS,
   HASH_NOT_FOUND,
+  INVALID_REQUEST,
+  SERVICE_UNAVAILABLE,
   GENERIC_ERROR
 }
@@ -0,0 +1,5 @@
+package com.truthful.pinokio.controller.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+public record ResolveUrlRequestDto(@NotEmpty String shortUrl) {}
@@ -0,0 +1,84 @@
+package com.truthful.pinokio.repository;
+
+import static com.truthful.pinokio.util.ConcurrencyUtil.supplyInterruptibly;
+
+import com.soumakis.control.EitherT;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.ConditionalOnStorageType;
+import com.truthful.pinokio.config.model.StorageType;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * {@link UrlStore} running the blocking {@link DynamoDBRepository} calls on virtual threads.
+ * Cancelling the futures returned here interrupts the virtual thread, which aborts the blocking
+ * HTTP request.
+ */
+@Repository
+@ConditionalOnProperty(
+    prefix = "application.dynamodb",
+    name = "client-mode",
+    havingValue = "sync",
+    matchIfMissing = true)
+@ConditionalOnStorageType(StorageType.DYNAMODB)
+@RequiredArgsConstructor
+public class BlockingDynamoDBUrlStore implements UrlStore {
+
+  private final DynamoDBRepository dynamoDBRepository;
+  private final Executor virtualTaskExecutor;
+
+  @Override
+  public EitherT<UrlShortenerError, String> save(
+      String hash,
+      String originalUrl,
+      LocalDateTime createdAt,
+      LocalDateTime expiresAt,
+      Deadline deadline) {
+    return EitherT.fromFuture(
+        supplyInterruptibly(
+            () -> dynamoDBRepository.save(hash, originalUrl, createdAt, expiresAt, deadline),
+            virtualTaskExecutor));
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash, Deadline deadline) {
+    return EitherT.fromFuture(
+        supplyInterruptibly(
+            () -> dynamoDBRepository.getUrlEntry(hash, deadline), virtualTaskExecutor));
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, Map<String, UrlEntry>> getUrlEntries(
+      Collection<String> hashes) {
+    return EitherT.fromFuture(
+        supplyInterruptibly(
+            () -> dynamoDBRepository.getUrlEntries(hashes), virtualTaskExecutor));
+  }
+
+  @Override
+  public TryT<Void> delete(String hash, Deadline deadline) {
+    return TryT.fromFuture(
+        supplyInterruptibly(
+            () -> dynamoDBRepository.delete(hash, deadline), virtualTaskExecutor));
+  }
+
+  @Override
+  public Stream<String> scanHashes() {
+    return dynamoDBRepository.scanHashes();
+  }
+
+  @Override
+  public Stream<UrlEntry> scanCreatedSince(Instant since, int segment, int totalSegments) {
+    return dynamoDBRepository.scanCreatedSince(since, segment, totalSegments);
+  }
+}
@@ -0,0 +1,29 @@
+package com.truthful.pinokio.repository;
+
+/**
+ * Durable click counts of the stored hashes. Both operations block, they are meant for the
+ * background flush of the counts recorded in memory and for the occasional stats lookup.
+ */
+public interface ClickCountStore {
+
+  /**
+   * Atomically adds the given amount of clicks to the count of {@code hash}. Clicks of a hash that
+   * is no longer stored are dropped rather than creating a count without a URL.
+   *
+   * <p>Adding the same clicks again with the same token, after a failure that may have happened
+   * once they were added, adds them only once.
+   *
+   * @param hash the hash that was clicked
+   * @param clicks the amount of clicks to add
+   * @param flushToken identifies this addition across its retries
+   */
+  void addClicks(String hash, long clicks, String flushToken);
+
+  /**
+   * Returns the stored click count of the given hash.
+   *
+   * @param hash the hash to read the count of
+   * @return the stored count, zero if the hash was never clicked
+   */
+  long getClicks(String hash);
+}
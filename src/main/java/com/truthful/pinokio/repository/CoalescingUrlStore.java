@@ -0,0 +1,292 @@
+package com.truthful.pinokio.repository;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.ConditionalOnStorageType;
+import com.truthful.pinokio.config.model.StorageType;
+import com.truthful.pinokio.config.model.WriteBatchingConfigurationProperties;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RequestLogger;
+import com.truthful.pinokio.util.RetryPolicies;
+import com.truthful.pinokio.util.RetryUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+/**
+ * {@link UrlStore} that coalesces concurrent saves into a single {@code TransactWriteItems}
+ * request. A batch is written once it reaches the configured size or the oldest save has waited
+ * for the configured delay. Every put keeps the {@code attribute_not_exists(UrlHash)} condition;
+ * when the transaction is cancelled, the saves whose condition failed are completed with
+ * {@link UrlShortenerError#HASH_ALREADY_EXISTS}, or with their hash when the existing item stores
+ * the same URL, and the rest of the batch is resubmitted after the backoff of the save retry
+ * policy. Reads and deletes are passed through to the underlying store.
+ *
+ * <p>Saves cancelled or past their deadline are left out of every attempt, so a batch waiting for
+ * its backoff does not write them for a client that has stopped waiting, and the transaction is
+ * bounded by the latest deadline of the saves it writes.
+ */
+@Primary
+@Repository
+@ConditionalOnProperty(
+    prefix = "application.write-batching",
+    name = "enabled",
+    havingValue = "true")
+@ConditionalOnStorageType(StorageType.DYNAMODB)
+@Slf4j
+public class CoalescingUrlStore implements UrlStore {
+
+  private static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
+
+  private final UrlStore delegate;
+  private final DynamoDBRequestFactory dynamoDBRequestFactory;
+  private final DynamoDbClient dynamoDbClient;
+  private final WriteBatchingConfigurationProperties writeBatchingConfigurationProperties;
+  private final RetryPolicies retryPolicies;
+  private final Executor virtualTaskExecutor;
+  private final RequestLogger requestLogger;
+  private final DistributionSummary batchSizes;
+  private final BlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+
+  private volatile Thread coalescer;
+
+  public CoalescingUrlStore(
+      UrlStore delegate,
+      DynamoDBRequestFactory dynamoDBRequestFactory,
+      DynamoDbClient dynamoDbClient,
+      WriteBatchingConfigurationProperties writeBatchingConfigurationProperties,
+      RetryPolicies retryPolicies,
+      Executor virtualTaskExecutor,
+      RequestLogger requestLogger,
+      MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.dynamoDBRequestFactory = dynamoDBRequestFactory;
+    this.dynamoDbClient = dynamoDbClient;
+    this.writeBatchingConfigurationProperties = writeBatchingConfigurationProperties;
+    this.retryPolicies = retryPolicies;
+    this.virtualTaskExecutor = virtualTaskExecutor;
+    this.requestLogger = requestLogger;
+    this.batchSizes = DistributionSummary.builder("url.write.batch.size")
+        .description("Number of saves written by a single transaction")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    coalescer = Thread.ofVirtual().name("write-coalescer").start(this::coalesce);
+  }
+
+  @PreDestroy
+  public void stop() {
+    coalescer.interrupt();
+    List<PendingWrite> abandoned = new ArrayList<>();
+    pendingWrites.drainTo(abandoned);
+    abandoned.forEach(pendingWrite -> pendingWrite.fail(UrlShortenerError.GENERIC_ERROR));
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, String> save(
+      String hash,
+      String originalUrl,
+      LocalDateTime createdAt,
+      LocalDateTime expiresAt,
+      Deadline deadline) {
+    PendingWrite pendingWrite = new PendingWrite(hash,
+        dynamoDBRequestFactory.createItem(hash, originalUrl, createdAt, expiresAt),
+        deadline, new CompletableFuture<>());
+    pendingWrites.add(pendingWrite);
+    return EitherT.fromFuture(pendingWrite.result());
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash, Deadline deadline) {
+    return delegate.getUrlEntry(hash, deadline);
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, Map<String, UrlEntry>> getUrlEntries(
+      Collection<String> hashes) {
+    return delegate.getUrlEntries(hashes);
+  }
+
+  @Override
+  public TryT<Void> delete(String hash, Deadline deadline) {
+    return delegate.delete(hash, deadline);
+  }
+
+  @Override
+  public Stream<String> scanHashes() {
+    return delegate.scanHashes();
+  }
+
+  @Override
+  public Stream<UrlEntry> scanCreatedSince(Instant since, int segment, int totalSegments) {
+    return delegate.scanCreatedSince(since, segment, totalSegments);
+  }
+
+  private void coalesce() {
+    int maxBatchSize = writeBatchingConfigurationProperties.maxBatchSize();
+    long maxDelayNanos = writeBatchingConfigurationProperties.maxDelay().toNanos();
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        batch.add(pendingWrites.take());
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+          PendingWrite next =
+              pendingWrites.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        virtualTaskExecutor.execute(() -> writeBatch(batch));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeBatch(List<PendingWrite> batch) {
+    // A transaction cannot touch the same item twice, so duplicates wait for the next batch
+    List<PendingWrite> remaining = new ArrayList<>(batch.size());
+    Set<String> hashes = new HashSet<>();
+    for (PendingWrite pendingWrite : batch) {
+      if (hashes.add(pendingWrite.hash())) {
+        remaining.add(pendingWrite);
+      } else {
+        pendingWrites.add(pendingWrite);
+      }
+    }
+    batchSizes.record(remaining.size());
+
+    int maxAttempts = writeBatchingConfigurationProperties.maxAttempts();
+    for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+      remaining = dropAbandoned(remaining);
+      if (remaining.isEmpty()) {
+        return;
+      }
+      long startNanos = System.nanoTime();
+      try {
+        dynamoDbClient.transactWriteItems(constructTransactWriteItemsRequest(remaining));
+        requestLogger.logRequest(log, "dynamodb.save.batch", null, startNanos, "saved");
+        remaining.forEach(PendingWrite::succeed);
+        return;
+      } catch (TransactionCanceledException e) {
+        requestLogger.logRequest(log, "dynamodb.save.batch", null, startNanos, "cancelled");
+        remaining = handleCancellation(remaining, e.cancellationReasons());
+      } catch (RuntimeException e) {
+        requestLogger.logError(log, "dynamodb.save.batch", null, e);
+        UrlShortenerError error = RetryUtil.toStorageError(e);
+        remaining.forEach(pendingWrite -> pendingWrite.fail(error));
+        return;
+      }
+      if (!remaining.isEmpty() && attempt < maxAttempts
+          && !RetryUtil.awaitRetry(retryPolicies.save(), attempt)) {
+        break;
+      }
+    }
+    // Conflicting transactions kept cancelling the batch, a later attempt may still succeed
+    remaining.forEach(pendingWrite -> pendingWrite.fail(UrlShortenerError.TRANSIENT_ERROR));
+  }
+
+  private List<PendingWrite> handleCancellation(
+      List<PendingWrite> batch, List<CancellationReason> cancellationReasons) {
+    List<PendingWrite> resubmit = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      PendingWrite pendingWrite = batch.get(i);
+      CancellationReason reason =
+          i < cancellationReasons.size() ? cancellationReasons.get(i) : null;
+      if (reason != null && CONDITIONAL_CHECK_FAILED.equals(reason.code())) {
+        if (dynamoDBRequestFactory.isRepeatedSave(reason.item(), pendingWrite.item())) {
+          pendingWrite.succeed();
+        } else {
+          pendingWrite.fail(UrlShortenerError.HASH_ALREADY_EXISTS);
+        }
+      } else {
+        resubmit.add(pendingWrite);
+      }
+    }
+    return resubmit;
+  }
+
+  /**
+   * Leaves out the saves no client waits for anymore. The ones past their deadline are failed, the
+   * cancelled ones are already complete.
+   */
+  private static List<PendingWrite> dropAbandoned(List<PendingWrite> batch) {
+    List<PendingWrite> awaited = new ArrayList<>(batch.size());
+    for (PendingWrite pendingWrite : batch) {
+      if (pendingWrite.deadline().isExpired()) {
+        pendingWrite.fail(UrlShortenerError.TRANSIENT_ERROR);
+      } else if (!pendingWrite.result().isDone()) {
+        awaited.add(pendingWrite);
+      }
+    }
+    return awaited;
+  }
+
+  private static Deadline latestDeadline(List<PendingWrite> batch) {
+    Deadline latest = batch.getFirst().deadline();
+    for (PendingWrite pendingWrite : batch) {
+      if (pendingWrite.deadline().remainingNanos() > latest.remainingNanos()) {
+        latest = pendingWrite.deadline();
+      }
+    }
+    return latest;
+  }
+
+  private TransactWriteItemsRequest constructTransactWriteItemsRequest(List<PendingWrite> batch) {
+    return TransactWriteItemsRequest.builder()
+        .overrideConfiguration(
+            dynamoDBRequestFactory.overrideConfiguration(latestDeadline(batch)))
+        .transactItems(batch.stream()
+            .map(pendingWrite -> dynamoDBRequestFactory.constructTransactPut(pendingWrite.item()))
+            .toList())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .build();
+  }
+
+  private record PendingWrite(
+      String hash,
+      Map<String, AttributeValue> item,
+      Deadline deadline,
+      CompletableFuture<Either<UrlShortenerError, String>> result) {
+
+    void succeed() {
+      result.complete(Either.right(hash));
+    }
+
+    void fail(UrlShortenerError error) {
+      result.complete(Either.left(error));
+    }
+  }
+}
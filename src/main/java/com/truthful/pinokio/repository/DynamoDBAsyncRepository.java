@@ -0,0 +1,209 @@
+package com.truthful.pinokio.repository;
+
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.MAX_BATCH_GET_ATTEMPTS;
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.MAX_BATCH_GET_KEYS;
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.URL_HASH;
+import static com.truthful.pinokio.util.ConcurrencyUtil.cancellingSource;
+
+import com.google.common.collect.Lists;
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.soumakis.control.Try;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.ConditionalOnStorageType;
+import com.truthful.pinokio.config.model.StorageType;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RequestLogger;
+import com.truthful.pinokio.util.RetryUtil;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+/**
+ * {@link UrlStore} built on the {@link DynamoDbAsyncClient}. The futures returned by the SDK are
+ * composed directly, so no thread is parked while a request is in flight, and cancelling the
+ * futures returned here cancels the ones of the SDK, which aborts the HTTP request.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "application.dynamodb", name = "client-mode", havingValue = "async")
+@ConditionalOnStorageType(StorageType.DYNAMODB)
+@RequiredArgsConstructor
+@Slf4j
+public class DynamoDBAsyncRepository implements UrlStore {
+
+  private final DynamoDBRequestFactory dynamoDBRequestFactory;
+  private final DynamoDbAsyncClient dynamoDbAsyncClient;
+  private final RequestLogger requestLogger;
+
+  @Override
+  public EitherT<UrlShortenerError, String> save(
+      String hash,
+      String originalUrl,
+      LocalDateTime createdAt,
+      LocalDateTime expiresAt,
+      Deadline deadline) {
+    var item = dynamoDBRequestFactory.createItem(hash, originalUrl, createdAt, expiresAt);
+    var putItemRequest = dynamoDBRequestFactory.constructPutItemRequest(item, deadline);
+    long startNanos = System.nanoTime();
+
+    var putItem = dynamoDbAsyncClient.putItem(putItemRequest);
+    return EitherT.fromFuture(cancellingSource(
+        putItem.handle((response, throwable) -> {
+          if (throwable != null) {
+            return handleSaveError(unwrap(throwable), hash, item, startNanos);
+          }
+          requestLogger.logRequest(log, "dynamodb.save", hash, startNanos, "saved");
+          return Either.<UrlShortenerError, String>right(hash);
+        }),
+        putItem));
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash, Deadline deadline) {
+    var getItemRequest = dynamoDBRequestFactory.createGetItemRequest(hash, deadline);
+    long startNanos = System.nanoTime();
+
+    var getItem = dynamoDbAsyncClient.getItem(getItemRequest);
+    return EitherT.fromFuture(cancellingSource(
+        getItem.handle((response, throwable) -> {
+          if (throwable != null) {
+            requestLogger.logError(log, "dynamodb.get", hash, unwrap(throwable));
+            return Either.<UrlShortenerError, UrlEntry>left(
+                RetryUtil.toStorageError(unwrap(throwable)));
+          }
+          Optional<UrlEntry> maybeUrlEntry = dynamoDBRequestFactory.toUrlEntry(hash, response);
+          if (maybeUrlEntry.isEmpty()) {
+            requestLogger.logRequest(log, "dynamodb.get", hash, startNanos, "not_found");
+            return Either.<UrlShortenerError, UrlEntry>left(UrlShortenerError.HASH_NOT_FOUND);
+          }
+          requestLogger.logRequest(log, "dynamodb.get", hash, startNanos, "found");
+          return Either.<UrlShortenerError, UrlEntry>right(maybeUrlEntry.get());
+        }),
+        getItem));
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, Map<String, UrlEntry>> getUrlEntries(
+      Collection<String> hashes) {
+    Map<String, UrlEntry> urlEntries = new ConcurrentHashMap<>();
+    CompletableFuture<?>[] chunks = Lists.partition(List.copyOf(hashes), MAX_BATCH_GET_KEYS)
+        .stream()
+        .map(chunk -> batchGetUrlEntries(
+            dynamoDBRequestFactory.createBatchGetItemRequest(chunk), urlEntries, 0))
+        .toArray(CompletableFuture[]::new);
+
+    return EitherT.fromFuture(
+        CompletableFuture.allOf(chunks)
+            .handle((ignored, throwable) -> {
+              if (throwable != null) {
+                requestLogger.logError(log, "dynamodb.batch.get", null, unwrap(throwable));
+                return Either.<UrlShortenerError, Map<String, UrlEntry>>left(
+                    RetryUtil.toStorageError(unwrap(throwable)));
+              }
+              return Either.<UrlShortenerError, Map<String, UrlEntry>>right(urlEntries);
+            }));
+  }
+
+  @Override
+  public TryT<Void> delete(String hash, Deadline deadline) {
+    var deleteItemRequest = dynamoDBRequestFactory.createDeleteItemRequest(hash, deadline);
+    long startNanos = System.nanoTime();
+
+    var deleteItem = dynamoDbAsyncClient.deleteItem(deleteItemRequest);
+    return TryT.fromFuture(cancellingSource(
+        deleteItem.handle((response, throwable) -> {
+          if (throwable != null) {
+            requestLogger.logError(log, "dynamodb.delete", hash, unwrap(throwable));
+            return Try.<Void>failure(unwrap(throwable));
+          }
+          requestLogger.logRequest(log, "dynamodb.delete", hash, startNanos, "deleted");
+          return Try.<Void>success(null);
+        }),
+        deleteItem));
+  }
+
+  /**
+   * Streams every hash in the table with a strongly consistent scan. The pages are requested by
+   * the paginator of the SDK as the stream is consumed. Consuming it blocks while a page is in
+   * flight, so it is meant for background tasks and must never be consumed on an event loop.
+   */
+  @Override
+  public Stream<String> scanHashes() {
+    return Flux.from(dynamoDbAsyncClient.scanPaginator(
+            dynamoDBRequestFactory.createScanHashesRequest()).items())
+        .toStream()
+        .map(item -> item.get(URL_HASH).s());
+  }
+
+  /**
+   * Streams the items of one segment of the table created at or after the given instant. Like
+   * {@link #scanHashes()} it blocks while a page is in flight and must never be consumed on an
+   * event loop.
+   */
+  @Override
+  public Stream<UrlEntry> scanCreatedSince(Instant since, int segment, int totalSegments) {
+    return Flux.from(dynamoDbAsyncClient.scanPaginator(
+            dynamoDBRequestFactory.createCreatedSinceScanRequest(since, segment, totalSegments))
+            .items())
+        .toStream()
+        .map(dynamoDBRequestFactory::toUrlEntry);
+  }
+
+  private CompletableFuture<Void> batchGetUrlEntries(
+      BatchGetItemRequest request, Map<String, UrlEntry> urlEntries, int attempt) {
+    if (request.requestItems().isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    if (attempt >= MAX_BATCH_GET_ATTEMPTS) {
+      return CompletableFuture.failedFuture(new IllegalStateException(
+          "Unprocessed keys left after " + MAX_BATCH_GET_ATTEMPTS + " attempts"));
+    }
+    return dynamoDbAsyncClient.batchGetItem(request)
+        .thenCompose(response -> {
+          dynamoDBRequestFactory.toUrlEntries(response)
+              .forEach(urlEntry -> urlEntries.put(urlEntry.hash(), urlEntry));
+          return batchGetUrlEntries(
+              dynamoDBRequestFactory.createBatchGetItemRequest(response.unprocessedKeys()),
+              urlEntries, attempt + 1);
+        });
+  }
+
+  private static Throwable unwrap(Throwable throwable) {
+    return throwable instanceof CompletionException && throwable.getCause() != null
+        ? throwable.getCause()
+        : throwable;
+  }
+
+  private Either<UrlShortenerError, String> handleSaveError(
+      Throwable throwable, String hash, Map<String, AttributeValue> item, long startNanos) {
+    if (throwable instanceof ConditionalCheckFailedException conditionalCheckFailedException) {
+      if (dynamoDBRequestFactory.isRepeatedSave(conditionalCheckFailedException.item(), item)) {
+        requestLogger.logRequest(log, "dynamodb.save", hash, startNanos, "repeated_save");
+        return Either.right(hash);
+      }
+      requestLogger.logRequest(log, "dynamodb.save", hash, startNanos, "hash_already_exists");
+      return Either.left(UrlShortenerError.HASH_ALREADY_EXISTS);
+    } else {
+      requestLogger.logError(log, "dynamodb.save", hash, throwable);
+      return Either.left(RetryUtil.toStorageError(throwable));
+    }
+  }
+}
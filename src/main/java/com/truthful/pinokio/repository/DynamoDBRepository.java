@@ -1,127 +1,238 @@
 package com.truthful.pinokio.repository;
 
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.MAX_BATCH_GET_ATTEMPTS;
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.MAX_BATCH_GET_KEYS;
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.URL_HASH;
+
+import com.google.common.collect.Iterables;
 import com.soumakis.control.Either;
 import com.soumakis.control.Try;
-import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.config.ConditionalOnStorageType;
+import com.truthful.pinokio.config.model.StorageType;
+import com.truthful.pinokio.repository.model.UrlEntry;
 import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RequestLogger;
+import com.truthful.pinokio.util.RetryUtil;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
-import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
-import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
 @Repository
+@ConditionalOnStorageType(StorageType.DYNAMODB)
 @RequiredArgsConstructor
 @Slf4j
-public class DynamoDBRepository {
+public class DynamoDBRepository implements IdLeaseStore, ClickCountStore {
+
+  private static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
 
-  private static final String URL_HASH = "UrlHash";
-  private static final String ORIGINAL_URL = "OriginalUrl";
-  private static final String CREATED_AT = "CreatedAt";
-  private static final String EXPIRES_AT = "ExpiresAt";
-  private final DynamoDBConfigurationProperties dynamoDBConfigurationProperties;
+  private final DynamoDBRequestFactory dynamoDBRequestFactory;
   private final DynamoDbClient dynamoDbClient;
+  private final RequestLogger requestLogger;
 
   public Either<UrlShortenerError, String> save(
       String hash, String originalUrl, LocalDateTime createdAt, LocalDateTime expiresAt) {
-    Map<String, AttributeValue> item = new HashMap<>();
-    item.put(URL_HASH, createStringAttribute(hash));
-    item.put(ORIGINAL_URL, createStringAttribute(originalUrl));
-    item.put(CREATED_AT, createNumberAttribute(createdAt));
-    item.put(EXPIRES_AT, createNumberAttribute(expiresAt));
-
-    return Try.of(() -> dynamoDbClient.putItem(constructPutItemRequest(item)))
-        .peek(throwable -> log.error("Failed to save to DynamoDB with hash {}", hash, throwable),
-            success -> log.info("Saved item to DynamoDB with hash {}", hash))
-        .fold(throwable -> handleError(throwable, hash), savedHash -> Either.right(hash));
+    return save(hash, originalUrl, createdAt, expiresAt, Deadline.none());
+  }
+
+  /**
+   * Same as {@link #save(String, String, LocalDateTime, LocalDateTime)}, with the timeouts of the
+   * SDK call bounded by the given deadline.
+   */
+  public Either<UrlShortenerError, String> save(
+      String hash,
+      String originalUrl,
+      LocalDateTime createdAt,
+      LocalDateTime expiresAt,
+      Deadline deadline) {
+    Map<String, AttributeValue> item =
+        dynamoDBRequestFactory.createItem(hash, originalUrl, createdAt, expiresAt);
+    PutItemRequest putItemRequest = dynamoDBRequestFactory.constructPutItemRequest(item, deadline);
+    long startNanos = System.nanoTime();
+
+    return Try.of(() -> dynamoDbClient.putItem(putItemRequest))
+        .fold(throwable -> handleError(throwable, hash, item, startNanos), response -> {
+          requestLogger.logRequest(log, "dynamodb.save", hash, startNanos, "saved");
+          return Either.right(hash);
+        });
   }
 
-  public Either<UrlShortenerError, String> getOriginalUrl(String hash) {
-    GetItemRequest getItemRequest = createGetItemRequest(hash);
+  /**
+   * Fetches the stored item for the given hash, including its expiry.
+   *
+   * @param hash the hash to fetch
+   * @return the stored entry or {@link UrlShortenerError#HASH_NOT_FOUND} if there is none
+   */
+  public Either<UrlShortenerError, UrlEntry> getUrlEntry(String hash) {
+    return getUrlEntry(hash, Deadline.none());
+  }
+
+  /**
+   * Same as {@link #getUrlEntry(String)}, with the timeouts of the SDK call bounded by the given
+   * deadline.
+   */
+  public Either<UrlShortenerError, UrlEntry> getUrlEntry(String hash, Deadline deadline) {
+    GetItemRequest getItemRequest = dynamoDBRequestFactory.createGetItemRequest(hash, deadline);
+    long startNanos = System.nanoTime();
 
     return Try.of(() -> dynamoDbClient.getItem(getItemRequest))
-        .map(DynamoDBRepository::handleGetItemResponse)
-        .peek(maybeOriginalUrl -> {
-          if (maybeOriginalUrl.isPresent()) {
-            log.info("Found item in DynamoDB for hash {}", hash);
-          } else {
-            log.info("No item found in DynamoDB for hash {}", hash);
-          }
-        })
-        .onFailure(throwable -> log.error("Failed to get {} from DynamoDB", hash, throwable))
+        .map(response -> dynamoDBRequestFactory.toUrlEntry(hash, response))
+        .peek(maybeUrlEntry -> requestLogger.logRequest(log, "dynamodb.get", hash, startNanos,
+            maybeUrlEntry.isPresent() ? "found" : "not_found"))
+        .onFailure(throwable -> requestLogger.logError(log, "dynamodb.get", hash, throwable))
         .toEither()
-        .leftMap(throwable -> UrlShortenerError.GENERIC_ERROR)
-        .flatMap(maybeOriginalUrl -> maybeOriginalUrl
-            .map(Either::<UrlShortenerError, String>right)
+        .leftMap(RetryUtil::toStorageError)
+        .flatMap(maybeUrlEntry -> maybeUrlEntry
+            .map(Either::<UrlShortenerError, UrlEntry>right)
             .orElse(Either.left(UrlShortenerError.HASH_NOT_FOUND)));
   }
 
-  private static Optional<String> handleGetItemResponse(GetItemResponse response) {
-    if (response.hasItem()) {
-      return Optional.of(response.item().get(ORIGINAL_URL).s());
-    }
-    return Optional.empty();
+  /**
+   * Fetches the stored items for the given hashes with {@code BatchGetItem}, at most 100 keys per
+   * request. Unprocessed keys are requested again a limited amount of times.
+   *
+   * @param hashes the hashes to fetch
+   * @return the stored entries keyed by hash, leaving out the hashes that do not exist
+   */
+  public Either<UrlShortenerError, Map<String, UrlEntry>> getUrlEntries(Collection<String> hashes) {
+    return Try.of(() -> batchGetUrlEntries(hashes))
+        .onFailure(throwable -> requestLogger.logError(log, "dynamodb.batch.get", null, throwable))
+        .toEither()
+        .leftMap(RetryUtil::toStorageError);
   }
 
-  public Try<Void> delete(String hash) {
-    DeleteItemRequest deleteItemRequest = createDeleteItemRequest(hash);
+  /**
+   * Streams every hash in the table with a strongly consistent, paginated scan.
+   *
+   * @return the stored hashes
+   */
+  public Stream<String> scanHashes() {
+    return dynamoDbClient.scanPaginator(dynamoDBRequestFactory.createScanHashesRequest())
+        .items().stream()
+        .map(item -> item.get(URL_HASH).s());
+  }
 
-    return Try.of(() -> dynamoDbClient.deleteItem(deleteItemRequest))
-        .peek(s -> log.info("Deleted {} from DynamoDB", hash))
-        .onFailure(throwable -> log.error("Failed to delete {} from DynamoDB", hash, throwable))
-        .map(s -> null);
+  /**
+   * Streams the items of one segment of the table created at or after the given instant, with a
+   * paginated scan.
+   *
+   * @return the stored entries of the segment
+   */
+  public Stream<UrlEntry> scanCreatedSince(Instant since, int segment, int totalSegments) {
+    return dynamoDbClient.scanPaginator(
+            dynamoDBRequestFactory.createCreatedSinceScanRequest(since, segment, totalSegments))
+        .items().stream()
+        .map(dynamoDBRequestFactory::toUrlEntry);
   }
 
-  private GetItemRequest createGetItemRequest(String shortUrl) {
-    return GetItemRequest.builder()
-        .tableName(dynamoDBConfigurationProperties.table())
-        .key(Map.of(URL_HASH, AttributeValue.builder().s(shortUrl).build()))
-        .build();
+  /**
+   * Leases a range of ids by atomically advancing the counter item stored under
+   * {@code counterKey}.
+   *
+   * @param counterKey the key of the counter item
+   * @param size the amount of ids to lease
+   * @return the exclusive upper bound of the leased range, which starts at {@code bound - size}
+   */
+  @Override
+  public long leaseIds(String counterKey, long size) {
+    long upperBound = dynamoDBRequestFactory.toLeasedUpperBound(dynamoDbClient.updateItem(
+        dynamoDBRequestFactory.createLeaseIdsRequest(counterKey, size)));
+    log.info("Leased ids [{}, {}) from DynamoDB", upperBound - size, upperBound);
+    return upperBound;
+  }
+
+  /**
+   * Adds the given clicks to the count of the item with an atomic {@code ADD}, made idempotent by
+   * the flush token. Clicks of an item deleted in the meantime fail the condition of the update
+   * and are dropped.
+   */
+  @Override
+  public void addClicks(String hash, long clicks, String flushToken) {
+    long startNanos = System.nanoTime();
+    try {
+      dynamoDbClient.transactWriteItems(
+          dynamoDBRequestFactory.createAddClicksRequest(hash, clicks, flushToken));
+      requestLogger.logRequest(log, "dynamodb.clicks", hash, startNanos, "added");
+    } catch (TransactionCanceledException e) {
+      if (e.cancellationReasons().stream()
+          .noneMatch(reason -> CONDITIONAL_CHECK_FAILED.equals(reason.code()))) {
+        throw e;
+      }
+      requestLogger.logRequest(log, "dynamodb.clicks", hash, startNanos, "not_found");
+    }
   }
 
-  private AttributeValue createStringAttribute(String value) {
-    return AttributeValue.builder().s(value).build();
+  @Override
+  public long getClicks(String hash) {
+    return dynamoDBRequestFactory.toClicks(
+        dynamoDbClient.getItem(dynamoDBRequestFactory.createGetClicksRequest(hash)));
   }
 
-  private AttributeValue createNumberAttribute(LocalDateTime dateTime) {
-    long epochMilli = ZonedDateTime.of(dateTime, ZoneId.of("UTC")).toInstant().toEpochMilli();
-    return AttributeValue.builder().n(String.valueOf(epochMilli)).build();
+  public Try<Void> delete(String hash) {
+    return delete(hash, Deadline.none());
   }
 
-  private DeleteItemRequest createDeleteItemRequest(String shortUrl) {
-    return DeleteItemRequest.builder()
-        .tableName(dynamoDBConfigurationProperties.table())
-        .key(Map.of(URL_HASH, AttributeValue.builder().s(shortUrl).build()))
-        .build();
+  /**
+   * Same as {@link #delete(String)}, with the timeouts of the SDK call bounded by the given
+   * deadline.
+   */
+  public Try<Void> delete(String hash, Deadline deadline) {
+    DeleteItemRequest deleteItemRequest =
+        dynamoDBRequestFactory.createDeleteItemRequest(hash, deadline);
+    long startNanos = System.nanoTime();
+
+    return Try.of(() -> dynamoDbClient.deleteItem(deleteItemRequest))
+        .peek(s -> requestLogger.logRequest(log, "dynamodb.delete", hash, startNanos, "deleted"))
+        .onFailure(throwable -> requestLogger.logError(log, "dynamodb.delete", hash, throwable))
+        .map(s -> null);
   }
 
-  private PutItemRequest constructPutItemRequest(Map<String, AttributeValue> item) {
-    return PutItemRequest.builder()
-        .tableName(dynamoDBConfigurationProperties.table())
-        .conditionExpression("attribute_not_exists(" + URL_HASH + ")")
-        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
-        .item(item)
-        .build();
+  private Map<String, UrlEntry> batchGetUrlEntries(Collection<String> hashes) {
+    Map<String, UrlEntry> urlEntries = new HashMap<>();
+    for (List<String> chunk : Iterables.partition(hashes, MAX_BATCH_GET_KEYS)) {
+      BatchGetItemRequest request = dynamoDBRequestFactory.createBatchGetItemRequest(chunk);
+      for (int attempt = 0; !request.requestItems().isEmpty(); attempt++) {
+        if (attempt >= MAX_BATCH_GET_ATTEMPTS) {
+          throw new IllegalStateException(
+              "Unprocessed keys left after " + MAX_BATCH_GET_ATTEMPTS + " attempts");
+        }
+        BatchGetItemResponse response = dynamoDbClient.batchGetItem(request);
+        dynamoDBRequestFactory.toUrlEntries(response)
+            .forEach(urlEntry -> urlEntries.put(urlEntry.hash(), urlEntry));
+        request = dynamoDBRequestFactory.createBatchGetItemRequest(response.unprocessedKeys());
+      }
+    }
+    return urlEntries;
   }
 
-  private Either<UrlShortenerError, String> handleError(Throwable throwable, String hash) {
-    log.error("Failed to save to DynamoDB with hash {}", hash, throwable);
-    if (throwable instanceof ConditionalCheckFailedException) {
+  private Either<UrlShortenerError, String> handleError(
+      Throwable throwable, String hash, Map<String, AttributeValue> item, long startNanos) {
+    if (throwable instanceof ConditionalCheckFailedException conditionalCheckFailedException) {
+      if (dynamoDBRequestFactory.isRepeatedSave(conditionalCheckFailedException.item(), item)) {
+        requestLogger.logRequest(log, "dynamodb.save", hash, startNanos, "repeated_save");
+        return Either.right(hash);
+      }
+      requestLogger.logRequest(log, "dynamodb.save", hash, startNanos, "hash_already_exists");
       return Either.left(UrlShortenerError.HASH_ALREADY_EXISTS);
     } else {
-      return Either.left(UrlShortenerError.GENERIC_ERROR);
+      requestLogger.logError(log, "dynamodb.save", hash, throwable);
+      return Either.left(RetryUtil.toStorageError(throwable));
     }
   }
 }
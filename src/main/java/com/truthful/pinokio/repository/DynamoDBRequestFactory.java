@@ -0,0 +1,455 @@
+package com.truthful.pinokio.repository;
+
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.util.Deadline;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * Builds the DynamoDB requests and maps the items shared by the blocking and the asynchronous
+ * repositories. Every request asks for its consumed capacity, which is exported as a metric.
+ */
+@Component
+@RequiredArgsConstructor
+public class DynamoDBRequestFactory {
+
+  static final String URL_HASH = "UrlHash";
+  static final String ORIGINAL_URL = "OriginalUrl";
+  static final String CREATED_AT = "CreatedAt";
+  static final String EXPIRES_AT = "ExpiresAt";
+  static final String NEXT_ID = "NextId";
+  static final String CLICKS = "Clicks";
+  static final String TOTAL_SEGMENTS = "TotalSegments";
+  static final String SEGMENT_PREFIX = "Segment";
+  static final int MAX_BATCH_GET_KEYS = 100;
+  static final int MAX_BATCH_GET_ATTEMPTS = 5;
+  static final int MAX_BATCH_WRITE_ITEMS = 25;
+  static final int MAX_BATCH_WRITE_ATTEMPTS = 5;
+  // ExpiresAt used to be written in epoch millis, which no epoch seconds value reaches before 5138
+  private static final long LEGACY_EPOCH_MILLIS_THRESHOLD = 100_000_000_000L;
+  private final DynamoDBConfigurationProperties dynamoDBConfigurationProperties;
+
+  public Map<String, AttributeValue> createItem(
+      String hash, String originalUrl, LocalDateTime createdAt, LocalDateTime expiresAt) {
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put(URL_HASH, createStringAttribute(hash));
+    item.put(ORIGINAL_URL, createStringAttribute(originalUrl));
+    item.put(CREATED_AT, createNumberAttribute(createdAt));
+    item.put(EXPIRES_AT, createEpochSecondsAttribute(expiresAt));
+    return item;
+  }
+
+  public PutItemRequest constructPutItemRequest(Map<String, AttributeValue> item) {
+    return constructPutItemRequest(item, Deadline.none());
+  }
+
+  public PutItemRequest constructPutItemRequest(
+      Map<String, AttributeValue> item, Deadline deadline) {
+    return PutItemRequest.builder()
+        .overrideConfiguration(overrideConfiguration(deadline))
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .conditionExpression("attribute_not_exists(" + URL_HASH + ")")
+        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+        .item(item)
+        .build();
+  }
+
+  /**
+   * Builds a conditional put for a {@code TransactWriteItems} request, keeping the same uniqueness
+   * guarantee as {@link #constructPutItemRequest(Map)}.
+   */
+  public TransactWriteItem constructTransactPut(Map<String, AttributeValue> item) {
+    return TransactWriteItem.builder()
+        .put(Put.builder()
+            .tableName(dynamoDBConfigurationProperties.table())
+            .conditionExpression("attribute_not_exists(" + URL_HASH + ")")
+            .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+            .item(item)
+            .build())
+        .build();
+  }
+
+  /**
+   * Returns whether the stored item returned by a failed uniqueness condition already maps the
+   * hash to the URL being saved and had not expired when the new item was created. Such a save
+   * repeats an earlier one and can be answered with the existing hash.
+   *
+   * @param existingItem the {@code ALL_OLD} values of the failed put, possibly empty
+   * @param item the item that was being saved
+   */
+  public boolean isRepeatedSave(
+      Map<String, AttributeValue> existingItem, Map<String, AttributeValue> item) {
+    AttributeValue existingUrl = existingItem.get(ORIGINAL_URL);
+    if (existingUrl == null || !existingUrl.s().equals(item.get(ORIGINAL_URL).s())) {
+      return false;
+    }
+    Instant expiresAt = readExpiresAt(existingItem);
+    return expiresAt == null
+        || expiresAt.isAfter(Instant.ofEpochMilli(Long.parseLong(item.get(CREATED_AT).n())));
+  }
+
+  public GetItemRequest createGetItemRequest(String shortUrl) {
+    return createGetItemRequest(shortUrl, Deadline.none());
+  }
+
+  public GetItemRequest createGetItemRequest(String shortUrl, Deadline deadline) {
+    return GetItemRequest.builder()
+        .overrideConfiguration(overrideConfiguration(deadline))
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .key(Map.of(URL_HASH, AttributeValue.builder().s(shortUrl).build()))
+        .build();
+  }
+
+  public BatchGetItemRequest createBatchGetItemRequest(Collection<String> hashes) {
+    List<Map<String, AttributeValue>> keys = hashes.stream()
+        .map(hash -> Map.of(URL_HASH, createStringAttribute(hash)))
+        .toList();
+    return createBatchGetItemRequest(Map.of(dynamoDBConfigurationProperties.table(),
+        KeysAndAttributes.builder().keys(keys).build()));
+  }
+
+  public BatchGetItemRequest createBatchGetItemRequest(
+      Map<String, KeysAndAttributes> requestItems) {
+    return BatchGetItemRequest.builder()
+        .requestItems(requestItems)
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .build();
+  }
+
+  public DeleteItemRequest createDeleteItemRequest(String shortUrl) {
+    return createDeleteItemRequest(shortUrl, Deadline.none());
+  }
+
+  public DeleteItemRequest createDeleteItemRequest(String shortUrl, Deadline deadline) {
+    return DeleteItemRequest.builder()
+        .overrideConfiguration(overrideConfiguration(deadline))
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .key(Map.of(URL_HASH, AttributeValue.builder().s(shortUrl).build()))
+        .build();
+  }
+
+  public ScanRequest createScanHashesRequest() {
+    return ScanRequest.builder()
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .projectionExpression(URL_HASH)
+        .consistentRead(true)
+        .build();
+  }
+
+  /**
+   * Builds a parallel scan over one segment of the table, returning the URL items created at or
+   * after {@code since}. The table has no index on {@code CreatedAt}, so the whole segment is read
+   * and filtered.
+   *
+   * @param since the earliest creation time of the items
+   * @param segment the segment to scan
+   * @param totalSegments the number of segments the table is split into
+   */
+  public ScanRequest createCreatedSinceScanRequest(Instant since, int segment, int totalSegments) {
+    return ScanRequest.builder()
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .segment(segment)
+        .totalSegments(totalSegments)
+        .projectionExpression(String.join(", ", URL_HASH, ORIGINAL_URL, EXPIRES_AT))
+        .filterExpression(CREATED_AT + " >= :since")
+        .expressionAttributeValues(Map.of(":since", createNumberAttribute(since.toEpochMilli())))
+        .build();
+  }
+
+  /**
+   * Builds a page of a parallel scan over one segment of the table, returning the hashes of the
+   * items that expired at {@code now}. Items still carrying an epoch millis {@code ExpiresAt} are
+   * matched too.
+   *
+   * @param segment the segment to scan
+   * @param totalSegments the number of segments the table is split into
+   * @param pageSize the maximum number of items evaluated by the page
+   * @param now the instant the items must have expired at
+   * @param exclusiveStartHash the last hash evaluated by the previous page, or {@code null}
+   */
+  public ScanRequest createExpiredScanRequest(
+      int segment, int totalSegments, int pageSize, Instant now, String exclusiveStartHash) {
+    ScanRequest.Builder builder = ScanRequest.builder()
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .segment(segment)
+        .totalSegments(totalSegments)
+        .limit(pageSize)
+        .projectionExpression(URL_HASH)
+        .filterExpression(EXPIRES_AT + " <= :nowSeconds OR "
+            + EXPIRES_AT + " BETWEEN :legacyThreshold AND :nowMillis")
+        .expressionAttributeValues(Map.of(
+            ":nowSeconds", createNumberAttribute(now.getEpochSecond()),
+            ":legacyThreshold", createNumberAttribute(LEGACY_EPOCH_MILLIS_THRESHOLD),
+            ":nowMillis", createNumberAttribute(now.toEpochMilli())));
+    if (exclusiveStartHash != null) {
+      builder.exclusiveStartKey(Map.of(URL_HASH, createStringAttribute(exclusiveStartHash)));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Builds an unconditional batch delete of the given hashes, which must be at most
+   * {@link #MAX_BATCH_WRITE_ITEMS}.
+   */
+  public BatchWriteItemRequest createBatchDeleteRequest(Collection<String> hashes) {
+    List<WriteRequest> deletes = hashes.stream()
+        .map(hash -> WriteRequest.builder()
+            .deleteRequest(DeleteRequest.builder()
+                .key(Map.of(URL_HASH, createStringAttribute(hash)))
+                .build())
+            .build())
+        .toList();
+    return createBatchWriteItemRequest(Map.of(dynamoDBConfigurationProperties.table(), deletes));
+  }
+
+  public BatchWriteItemRequest createBatchWriteItemRequest(
+      Map<String, List<WriteRequest>> requestItems) {
+    return BatchWriteItemRequest.builder()
+        .requestItems(requestItems)
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .build();
+  }
+
+  /**
+   * Builds a read of the reaper checkpoint item stored under {@code checkpointKey}.
+   */
+  public GetItemRequest createGetCheckpointRequest(String checkpointKey) {
+    return GetItemRequest.builder()
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .key(Map.of(URL_HASH, createStringAttribute(checkpointKey)))
+        .consistentRead(true)
+        .build();
+  }
+
+  /**
+   * Builds an update recording the position reached in one segment of a sweep, creating the
+   * checkpoint item on first use.
+   *
+   * @param checkpointKey the key of the checkpoint item
+   * @param segment the segment the position belongs to
+   * @param totalSegments the number of segments the sweep was started with
+   * @param position the last hash evaluated in the segment, or a marker if it is done
+   */
+  public UpdateItemRequest createSaveCheckpointRequest(
+      String checkpointKey, int segment, int totalSegments, String position) {
+    return UpdateItemRequest.builder()
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .key(Map.of(URL_HASH, createStringAttribute(checkpointKey)))
+        .updateExpression("SET #segment = :position, " + TOTAL_SEGMENTS + " = :totalSegments")
+        .expressionAttributeNames(Map.of("#segment", SEGMENT_PREFIX + segment))
+        .expressionAttributeValues(Map.of(
+            ":position", createStringAttribute(position),
+            ":totalSegments", createNumberAttribute(totalSegments)))
+        .build();
+  }
+
+  /**
+   * Maps the checkpoint item to the position reached in every segment. A checkpoint written with
+   * another number of segments cannot be resumed and is ignored.
+   *
+   * @return the positions keyed by segment, empty if there is no usable checkpoint
+   */
+  public Map<Integer, String> toCheckpoint(GetItemResponse response, int totalSegments) {
+    if (!response.hasItem()) {
+      return Map.of();
+    }
+    AttributeValue storedSegments = response.item().get(TOTAL_SEGMENTS);
+    if (storedSegments == null || Integer.parseInt(storedSegments.n()) != totalSegments) {
+      return Map.of();
+    }
+    Map<Integer, String> positions = new HashMap<>();
+    response.item().forEach((name, value) -> {
+      if (name.startsWith(SEGMENT_PREFIX)) {
+        positions.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length())), value.s());
+      }
+    });
+    return positions;
+  }
+
+  /**
+   * Builds an atomic increment of the counter item stored under {@code counterKey}, creating it on
+   * first use. The new value is returned, so the ids {@code [value - size, value)} belong to the
+   * caller.
+   */
+  public UpdateItemRequest createLeaseIdsRequest(String counterKey, long size) {
+    return UpdateItemRequest.builder()
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .key(Map.of(URL_HASH, createStringAttribute(counterKey)))
+        .updateExpression("ADD " + NEXT_ID + " :size")
+        .expressionAttributeValues(
+            Map.of(":size", AttributeValue.builder().n(String.valueOf(size)).build()))
+        .returnValues(ReturnValue.UPDATED_NEW)
+        .build();
+  }
+
+  /**
+   * Builds an atomic increment of the click count of a URL item. The condition keeps clicks of a
+   * deleted URL from creating an item without one.
+   *
+   * <p>The increment is the single item of a {@code TransactWriteItems} request only for its
+   * client request token: DynamoDB applies the same request sent again with the same token within
+   * ten minutes once, where a plain {@code ADD} that timed out after it was applied would be added
+   * twice by the next flush.
+   */
+  public TransactWriteItemsRequest createAddClicksRequest(
+      String hash, long clicks, String flushToken) {
+    return TransactWriteItemsRequest.builder()
+        .transactItems(TransactWriteItem.builder()
+            .update(Update.builder()
+                .tableName(dynamoDBConfigurationProperties.table())
+                .key(Map.of(URL_HASH, createStringAttribute(hash)))
+                .updateExpression("ADD " + CLICKS + " :clicks")
+                .conditionExpression("attribute_exists(" + ORIGINAL_URL + ")")
+                .expressionAttributeValues(Map.of(":clicks", createNumberAttribute(clicks)))
+                .build())
+            .build())
+        .clientRequestToken(flushToken)
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .build();
+  }
+
+  /**
+   * Bounds the call by the time left until the given deadline, its attempts by the same or by the
+   * configured attempt timeout, whichever is shorter, so that the SDK itself gives up on the HTTP
+   * request once its client has stopped waiting. Without a deadline the request keeps the timeouts
+   * of the client.
+   *
+   * @param deadline the deadline of the request
+   * @return the override of the request, or {@code null} for none
+   */
+  public AwsRequestOverrideConfiguration overrideConfiguration(Deadline deadline) {
+    if (!deadline.isBounded()) {
+      return null;
+    }
+    // The SDK works in milliseconds and takes a zero timeout for none at all
+    Duration remaining =
+        Duration.ofMillis(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline.remainingNanos())));
+    return AwsRequestOverrideConfiguration.builder()
+        .apiCallTimeout(min(remaining, dynamoDBConfigurationProperties.apiCallTimeout()))
+        .apiCallAttemptTimeout(
+            min(remaining, dynamoDBConfigurationProperties.apiCallAttemptTimeout()))
+        .build();
+  }
+
+  public GetItemRequest createGetClicksRequest(String hash) {
+    return GetItemRequest.builder()
+        .tableName(dynamoDBConfigurationProperties.table())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .key(Map.of(URL_HASH, createStringAttribute(hash)))
+        .projectionExpression(CLICKS)
+        .build();
+  }
+
+  public long toClicks(GetItemResponse response) {
+    AttributeValue clicks = response.hasItem() ? response.item().get(CLICKS) : null;
+    return clicks == null ? 0 : Long.parseLong(clicks.n());
+  }
+
+  public long toLeasedUpperBound(UpdateItemResponse response) {
+    return Long.parseLong(response.attributes().get(NEXT_ID).n());
+  }
+
+  public Optional<UrlEntry> toUrlEntry(String hash, GetItemResponse response) {
+    // The sequence counter shares the table but is not a URL
+    if (response.hasItem() && response.item().containsKey(ORIGINAL_URL)) {
+      return Optional.of(toUrlEntry(hash, response.item()));
+    }
+    return Optional.empty();
+  }
+
+  public List<UrlEntry> toUrlEntries(BatchGetItemResponse response) {
+    return response.responses()
+        .getOrDefault(dynamoDBConfigurationProperties.table(), List.of())
+        .stream()
+        .filter(item -> item.containsKey(ORIGINAL_URL))
+        .map(item -> toUrlEntry(item.get(URL_HASH).s(), item))
+        .toList();
+  }
+
+  public UrlEntry toUrlEntry(Map<String, AttributeValue> item) {
+    return toUrlEntry(item.get(URL_HASH).s(), item);
+  }
+
+  public AttributeValue createStringAttribute(String value) {
+    return AttributeValue.builder().s(value).build();
+  }
+
+  public AttributeValue createNumberAttribute(LocalDateTime dateTime) {
+    long epochMilli = ZonedDateTime.of(dateTime, ZoneId.of("UTC")).toInstant().toEpochMilli();
+    return AttributeValue.builder().n(String.valueOf(epochMilli)).build();
+  }
+
+  /**
+   * Converts the given date time to the epoch seconds format expected by DynamoDB TTL.
+   */
+  public AttributeValue createEpochSecondsAttribute(LocalDateTime dateTime) {
+    return createNumberAttribute(
+        ZonedDateTime.of(dateTime, ZoneId.of("UTC")).toInstant().getEpochSecond());
+  }
+
+  private static AttributeValue createNumberAttribute(long value) {
+    return AttributeValue.builder().n(String.valueOf(value)).build();
+  }
+
+  private static UrlEntry toUrlEntry(String hash, Map<String, AttributeValue> item) {
+    return new UrlEntry(hash, item.get(ORIGINAL_URL).s(), readExpiresAt(item));
+  }
+
+  private static Instant readExpiresAt(Map<String, AttributeValue> item) {
+    AttributeValue expiresAt = item.get(EXPIRES_AT);
+    if (expiresAt == null || expiresAt.n() == null) {
+      return null;
+    }
+    long value = Long.parseLong(expiresAt.n());
+    return value >= LEGACY_EPOCH_MILLIS_THRESHOLD
+        ? Instant.ofEpochMilli(value)
+        : Instant.ofEpochSecond(value);
+  }
+
+  private static Duration min(Duration first, Duration second) {
+    return first.compareTo(second) <= 0 ? first : second;
+  }
+}
@@ -0,0 +1,211 @@
+package com.truthful.pinokio.repository;
+
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.MAX_BATCH_WRITE_ATTEMPTS;
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.MAX_BATCH_WRITE_ITEMS;
+import static com.truthful.pinokio.repository.DynamoDBRequestFactory.URL_HASH;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import com.truthful.pinokio.config.ConditionalOnStorageType;
+import com.truthful.pinokio.config.model.ReaperConfigurationProperties;
+import com.truthful.pinokio.config.model.StorageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+/**
+ * Deletes expired items from stores without native TTL. Every sweep runs a parallel scan over the
+ * configured number of segments, filtered on {@code ExpiresAt}, and deletes the expired items of
+ * each page with batch writes. Scanned items and deletes are rate limited so the sweep does not
+ * compete with the live traffic for capacity.
+ *
+ * <p>The position reached in every segment is checkpointed after each page, so a sweep that fails
+ * or is interrupted by a restart resumes where it stopped. The checkpoint is removed once every
+ * segment is done.
+ *
+ * <p>Items are never updated once saved, so an item found expired by the scan is still expired
+ * when the batch delete reaches it.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.reaper", name = "enabled", havingValue = "true")
+@ConditionalOnStorageType(StorageType.DYNAMODB)
+@Slf4j
+public class ExpiredUrlReaper {
+
+  static final String SEGMENT_DONE = "#done";
+
+  private final DynamoDBRequestFactory dynamoDBRequestFactory;
+  private final DynamoDbClient dynamoDbClient;
+  private final ReaperConfigurationProperties reaperConfigurationProperties;
+  private final Executor virtualTaskExecutor;
+  private final Clock clock;
+  private final RateLimiter scanRateLimiter;
+  private final RateLimiter deleteRateLimiter;
+  private final Counter scannedItems;
+  private final Counter deletedItems;
+  private final Counter failedSweeps;
+  private final Timer sweepDuration;
+  private final AtomicLong lastCompletedSweep = new AtomicLong();
+
+  private volatile boolean stopped;
+  private volatile Thread reaper;
+
+  public ExpiredUrlReaper(
+      DynamoDBRequestFactory dynamoDBRequestFactory,
+      DynamoDbClient dynamoDbClient,
+      ReaperConfigurationProperties reaperConfigurationProperties,
+      Executor virtualTaskExecutor,
+      Clock clock,
+      MeterRegistry meterRegistry) {
+    this.dynamoDBRequestFactory = dynamoDBRequestFactory;
+    this.dynamoDbClient = dynamoDbClient;
+    this.reaperConfigurationProperties = reaperConfigurationProperties;
+    this.virtualTaskExecutor = virtualTaskExecutor;
+    this.clock = clock;
+    this.scanRateLimiter =
+        RateLimiter.create(reaperConfigurationProperties.scannedItemsPerSecond());
+    this.deleteRateLimiter = RateLimiter.create(reaperConfigurationProperties.deletesPerSecond());
+    this.scannedItems = Counter.builder("url.reaper.scanned")
+        .description("Items evaluated by the expired URL scan")
+        .register(meterRegistry);
+    this.deletedItems = Counter.builder("url.reaper.deleted")
+        .description("Expired items deleted by the reaper")
+        .register(meterRegistry);
+    this.failedSweeps = Counter.builder("url.reaper.failures")
+        .description("Sweeps that stopped on an error and will resume from the checkpoint")
+        .register(meterRegistry);
+    this.sweepDuration = Timer.builder("url.reaper.sweep")
+        .description("Duration of the sweeps that went through the whole table")
+        .register(meterRegistry);
+    Gauge.builder("url.reaper.last.sweep", lastCompletedSweep, AtomicLong::get)
+        .description("Epoch seconds at which the last complete sweep started")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    reaper = Thread.ofVirtual().name("expired-url-reaper").start(this::reap);
+  }
+
+  @PreDestroy
+  public void stop() {
+    stopped = true;
+    reaper.interrupt();
+  }
+
+  /**
+   * Runs a sweep over the whole table, resuming every segment from the checkpoint if there is one.
+   *
+   * @return whether every segment was swept, rather than stopped by a shutdown
+   */
+  boolean sweep() {
+    Instant now = clock.instant();
+    long startNanos = System.nanoTime();
+    int totalSegments = reaperConfigurationProperties.totalSegments();
+    Map<Integer, String> checkpoint = dynamoDBRequestFactory.toCheckpoint(
+        dynamoDbClient.getItem(dynamoDBRequestFactory.createGetCheckpointRequest(
+            reaperConfigurationProperties.checkpointKey())),
+        totalSegments);
+
+    List<CompletableFuture<Boolean>> segments = new ArrayList<>(totalSegments);
+    for (int segment = 0; segment < totalSegments; segment++) {
+      String position = checkpoint.get(segment);
+      if (SEGMENT_DONE.equals(position)) {
+        continue;
+      }
+      int currentSegment = segment;
+      segments.add(CompletableFuture.supplyAsync(
+          () -> sweepSegment(currentSegment, totalSegments, position, now), virtualTaskExecutor));
+    }
+    CompletableFuture.allOf(segments.toArray(CompletableFuture[]::new)).join();
+    if (!segments.stream().allMatch(CompletableFuture::join)) {
+      return false;
+    }
+
+    dynamoDbClient.deleteItem(dynamoDBRequestFactory.createDeleteItemRequest(
+        reaperConfigurationProperties.checkpointKey()));
+    sweepDuration.record(Duration.ofNanos(System.nanoTime() - startNanos));
+    lastCompletedSweep.set(now.getEpochSecond());
+    log.info("Swept {} segments for expired URLs", totalSegments);
+    return true;
+  }
+
+  private void reap() {
+    try {
+      while (!stopped) {
+        try {
+          sweep();
+        } catch (RuntimeException e) {
+          failedSweeps.increment();
+          log.error("Failed to sweep expired URLs, the next sweep resumes from the checkpoint", e);
+        }
+        Thread.sleep(reaperConfigurationProperties.interval());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean sweepSegment(int segment, int totalSegments, String position, Instant now) {
+    String exclusiveStartHash = position;
+    do {
+      if (stopped) {
+        return false;
+      }
+      ScanResponse response = dynamoDbClient.scan(dynamoDBRequestFactory.createExpiredScanRequest(
+          segment, totalSegments, reaperConfigurationProperties.pageSize(), now,
+          exclusiveStartHash));
+      scannedItems.increment(response.scannedCount());
+      deleteAll(response.items().stream().map(item -> item.get(URL_HASH).s()).toList());
+
+      exclusiveStartHash = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+          ? response.lastEvaluatedKey().get(URL_HASH).s()
+          : null;
+      dynamoDbClient.updateItem(dynamoDBRequestFactory.createSaveCheckpointRequest(
+          reaperConfigurationProperties.checkpointKey(), segment, totalSegments,
+          exclusiveStartHash == null ? SEGMENT_DONE : exclusiveStartHash));
+      scanRateLimiter.acquire(Math.max(1, response.scannedCount()));
+    } while (exclusiveStartHash != null);
+    return true;
+  }
+
+  private void deleteAll(List<String> hashes) {
+    for (List<String> chunk : Lists.partition(hashes, MAX_BATCH_WRITE_ITEMS)) {
+      BatchWriteItemRequest request = dynamoDBRequestFactory.createBatchDeleteRequest(chunk);
+      int pending = chunk.size();
+      for (int attempt = 0; pending > 0; attempt++) {
+        if (attempt >= MAX_BATCH_WRITE_ATTEMPTS) {
+          throw new IllegalStateException(
+              "Unprocessed deletes left after " + MAX_BATCH_WRITE_ATTEMPTS + " attempts");
+        }
+        deleteRateLimiter.acquire(pending);
+        BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(request);
+        int unprocessed = response.unprocessedItems().values().stream()
+            .mapToInt(List::size)
+            .sum();
+        deletedItems.increment(pending - unprocessed);
+        pending = unprocessed;
+        request = dynamoDBRequestFactory.createBatchWriteItemRequest(response.unprocessedItems());
+      }
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.truthful.pinokio.repository;
+
+/**
+ * Durable counters handing out ranges of ids, so that no id is ever handed out twice, not even
+ * across restarts.
+ */
+@FunctionalInterface
+public interface IdLeaseStore {
+
+  /**
+   * Leases a range of ids by atomically advancing the counter stored under {@code counterKey}.
+   *
+   * @param counterKey the key of the counter
+   * @param size the amount of ids to lease
+   * @return the exclusive upper bound of the leased range, which starts at {@code bound - size}
+   */
+  long leaseIds(String counterKey, long size);
+}
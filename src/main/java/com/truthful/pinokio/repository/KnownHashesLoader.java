@@ -0,0 +1,38 @@
+package com.truthful.pinokio.repository;
+
+import com.truthful.pinokio.config.model.NegativeLookupConfigurationProperties;
+import com.truthful.pinokio.repository.cache.NegativeLookupFilter;
+import java.util.concurrent.Executor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the {@link NegativeLookupFilter} from the storage once the application has started.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class KnownHashesLoader {
+
+  private final NegativeLookupConfigurationProperties negativeLookupConfigurationProperties;
+  private final NegativeLookupFilter negativeLookupFilter;
+  private final UrlStore urlStore;
+  private final Executor virtualTaskExecutor;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void loadKnownHashes() {
+    if (!negativeLookupConfigurationProperties.filterEnabled()) {
+      return;
+    }
+    virtualTaskExecutor.execute(() -> {
+      try {
+        negativeLookupFilter.rebuild(urlStore.scanHashes());
+      } catch (RuntimeException e) {
+        log.error("Failed to rebuild the membership filter, lookups will not be filtered", e);
+      }
+    });
+  }
+}
@@ -0,0 +1,85 @@
+package com.truthful.pinokio.repository;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deduplicates concurrent lookups of the same hash (single-flight). The first caller runs the
+ * lookup and every caller arriving while it is in flight shares its result, errors included,
+ * instead of issuing an identical storage call. The lookup is forgotten as soon as it completes,
+ * so later callers start a new one.
+ */
+@Component
+public class LookupCoalescer {
+
+  private final Map<String, CompletableFuture<Either<UrlShortenerError, UrlEntry>>> inFlight =
+      new ConcurrentHashMap<>();
+  private final Counter lookups;
+  private final Counter coalescedLookups;
+
+  public LookupCoalescer(MeterRegistry meterRegistry) {
+    this.lookups = Counter.builder("url.lookup.coalescer.requests")
+        .description("Lookups that reached the coalescer")
+        .register(meterRegistry);
+    this.coalescedLookups = Counter.builder("url.lookup.coalescer.coalesced")
+        .description("Lookups that shared the result of one already in flight")
+        .register(meterRegistry);
+    Gauge.builder("url.lookup.coalescer.dedup.ratio", this, LookupCoalescer::dedupRatio)
+        .description("Share of lookups that did not need a storage call of their own")
+        .register(meterRegistry);
+    Gauge.builder("url.lookup.coalescer.in.flight", inFlight, Map::size)
+        .description("Hashes with a lookup in flight")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Returns the result of the lookup of the given hash already in flight, or starts a new one.
+   *
+   * @param hash the hash to look up
+   * @param lookup the lookup to run when none is in flight
+   * @return the result of the lookup
+   */
+  public EitherT<UrlShortenerError, UrlEntry> coalesce(
+      String hash, Supplier<EitherT<UrlShortenerError, UrlEntry>> lookup) {
+    lookups.increment();
+    CompletableFuture<Either<UrlShortenerError, UrlEntry>> result = new CompletableFuture<>();
+    CompletableFuture<Either<UrlShortenerError, UrlEntry>> existing =
+        inFlight.putIfAbsent(hash, result);
+    if (existing != null) {
+      coalescedLookups.increment();
+      // Each caller gets its own copy, so cancelling it does not affect the other callers
+      return EitherT.fromFuture(existing.copy());
+    }
+    CompletableFuture<Either<UrlShortenerError, UrlEntry>> call;
+    try {
+      call = lookup.get().toCompletableFuture();
+    } catch (RuntimeException e) {
+      call = CompletableFuture.failedFuture(e);
+    }
+    call.whenComplete((value, throwable) -> {
+      // Forgotten before completing, so a caller that sees the result never joins a stale lookup
+      inFlight.remove(hash, result);
+      if (throwable != null) {
+        result.completeExceptionally(throwable);
+      } else {
+        result.complete(value);
+      }
+    });
+    return EitherT.fromFuture(result.copy());
+  }
+
+  private double dedupRatio() {
+    double total = lookups.count();
+    return total == 0 ? 0 : coalescedLookups.count() / total;
+  }
+}
@@ -1,16 +1,27 @@
 package com.truthful.pinokio.repository;
 
-import static com.truthful.pinokio.util.RetryUtil.retry;
-import static com.truthful.pinokio.util.RetryUtil.retryEither;
-
 import com.soumakis.control.Either;
 import com.soumakis.control.EitherT;
 import com.soumakis.control.TryT;
+import com.truthful.pinokio.repository.cache.LongUrlCache;
+import com.truthful.pinokio.repository.cache.NegativeLookupFilter;
+import com.truthful.pinokio.repository.cache.UrlCache;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.repository.resilience.Hedger;
+import com.truthful.pinokio.repository.resilience.StorageGuard;
+import com.truthful.pinokio.repository.resilience.StorageOperation;
 import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RetryPolicies;
 import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
@@ -20,55 +31,210 @@ import org.springframework.stereotype.Repository;
 @Slf4j
 public class StorageRepositoryFacade {
 
-  private final DynamoDBRepository dynamoDBRepository;
+  private final UrlStore urlStore;
+  private final UrlCache urlCache;
+  private final LongUrlCache longUrlCache;
+  private final NegativeLookupFilter negativeLookupFilter;
+  private final RetryPolicies retryPolicies;
+  private final StorageGuard storageGuard;
+  private final Hedger hedger;
+  private final LookupCoalescer lookupCoalescer;
   private final Clock clock;
-  private final Executor virtualTaskExecutor;
 
+  /**
+   * Returns the hash the given long URL was recently shortened to, as known by this node.
+   *
+   * @param longUrl the long URL to look up
+   * @return the hash if the long URL is cached
+   */
+  public Optional<String> findHash(String longUrl) {
+    return longUrlCache.get(longUrl);
+  }
+
+  /**
+   * Saves the given hash. Saving a hash that already stores the same long URL succeeds and
+   * returns the existing hash.
+   *
+   * @param hash the hash to save
+   * @param longUrl the long URL the hash maps to
+   * @param urlExpirationInDays the days until the hash expires
+   * @return the saved hash or {@link UrlShortenerError#HASH_ALREADY_EXISTS} if the hash stores
+   *     another URL
+   */
   public EitherT<UrlShortenerError, String> saveHash(
-      String hash, String longUrl, int maxRetries, int urlExpirationInDays) {
-    CompletableFuture<Either<UrlShortenerError, String>> saveToDynamoDb =
-        CompletableFuture.supplyAsync(
-            () -> saveToStorage(hash, longUrl, maxRetries, urlExpirationInDays),
-            virtualTaskExecutor);
+      String hash, String longUrl, int urlExpirationInDays) {
+    return saveHash(hash, longUrl, urlExpirationInDays, Deadline.none());
+  }
 
-    return EitherT.fromFuture(saveToDynamoDb);
+  /**
+   * Same as {@link #saveHash(String, String, int)}, giving up once the given deadline passes.
+   */
+  public EitherT<UrlShortenerError, String> saveHash(
+      String hash, String longUrl, int urlExpirationInDays, Deadline deadline) {
+    var currentDateTime = LocalDateTime.now(clock);
+    return storageGuard.execute(
+            StorageOperation.SAVE,
+            retryPolicies.save(),
+            deadline,
+            () ->
+                urlStore.save(
+                    hash, longUrl, currentDateTime, currentDateTime.plusDays(urlExpirationInDays),
+                    deadline))
+        .map(savedHash -> {
+          negativeLookupFilter.recordSaved(hash);
+          longUrlCache.put(longUrl, hash);
+          return savedHash;
+        });
   }
 
   /**
-   * Returns the original URL for the given hash. It retries up to a configurable amount of times
-   * before giving up.
+   * Returns the entry for the given hash, with its original URL and expiry. Cached lookups and
+   * hashes known to be missing are answered locally, otherwise it reads through to the storage,
+   * retrying according to the get policy before giving up, and caches the result. Concurrent
+   * lookups of the same hash share a single storage call. Cached lookups keep being answered while
+   * the storage is shedding load or its circuit breaker is open. Stored entries past their
+   * {@code ExpiresAt} are not found, even if the storage has not removed them yet.
    *
-   * @param hash the hash to fetch the original URL for
-   * @param maxRetries the maximum amount of retries
-   * @return the original URL if it exists
+   * @param hash the hash to fetch the entry for
+   * @return the entry if it exists
    */
-  public EitherT<UrlShortenerError, String> getOriginalUrl(String hash, int maxRetries) {
-    return EitherT.fromFuture(
-        CompletableFuture.supplyAsync(
-            () -> retryEither(maxRetries, () -> dynamoDBRepository.getOriginalUrl(hash))));
+  public EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash) {
+    return getUrlEntry(hash, Deadline.none());
   }
 
   /**
-   * Deletes the entry for the given hash. It retries up to a configurable amount of times before
-   * giving up.
+   * Same as {@link #getUrlEntry(String)}, giving up on the storage once the given deadline passes.
+   * Lookups coalesced into a storage call share the deadline of the lookup that made it.
+   */
+  public EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash, Deadline deadline) {
+    Optional<UrlEntry> cachedEntry = urlCache.getEntry(hash);
+    if (cachedEntry.isPresent()) {
+      return EitherT.right(cachedEntry.get());
+    }
+    if (negativeLookupFilter.isKnownMissing(hash)) {
+      return EitherT.left(UrlShortenerError.HASH_NOT_FOUND);
+    }
+    return lookupCoalescer.coalesce(hash, () -> getUrlEntryFromStorage(hash, deadline));
+  }
+
+  /**
+   * Reads the entry of the given hash from the storage again and caches it, resetting its TTL, so
+   * that a link looked up all the time does not miss the cache once it expires. It is a no-op for
+   * links the cache serves until at least the given time.
+   *
+   * @param hash the hash to refresh
+   * @param cachedUntil the time until which the link should keep being served from the cache
+   * @return the refreshed entry, or empty if it was cached long enough
+   */
+  public EitherT<UrlShortenerError, Optional<UrlEntry>> refreshUrlEntry(
+      String hash, Instant cachedUntil) {
+    if (urlCache.isCachedUntil(hash, cachedUntil.toEpochMilli())) {
+      return EitherT.right(Optional.empty());
+    }
+    return lookupCoalescer.coalesce(hash, () -> getUrlEntryFromStorage(hash, Deadline.none()))
+        .map(Optional::of);
+  }
+
+  /**
+   * Returns the original URLs for the given hashes. Cached lookups and hashes known to be missing
+   * are answered locally and the rest are fetched from the storage with a single batch read.
+   * Stored entries past their {@code ExpiresAt} are left out.
+   *
+   * @param hashes the hashes to fetch the original URLs for
+   * @return the original URLs keyed by hash, leaving out the hashes that do not exist
+   */
+  public EitherT<UrlShortenerError, Map<String, String>> getOriginalUrls(
+      Collection<String> hashes) {
+    Map<String, String> cachedUrls = new HashMap<>();
+    Set<String> uncachedHashes = new LinkedHashSet<>();
+    for (String hash : hashes) {
+      Optional<String> cachedUrl = urlCache.get(hash);
+      if (cachedUrl.isPresent()) {
+        cachedUrls.put(hash, cachedUrl.get());
+      } else if (!negativeLookupFilter.isKnownMissing(hash)) {
+        uncachedHashes.add(hash);
+      }
+    }
+    if (uncachedHashes.isEmpty()) {
+      return EitherT.right(cachedUrls);
+    }
+    return storageGuard.execute(StorageOperation.GET, retryPolicies.get(),
+            () -> urlStore.getUrlEntries(uncachedHashes))
+        .map(urlEntries -> {
+          Map<String, String> originalUrls = new HashMap<>(cachedUrls);
+          for (String hash : uncachedHashes) {
+            UrlEntry urlEntry = urlEntries.get(hash);
+            if (urlEntry == null || isExpired(urlEntry)) {
+              negativeLookupFilter.recordMissing(hash);
+            } else {
+              urlCache.put(urlEntry);
+              originalUrls.put(hash, urlEntry.originalUrl());
+            }
+          }
+          return originalUrls;
+        });
+  }
+
+  /**
+   * Deletes the entry for the given hash. It retries according to the delete policy before giving
+   * up. Any cached entry for the hash is invalidated before and after the deletion, and long URLs
+   * cached as shortened to it are forgotten.
    *
    * @param hash the hash to delete
-   * @param maxRetries the maximum amount of retries
    * @return success or error
    */
-  public TryT<Void> delete(String hash, int maxRetries) {
+  public TryT<Void> delete(String hash) {
+    return delete(hash, Deadline.none());
+  }
+
+  /**
+   * Same as {@link #delete(String)}, giving up once the given deadline passes.
+   */
+  public TryT<Void> delete(String hash, Deadline deadline) {
+    urlCache.invalidate(hash);
+    longUrlCache.invalidateHash(hash);
     return TryT.fromFuture(
-        CompletableFuture.supplyAsync(
-            () -> retry(maxRetries, () -> dynamoDBRepository.delete(hash))));
+        storageGuard.executeTry(StorageOperation.DELETE, retryPolicies.delete(), deadline,
+                () -> urlStore.delete(hash, deadline))
+            .toCompletableFuture()
+            .whenComplete((result, throwable) -> {
+              urlCache.invalidate(hash);
+              if (result != null && result.isSuccess()) {
+                negativeLookupFilter.recordDeleted(hash);
+              }
+            }));
   }
 
-  private Either<UrlShortenerError, String> saveToStorage(
-      String hash, String longUrl, int maxRetries, int urlExpirationInDays) {
-    var currentDateTime = LocalDateTime.now(clock);
-    return retryEither(
-        maxRetries,
-        () ->
-            dynamoDBRepository.save(
-                hash, longUrl, currentDateTime, currentDateTime.plusDays(urlExpirationInDays)));
+  private EitherT<UrlShortenerError, UrlEntry> getUrlEntryFromStorage(
+      String hash, Deadline deadline) {
+    // Each copy of a hedged read takes its own permit of the guard, which cancels the storage
+    // call of the copy that loses.
+    return rejectExpired(EitherT.fromFuture(hedger.hedge(
+            () -> storageGuard.execute(StorageOperation.GET, retryPolicies.get(), deadline,
+                    () -> urlStore.getUrlEntry(hash, deadline))
+                .toCompletableFuture(),
+            result -> result.isLeft() && result.getLeft() != UrlShortenerError.HASH_NOT_FOUND)))
+        .map(urlEntry -> {
+          urlCache.put(urlEntry);
+          return urlEntry;
+        })
+        .recoverWith(error -> {
+          if (error == UrlShortenerError.HASH_NOT_FOUND) {
+            negativeLookupFilter.recordMissing(hash);
+          }
+          return EitherT.left(error);
+        });
+  }
+
+  private EitherT<UrlShortenerError, UrlEntry> rejectExpired(
+      EitherT<UrlShortenerError, UrlEntry> lookup) {
+    return EitherT.fromFuture(lookup.toCompletableFuture()
+        .thenApply(result -> result.flatMap(urlEntry -> isExpired(urlEntry)
+            ? Either.<UrlShortenerError, UrlEntry>left(UrlShortenerError.HASH_NOT_FOUND)
+            : Either.<UrlShortenerError, UrlEntry>right(urlEntry))));
+  }
+
+  private boolean isExpired(UrlEntry urlEntry) {
+    return urlEntry.expiresAt() != null && !urlEntry.expiresAt().isAfter(clock.instant());
   }
 }
@@ -0,0 +1,189 @@
+package com.truthful.pinokio.repository;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.truthful.pinokio.config.model.CacheConfigurationProperties;
+import com.truthful.pinokio.config.model.CacheWarmUpConfigurationProperties;
+import com.truthful.pinokio.repository.cache.UrlCache;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Warms the {@link UrlCache} up when the node starts, so that a fleet of fresh nodes does not
+ * throttle the storage with a burst of lookups after a deploy or a scale-out. It loads the snapshot
+ * written by the previous graceful shutdown of the node or, without a usable one, reads the most
+ * recently created entries from the storage with a rate limited parallel scan.
+ *
+ * <p>It is also a health indicator, part of the readiness group, that reports the node out of
+ * service until the warm-up has loaded enough entries or has run for too long.
+ */
+@Component
+@Slf4j
+public class UrlCacheWarmer implements HealthIndicator {
+
+  private final CacheWarmUpConfigurationProperties cacheWarmUpConfigurationProperties;
+  private final UrlCache urlCache;
+  private final UrlStore urlStore;
+  private final Executor virtualTaskExecutor;
+  private final Clock clock;
+  private final boolean enabled;
+  private final RateLimiter scanRateLimiter;
+  private final AtomicInteger loaded = new AtomicInteger();
+  private final Instant startedAt;
+
+  private volatile boolean done;
+  private volatile boolean stopped;
+  private volatile Thread warmer;
+
+  public UrlCacheWarmer(
+      CacheWarmUpConfigurationProperties cacheWarmUpConfigurationProperties,
+      CacheConfigurationProperties cacheConfigurationProperties,
+      UrlCache urlCache,
+      UrlStore urlStore,
+      Executor virtualTaskExecutor,
+      Clock clock,
+      MeterRegistry meterRegistry) {
+    this.cacheWarmUpConfigurationProperties = cacheWarmUpConfigurationProperties;
+    this.urlCache = urlCache;
+    this.urlStore = urlStore;
+    this.virtualTaskExecutor = virtualTaskExecutor;
+    this.clock = clock;
+    this.enabled =
+        cacheWarmUpConfigurationProperties.enabled() && cacheConfigurationProperties.enabled();
+    this.scanRateLimiter =
+        RateLimiter.create(cacheWarmUpConfigurationProperties.scanEntriesPerSecond());
+    this.startedAt = clock.instant();
+    Gauge.builder("url.cache.warmup.loaded", loaded, AtomicInteger::get)
+        .description("Entries loaded into the URL cache by the warm-up")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      done = true;
+      return;
+    }
+    warmer = Thread.ofVirtual().name("url-cache-warmer").start(this::warmUp);
+  }
+
+  /**
+   * Writes the hottest entries to the snapshot for the next start of the node.
+   */
+  @PreDestroy
+  public void stop() {
+    stopped = true;
+    if (!enabled) {
+      return;
+    }
+    if (warmer != null) {
+      warmer.interrupt();
+    }
+    try {
+      int written = urlCache.writeSnapshot(
+          Path.of(cacheWarmUpConfigurationProperties.snapshotFile()),
+          cacheWarmUpConfigurationProperties.snapshotEntries());
+      log.info("Wrote {} entries to the URL cache snapshot", written);
+    } catch (IOException e) {
+      log.error("Failed to write the URL cache snapshot, the next start falls back to a scan", e);
+    }
+  }
+
+  @Override
+  public Health health() {
+    int loadedEntries = loaded.get();
+    return (isWarm(loadedEntries) ? Health.up() : Health.outOfService())
+        .withDetail("loaded", loadedEntries)
+        .withDetail("done", done)
+        .build();
+  }
+
+  /**
+   * Loads the snapshot or, if there is no usable one, scans the storage.
+   */
+  void warmUp() {
+    try {
+      if (!loadSnapshot()) {
+        scan();
+      }
+    } catch (RuntimeException e) {
+      log.error("Failed to warm the URL cache up, it fills up with the live traffic instead", e);
+    } finally {
+      done = true;
+    }
+  }
+
+  private boolean isWarm(int loadedEntries) {
+    return done
+        || loadedEntries >= cacheWarmUpConfigurationProperties.scanMaximumEntries()
+            * cacheWarmUpConfigurationProperties.readyThreshold()
+        || !Duration.between(startedAt, clock.instant())
+            .minus(cacheWarmUpConfigurationProperties.readyTimeout())
+            .isNegative();
+  }
+
+  private boolean loadSnapshot() {
+    Path snapshot = Path.of(cacheWarmUpConfigurationProperties.snapshotFile());
+    if (!Files.exists(snapshot)) {
+      return false;
+    }
+    try {
+      int loadedEntries = urlCache.loadSnapshot(snapshot);
+      loaded.addAndGet(loadedEntries);
+      log.info("Loaded {} entries from the URL cache snapshot", loadedEntries);
+      return loadedEntries > 0;
+    } catch (IOException e) {
+      log.warn("Failed to read the URL cache snapshot, scanning the storage instead", e);
+      return false;
+    }
+  }
+
+  private void scan() {
+    Instant now = clock.instant();
+    Instant since = now.minus(cacheWarmUpConfigurationProperties.scanWindow());
+    int totalSegments = cacheWarmUpConfigurationProperties.scanTotalSegments();
+    List<CompletableFuture<Void>> segments = new ArrayList<>(totalSegments);
+    for (int segment = 0; segment < totalSegments; segment++) {
+      int currentSegment = segment;
+      segments.add(CompletableFuture.runAsync(
+          () -> scanSegment(since, now, currentSegment, totalSegments), virtualTaskExecutor));
+    }
+    CompletableFuture.allOf(segments.toArray(CompletableFuture[]::new)).join();
+    log.info("Loaded {} entries created since {} into the URL cache", loaded.get(), since);
+  }
+
+  private void scanSegment(Instant since, Instant now, int segment, int totalSegments) {
+    try (Stream<UrlEntry> urlEntries = urlStore.scanCreatedSince(since, segment, totalSegments)) {
+      Iterator<UrlEntry> iterator = urlEntries.iterator();
+      while (!stopped
+          && loaded.get() < cacheWarmUpConfigurationProperties.scanMaximumEntries()
+          && iterator.hasNext()) {
+        scanRateLimiter.acquire();
+        UrlEntry urlEntry = iterator.next();
+        if (urlEntry.expiresAt() == null || urlEntry.expiresAt().isAfter(now)) {
+          urlCache.put(urlEntry);
+          loaded.incrementAndGet();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.truthful.pinokio.repository;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Non-blocking access to the stored URLs. Every operation is a single attempt, retries are left to
+ * the caller. Which implementation backs it is selected by {@code application.storage.type}.
+ *
+ * <p>The single lookups, saves and deletes take the deadline of their request, which bounds the
+ * storage call itself. Cancelling the future they return cancels the storage call as well.
+ */
+public interface UrlStore {
+
+  /**
+   * Saves the given hash unless it already exists.
+   *
+   * @return the saved hash or {@link UrlShortenerError#HASH_ALREADY_EXISTS}
+   */
+  default EitherT<UrlShortenerError, String> save(
+      String hash, String originalUrl, LocalDateTime createdAt, LocalDateTime expiresAt) {
+    return save(hash, originalUrl, createdAt, expiresAt, Deadline.none());
+  }
+
+  /**
+   * Same as {@link #save(String, String, LocalDateTime, LocalDateTime)}, giving up once the given
+   * deadline passes.
+   */
+  EitherT<UrlShortenerError, String> save(
+      String hash,
+      String originalUrl,
+      LocalDateTime createdAt,
+      LocalDateTime expiresAt,
+      Deadline deadline);
+
+  /**
+   * Fetches the stored entry for the given hash.
+   *
+   * @return the stored entry or {@link UrlShortenerError#HASH_NOT_FOUND}
+   */
+  default EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash) {
+    return getUrlEntry(hash, Deadline.none());
+  }
+
+  /**
+   * Same as {@link #getUrlEntry(String)}, giving up once the given deadline passes.
+   */
+  EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash, Deadline deadline);
+
+  /**
+   * Fetches the stored entries for the given hashes. Hashes that do not exist are left out of the
+   * result. The default implementation issues one lookup per hash.
+   *
+   * @return the stored entries keyed by hash
+   */
+  default EitherT<UrlShortenerError, Map<String, UrlEntry>> getUrlEntries(
+      Collection<String> hashes) {
+    List<CompletableFuture<Either<UrlShortenerError, UrlEntry>>> lookups = hashes.stream()
+        .map(hash -> getUrlEntry(hash).toCompletableFuture())
+        .toList();
+    return EitherT.fromFuture(
+        CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new))
+            .thenApply(ignored -> collectUrlEntries(lookups)));
+  }
+
+  default TryT<Void> delete(String hash) {
+    return delete(hash, Deadline.none());
+  }
+
+  /**
+   * Same as {@link #delete(String)}, giving up once the given deadline passes.
+   */
+  TryT<Void> delete(String hash, Deadline deadline);
+
+  /**
+   * Streams every stored hash. Unlike the other operations it blocks while the hashes are read, so
+   * it is meant for background tasks.
+   *
+   * @return the stored hashes
+   */
+  Stream<String> scanHashes();
+
+  /**
+   * Streams the stored entries created at or after the given instant from one segment of the
+   * storage, so that several segments can be read in parallel. Like {@link #scanHashes()} it
+   * blocks while the entries are read.
+   *
+   * @param since the earliest creation time of the entries
+   * @param segment the segment to read, from zero
+   * @param totalSegments the number of segments the storage is split into
+   * @return the stored entries of the segment, in no particular order
+   */
+  Stream<UrlEntry> scanCreatedSince(Instant since, int segment, int totalSegments);
+
+  private static Either<UrlShortenerError, Map<String, UrlEntry>> collectUrlEntries(
+      List<CompletableFuture<Either<UrlShortenerError, UrlEntry>>> lookups) {
+    Map<String, UrlEntry> urlEntries = new HashMap<>();
+    for (CompletableFuture<Either<UrlShortenerError, UrlEntry>> lookup : lookups) {
+      Either<UrlShortenerError, UrlEntry> result = lookup.join();
+      if (result.isRight()) {
+        urlEntries.put(result.getRight().hash(), result.getRight());
+      } else if (result.getLeft() != UrlShortenerError.HASH_NOT_FOUND) {
+        return Either.left(result.getLeft());
+      }
+    }
+    return Either.right(urlEntries);
+  }
+}
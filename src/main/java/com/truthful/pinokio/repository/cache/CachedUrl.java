@@ -0,0 +1,14 @@
+package com.truthful.pinokio.repository.cache;
+
+import com.truthful.pinokio.repository.model.UrlEntry;
+
+/**
+ * An entry of the {@link UrlCache}.
+ *
+ * @param urlEntry the entry read from the storage
+ * @param cachedUntil the epoch millis after which the entry must be read from the storage again,
+ *     never later than its {@code ExpiresAt}
+ */
+record CachedUrl(UrlEntry urlEntry, long cachedUntil) {
+
+}
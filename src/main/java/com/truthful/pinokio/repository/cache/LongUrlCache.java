@@ -0,0 +1,64 @@
+package com.truthful.pinokio.repository.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.truthful.pinokio.config.model.LongUrlCacheConfigurationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.Optional;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded in-process cache of long URL to hash mappings, so URLs that are shortened again and
+ * again are answered without generating a hash or reaching the storage.
+ */
+@Component
+public class LongUrlCache {
+
+  private static final String CACHE_NAME = "url.long.url.cache";
+
+  private final Cache<String, String> cache;
+  private final boolean enabled;
+
+  public LongUrlCache(
+      LongUrlCacheConfigurationProperties longUrlCacheConfigurationProperties,
+      MeterRegistry meterRegistry) {
+    this.enabled = longUrlCacheConfigurationProperties.enabled();
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(longUrlCacheConfigurationProperties.maximumSize())
+            .expireAfterWrite(longUrlCacheConfigurationProperties.ttl())
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  /**
+   * Returns the hash the given long URL was last shortened to.
+   *
+   * @param longUrl the long URL to look up
+   * @return the hash if it is cached
+   */
+  public Optional<String> get(String longUrl) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(cache.getIfPresent(longUrl));
+  }
+
+  public void put(String longUrl, String hash) {
+    if (enabled) {
+      cache.put(longUrl, hash);
+    }
+  }
+
+  /**
+   * Forgets every long URL mapped to the given hash. It scans the whole cache, which is fine for
+   * deletes but must not be used on the hot path.
+   *
+   * @param hash the deleted hash
+   */
+  public void invalidateHash(String hash) {
+    cache.asMap().values().removeIf(hash::equals);
+  }
+}
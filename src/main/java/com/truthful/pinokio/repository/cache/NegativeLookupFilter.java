@@ -0,0 +1,168 @@
+package com.truthful.pinokio.repository.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.truthful.pinokio.config.model.NegativeLookupConfigurationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Answers lookups of hashes that are known not to exist without touching the storage. It combines
+ * a Bloom filter of every known hash, which is rebuilt from the storage at startup and updated on
+ * every save, with a short-lived cache of hashes recently found missing or deleted.
+ */
+@Component
+@Slf4j
+public class NegativeLookupFilter {
+
+  private final NegativeLookupConfigurationProperties negativeLookupConfigurationProperties;
+  private final Cache<String, Boolean> missingHashes;
+  private final Counter filterRejections;
+  private final Counter cacheRejections;
+  private final Counter falsePositives;
+
+  private volatile BloomFilter<CharSequence> knownHashes;
+  private volatile BloomFilter<CharSequence> rebuildingHashes;
+
+  public NegativeLookupFilter(
+      NegativeLookupConfigurationProperties negativeLookupConfigurationProperties,
+      MeterRegistry meterRegistry) {
+    this.negativeLookupConfigurationProperties = negativeLookupConfigurationProperties;
+    this.missingHashes =
+        Caffeine.newBuilder()
+            .maximumSize(negativeLookupConfigurationProperties.cacheMaximumSize())
+            .expireAfterWrite(negativeLookupConfigurationProperties.cacheTtl())
+            .build();
+    this.filterRejections = Counter.builder("url.negative.lookup.rejections")
+        .tag("source", "filter")
+        .register(meterRegistry);
+    this.cacheRejections = Counter.builder("url.negative.lookup.rejections")
+        .tag("source", "cache")
+        .register(meterRegistry);
+    this.falsePositives = Counter.builder("url.filter.false.positives")
+        .description("Lookups the filter let through that turned out to be missing")
+        .register(meterRegistry);
+    Gauge.builder("url.filter.size", this, NegativeLookupFilter::approximateSize)
+        .description("Approximate number of hashes in the membership filter")
+        .register(meterRegistry);
+    Gauge.builder("url.filter.expected.fpp", this, NegativeLookupFilter::expectedFpp)
+        .description("False positive probability implied by the current filter load")
+        .register(meterRegistry);
+    Gauge.builder("url.filter.observed.fpp", this, NegativeLookupFilter::observedFpp)
+        .description("Share of missing hashes the filter failed to reject")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Returns whether the given hash is known not to exist, in which case the storage does not have
+   * to be queried.
+   *
+   * @param hash the hash to check
+   * @return true if the hash definitely does not exist
+   */
+  public boolean isKnownMissing(String hash) {
+    if (negativeLookupConfigurationProperties.cacheEnabled()
+        && missingHashes.getIfPresent(hash) != null) {
+      cacheRejections.increment();
+      return true;
+    }
+    BloomFilter<CharSequence> filter = knownHashes;
+    if (filter != null && !filter.mightContain(hash)) {
+      filterRejections.increment();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Records that the storage did not find the given hash.
+   *
+   * @param hash the missing hash
+   */
+  public void recordMissing(String hash) {
+    BloomFilter<CharSequence> filter = knownHashes;
+    if (filter != null && filter.mightContain(hash)) {
+      falsePositives.increment();
+    }
+    if (negativeLookupConfigurationProperties.cacheEnabled()) {
+      missingHashes.put(hash, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Records that the given hash has been written to the storage.
+   *
+   * @param hash the saved hash
+   */
+  public void recordSaved(String hash) {
+    missingHashes.invalidate(hash);
+    putIfPresent(knownHashes, hash);
+    putIfPresent(rebuildingHashes, hash);
+  }
+
+  /**
+   * Records that the given hash has been deleted. Bloom filters cannot forget a member, so the
+   * hash is only remembered as missing until the next rebuild.
+   *
+   * @param hash the deleted hash
+   */
+  public void recordDeleted(String hash) {
+    if (negativeLookupConfigurationProperties.cacheEnabled()) {
+      missingHashes.put(hash, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Rebuilds the membership filter from every hash in the storage. Saves recorded while the
+   * rebuild is in progress are added to the new filter as well. Until the first rebuild completes
+   * the filter lets every lookup through.
+   *
+   * @param hashes every hash in the storage
+   */
+  public void rebuild(Stream<String> hashes) {
+    if (!negativeLookupConfigurationProperties.filterEnabled()) {
+      return;
+    }
+    BloomFilter<CharSequence> filter = BloomFilter.create(
+        Funnels.stringFunnel(StandardCharsets.UTF_8),
+        negativeLookupConfigurationProperties.expectedInsertions(),
+        negativeLookupConfigurationProperties.falsePositiveProbability());
+    rebuildingHashes = filter;
+    try {
+      hashes.forEach(filter::put);
+      knownHashes = filter;
+      log.info("Rebuilt membership filter with approximately {} hashes",
+          filter.approximateElementCount());
+    } finally {
+      rebuildingHashes = null;
+    }
+  }
+
+  private static void putIfPresent(BloomFilter<CharSequence> filter, String hash) {
+    if (filter != null) {
+      filter.put(hash);
+    }
+  }
+
+  private double approximateSize() {
+    BloomFilter<CharSequence> filter = knownHashes;
+    return filter == null ? 0 : filter.approximateElementCount();
+  }
+
+  private double expectedFpp() {
+    BloomFilter<CharSequence> filter = knownHashes;
+    return filter == null ? 0 : filter.expectedFpp();
+  }
+
+  private double observedFpp() {
+    double missing = falsePositives.count() + filterRejections.count();
+    return missing == 0 ? 0 : falsePositives.count() / missing;
+  }
+}
@@ -0,0 +1,355 @@
+package com.truthful.pinokio.repository.cache;
+
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.util.OffHeapIndex;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Warm tier of the {@link UrlCache}, holding the UTF-8 bytes of hashes and URLs in slabs of direct
+ * memory so that millions of entries neither take heap nor slow down the garbage collector. Every
+ * entry is laid out as
+ *
+ * <pre>
+ * int    size of the entry, this field included
+ * long   expiry in epoch millis, or {@link Long#MIN_VALUE} if there is none
+ * long   epoch millis until which the entry may be served
+ * short  size of the hash
+ * byte   1 if the entry was read since its slab was last reclaimed
+ * bytes  hash, UTF-8
+ * bytes  URL, UTF-8, up to the end of the entry
+ * </pre>
+ *
+ * <p>The cache is split in segments, each with its own lock, ring of slabs and {@link OffHeapIndex}
+ * from hashes to entries. Entries are appended to the current slab of their segment. Once the ring
+ * is full, the oldest slab is reclaimed before it is written again: the entries read since its
+ * last reclaim get a second chance and are moved to its start, and the others are evicted. Slabs
+ * are allocated the first time they are written, so the cache only takes the memory it needs.
+ */
+final class OffHeapUrlCache {
+
+  private static final int ALIGNMENT = 8;
+  private static final long NO_EXPIRY = Long.MIN_VALUE;
+  private static final int EXPIRES_AT_OFFSET = Integer.BYTES;
+  private static final int CACHED_UNTIL_OFFSET = EXPIRES_AT_OFFSET + Long.BYTES;
+  private static final int KEY_SIZE_OFFSET = CACHED_UNTIL_OFFSET + Long.BYTES;
+  private static final int ACCESSED_OFFSET = KEY_SIZE_OFFSET + Short.BYTES;
+  private static final int HEADER_SIZE = ACCESSED_OFFSET + Byte.BYTES;
+  private static final int MAX_SEGMENTS = 16;
+  private static final int EXPECTED_ENTRY_SIZE = 128;
+
+  private final Segment[] segments;
+  private final int slabSize;
+  private final Clock clock;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates a cache of at most the given size, made of slabs of the given size. Entries larger
+   * than a slab are not cached.
+   */
+  OffHeapUrlCache(long maximumSize, int slabSize, Clock clock) {
+    this.slabSize = slabSize & -ALIGNMENT;
+    this.clock = clock;
+    if (this.slabSize < HEADER_SIZE || this.slabSize > maximumSize) {
+      throw new IllegalArgumentException("The slab size must be between " + HEADER_SIZE
+          + " bytes and the maximum size of the cache");
+    }
+    long slabs = maximumSize / this.slabSize;
+    int segmentCount = Integer.highestOneBit((int) Math.min(slabs, MAX_SEGMENTS));
+    long slabsPerSegment = slabs / segmentCount;
+    // Entries are addressed by an int counting ALIGNMENT bytes
+    if (slabsPerSegment * this.slabSize / ALIGNMENT > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The maximum size of the cache is too large");
+    }
+    this.segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment((int) slabsPerSegment);
+    }
+  }
+
+  /**
+   * Returns the cached entry for the given hash, unless it has to be read from the storage again.
+   *
+   * @param hash the hash to look up
+   */
+  Optional<CachedUrl> get(String hash) {
+    byte[] key = hash.getBytes(StandardCharsets.UTF_8);
+    long fingerprint = OffHeapIndex.fingerprint(key);
+    CachedUrl cachedUrl = segmentFor(fingerprint).get(hash, key, fingerprint);
+    (cachedUrl == null ? misses : hits).increment();
+    return Optional.ofNullable(cachedUrl);
+  }
+
+  /**
+   * Caches the given entry, replacing any entry of the same hash. An entry the cache already holds
+   * with the same URL is only updated in place.
+   */
+  void put(CachedUrl cachedUrl) {
+    UrlEntry urlEntry = cachedUrl.urlEntry();
+    byte[] key = urlEntry.hash().getBytes(StandardCharsets.UTF_8);
+    byte[] url = urlEntry.originalUrl().getBytes(StandardCharsets.UTF_8);
+    if (key.length > Short.MAX_VALUE || align(HEADER_SIZE + key.length + url.length) > slabSize) {
+      return;
+    }
+    long fingerprint = OffHeapIndex.fingerprint(key);
+    long expiresAt =
+        urlEntry.expiresAt() == null ? NO_EXPIRY : urlEntry.expiresAt().toEpochMilli();
+    segmentFor(fingerprint).put(key, url, fingerprint, expiresAt, cachedUrl.cachedUntil());
+  }
+
+  void invalidate(String hash) {
+    byte[] key = hash.getBytes(StandardCharsets.UTF_8);
+    long fingerprint = OffHeapIndex.fingerprint(key);
+    segmentFor(fingerprint).invalidate(key, fingerprint);
+  }
+
+  /**
+   * Returns the number of entries, some of which may no longer be served.
+   */
+  long size() {
+    return sum(segment -> segment.index.size());
+  }
+
+  /**
+   * Returns the bytes of the slabs taken by entries.
+   */
+  long usedBytes() {
+    return sum(segment -> segment.usedBytes);
+  }
+
+  /**
+   * Returns the direct memory allocated for slabs and indexes.
+   */
+  long allocatedBytes() {
+    return sum(segment -> (long) segment.allocatedSlabs * slabSize + segment.index.memoryUsage());
+  }
+
+  long maximumSize() {
+    return (long) segments.length * segments[0].slabs.length * slabSize;
+  }
+
+  long hitCount() {
+    return hits.sum();
+  }
+
+  long missCount() {
+    return misses.sum();
+  }
+
+  long evictionCount() {
+    return evictions.sum();
+  }
+
+  private Segment segmentFor(long fingerprint) {
+    return segments[(int) (fingerprint >>> 32) & (segments.length - 1)];
+  }
+
+  private long sum(ToLongFunction<Segment> metric) {
+    long sum = 0;
+    for (Segment segment : segments) {
+      segment.lock.lock();
+      try {
+        sum += metric.applyAsLong(segment);
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return sum;
+  }
+
+  private int address(int slabNumber, int offset) {
+    return (int) (((long) slabNumber * slabSize + offset) / ALIGNMENT);
+  }
+
+  private int slabOf(int address) {
+    return (int) ((long) address * ALIGNMENT / slabSize);
+  }
+
+  private int offsetOf(int address) {
+    return (int) ((long) address * ALIGNMENT % slabSize);
+  }
+
+  private static int align(int size) {
+    return (size + ALIGNMENT - 1) & -ALIGNMENT;
+  }
+
+  private final class Segment {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer[] slabs;
+    private final int[] slabEnds;
+    private final OffHeapIndex index;
+    private int allocatedSlabs;
+    private int writeSlab;
+    private int writeOffset;
+    private long usedBytes;
+
+    private Segment(int slabCount) {
+      this.slabs = new ByteBuffer[slabCount];
+      this.slabEnds = new int[slabCount];
+      this.index = new OffHeapIndex(slabSize / EXPECTED_ENTRY_SIZE);
+    }
+
+    private CachedUrl get(String hash, byte[] key, long fingerprint) {
+      lock.lock();
+      try {
+        int address = index.get(fingerprint, matching(key));
+        if (address < 0) {
+          return null;
+        }
+        ByteBuffer slab = slabs[slabOf(address)];
+        int offset = offsetOf(address);
+        long cachedUntil = slab.getLong(offset + CACHED_UNTIL_OFFSET);
+        if (cachedUntil <= clock.millis()) {
+          evict(fingerprint, address);
+          return null;
+        }
+        slab.put(offset + ACCESSED_OFFSET, (byte) 1);
+        byte[] url = new byte[slab.getInt(offset) - HEADER_SIZE - key.length];
+        slab.get(offset + HEADER_SIZE + key.length, url);
+        long expiresAt = slab.getLong(offset + EXPIRES_AT_OFFSET);
+        return new CachedUrl(
+            new UrlEntry(hash, new String(url, StandardCharsets.UTF_8),
+                expiresAt == NO_EXPIRY ? null : Instant.ofEpochMilli(expiresAt)),
+            cachedUntil);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void put(byte[] key, byte[] url, long fingerprint, long expiresAt, long cachedUntil) {
+      int length = HEADER_SIZE + key.length + url.length;
+      lock.lock();
+      try {
+        int existing = index.get(fingerprint, matching(key));
+        if (existing >= 0) {
+          ByteBuffer slab = slabs[slabOf(existing)];
+          int offset = offsetOf(existing);
+          if (slab.getInt(offset) == length && slab.slice(offset + HEADER_SIZE + key.length,
+              url.length).equals(ByteBuffer.wrap(url))) {
+            slab.putLong(offset + EXPIRES_AT_OFFSET, expiresAt)
+                .putLong(offset + CACHED_UNTIL_OFFSET, cachedUntil);
+            return;
+          }
+          index.remove(fingerprint, candidate -> candidate == existing);
+          usedBytes -= align(slab.getInt(offset));
+        }
+        int size = align(length);
+        reserve(size);
+        slabs[writeSlab].position(writeOffset)
+            .putInt(length)
+            .putLong(expiresAt)
+            .putLong(cachedUntil)
+            .putShort((short) key.length)
+            .put((byte) 0)
+            .put(key)
+            .put(url);
+        index.put(fingerprint, address(writeSlab, writeOffset), candidate -> false);
+        writeOffset += size;
+        usedBytes += size;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void invalidate(byte[] key, long fingerprint) {
+      lock.lock();
+      try {
+        int address = index.remove(fingerprint, matching(key));
+        if (address >= 0) {
+          usedBytes -= align(slabs[slabOf(address)].getInt(offsetOf(address)));
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Moves the write position to the first place with room for an entry of the given size,
+     * allocating or reclaiming the next slabs of the ring as needed. Every reclaim takes the
+     * second chance away from the entries it keeps, so a whole turn of the ring always frees one.
+     */
+    private void reserve(int size) {
+      if (allocatedSlabs == 0) {
+        allocate(0);
+      }
+      while (writeOffset + size > slabSize) {
+        slabEnds[writeSlab] = writeOffset;
+        writeSlab = (writeSlab + 1) % slabs.length;
+        if (slabs[writeSlab] == null) {
+          allocate(writeSlab);
+          writeOffset = 0;
+        } else {
+          writeOffset = reclaim(writeSlab);
+        }
+      }
+    }
+
+    /**
+     * Evicts the entries of the given slab that were not read since its last reclaim, or that may
+     * no longer be served, and moves the others to its start.
+     *
+     * @return the end of the entries kept
+     */
+    private int reclaim(int slabNumber) {
+      ByteBuffer slab = slabs[slabNumber];
+      long now = clock.millis();
+      int kept = 0;
+      for (int offset = 0; offset < slabEnds[slabNumber]; ) {
+        int length = slab.getInt(offset);
+        int size = align(length);
+        int address = address(slabNumber, offset);
+        byte[] key = new byte[slab.getShort(offset + KEY_SIZE_OFFSET)];
+        slab.get(offset + HEADER_SIZE, key);
+        long fingerprint = OffHeapIndex.fingerprint(key);
+        IntPredicate isThis = candidate -> candidate == address;
+        if (index.get(fingerprint, isThis) == address) {
+          if (slab.get(offset + ACCESSED_OFFSET) != 0
+              && slab.getLong(offset + CACHED_UNTIL_OFFSET) > now) {
+            if (kept != offset) {
+              byte[] entry = new byte[length];
+              slab.get(offset, entry);
+              slab.put(kept, entry);
+              index.put(fingerprint, address(slabNumber, kept), isThis);
+            }
+            slab.put(kept + ACCESSED_OFFSET, (byte) 0);
+            kept += size;
+          } else {
+            evict(fingerprint, address);
+          }
+        }
+        offset += size;
+      }
+      return kept;
+    }
+
+    private void evict(long fingerprint, int address) {
+      index.remove(fingerprint, candidate -> candidate == address);
+      usedBytes -= align(slabs[slabOf(address)].getInt(offsetOf(address)));
+      evictions.increment();
+    }
+
+    private void allocate(int slabNumber) {
+      slabs[slabNumber] = ByteBuffer.allocateDirect(slabSize);
+      allocatedSlabs++;
+    }
+
+    private IntPredicate matching(byte[] key) {
+      return address -> {
+        ByteBuffer slab = slabs[slabOf(address)];
+        int offset = offsetOf(address);
+        return slab.getShort(offset + KEY_SIZE_OFFSET) == key.length
+            && slab.slice(offset + HEADER_SIZE, key.length).equals(ByteBuffer.wrap(key));
+      };
+    }
+  }
+}
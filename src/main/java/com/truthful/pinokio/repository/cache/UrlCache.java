@@ -0,0 +1,282 @@
+package com.truthful.pinokio.repository.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.truthful.pinokio.config.model.CacheConfigurationProperties;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded in-process cache of hash to original URL lookups, made of two tiers sized in bytes. The
+ * hot tier is a small on-heap cache whose W-TinyLFU policy keeps the most frequently read entries.
+ * The entries it evicts for room move down to the warm tier, a much larger {@link OffHeapUrlCache}
+ * in direct memory, and warm hits are promoted back to the hot tier. Entries are evicted by size,
+ * are read from the storage again once the configured TTL has passed and never outlive the
+ * {@code ExpiresAt} of the stored item.
+ */
+@Component
+public class UrlCache {
+
+  private static final String HOT_CACHE_NAME = "url.cache.hot";
+  private static final String WARM_CACHE_NAME = "url.cache.warm";
+  // Rough heap taken by a hot entry besides the characters of its hash and URL: the cache node,
+  // the CachedUrl, the UrlEntry and its Instant, and the two strings and their arrays
+  private static final int HOT_ENTRY_OVERHEAD = 200;
+
+  private final Cache<String, CachedUrl> hotTier;
+  private final OffHeapUrlCache warmTier;
+  private final Clock clock;
+  private final long ttlMillis;
+  private final boolean enabled;
+
+  public UrlCache(
+      CacheConfigurationProperties cacheConfigurationProperties,
+      Clock clock,
+      MeterRegistry meterRegistry) {
+    this.clock = clock;
+    this.ttlMillis = cacheConfigurationProperties.ttl().toMillis();
+    this.enabled = cacheConfigurationProperties.enabled();
+    long warmMaximumSize = cacheConfigurationProperties.warmMaximumSize().toBytes();
+    this.warmTier = enabled && warmMaximumSize > 0
+        ? new OffHeapUrlCache(warmMaximumSize,
+            Math.toIntExact(cacheConfigurationProperties.warmSlabSize().toBytes()), clock)
+        : null;
+    this.hotTier =
+        Caffeine.newBuilder()
+            .maximumWeight(cacheConfigurationProperties.hotMaximumSize().toBytes())
+            .weigher((String hash, CachedUrl cachedUrl) -> HOT_ENTRY_OVERHEAD + hash.length()
+                + cachedUrl.urlEntry().originalUrl().length())
+            .expireAfter(new CachedUrlExpiry(clock))
+            .evictionListener(this::demote)
+            // Evicts and demotes on the writing thread rather than on the common pool
+            .executor(Runnable::run)
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, hotTier, HOT_CACHE_NAME);
+    registerTierMetrics(meterRegistry, cacheConfigurationProperties);
+  }
+
+  /**
+   * Returns the cached original URL for the given hash, promoting it to the hot tier if it was
+   * found in the warm one.
+   *
+   * @param hash the hash to look up
+   * @return the original URL if it is cached and not yet expired
+   */
+  public Optional<String> get(String hash) {
+    return getEntry(hash).map(UrlEntry::originalUrl);
+  }
+
+  /**
+   * Returns the cached entry for the given hash, expiry included, promoting it to the hot tier if
+   * it was found in the warm one.
+   *
+   * @param hash the hash to look up
+   * @return the entry if it is cached and not yet expired
+   */
+  public Optional<UrlEntry> getEntry(String hash) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+    CachedUrl cachedUrl = hotTier.getIfPresent(hash);
+    if (cachedUrl == null && warmTier != null) {
+      cachedUrl = warmTier.get(hash).orElse(null);
+      if (cachedUrl != null) {
+        hotTier.put(hash, cachedUrl);
+      }
+    }
+    // The hot tier expires entries on its own ticker, so the clock has the final word
+    return Optional.ofNullable(cachedUrl)
+        .filter(cached -> cached.cachedUntil() > clock.millis())
+        .map(CachedUrl::urlEntry);
+  }
+
+  /**
+   * Caches the given entry in the hot tier unless it has already expired. It is served until the
+   * TTL has passed or it expires, whichever comes first.
+   *
+   * @param urlEntry the entry to cache
+   */
+  public void put(UrlEntry urlEntry) {
+    if (!enabled || isExpired(urlEntry)) {
+      return;
+    }
+    long cachedUntil = clock.millis() + ttlMillis;
+    if (urlEntry.expiresAt() != null) {
+      cachedUntil = Math.min(cachedUntil, urlEntry.expiresAt().toEpochMilli());
+    }
+    hotTier.put(urlEntry.hash(), new CachedUrl(urlEntry, cachedUntil));
+  }
+
+  /**
+   * Returns whether the hot tier holds the given hash and may serve it until at least the given
+   * time, without counting as a read of the entry.
+   *
+   * @param hash the hash to look up
+   * @param epochMillis the time the entry should still be served at
+   * @return whether a lookup at that time would still be a hot hit
+   */
+  public boolean isCachedUntil(String hash, long epochMillis) {
+    CachedUrl cachedUrl = hotTier.policy().getIfPresentQuietly(hash);
+    return cachedUrl != null && cachedUrl.cachedUntil() >= epochMillis;
+  }
+
+  public void invalidate(String hash) {
+    hotTier.invalidate(hash);
+    if (warmTier != null) {
+      warmTier.invalidate(hash);
+    }
+  }
+
+  /**
+   * Writes the hottest entries of the hot tier that may still be served to a snapshot file,
+   * replacing the previous one.
+   *
+   * @param file the snapshot file
+   * @param maximumEntries the most entries to write
+   * @return the number of entries written
+   */
+  public int writeSnapshot(Path file, int maximumEntries) throws IOException {
+    long now = clock.millis();
+    List<CachedUrl> hottest = hotTier.policy().eviction()
+        .map(eviction -> eviction.hottest(maximumEntries).values().stream()
+            .filter(cachedUrl -> cachedUrl.cachedUntil() > now)
+            .toList())
+        .orElse(List.of());
+    UrlCacheSnapshot.write(file, hottest);
+    return hottest.size();
+  }
+
+  /**
+   * Loads the entries of a snapshot file into the hot tier, leaving out those that may no longer
+   * be served. Each entry keeps the time until which it may be served, so the TTL is not reset by
+   * a restart.
+   *
+   * @param file the snapshot file
+   * @return the number of entries loaded
+   * @throws IOException if the file cannot be read or is not a complete snapshot
+   */
+  public int loadSnapshot(Path file) throws IOException {
+    if (!enabled) {
+      return 0;
+    }
+    List<CachedUrl> entries = UrlCacheSnapshot.read(file);
+    long now = clock.millis();
+    int loaded = 0;
+    // The hottest entries come first and are loaded last, once the colder ones made room
+    for (CachedUrl cachedUrl : entries.reversed()) {
+      if (cachedUrl.cachedUntil() > now) {
+        hotTier.put(cachedUrl.urlEntry().hash(), cachedUrl);
+        loaded++;
+      }
+    }
+    return loaded;
+  }
+
+  private void demote(String hash, CachedUrl cachedUrl, RemovalCause cause) {
+    if (cause == RemovalCause.SIZE && warmTier != null && cachedUrl != null) {
+      warmTier.put(cachedUrl);
+    }
+  }
+
+  private boolean isExpired(UrlEntry urlEntry) {
+    return urlEntry.expiresAt() != null && !urlEntry.expiresAt().isAfter(clock.instant());
+  }
+
+  private void registerTierMetrics(
+      MeterRegistry meterRegistry, CacheConfigurationProperties cacheConfigurationProperties) {
+    Gauge.builder("url.cache.used", hotTier, cache -> cache.policy().eviction()
+            .map(eviction -> eviction.weightedSize().orElse(0))
+            .orElse(0L))
+        .description("Estimated memory taken by the entries of the tier")
+        .tag("tier", "hot")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("url.cache.max", cacheConfigurationProperties.hotMaximumSize()::toBytes)
+        .description("Memory the entries of the tier may take")
+        .tag("tier", "hot")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("url.cache.hit.ratio", hotTier, cache -> cache.stats().hitRate())
+        .description("Share of the lookups reaching the tier that it answered")
+        .tag("tier", "hot")
+        .register(meterRegistry);
+    if (warmTier == null) {
+      return;
+    }
+    Gauge.builder("url.cache.used", warmTier, OffHeapUrlCache::usedBytes)
+        .description("Estimated memory taken by the entries of the tier")
+        .tag("tier", "warm")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("url.cache.max", warmTier, OffHeapUrlCache::maximumSize)
+        .description("Memory the entries of the tier may take")
+        .tag("tier", "warm")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("url.cache.allocated", warmTier, OffHeapUrlCache::allocatedBytes)
+        .description("Direct memory allocated for the slabs and indexes of the tier")
+        .tag("tier", "warm")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("url.cache.hit.ratio", warmTier, UrlCache::hitRatio)
+        .description("Share of the lookups reaching the tier that it answered")
+        .tag("tier", "warm")
+        .register(meterRegistry);
+    // Same meters as the hot tier gets from CaffeineCacheMetrics
+    FunctionCounter.builder("cache.gets", warmTier, OffHeapUrlCache::hitCount)
+        .tags("cache", WARM_CACHE_NAME, "result", "hit")
+        .description("The number of times cache lookup methods have returned a cached value.")
+        .register(meterRegistry);
+    FunctionCounter.builder("cache.gets", warmTier, OffHeapUrlCache::missCount)
+        .tags("cache", WARM_CACHE_NAME, "result", "miss")
+        .description("The number of times cache lookup methods have returned an uncached value.")
+        .register(meterRegistry);
+    FunctionCounter.builder("cache.evictions", warmTier, OffHeapUrlCache::evictionCount)
+        .tag("cache", WARM_CACHE_NAME)
+        .description("The number of times the cache was evicted.")
+        .register(meterRegistry);
+    Gauge.builder("cache.size", warmTier, OffHeapUrlCache::size)
+        .tag("cache", WARM_CACHE_NAME)
+        .description("The number of entries in this cache.")
+        .register(meterRegistry);
+  }
+
+  private static double hitRatio(OffHeapUrlCache warmTier) {
+    long hits = warmTier.hitCount();
+    long lookups = hits + warmTier.missCount();
+    return lookups == 0 ? 1.0 : (double) hits / lookups;
+  }
+
+  private record CachedUrlExpiry(Clock clock) implements Expiry<String, CachedUrl> {
+
+    @Override
+    public long expireAfterCreate(String hash, CachedUrl cachedUrl, long currentTime) {
+      return TimeUnit.MILLISECONDS.toNanos(Math.max(0, cachedUrl.cachedUntil() - clock.millis()));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String hash, CachedUrl cachedUrl, long currentTime, long currentDuration) {
+      return expireAfterCreate(hash, cachedUrl, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String hash, CachedUrl cachedUrl, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
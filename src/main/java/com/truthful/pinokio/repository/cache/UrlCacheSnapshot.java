@@ -0,0 +1,111 @@
+package com.truthful.pinokio.repository.cache;
+
+import com.truthful.pinokio.repository.model.UrlEntry;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of {@link CachedUrl entries} of the {@link UrlCache}, laid out as
+ *
+ * <pre>
+ * int    magic number
+ * int    number of entries
+ * then for every entry
+ *   long   expiry in epoch millis, or {@link Long#MIN_VALUE} if there is none
+ *   long   epoch millis until which the entry may be served
+ *   short  size of the hash, then the hash in UTF-8
+ *   int    size of the URL, then the URL in UTF-8
+ * long   CRC32C of everything before it
+ * </pre>
+ *
+ * <p>A snapshot is written next to its file and moved over it once complete, so a process stopped
+ * while writing leaves the previous snapshot intact.
+ */
+final class UrlCacheSnapshot {
+
+  private static final int MAGIC = 0x50554331;
+  private static final long NO_EXPIRY = Long.MIN_VALUE;
+
+  private UrlCacheSnapshot() {
+  }
+
+  static void write(Path file, Collection<CachedUrl> entries) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try {
+      CheckedOutputStream checked = new CheckedOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporary)), new CRC32C());
+      try (DataOutputStream output = new DataOutputStream(checked)) {
+        output.writeInt(MAGIC);
+        output.writeInt(entries.size());
+        for (CachedUrl cachedUrl : entries) {
+          UrlEntry urlEntry = cachedUrl.urlEntry();
+          output.writeLong(
+              urlEntry.expiresAt() == null ? NO_EXPIRY : urlEntry.expiresAt().toEpochMilli());
+          output.writeLong(cachedUrl.cachedUntil());
+          byte[] hash = urlEntry.hash().getBytes(StandardCharsets.UTF_8);
+          output.writeShort(hash.length);
+          output.write(hash);
+          byte[] url = urlEntry.originalUrl().getBytes(StandardCharsets.UTF_8);
+          output.writeInt(url.length);
+          output.write(url);
+        }
+        output.writeLong(checked.getChecksum().getValue());
+      }
+      Files.move(temporary, file,
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Reads the entries of a snapshot, in the order they were written.
+   *
+   * @throws IOException if the file cannot be read or is not a complete snapshot
+   */
+  static List<CachedUrl> read(Path file) throws IOException {
+    CheckedInputStream checked = new CheckedInputStream(
+        new BufferedInputStream(Files.newInputStream(file)), new CRC32C());
+    try (DataInputStream input = new DataInputStream(checked)) {
+      if (input.readInt() != MAGIC) {
+        throw new IOException("Not a URL cache snapshot: " + file);
+      }
+      int size = input.readInt();
+      List<CachedUrl> entries = new ArrayList<>(Math.min(Math.max(size, 0), 1 << 16));
+      for (int i = 0; i < size; i++) {
+        long expiresAt = input.readLong();
+        long cachedUntil = input.readLong();
+        String hash = new String(input.readNBytes(input.readUnsignedShort()),
+            StandardCharsets.UTF_8);
+        int urlSize = input.readInt();
+        if (urlSize < 0) {
+          throw new IOException("Corrupted URL cache snapshot: " + file);
+        }
+        String url = new String(input.readNBytes(urlSize), StandardCharsets.UTF_8);
+        Instant expiry = expiresAt == NO_EXPIRY ? null : Instant.ofEpochMilli(expiresAt);
+        entries.add(new CachedUrl(new UrlEntry(hash, url, expiry), cachedUntil));
+      }
+      long checksum = checked.getChecksum().getValue();
+      if (input.readLong() != checksum) {
+        throw new IOException("Corrupted URL cache snapshot: " + file);
+      }
+      return entries;
+    }
+  }
+}
@@ -0,0 +1,582 @@
+package com.truthful.pinokio.repository.local;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.soumakis.control.Try;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.ConditionalOnStorageType;
+import com.truthful.pinokio.config.model.StorageConfigurationProperties;
+import com.truthful.pinokio.config.model.StorageConfigurationProperties.LocalStoreProperties;
+import com.truthful.pinokio.config.model.StorageType;
+import com.truthful.pinokio.repository.ClickCountStore;
+import com.truthful.pinokio.repository.IdLeaseStore;
+import com.truthful.pinokio.repository.UrlStore;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.OffHeapIndex;
+import com.truthful.pinokio.util.RequestLogger;
+import com.truthful.pinokio.util.RetryUtil;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+
+/**
+ * {@link UrlStore} embedded in this node, for single-node deployments without DynamoDB. Every
+ * write is appended to a memory-mapped {@link MappedLog}, and an {@link OffHeapIndex} maps every
+ * hash to its latest record, so a lookup is a probe of the index and a read of mapped memory, with
+ * no network hop. It also stores the counters of the {@link IdLeaseStore} and the click counts.
+ * Every operation completes on the calling thread, so it ignores the deadline of its request.
+ *
+ * <p>On startup the index is rebuilt by replaying the log, which stops at the first record torn by
+ * a crash. Records made dead by deletes, expiry and newer leases are dropped by a background
+ * compaction, which copies the live records to the log of the next generation while reads and
+ * writes go on, then replays the records written in the meantime and swaps the logs under the
+ * write lock. The new log only replaces the old one once it is complete, so a crash during a
+ * compaction leaves the old log in place.
+ */
+@Repository
+@ConditionalOnStorageType(StorageType.LOCAL)
+@Slf4j
+public class LocalUrlStore implements UrlStore, IdLeaseStore, ClickCountStore {
+
+  private static final String COMPACTING_SUFFIX = ".compacting";
+  private static final Pattern LOG_FILE = Pattern.compile("urls-(\\d+)\\.log");
+
+  private final LocalStoreProperties localStoreProperties;
+  private final RequestLogger requestLogger;
+  private final Clock clock;
+  private final Path directory;
+  private final int logCapacity;
+  private final Timer compactionDuration;
+  private final StampedLock lock = new StampedLock();
+
+  // Guarded by lock
+  private Generation generation;
+  private volatile boolean stopped;
+  private volatile Thread compactor;
+
+  public LocalUrlStore(
+      StorageConfigurationProperties storageConfigurationProperties,
+      RequestLogger requestLogger,
+      Clock clock,
+      MeterRegistry meterRegistry) {
+    this.localStoreProperties = storageConfigurationProperties.local();
+    this.requestLogger = requestLogger;
+    this.clock = clock;
+    this.directory = Path.of(localStoreProperties.directory());
+    long capacity = localStoreProperties.logCapacity().toBytes();
+    if (capacity <= 0 || capacity > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The capacity of the local log must be at most 2GB");
+    }
+    this.logCapacity = (int) capacity;
+    this.compactionDuration = Timer.builder("url.local.compactions")
+        .description("Duration of the compactions of the local log")
+        .register(meterRegistry);
+    Gauge.builder("url.local.log.size", this, store -> store.measure(g -> g.mappedLog.end()))
+        .description("Bytes written to the current local log")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("url.local.log.live", this, store -> store.measure(g -> g.liveBytes))
+        .description("Bytes of the current local log still referenced by the index")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("url.local.index.size", this, store -> store.measure(g -> g.index.size()))
+        .description("Hashes in the local index")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Opens the latest complete log, removing what an interrupted compaction left behind, and
+   * rebuilds the index from it.
+   */
+  @PostConstruct
+  public void start() throws IOException {
+    Files.createDirectories(directory);
+    long latest = -1;
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.toList()) {
+        if (file.getFileName().toString().endsWith(COMPACTING_SUFFIX)) {
+          Files.delete(file);
+        } else {
+          latest = Math.max(latest, generationOf(file));
+        }
+      }
+    }
+    long number = Math.max(latest, 0);
+    for (long older = 0; older < number; older++) {
+      Files.deleteIfExists(logPath(older));
+    }
+
+    Generation recovered = new Generation(number, MappedLog.open(logPath(number), logCapacity),
+        new OffHeapIndex(localStoreProperties.indexCapacity()));
+    int end = recovered.mappedLog.recover(recovered::apply);
+    long stamp = lock.writeLock();
+    try {
+      generation = recovered;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    log.info("Recovered {} hashes from {} bytes of {}",
+        recovered.index.size(), end, logPath(number));
+    compactor = Thread.ofVirtual().name("local-store-compactor").start(this::compactPeriodically);
+  }
+
+  @PreDestroy
+  public void stop() throws IOException, InterruptedException {
+    stopped = true;
+    if (compactor != null) {
+      compactor.interrupt();
+      compactor.join();
+    }
+    long stamp = lock.writeLock();
+    try {
+      if (generation != null) {
+        generation.mappedLog.force();
+        generation.mappedLog.close();
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, String> save(
+      String hash,
+      String originalUrl,
+      LocalDateTime createdAt,
+      LocalDateTime expiresAt,
+      Deadline deadline) {
+    long startNanos = System.nanoTime();
+    return complete("local.save", hash, () -> {
+      byte[] key = hash.getBytes(StandardCharsets.UTF_8);
+      Either<UrlShortenerError, String> result;
+      String outcome;
+      long stamp = lock.writeLock();
+      try {
+        int existing = generation.find(key);
+        if (existing < 0) {
+          int offset = generation.write(LogRecord.PUT, hash,
+              expiresAt == null ? LogRecord.NO_EXPIRY : toEpochMilli(expiresAt), originalUrl);
+          if (localStoreProperties.syncWrites()) {
+            generation.mappedLog.force(offset, generation.mappedLog.length(offset));
+          }
+          result = Either.right(hash);
+          outcome = "saved";
+        } else if (isRepeatedSave(generation.mappedLog.read(existing), originalUrl, createdAt)) {
+          result = Either.right(hash);
+          outcome = "repeated_save";
+        } else {
+          result = Either.left(UrlShortenerError.HASH_ALREADY_EXISTS);
+          outcome = "hash_already_exists";
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      requestLogger.logRequest(log, "local.save", hash, startNanos, outcome);
+      return result;
+    });
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String hash, Deadline deadline) {
+    long startNanos = System.nanoTime();
+    return complete("local.get", hash, () -> {
+      UrlEntry urlEntry;
+      long stamp = lock.readLock();
+      try {
+        urlEntry = generation.read(hash);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      requestLogger.logRequest(
+          log, "local.get", hash, startNanos, urlEntry == null ? "not_found" : "found");
+      return urlEntry == null
+          ? Either.left(UrlShortenerError.HASH_NOT_FOUND)
+          : Either.right(urlEntry);
+    });
+  }
+
+  @Override
+  public EitherT<UrlShortenerError, Map<String, UrlEntry>> getUrlEntries(
+      Collection<String> hashes) {
+    return complete("local.batch.get", null, () -> {
+      Map<String, UrlEntry> urlEntries = new HashMap<>();
+      long stamp = lock.readLock();
+      try {
+        for (String hash : hashes) {
+          UrlEntry urlEntry = generation.read(hash);
+          if (urlEntry != null) {
+            urlEntries.put(hash, urlEntry);
+          }
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      return Either.right(urlEntries);
+    });
+  }
+
+  @Override
+  public TryT<Void> delete(String hash, Deadline deadline) {
+    long startNanos = System.nanoTime();
+    Try<Void> result = Try.<Void>of(() -> {
+      byte[] key = hash.getBytes(StandardCharsets.UTF_8);
+      long stamp = lock.writeLock();
+      try {
+        if (generation.find(key) >= 0) {
+          int offset = generation.write(LogRecord.DELETE, hash, LogRecord.NO_EXPIRY, "");
+          if (localStoreProperties.syncWrites()) {
+            generation.mappedLog.force(offset, generation.mappedLog.length(offset));
+          }
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      return null;
+    })
+        .peek(s -> requestLogger.logRequest(log, "local.delete", hash, startNanos, "deleted"))
+        .onFailure(throwable -> requestLogger.logError(log, "local.delete", hash, throwable));
+    return TryT.fromFuture(CompletableFuture.completedFuture(result));
+  }
+
+  /**
+   * Returns the hashes indexed when the stream is created. The keys are read from the log of that
+   * moment, which stays mapped even if a compaction replaces it in the meantime.
+   */
+  @Override
+  public Stream<String> scanHashes() {
+    MappedLog snapshot;
+    IntStream.Builder offsets = IntStream.builder();
+    long stamp = lock.readLock();
+    try {
+      snapshot = generation.mappedLog;
+      generation.index.forEach(offsets::add);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+    return Arrays.stream(offsets.build().toArray()).mapToObj(snapshot::readKey);
+  }
+
+  /**
+   * Returns no entries. The log does not record when entries were created, and lookups are served
+   * from the mapped log without any remote call, so there is nothing worth warming up for.
+   */
+  @Override
+  public Stream<UrlEntry> scanCreatedSince(Instant since, int segment, int totalSegments) {
+    return Stream.empty();
+  }
+
+  /**
+   * Leases a range of ids from the counter stored under {@code counterKey}. The lease is forced to
+   * the disk whatever {@code syncWrites} says, so that no range is leased twice even if the host
+   * crashes.
+   */
+  @Override
+  public long leaseIds(String counterKey, long size) {
+    long upperBound;
+    long stamp = lock.writeLock();
+    try {
+      Integer current = generation.leases.get(counterKey);
+      upperBound = (current == null ? 0 : generation.mappedLog.read(current).value()) + size;
+      int offset = generation.write(LogRecord.LEASE, counterKey, upperBound, "");
+      generation.mappedLog.force(offset, generation.mappedLog.length(offset));
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    log.info("Leased ids [{}, {}) from the local store", upperBound - size, upperBound);
+    return upperBound;
+  }
+
+  /**
+   * Records the new click count of the hash, dropping the clicks if it is no longer stored. Like
+   * the saves, the record is only forced to the disk with {@code syncWrites}. The flush token is
+   * ignored, there is no remote call here whose outcome a timeout would leave unknown.
+   */
+  @Override
+  public void addClicks(String hash, long clicks, String flushToken) {
+    long stamp = lock.writeLock();
+    try {
+      if (generation.find(hash.getBytes(StandardCharsets.UTF_8)) < 0) {
+        return;
+      }
+      int offset = generation.write(LogRecord.CLICKS, hash, generation.clicks(hash) + clicks, "");
+      if (localStoreProperties.syncWrites()) {
+        generation.mappedLog.force(offset, generation.mappedLog.length(offset));
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public long getClicks(String hash) {
+    long stamp = lock.readLock();
+    try {
+      return generation.clicks(hash);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Rewrites the current log without its dead records if they make up the configured share of it.
+   *
+   * @return whether the log was compacted
+   */
+  boolean compact() throws IOException {
+    Generation source;
+    int copyEnd;
+    long stamp = lock.readLock();
+    try {
+      source = generation;
+      copyEnd = source.mappedLog.end();
+      long garbage = copyEnd - source.liveBytes;
+      if (garbage <= 0 || garbage < localStoreProperties.compactionGarbageRatio() * copyEnd) {
+        return false;
+      }
+    } finally {
+      lock.unlockRead(stamp);
+    }
+
+    long startNanos = System.nanoTime();
+    long number = source.number + 1;
+    Path compactingPath = compactingPath(number);
+    Generation target = new Generation(number, MappedLog.open(compactingPath, logCapacity),
+        new OffHeapIndex(Math.max(localStoreProperties.indexCapacity(), source.index.size())));
+    try {
+      long nowMillis = clock.millis();
+      // Records before copyEnd are never modified, only the index is read under the lock
+      for (int offset = 0; offset < copyEnd; ) {
+        if (stopped) {
+          throw new IllegalStateException("The store is stopping");
+        }
+        LogRecord record = source.mappedLog.read(offset);
+        if (isLive(source, record, offset) && !isExpired(record, nowMillis)) {
+          target.write(record.type(), record.key(), record.value(), record.url());
+        }
+        offset += record.length();
+      }
+
+      stamp = lock.writeLock();
+      try {
+        for (int offset = copyEnd; offset < source.mappedLog.end(); ) {
+          LogRecord record = source.mappedLog.read(offset);
+          target.write(record.type(), record.key(), record.value(), record.url());
+          offset += record.length();
+        }
+        target.mappedLog.force();
+        Files.move(compactingPath, logPath(number), StandardCopyOption.ATOMIC_MOVE);
+        generation = target;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    } catch (IOException | RuntimeException e) {
+      target.mappedLog.close();
+      Files.deleteIfExists(compactingPath);
+      throw e;
+    }
+
+    source.mappedLog.close();
+    Files.deleteIfExists(logPath(source.number));
+    compactionDuration.record(Duration.ofNanos(System.nanoTime() - startNanos));
+    log.info("Compacted the local log from {} to {} bytes", copyEnd, target.mappedLog.end());
+    return true;
+  }
+
+  private void compactPeriodically() {
+    try {
+      while (!stopped) {
+        Thread.sleep(localStoreProperties.compactionInterval());
+        try {
+          compact();
+        } catch (IOException | RuntimeException e) {
+          if (!stopped) {
+            log.error("Failed to compact the local log, retrying at the next interval", e);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean isLive(Generation source, LogRecord record, int offset) {
+    long stamp = lock.readLock();
+    try {
+      return switch (record.type()) {
+        case LogRecord.PUT ->
+            source.find(record.key().getBytes(StandardCharsets.UTF_8)) == offset;
+        case LogRecord.LEASE -> Integer.valueOf(offset).equals(source.leases.get(record.key()));
+        case LogRecord.CLICKS -> Integer.valueOf(offset).equals(source.clicks.get(record.key()))
+            && source.find(record.key().getBytes(StandardCharsets.UTF_8)) >= 0;
+        default -> false;
+      };
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private long measure(ToLongFunction<Generation> metric) {
+    long stamp = lock.readLock();
+    try {
+      return generation == null ? 0 : metric.applyAsLong(generation);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private <T> EitherT<UrlShortenerError, T> complete(
+      String event, String hash, Supplier<Either<UrlShortenerError, T>> operation) {
+    Either<UrlShortenerError, T> result;
+    try {
+      result = operation.get();
+    } catch (RuntimeException e) {
+      requestLogger.logError(log, event, hash, e);
+      result = Either.left(RetryUtil.toStorageError(e));
+    }
+    return EitherT.fromFuture(CompletableFuture.completedFuture(result));
+  }
+
+  private Path logPath(long number) {
+    return directory.resolve("urls-" + number + ".log");
+  }
+
+  private Path compactingPath(long number) {
+    return directory.resolve("urls-" + number + ".log" + COMPACTING_SUFFIX);
+  }
+
+  private static long generationOf(Path file) {
+    Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+    return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+  }
+
+  private static boolean isRepeatedSave(
+      LogRecord existing, String originalUrl, LocalDateTime createdAt) {
+    return existing.url().equals(originalUrl)
+        && (existing.value() == LogRecord.NO_EXPIRY || existing.value() > toEpochMilli(createdAt));
+  }
+
+  private static boolean isExpired(LogRecord record, long nowMillis) {
+    return record.type() == LogRecord.PUT
+        && record.value() != LogRecord.NO_EXPIRY
+        && record.value() <= nowMillis;
+  }
+
+  private static long toEpochMilli(LocalDateTime dateTime) {
+    return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+  }
+
+  /**
+   * A log together with the index and counters built from it.
+   */
+  private static final class Generation {
+
+    private final long number;
+    private final MappedLog mappedLog;
+    private final OffHeapIndex index;
+    private final Map<String, Integer> leases = new HashMap<>();
+    private final Map<String, Integer> clicks = new HashMap<>();
+    private long liveBytes;
+
+    private Generation(long number, MappedLog mappedLog, OffHeapIndex index) {
+      this.number = number;
+      this.mappedLog = mappedLog;
+      this.index = index;
+    }
+
+    int find(byte[] key) {
+      return index.get(OffHeapIndex.fingerprint(key), matching(key));
+    }
+
+    UrlEntry read(String hash) {
+      int offset = find(hash.getBytes(StandardCharsets.UTF_8));
+      if (offset < 0) {
+        return null;
+      }
+      LogRecord record = mappedLog.read(offset);
+      return new UrlEntry(hash, record.url(),
+          record.value() == LogRecord.NO_EXPIRY ? null : Instant.ofEpochMilli(record.value()));
+    }
+
+    long clicks(String hash) {
+      Integer offset = clicks.get(hash);
+      return offset == null ? 0 : mappedLog.read(offset).value();
+    }
+
+    int write(byte type, String key, long value, String url) {
+      int offset = mappedLog.append(type, key, value, url);
+      apply(new LogRecord(type, key, value, url, mappedLog.length(offset)), offset);
+      return offset;
+    }
+
+    void apply(LogRecord record, int offset) {
+      byte[] key = record.key().getBytes(StandardCharsets.UTF_8);
+      switch (record.type()) {
+        case LogRecord.PUT -> {
+          release(index.put(OffHeapIndex.fingerprint(key), offset, matching(key)));
+          liveBytes += record.length();
+        }
+        case LogRecord.DELETE -> {
+          release(index.remove(OffHeapIndex.fingerprint(key), matching(key)));
+          Integer clicked = clicks.remove(record.key());
+          if (clicked != null) {
+            release(clicked);
+          }
+        }
+        case LogRecord.LEASE -> {
+          Integer previous = leases.put(record.key(), offset);
+          if (previous != null) {
+            release(previous);
+          }
+          liveBytes += record.length();
+        }
+        case LogRecord.CLICKS -> {
+          Integer previous = clicks.put(record.key(), offset);
+          if (previous != null) {
+            release(previous);
+          }
+          liveBytes += record.length();
+        }
+        default -> throw new IllegalStateException("Unknown record type " + record.type());
+      }
+    }
+
+    private void release(int offset) {
+      if (offset >= 0) {
+        liveBytes -= mappedLog.length(offset);
+      }
+    }
+
+    private IntPredicate matching(byte[] key) {
+      return offset -> mappedLog.hasKey(offset, key);
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package com.truthful.pinokio.repository.local;
+
+/**
+ * A record of the {@link MappedLog}.
+ *
+ * @param type {@link #PUT}, {@link #DELETE}, {@link #LEASE} or {@link #CLICKS}
+ * @param key the hash of a URL or the key of a counter
+ * @param value the expiry of a {@link #PUT} in epoch millis, or {@link #NO_EXPIRY}, the upper
+ *     bound leased by a {@link #LEASE} and the click count of the hash of a {@link #CLICKS}
+ * @param url the original URL of a {@link #PUT}, empty otherwise
+ * @param length the size of the record in the log
+ */
+record LogRecord(byte type, String key, long value, String url, int length) {
+
+  static final byte PUT = 1;
+  static final byte DELETE = 2;
+  static final byte LEASE = 3;
+  static final byte CLICKS = 4;
+  static final long NO_EXPIRY = Long.MIN_VALUE;
+}
@@ -0,0 +1,217 @@
+package com.truthful.pinokio.repository.local;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of {@link LogRecord records} in a memory-mapped file of fixed capacity. Every
+ * record is laid out as
+ *
+ * <pre>
+ * int    size of the record, this field included
+ * int    CRC32C of everything after this field
+ * byte   type
+ * long   value
+ * short  size of the key
+ * bytes  key, UTF-8
+ * bytes  URL, UTF-8, up to the end of the record
+ * </pre>
+ *
+ * <p>Records are never modified once appended, so the part of the log before {@link #end()} can be
+ * read without locking. Appending is left to a single writer at a time. The file is created sparse
+ * and zeroed, so a zero size marks the end of the log; a record torn by a crash is recognised by
+ * its checksum when the log is recovered.
+ */
+final class MappedLog implements AutoCloseable {
+
+  private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Byte.BYTES + Long.BYTES
+      + Short.BYTES;
+  private static final int TYPE_OFFSET = Integer.BYTES + Integer.BYTES;
+  private static final int VALUE_OFFSET = TYPE_OFFSET + Byte.BYTES;
+  private static final int KEY_SIZE_OFFSET = VALUE_OFFSET + Long.BYTES;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private int end;
+
+  private MappedLog(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+    this.channel = channel;
+    this.buffer = buffer;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Maps the log file at the given path, creating it if it does not exist. The log is empty until
+   * {@link #recover} finds its end.
+   */
+  static MappedLog open(Path path, int capacity) throws IOException {
+    FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      return new MappedLog(
+          channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), capacity);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Replays the records of the log in order, stopping at the first one that is missing or torn,
+   * which becomes the end of the log.
+   *
+   * @param replay called with every valid record and its offset
+   * @return the end of the log
+   */
+  int recover(RecordConsumer replay) {
+    int offset = 0;
+    LogRecord record;
+    while ((record = readVerified(offset)) != null) {
+      replay.accept(record, offset);
+      offset += record.length();
+    }
+    end = offset;
+    if (end + Integer.BYTES <= capacity) {
+      // Hides what is left of a torn record from the next recovery
+      buffer.putInt(end, 0);
+    }
+    return end;
+  }
+
+  /**
+   * Appends a record to the log.
+   *
+   * @return the offset of the record
+   * @throws IllegalStateException if the log has no room left for it
+   */
+  int append(byte type, String key, long value, String url) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+    if (keyBytes.length > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Keys are limited to " + Short.MAX_VALUE + " bytes");
+    }
+    int length = HEADER_SIZE + keyBytes.length + urlBytes.length;
+    if (length > capacity - end) {
+      throw new IllegalStateException("The log of " + capacity + " bytes is full");
+    }
+    ByteBuffer record = ByteBuffer.allocate(length)
+        .putInt(length)
+        .putInt(0)
+        .put(type)
+        .putLong(value)
+        .putShort((short) keyBytes.length)
+        .put(keyBytes)
+        .put(urlBytes);
+    CRC32C crc = new CRC32C();
+    crc.update(record.array(), TYPE_OFFSET, length - TYPE_OFFSET);
+    record.putInt(Integer.BYTES, (int) crc.getValue());
+
+    int offset = end;
+    buffer.put(offset, record.array());
+    end += length;
+    return offset;
+  }
+
+  /**
+   * Reads the record appended at the given offset.
+   */
+  LogRecord read(int offset) {
+    int length = buffer.getInt(offset);
+    int keySize = buffer.getShort(offset + KEY_SIZE_OFFSET);
+    byte[] key = new byte[keySize];
+    buffer.get(offset + HEADER_SIZE, key);
+    byte[] url = new byte[length - HEADER_SIZE - keySize];
+    buffer.get(offset + HEADER_SIZE + keySize, url);
+    return new LogRecord(
+        buffer.get(offset + TYPE_OFFSET),
+        new String(key, StandardCharsets.UTF_8),
+        buffer.getLong(offset + VALUE_OFFSET),
+        new String(url, StandardCharsets.UTF_8),
+        length);
+  }
+
+  /**
+   * Reads the key of the record appended at the given offset.
+   */
+  String readKey(int offset) {
+    byte[] key = new byte[buffer.getShort(offset + KEY_SIZE_OFFSET)];
+    buffer.get(offset + HEADER_SIZE, key);
+    return new String(key, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns whether the record appended at the given offset has the given UTF-8 key, without
+   * decoding it.
+   */
+  boolean hasKey(int offset, byte[] key) {
+    if (buffer.getShort(offset + KEY_SIZE_OFFSET) != key.length) {
+      return false;
+    }
+    return buffer.slice(offset + HEADER_SIZE, key.length).equals(ByteBuffer.wrap(key));
+  }
+
+  int length(int offset) {
+    return buffer.getInt(offset);
+  }
+
+  int end() {
+    return end;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Writes the given range of the log through to the disk.
+   */
+  void force(int offset, int length) {
+    buffer.force(offset, length);
+  }
+
+  void force() {
+    buffer.force(0, end);
+  }
+
+  /**
+   * Closes the file. The mapping itself stays valid until the log is garbage collected, so readers
+   * still holding it are not affected.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private LogRecord readVerified(int offset) {
+    if (capacity - offset < HEADER_SIZE) {
+      return null;
+    }
+    int length = buffer.getInt(offset);
+    if (length < HEADER_SIZE || length > capacity - offset) {
+      return null;
+    }
+    int keySize = buffer.getShort(offset + KEY_SIZE_OFFSET);
+    if (keySize < 0 || keySize > length - HEADER_SIZE) {
+      return null;
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.slice(offset + TYPE_OFFSET, length - TYPE_OFFSET));
+    if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+      return null;
+    }
+    return read(offset);
+  }
+
+  @FunctionalInterface
+  interface RecordConsumer {
+
+    void accept(LogRecord record, int offset);
+  }
+}
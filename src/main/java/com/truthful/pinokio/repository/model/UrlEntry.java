@@ -0,0 +1,14 @@
+package com.truthful.pinokio.repository.model;
+
+import java.time.Instant;
+
+/**
+ * A stored mapping between a hash and its original URL.
+ *
+ * @param hash the hash of the shortened URL
+ * @param originalUrl the original URL
+ * @param expiresAt when the mapping expires, or {@code null} if the item carries no expiry
+ */
+public record UrlEntry(String hash, String originalUrl, Instant expiresAt) {
+
+}
@@ -0,0 +1,72 @@
+package com.truthful.pinokio.repository.resilience;
+
+/**
+ * Concurrency limit that adapts to the observed latency with additive increase and multiplicative
+ * decrease. Calls beyond the limit are rejected straight away instead of queueing, so a slow
+ * storage cannot pile up work in the process. The limit only grows while at least half of it is in
+ * use, so an idle period does not inflate it.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyThresholdNanos;
+  private final double backoffRatio;
+
+  private double limit;
+  private int inFlight;
+
+  public AdaptiveConcurrencyLimiter(
+      int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos,
+      double backoffRatio) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.latencyThresholdNanos = latencyThresholdNanos;
+    this.backoffRatio = backoffRatio;
+    this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+  }
+
+  /**
+   * Takes a slot if the limit has not been reached. Every slot taken must be given back with
+   * {@link #release(long, boolean)} or {@link #releaseIgnored()}.
+   */
+  public synchronized boolean tryAcquire() {
+    if (inFlight >= (int) limit) {
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  /**
+   * Gives back a slot and adjusts the limit.
+   *
+   * @param latencyNanos how long the call took
+   * @param dropped whether the call failed because the storage is overloaded or unavailable
+   */
+  public synchronized void release(long latencyNanos, boolean dropped) {
+    inFlight--;
+    if (dropped || latencyNanos > latencyThresholdNanos) {
+      limit = Math.max(minLimit, limit * backoffRatio);
+    } else if (inFlight * 2 >= limit) {
+      limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+  }
+
+  /**
+   * Gives back the slot of a call cancelled by its caller, without adjusting the limit. How long
+   * such a call ran says nothing of the storage latency, and the slower copy of a hedged read is
+   * cancelled precisely because it was slow.
+   */
+  public synchronized void releaseIgnored() {
+    inFlight--;
+  }
+
+  public synchronized int limit() {
+    return (int) limit;
+  }
+
+  public synchronized int inFlight() {
+    return inFlight;
+  }
+}
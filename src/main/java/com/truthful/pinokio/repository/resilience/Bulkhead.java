@@ -0,0 +1,103 @@
+package com.truthful.pinokio.repository.resilience;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed amount of permits reserved for one class of storage operations, so that a burst of one
+ * class cannot take the capacity the others need. Calls beyond the permits wait in a bounded FIFO
+ * queue for at most the maximum wait, and are rejected once the queue is full or the wait is over.
+ * A queue depth of zero rejects them straight away.
+ *
+ * <p>Waiting never blocks a thread: a queued call is handed its permit by the completion of the
+ * call it replaces, which then carries on with the queued one.
+ */
+public final class Bulkhead {
+
+  private static final CompletableFuture<Boolean> GRANTED = CompletableFuture.completedFuture(true);
+  private static final CompletableFuture<Boolean> REJECTED =
+      CompletableFuture.completedFuture(false);
+
+  private final int maxQueueDepth;
+  private final long maxWaitNanos;
+  private final Queue<CompletableFuture<Boolean>> waiters = new ArrayDeque<>();
+
+  private int availablePermits;
+
+  public Bulkhead(int maxConcurrentCalls, int maxQueueDepth, Duration maxWait) {
+    this.availablePermits = maxConcurrentCalls;
+    this.maxQueueDepth = maxQueueDepth;
+    this.maxWaitNanos = maxWait.toNanos();
+  }
+
+  /**
+   * Takes a permit, waiting for one if needed. Every permit granted must be given back with
+   * {@link #release()}.
+   *
+   * @return completes with whether the permit was granted, false if the queue was full or the
+   *     maximum wait passed. Cancelling it gives up the place in the queue.
+   */
+  public CompletableFuture<Boolean> acquire() {
+    return acquire(maxWaitNanos);
+  }
+
+  /**
+   * Same as {@link #acquire()}, waiting no longer than the given time if it is below the maximum
+   * wait.
+   */
+  public CompletableFuture<Boolean> acquire(long maxWaitNanos) {
+    CompletableFuture<Boolean> waiter;
+    synchronized (this) {
+      if (availablePermits > 0) {
+        availablePermits--;
+        return GRANTED;
+      }
+      if (waiters.size() >= maxQueueDepth) {
+        return REJECTED;
+      }
+      waiter = new CompletableFuture<>();
+      waiters.add(waiter);
+    }
+    long waitNanos = Math.min(this.maxWaitNanos, maxWaitNanos);
+    waiter.completeOnTimeout(false, waitNanos, TimeUnit.NANOSECONDS)
+        .whenComplete((granted, throwable) -> {
+          if (!Boolean.TRUE.equals(granted)) {
+            synchronized (this) {
+              waiters.remove(waiter);
+            }
+          }
+        });
+    return waiter;
+  }
+
+  /**
+   * Gives back a permit, handing it over to the longest waiting call if there is one. The waiter
+   * is completed outside the lock, as completing it starts its call.
+   */
+  public void release() {
+    while (true) {
+      CompletableFuture<Boolean> next;
+      synchronized (this) {
+        next = waiters.poll();
+        if (next == null) {
+          availablePermits++;
+          return;
+        }
+      }
+      if (next.complete(true)) {
+        return;
+      }
+    }
+  }
+
+  public synchronized int availablePermits() {
+    return availablePermits;
+  }
+
+  public synchronized int queueDepth() {
+    return waiters.size();
+  }
+}
@@ -0,0 +1,146 @@
+package com.truthful.pinokio.repository.resilience;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Count based circuit breaker. While closed it records the outcome of the last
+ * {@code slidingWindowSize} calls and opens once enough of them failed. While open every call is
+ * rejected until {@code openDuration} has passed, then {@code halfOpenProbes} calls are let through
+ * to probe the storage: the breaker closes if all of them succeed and opens again as soon as one
+ * fails.
+ */
+@Slf4j
+public final class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final String name;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final Duration openDuration;
+  private final int halfOpenProbes;
+  private final Clock clock;
+  private final boolean[] failedCalls;
+
+  private State state = State.CLOSED;
+  private int recordedCalls;
+  private int nextCall;
+  private int failures;
+  private Instant openedAt;
+  private int startedProbes;
+  private int succeededProbes;
+
+  public CircuitBreaker(
+      String name,
+      int slidingWindowSize,
+      int minimumCalls,
+      double failureRateThreshold,
+      Duration openDuration,
+      int halfOpenProbes,
+      Clock clock) {
+    this.name = name;
+    this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+    this.failureRateThreshold = failureRateThreshold;
+    this.openDuration = openDuration;
+    this.halfOpenProbes = halfOpenProbes;
+    this.clock = clock;
+    this.failedCalls = new boolean[slidingWindowSize];
+  }
+
+  /**
+   * Returns whether a call may go ahead. Every permitted call must be followed by
+   * {@link #onSuccess()}, {@link #onFailure()} or {@link #onCancelled()}.
+   */
+  public synchronized boolean tryAcquirePermission() {
+    if (state == State.OPEN) {
+      if (clock.instant().isBefore(openedAt.plus(openDuration))) {
+        return false;
+      }
+      transitionTo(State.HALF_OPEN);
+      startedProbes = 0;
+      succeededProbes = 0;
+    }
+    if (state == State.HALF_OPEN) {
+      if (startedProbes >= halfOpenProbes) {
+        return false;
+      }
+      startedProbes++;
+    }
+    return true;
+  }
+
+  public synchronized void onSuccess() {
+    if (state == State.HALF_OPEN) {
+      if (++succeededProbes >= halfOpenProbes) {
+        close();
+      }
+    } else if (state == State.CLOSED) {
+      record(false);
+    }
+  }
+
+  /**
+   * Records a call cancelled by its caller or cut short by its deadline, which says nothing about
+   * the storage. A probe cancelled while half open is given back, so that another call may probe
+   * instead.
+   */
+  public synchronized void onCancelled() {
+    if (state == State.HALF_OPEN && startedProbes > 0) {
+      startedProbes--;
+    }
+  }
+
+  public synchronized void onFailure() {
+    if (state == State.HALF_OPEN) {
+      open();
+    } else if (state == State.CLOSED) {
+      record(true);
+      if (recordedCalls >= minimumCalls && failures >= failureRateThreshold * recordedCalls) {
+        open();
+      }
+    }
+  }
+
+  public synchronized State state() {
+    return state;
+  }
+
+  private void record(boolean failed) {
+    if (recordedCalls == failedCalls.length) {
+      if (failedCalls[nextCall]) {
+        failures--;
+      }
+    } else {
+      recordedCalls++;
+    }
+    failedCalls[nextCall] = failed;
+    if (failed) {
+      failures++;
+    }
+    nextCall = (nextCall + 1) % failedCalls.length;
+  }
+
+  private void open() {
+    openedAt = clock.instant();
+    transitionTo(State.OPEN);
+  }
+
+  private void close() {
+    recordedCalls = 0;
+    nextCall = 0;
+    failures = 0;
+    transitionTo(State.CLOSED);
+  }
+
+  private void transitionTo(State newState) {
+    log.warn("Circuit breaker {} changed from {} to {}", name, state, newState);
+    state = newState;
+  }
+}
@@ -0,0 +1,165 @@
+package com.truthful.pinokio.repository.resilience;
+
+import com.truthful.pinokio.config.model.HedgingConfigurationProperties;
+import com.truthful.pinokio.util.RollingPercentile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends a second copy of a read that is slower than most, and answers with whichever copy answers
+ * first, cancelling the other. The tail latency of a storage is mostly a few slow calls rather
+ * than a slow storage, so the second copy usually answers long before the first one does.
+ *
+ * <p>A read is hedged once it has been running for the configured percentile of the latency of
+ * the last reads. Every read adds {@code maxHedgeRatio} of a token to a budget and every hedge
+ * takes a whole one, so that the extra load stays below that ratio of the reads even when the
+ * storage slows down as a whole.
+ */
+@Component
+public class Hedger {
+
+  /**
+   * Hedges that may be sent in a burst after a quiet period.
+   */
+  private static final double BUDGET_CAPACITY = 10;
+
+  private final HedgingConfigurationProperties hedgingConfigurationProperties;
+  private final RollingPercentile latency;
+  private final long minDelayNanos;
+  private final Counter reads;
+  private final Counter hedges;
+  private final Counter wins;
+  private final Counter budgetExhausted;
+
+  private double tokens;
+
+  public Hedger(
+      HedgingConfigurationProperties hedgingConfigurationProperties,
+      MeterRegistry meterRegistry) {
+    this.hedgingConfigurationProperties = hedgingConfigurationProperties;
+    this.latency = new RollingPercentile(hedgingConfigurationProperties.sampleSize(),
+        hedgingConfigurationProperties.percentile());
+    this.minDelayNanos = hedgingConfigurationProperties.minDelay().toNanos();
+    this.reads = Counter.builder("url.storage.hedge.reads")
+        .description("Reads that may be hedged")
+        .register(meterRegistry);
+    this.hedges = Counter.builder("url.storage.hedges")
+        .description("Second copies of slow reads sent to the storage")
+        .register(meterRegistry);
+    this.wins = Counter.builder("url.storage.hedge.wins")
+        .description("Hedges that answered before the read they copied")
+        .register(meterRegistry);
+    this.budgetExhausted = Counter.builder("url.storage.hedge.budget.exhausted")
+        .description("Slow reads not hedged as the hedge budget was exhausted")
+        .register(meterRegistry);
+    TimeGauge.builder("url.storage.hedge.delay", latency, TimeUnit.NANOSECONDS,
+            percentile -> percentile.value() == Long.MAX_VALUE
+                ? Double.NaN
+                : Math.max(minDelayNanos, percentile.value()))
+        .description("Time after which a read is hedged")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Makes the given read, hedging it if it is slow.
+   *
+   * @param read makes the read, may be called twice
+   * @return the answer of the first copy to answer, or the failure of the first read
+   */
+  public <T> CompletableFuture<T> hedge(Supplier<CompletableFuture<T>> read) {
+    return hedge(read, result -> false);
+  }
+
+  /**
+   * Makes the given read, hedging it if it is slow. A hedge that fails, or answers with a result
+   * the given predicate takes for a failure, does not answer for the read, which may still
+   * succeed.
+   *
+   * @param read makes the read, may be called twice
+   * @param isFailure whether a result of the read is a failure
+   * @return the answer of the first copy to answer, or the failure of the first read
+   */
+  public <T> CompletableFuture<T> hedge(
+      Supplier<CompletableFuture<T>> read, Predicate<T> isFailure) {
+    if (!hedgingConfigurationProperties.enabled()) {
+      return read.get();
+    }
+    reads.increment();
+    deposit();
+    long startNanos = System.nanoTime();
+    CompletableFuture<T> primary = read.get();
+    primary.whenComplete((result, throwable) -> {
+      // A read cancelled for a hedge that answered first did not run for as long as it would have
+      if (!primary.isCancelled()) {
+        latency.record(System.nanoTime() - startNanos);
+      }
+    });
+    long delayNanos = Math.max(minDelayNanos, latency.value());
+    if (primary.isDone() || delayNanos == Long.MAX_VALUE) {
+      return primary;
+    }
+
+    CompletableFuture<T> answer = new CompletableFuture<>();
+    AtomicBoolean answered = new AtomicBoolean();
+    AtomicReference<CompletableFuture<T>> hedge = new AtomicReference<>();
+    primary.whenComplete((result, throwable) -> {
+      if (!answered.compareAndSet(false, true)) {
+        return;
+      }
+      if (throwable == null) {
+        answer.complete(result);
+      } else {
+        answer.completeExceptionally(throwable);
+      }
+    });
+    CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+      if (answer.isDone()) {
+        return;
+      }
+      if (!tryWithdraw()) {
+        budgetExhausted.increment();
+        return;
+      }
+      hedges.increment();
+      CompletableFuture<T> secondary = read.get();
+      hedge.set(secondary);
+      secondary.thenAccept(result -> {
+        if (!isFailure.test(result) && answered.compareAndSet(false, true)) {
+          wins.increment();
+          answer.complete(result);
+        }
+      });
+      if (answer.isDone()) {
+        secondary.cancel(true);
+      }
+    });
+    answer.whenComplete((result, throwable) -> {
+      primary.cancel(true);
+      CompletableFuture<T> secondary = hedge.get();
+      if (secondary != null) {
+        secondary.cancel(true);
+      }
+    });
+    return answer;
+  }
+
+  private synchronized void deposit() {
+    tokens = Math.min(BUDGET_CAPACITY, tokens + hedgingConfigurationProperties.maxHedgeRatio());
+  }
+
+  private synchronized boolean tryWithdraw() {
+    if (tokens < 1) {
+      return false;
+    }
+    tokens--;
+    return true;
+  }
+}
@@ -0,0 +1,506 @@
+package com.truthful.pinokio.repository.resilience;
+
+import static com.truthful.pinokio.util.RetryUtil.retryAsync;
+import static com.truthful.pinokio.util.RetryUtil.retryEitherAsync;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.soumakis.control.Failure;
+import com.soumakis.control.Try;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.model.ResilienceConfigurationProperties;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.OutcomeTimers;
+import com.truthful.pinokio.util.RetryPolicy;
+import com.truthful.pinokio.util.RetryUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the storage calls behind the bulkhead of their operation, the adaptive concurrency limit and
+ * the circuit breaker of their operation. The bulkheads keep a burst of writes or deletes from
+ * taking the slots of the limit the redirect reads need. A request takes one permit of its
+ * bulkhead and one slot of the limit for all of its attempts, while every attempt goes through the
+ * breaker, so retries stop as soon as it opens. Rejected calls fail with
+ * {@link UrlShortenerError#SERVICE_UNAVAILABLE} or a {@link StorageUnavailableException}.
+ *
+ * <p>Requests may carry a deadline, which bounds the wait for the bulkhead, every attempt and
+ * every backoff. Attempts still running when it passes are cancelled rather than left to run for a
+ * client that has stopped waiting. Cancelling a request likewise cancels its attempt in flight,
+ * or gives up its place in the queue of the bulkhead, and stops its retries. A cancelled attempt
+ * counts as neither a success nor a failure of the storage, since it only says that the caller
+ * stopped waiting, for instance for the slower copy of a hedged read.
+ *
+ * <p>The latency of every request, retries included, is recorded by operation and outcome, along
+ * with the number of retries made.
+ */
+@Component
+@Slf4j
+public class StorageGuard {
+
+  private final Map<StorageOperation, CircuitBreaker> circuitBreakers =
+      new EnumMap<>(StorageOperation.class);
+  private final Map<StorageOperation, Counter> circuitBreakerRejections =
+      new EnumMap<>(StorageOperation.class);
+  private final Map<StorageOperation, OutcomeTimers> requestTimers =
+      new EnumMap<>(StorageOperation.class);
+  private final Map<StorageOperation, Counter> retries = new EnumMap<>(StorageOperation.class);
+  private final Map<StorageOperation, Counter> deadlineExpirations =
+      new EnumMap<>(StorageOperation.class);
+  private final Map<StorageOperation, Bulkhead> bulkheads = new EnumMap<>(StorageOperation.class);
+  private final Map<StorageOperation, Timer> bulkheadWaits = new EnumMap<>(StorageOperation.class);
+  private final Map<StorageOperation, Counter> bulkheadRejections =
+      new EnumMap<>(StorageOperation.class);
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+  private final Counter concurrencyLimitRejections;
+
+  public StorageGuard(
+      ResilienceConfigurationProperties resilienceConfigurationProperties,
+      Clock clock,
+      MeterRegistry meterRegistry) {
+    var circuitBreakerProperties = resilienceConfigurationProperties.circuitBreaker();
+    for (StorageOperation operation : StorageOperation.values()) {
+      String operationTag = operation.name().toLowerCase();
+      if (circuitBreakerProperties.enabled()) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(
+            operationTag,
+            circuitBreakerProperties.slidingWindowSize(),
+            circuitBreakerProperties.minimumCalls(),
+            circuitBreakerProperties.failureRateThreshold(),
+            circuitBreakerProperties.openDuration(),
+            circuitBreakerProperties.halfOpenProbes(),
+            clock);
+        circuitBreakers.put(operation, circuitBreaker);
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+          Gauge.builder("url.storage.circuit.breaker.state", circuitBreaker,
+                  breaker -> breaker.state() == state ? 1 : 0)
+              .description("1 for the current state of the circuit breaker, 0 otherwise")
+              .tag("operation", operationTag)
+              .tag("state", state.name().toLowerCase())
+              .register(meterRegistry);
+        }
+      }
+      circuitBreakerRejections.put(operation,
+          Counter.builder("url.storage.circuit.breaker.rejections")
+              .description("Storage calls rejected by an open circuit breaker")
+              .tag("operation", operationTag)
+              .register(meterRegistry));
+      requestTimers.put(operation, new OutcomeTimers(meterRegistry, "url.storage.requests",
+          "Latency of the storage requests, retries included", operationTag));
+      retries.put(operation, Counter.builder("url.storage.retries")
+          .description("Storage calls made again after a retryable failure")
+          .tag("operation", operationTag)
+          .register(meterRegistry));
+      deadlineExpirations.put(operation, Counter.builder("url.storage.deadline.expirations")
+          .description("Storage attempts cut short or not made as their deadline passed")
+          .tag("operation", operationTag)
+          .register(meterRegistry));
+    }
+
+    var bulkheadProperties = resilienceConfigurationProperties.bulkhead();
+    if (bulkheadProperties.enabled()) {
+      registerBulkhead(StorageOperation.GET, bulkheadProperties.get(), meterRegistry);
+      registerBulkhead(StorageOperation.SAVE, bulkheadProperties.save(), meterRegistry);
+      registerBulkhead(StorageOperation.DELETE, bulkheadProperties.delete(), meterRegistry);
+    }
+
+    var concurrencyLimitProperties = resilienceConfigurationProperties.concurrencyLimit();
+    if (concurrencyLimitProperties.enabled()) {
+      concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+          concurrencyLimitProperties.initialLimit(),
+          concurrencyLimitProperties.minLimit(),
+          concurrencyLimitProperties.maxLimit(),
+          concurrencyLimitProperties.latencyThreshold().toNanos(),
+          concurrencyLimitProperties.backoffRatio());
+      Gauge.builder("url.storage.concurrency.limit", concurrencyLimiter,
+              AdaptiveConcurrencyLimiter::limit)
+          .description("Current limit of concurrent storage requests")
+          .register(meterRegistry);
+      Gauge.builder("url.storage.concurrency.in.flight", concurrencyLimiter,
+              AdaptiveConcurrencyLimiter::inFlight)
+          .description("Storage requests currently in flight")
+          .register(meterRegistry);
+    } else {
+      concurrencyLimiter = null;
+    }
+    concurrencyLimitRejections = Counter.builder("url.storage.concurrency.limit.rejections")
+        .description("Storage requests rejected by the concurrency limit")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Runs the given storage call, retrying it according to the given policy.
+   */
+  public <T> EitherT<UrlShortenerError, T> execute(
+      StorageOperation operation,
+      RetryPolicy retryPolicy,
+      Supplier<EitherT<UrlShortenerError, T>> call) {
+    return execute(operation, retryPolicy, Deadline.none(), call);
+  }
+
+  /**
+   * Runs the given storage call, retrying it according to the given policy until the given
+   * deadline. Waiting for the bulkhead, every attempt and every backoff only get the time that
+   * remains. An attempt still running when the deadline passes is cancelled and fails with
+   * {@link UrlShortenerError#SERVICE_UNAVAILABLE}, which counts as neither a success nor a failure
+   * of the storage.
+   */
+  public <T> EitherT<UrlShortenerError, T> execute(
+      StorageOperation operation,
+      RetryPolicy retryPolicy,
+      Deadline deadline,
+      Supplier<EitherT<UrlShortenerError, T>> call) {
+    InFlight inFlight = new InFlight();
+    Bulkhead bulkhead = bulkheads.get(operation);
+    if (bulkhead == null) {
+      return EitherT.fromFuture(inFlight.cancelledWith(
+          limit(operation, retryPolicy, deadline, inFlight, call).toCompletableFuture()));
+    }
+    long startNanos = System.nanoTime();
+    return EitherT.fromFuture(inFlight.cancelledWith(
+        inFlight.track(bulkhead.acquire(deadline.remainingNanos())).thenCompose(granted -> {
+          if (!acquired(operation, startNanos, granted)) {
+            Either<UrlShortenerError, T> rejected =
+                Either.left(UrlShortenerError.SERVICE_UNAVAILABLE);
+            requestTimers.get(operation).record(startNanos, rejected, null);
+            return CompletableFuture.completedFuture(rejected);
+          }
+          if (inFlight.isCancelled()) {
+            bulkhead.release();
+            return CompletableFuture.completedFuture(
+                Either.<UrlShortenerError, T>left(UrlShortenerError.SERVICE_UNAVAILABLE));
+          }
+          return invoke(() -> limit(operation, retryPolicy, deadline, inFlight, call)
+              .toCompletableFuture())
+              .whenComplete((result, throwable) -> bulkhead.release());
+        })));
+  }
+
+  /**
+   * Runs the given storage call, retrying it according to the given policy.
+   */
+  public <T> TryT<T> executeTry(
+      StorageOperation operation, RetryPolicy retryPolicy, Supplier<TryT<T>> call) {
+    return executeTry(operation, retryPolicy, Deadline.none(), call);
+  }
+
+  /**
+   * Runs the given storage call, retrying it according to the given policy until the given
+   * deadline. An attempt still running when the deadline passes is cancelled and fails with a
+   * {@link StorageUnavailableException}, which counts as neither a success nor a failure of the
+   * storage.
+   */
+  public <T> TryT<T> executeTry(
+      StorageOperation operation,
+      RetryPolicy retryPolicy,
+      Deadline deadline,
+      Supplier<TryT<T>> call) {
+    InFlight inFlight = new InFlight();
+    Bulkhead bulkhead = bulkheads.get(operation);
+    if (bulkhead == null) {
+      return TryT.fromFuture(inFlight.cancelledWith(
+          limitTry(operation, retryPolicy, deadline, inFlight, call).toCompletableFuture()));
+    }
+    long startNanos = System.nanoTime();
+    return TryT.fromFuture(inFlight.cancelledWith(
+        inFlight.track(bulkhead.acquire(deadline.remainingNanos())).thenCompose(granted -> {
+          if (!acquired(operation, startNanos, granted)) {
+            var rejection =
+                new StorageUnavailableException("Bulkhead of " + operation + " is full");
+            requestTimers.get(operation).recordTry(startNanos, null, rejection);
+            return CompletableFuture.completedFuture(Try.<T>failure(rejection));
+          }
+          if (inFlight.isCancelled()) {
+            bulkhead.release();
+            return CompletableFuture.completedFuture(Try.<T>failure(
+                new StorageUnavailableException(operation + " was cancelled")));
+          }
+          return invoke(() -> limitTry(operation, retryPolicy, deadline, inFlight, call)
+              .toCompletableFuture())
+              .whenComplete((result, throwable) -> bulkhead.release());
+        })));
+  }
+
+  private boolean acquired(StorageOperation operation, long startNanos, boolean granted) {
+    bulkheadWaits.get(operation).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    if (!granted) {
+      bulkheadRejections.get(operation).increment();
+    }
+    return granted;
+  }
+
+  private <T> EitherT<UrlShortenerError, T> limit(
+      StorageOperation operation,
+      RetryPolicy retryPolicy,
+      Deadline deadline,
+      InFlight inFlight,
+      Supplier<EitherT<UrlShortenerError, T>> call) {
+    long startNanos = System.nanoTime();
+    if (!tryAcquireSlot()) {
+      Either<UrlShortenerError, T> rejected = Either.left(UrlShortenerError.SERVICE_UNAVAILABLE);
+      requestTimers.get(operation).record(startNanos, rejected, null);
+      return EitherT.fromFuture(CompletableFuture.completedFuture(rejected));
+    }
+    AtomicInteger attempts = new AtomicInteger();
+    return EitherT.fromFuture(
+        invoke(() -> retryEitherAsync(retryPolicy, deadline,
+                () -> attempt(operation, attempts.getAndIncrement(), deadline, inFlight, call))
+            .toCompletableFuture())
+            .whenComplete((result, throwable) -> {
+              if (inFlight.isCancelled()) {
+                releaseIgnoredSlot();
+                return;
+              }
+              releaseSlot(startNanos,
+                  throwable != null || result.isLeft() && isDropped(result.getLeft()));
+              requestTimers.get(operation).record(startNanos, result, throwable);
+            }));
+  }
+
+  private <T> TryT<T> limitTry(
+      StorageOperation operation,
+      RetryPolicy retryPolicy,
+      Deadline deadline,
+      InFlight inFlight,
+      Supplier<TryT<T>> call) {
+    long startNanos = System.nanoTime();
+    if (!tryAcquireSlot()) {
+      var rejection = new StorageUnavailableException("Storage concurrency limit reached");
+      requestTimers.get(operation).recordTry(startNanos, null, rejection);
+      return TryT.ofFailure(rejection);
+    }
+    AtomicInteger attempts = new AtomicInteger();
+    return TryT.fromFuture(
+        invoke(() -> retryAsync(retryPolicy, deadline,
+                () -> attemptTry(operation, attempts.getAndIncrement(), deadline, inFlight, call))
+            .toCompletableFuture())
+            .whenComplete((result, throwable) -> {
+              if (inFlight.isCancelled()) {
+                releaseIgnoredSlot();
+                return;
+              }
+              releaseSlot(startNanos, throwable != null || result instanceof Failure<T> failure
+                  && isDropped(failure.getCause()));
+              requestTimers.get(operation).recordTry(startNanos, result, throwable);
+            }));
+  }
+
+  private <T> EitherT<UrlShortenerError, T> attempt(
+      StorageOperation operation,
+      int attempt,
+      Deadline deadline,
+      InFlight inFlight,
+      Supplier<EitherT<UrlShortenerError, T>> call) {
+    if (inFlight.isCancelled()) {
+      return EitherT.left(UrlShortenerError.SERVICE_UNAVAILABLE);
+    }
+    countRetry(operation, attempt);
+    if (deadline.isExpired()) {
+      deadlineExpirations.get(operation).increment();
+      return EitherT.left(UrlShortenerError.SERVICE_UNAVAILABLE);
+    }
+    Either<UrlShortenerError, T> onExpiry = Either.left(UrlShortenerError.SERVICE_UNAVAILABLE);
+    Supplier<CompletableFuture<Either<UrlShortenerError, T>>> boundedCall = () -> bound(
+        operation, deadline, inFlight, () -> call.get().toCompletableFuture(), onExpiry);
+    CircuitBreaker circuitBreaker = circuitBreakers.get(operation);
+    if (circuitBreaker == null) {
+      return EitherT.fromFuture(boundedCall.get());
+    }
+    if (!circuitBreaker.tryAcquirePermission()) {
+      circuitBreakerRejections.get(operation).increment();
+      return EitherT.left(UrlShortenerError.SERVICE_UNAVAILABLE);
+    }
+    return EitherT.fromFuture(
+        record(circuitBreaker, inFlight, boundedCall.get(), onExpiry,
+            result -> result.isLeft() && RetryUtil.isRetryable(result.getLeft())));
+  }
+
+  private <T> TryT<T> attemptTry(
+      StorageOperation operation,
+      int attempt,
+      Deadline deadline,
+      InFlight inFlight,
+      Supplier<TryT<T>> call) {
+    if (inFlight.isCancelled()) {
+      return TryT.ofFailure(new StorageUnavailableException(operation + " was cancelled"));
+    }
+    countRetry(operation, attempt);
+    if (deadline.isExpired()) {
+      deadlineExpirations.get(operation).increment();
+      return TryT.ofFailure(new StorageUnavailableException(
+          "Deadline of " + operation + " passed"));
+    }
+    Try<T> onExpiry = Try.failure(new StorageUnavailableException(
+        "Deadline of " + operation + " passed"));
+    Supplier<CompletableFuture<Try<T>>> boundedCall = () -> bound(
+        operation, deadline, inFlight, () -> call.get().toCompletableFuture(), onExpiry);
+    CircuitBreaker circuitBreaker = circuitBreakers.get(operation);
+    if (circuitBreaker == null) {
+      return TryT.fromFuture(boundedCall.get());
+    }
+    if (!circuitBreaker.tryAcquirePermission()) {
+      circuitBreakerRejections.get(operation).increment();
+      return TryT.ofFailure(new StorageUnavailableException(
+          "Circuit breaker of " + operation + " is open"));
+    }
+    return TryT.fromFuture(
+        record(circuitBreaker, inFlight, boundedCall.get(), onExpiry,
+            result -> result instanceof Failure<T> failure
+                && RetryUtil.isRetryable(failure.getCause())));
+  }
+
+  /**
+   * Bounds the given call by the deadline, counting the calls it cuts short, and makes it the
+   * attempt of the request in flight.
+   */
+  private <R> CompletableFuture<R> bound(
+      StorageOperation operation,
+      Deadline deadline,
+      InFlight inFlight,
+      Supplier<CompletableFuture<R>> call,
+      R onExpiry) {
+    CompletableFuture<R> attempt = inFlight.track(deadline.bound(invoke(call), onExpiry));
+    return attempt.whenComplete((result, throwable) -> {
+      if (result == onExpiry) {
+        deadlineExpirations.get(operation).increment();
+      }
+    });
+  }
+
+  private void registerBulkhead(
+      StorageOperation operation,
+      ResilienceConfigurationProperties.OperationBulkheadProperties properties,
+      MeterRegistry meterRegistry) {
+    String operationTag = operation.name().toLowerCase();
+    Bulkhead bulkhead = new Bulkhead(
+        properties.maxConcurrentCalls(), properties.maxQueueDepth(), properties.maxWait());
+    bulkheads.put(operation, bulkhead);
+    Gauge.builder("url.storage.bulkhead.available", bulkhead, Bulkhead::availablePermits)
+        .description("Permits of the bulkhead not taken by a call")
+        .tag("operation", operationTag)
+        .register(meterRegistry);
+    Gauge.builder("url.storage.bulkhead.queue.depth", bulkhead, Bulkhead::queueDepth)
+        .description("Calls waiting for a permit of the bulkhead")
+        .tag("operation", operationTag)
+        .register(meterRegistry);
+    bulkheadWaits.put(operation, Timer.builder("url.storage.bulkhead.wait")
+        .description("Time calls waited for a permit of the bulkhead, rejected ones included")
+        .tag("operation", operationTag)
+        .register(meterRegistry));
+    bulkheadRejections.put(operation, Counter.builder("url.storage.bulkhead.rejections")
+        .description("Storage calls rejected by a full bulkhead or after waiting too long")
+        .tag("operation", operationTag)
+        .register(meterRegistry));
+  }
+
+  private void countRetry(StorageOperation operation, int attempt) {
+    if (attempt > 0) {
+      retries.get(operation).increment();
+    }
+  }
+
+  private static <R> CompletableFuture<R> record(
+      CircuitBreaker circuitBreaker,
+      InFlight inFlight,
+      CompletableFuture<R> call,
+      R onExpiry,
+      Predicate<R> isFailure) {
+    return call.whenComplete((result, throwable) -> {
+      // A caller that stopped waiting says nothing about the storage
+      if (inFlight.isCancelled() || result == onExpiry) {
+        circuitBreaker.onCancelled();
+      } else if (throwable != null || isFailure.test(result)) {
+        circuitBreaker.onFailure();
+      } else {
+        circuitBreaker.onSuccess();
+      }
+    });
+  }
+
+  private boolean tryAcquireSlot() {
+    if (concurrencyLimiter == null || concurrencyLimiter.tryAcquire()) {
+      return true;
+    }
+    concurrencyLimitRejections.increment();
+    return false;
+  }
+
+  private void releaseSlot(long startNanos, boolean dropped) {
+    if (concurrencyLimiter != null) {
+      concurrencyLimiter.release(System.nanoTime() - startNanos, dropped);
+    }
+  }
+
+  private void releaseIgnoredSlot() {
+    if (concurrencyLimiter != null) {
+      concurrencyLimiter.releaseIgnored();
+    }
+  }
+
+  private static boolean isDropped(UrlShortenerError error) {
+    return error == UrlShortenerError.SERVICE_UNAVAILABLE || RetryUtil.isRetryable(error);
+  }
+
+  private static boolean isDropped(Throwable throwable) {
+    return throwable instanceof StorageUnavailableException || RetryUtil.isRetryable(throwable);
+  }
+
+  private static <R> CompletableFuture<R> invoke(Supplier<CompletableFuture<R>> call) {
+    try {
+      return call.get();
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * The attempt a request is making, or its wait for a permit of the bulkhead, so that cancelling
+   * the request cancels the storage call itself rather than only the wait for it.
+   */
+  private static final class InFlight {
+
+    private volatile boolean cancelled;
+    private volatile CompletableFuture<?> attempt;
+
+    /**
+     * Cancels the attempt in flight once the given future of the request is cancelled.
+     */
+    <R> CompletableFuture<R> cancelledWith(CompletableFuture<R> request) {
+      request.whenComplete((result, throwable) -> {
+        if (request.isCancelled()) {
+          cancelled = true;
+          CompletableFuture<?> current = attempt;
+          if (current != null) {
+            current.cancel(true);
+          }
+        }
+      });
+      return request;
+    }
+
+    <R> CompletableFuture<R> track(CompletableFuture<R> attempt) {
+      this.attempt = attempt;
+      if (cancelled) {
+        attempt.cancel(true);
+      }
+      return attempt;
+    }
+
+    boolean isCancelled() {
+      return cancelled;
+    }
+  }
+}
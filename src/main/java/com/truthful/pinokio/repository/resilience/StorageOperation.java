@@ -0,0 +1,10 @@
+package com.truthful.pinokio.repository.resilience;
+
+/**
+ * The storage operations with a circuit breaker of their own.
+ */
+public enum StorageOperation {
+  SAVE,
+  GET,
+  DELETE
+}
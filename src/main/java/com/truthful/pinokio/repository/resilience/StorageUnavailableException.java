@@ -0,0 +1,12 @@
+package com.truthful.pinokio.repository.resilience;
+
+/**
+ * Thrown when a storage call is rejected without being made, because its circuit breaker is open,
+ * the concurrency limit or its bulkhead is full, or its deadline has passed.
+ */
+public class StorageUnavailableException extends RuntimeException {
+
+  public StorageUnavailableException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,240 @@
+package com.truthful.pinokio.service;
+
+import static com.truthful.pinokio.util.ConcurrencyUtil.mapWithBoundedConcurrency;
+
+import com.soumakis.control.Either;
+import com.truthful.pinokio.config.model.ClickCountingConfigurationProperties;
+import com.truthful.pinokio.repository.ClickCountStore;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.RetryUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the clicks of every hash in memory and periodically flushes them to the
+ * {@link ClickCountStore}. Recording a click is a map lookup and a {@link LongAdder} increment,
+ * striped across cells so concurrent redirects of the same popular link do not contend on a single
+ * counter, and never touches the storage on the redirect path.
+ *
+ * <p>Every flush adds the clicks recorded since the previous successful one with an atomic
+ * update per hash. The flushed amount only moves forward once the update succeeded, so a failed
+ * flush leaves the clicks in memory for the next one. A failed update may still have been applied,
+ * a timeout does not tell, so the next flush sends the very same update again, with the same flush
+ * token, for the store to apply it once. The clicks recorded meanwhile wait for the flush after.
+ * Clicks are lost on a crash only, bounded by the flush interval.
+ *
+ * <p>The memory is bounded by the maximum amount of tracked hashes. Hashes without clicks since the
+ * previous flush are evicted by the next one, and the clicks of new hashes are dropped, and
+ * counted as such, while the map is full.
+ */
+@Component
+@Slf4j
+public class ClickCounter {
+
+  private final ClickCountStore clickCountStore;
+  private final ClickCountingConfigurationProperties clickCountingConfigurationProperties;
+  private final Executor virtualTaskExecutor;
+  private final Map<String, PendingClicks> pendingClicks = new ConcurrentHashMap<>();
+  private final Counter droppedClicks;
+  private final Counter flushedClicks;
+  private final Counter flushFailures;
+
+  /**
+   * Evicted counters, kept until the next flush in case a redirect that looked one of them up just
+   * before the eviction increments it afterwards.
+   */
+  private List<Map.Entry<String, PendingClicks>> evicted = List.of();
+
+  private volatile boolean stopped;
+  private volatile Thread flusher;
+
+  public ClickCounter(
+      ClickCountStore clickCountStore,
+      ClickCountingConfigurationProperties clickCountingConfigurationProperties,
+      Executor virtualTaskExecutor,
+      MeterRegistry meterRegistry) {
+    this.clickCountStore = clickCountStore;
+    this.clickCountingConfigurationProperties = clickCountingConfigurationProperties;
+    this.virtualTaskExecutor = virtualTaskExecutor;
+    this.droppedClicks = Counter.builder("url.clicks.dropped")
+        .description("Clicks not counted because the maximum amount of hashes was tracked")
+        .register(meterRegistry);
+    this.flushedClicks = Counter.builder("url.clicks.flushed")
+        .description("Clicks added to the storage")
+        .register(meterRegistry);
+    this.flushFailures = Counter.builder("url.clicks.flush.failures")
+        .description("Hashes whose clicks failed to flush and are kept for the next flush")
+        .register(meterRegistry);
+    Gauge.builder("url.clicks.tracked", pendingClicks, Map::size)
+        .description("Hashes whose clicks are counted in memory")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    if (clickCountingConfigurationProperties.enabled()) {
+      flusher = Thread.ofVirtual().name("click-counter-flusher").start(this::flushPeriodically);
+    }
+  }
+
+  /**
+   * Stops the flusher and flushes the clicks recorded since its last flush, so a graceful shutdown
+   * loses none of them.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    stopped = true;
+    Thread currentFlusher = flusher;
+    if (currentFlusher != null) {
+      LockSupport.unpark(currentFlusher);
+      currentFlusher.join();
+      flush();
+    }
+  }
+
+  /**
+   * Records a click of the given hash. Does not block.
+   *
+   * @param hash the hash that was redirected to its original URL
+   */
+  public void recordClick(String hash) {
+    if (!clickCountingConfigurationProperties.enabled()) {
+      return;
+    }
+    PendingClicks clicks = pendingClicks.get(hash);
+    if (clicks == null) {
+      if (pendingClicks.size() >= clickCountingConfigurationProperties.maxTrackedHashes()) {
+        droppedClicks.increment();
+        // Idle hashes are evicted by a flush, so one is started straight away
+        Thread currentFlusher = flusher;
+        if (currentFlusher != null) {
+          LockSupport.unpark(currentFlusher);
+        }
+        return;
+      }
+      clicks = pendingClicks.computeIfAbsent(hash, key -> new PendingClicks());
+    }
+    clicks.recorded.increment();
+  }
+
+  /**
+   * Fetches the clicks of the given hash, the stored ones and the ones not flushed yet. A flush in
+   * flight may be counted twice or not at all, so the count is approximate while it runs.
+   *
+   * @param hash the hash to count the clicks of
+   * @return the clicks of the hash, or the storage error
+   */
+  public CompletableFuture<Either<UrlShortenerError, Long>> getClicks(String hash) {
+    return CompletableFuture.supplyAsync(() -> {
+      PendingClicks clicks = pendingClicks.get(hash);
+      long unflushed = clicks == null ? 0 : clicks.unflushed();
+      return Either.<UrlShortenerError, Long>right(clickCountStore.getClicks(hash) + unflushed);
+    }, virtualTaskExecutor).exceptionally(throwable -> {
+      log.error("Failed to fetch the clicks of {}", hash, throwable);
+      return Either.left(RetryUtil.toStorageError(throwable));
+    });
+  }
+
+  /**
+   * Adds the clicks recorded since the previous flush to the storage, keeping at most a
+   * configurable amount of updates in flight, and evicts the hashes without any.
+   */
+  void flush() {
+    // A counter incremented after its eviction hands its clicks over to the current one
+    for (Map.Entry<String, PendingClicks> entry : evicted) {
+      long remainder = entry.getValue().unflushed();
+      if (remainder > 0) {
+        entry.getValue().flushed += remainder;
+        pendingClicks.computeIfAbsent(entry.getKey(), key -> new PendingClicks())
+            .recorded.add(remainder);
+      }
+    }
+    List<Map.Entry<String, PendingClicks>> idle = new ArrayList<>();
+    List<PendingFlush> flushes = new ArrayList<>();
+    for (Map.Entry<String, PendingClicks> entry : pendingClicks.entrySet()) {
+      PendingFlush failedFlush = entry.getValue().failedFlush;
+      long unflushed = entry.getValue().unflushed();
+      if (failedFlush != null) {
+        flushes.add(failedFlush);
+      } else if (unflushed > 0) {
+        flushes.add(new PendingFlush(
+            entry.getKey(), entry.getValue(), unflushed, UUID.randomUUID().toString()));
+      } else if (pendingClicks.remove(entry.getKey(), entry.getValue())) {
+        idle.add(entry);
+      }
+    }
+    evicted = idle;
+
+    List<CompletableFuture<Void>> updates = mapWithBoundedConcurrency(
+        flushes,
+        clickCountingConfigurationProperties.flushConcurrency(),
+        pendingFlush -> CompletableFuture.runAsync(() -> {
+          PendingClicks clicks = pendingFlush.pendingClicks();
+          // Sent again as it is by the next flush unless the store confirms it
+          clicks.failedFlush = pendingFlush;
+          clickCountStore.addClicks(
+              pendingFlush.hash(), pendingFlush.clicks(), pendingFlush.flushToken());
+          clicks.flushed += pendingFlush.clicks();
+          clicks.failedFlush = null;
+          flushedClicks.increment(pendingFlush.clicks());
+        }, virtualTaskExecutor));
+    CompletableFuture.allOf(updates.toArray(CompletableFuture[]::new))
+        .exceptionally(throwable -> null)
+        .join();
+    long failures = updates.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+    if (failures > 0) {
+      flushFailures.increment(failures);
+      log.warn("Failed to flush the clicks of {} hashes, they are kept for the next flush",
+          failures);
+    }
+  }
+
+  private void flushPeriodically() {
+    while (!stopped) {
+      LockSupport.parkNanos(clickCountingConfigurationProperties.flushInterval().toNanos());
+      if (stopped) {
+        return;
+      }
+      try {
+        flush();
+      } catch (RuntimeException e) {
+        log.error("Failed to flush the clicks", e);
+      }
+    }
+  }
+
+  /**
+   * The clicks recorded for a hash and how many of them were already added to the storage. Only
+   * the flush moves the flushed amount, and only once the storage has them. A flush that failed is
+   * kept to be sent again as it was.
+   */
+  private static final class PendingClicks {
+
+    private final LongAdder recorded = new LongAdder();
+    private volatile long flushed;
+    private volatile PendingFlush failedFlush;
+
+    long unflushed() {
+      return recorded.sum() - flushed;
+    }
+  }
+
+  private record PendingFlush(
+      String hash, PendingClicks pendingClicks, long clicks, String flushToken) {
+
+  }
+}
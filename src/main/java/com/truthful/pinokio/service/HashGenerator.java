@@ -0,0 +1,10 @@
+package com.truthful.pinokio.service;
+
+/**
+ * Generates the hash under which a URL is stored.
+ */
+@FunctionalInterface
+public interface HashGenerator {
+
+  String generateHash(String longUrl);
+}
@@ -0,0 +1,177 @@
+package com.truthful.pinokio.service;
+
+import com.truthful.pinokio.config.model.HotLinksConfigurationProperties;
+import com.truthful.pinokio.repository.StorageRepositoryFacade;
+import com.truthful.pinokio.service.model.HotLink;
+import com.truthful.pinokio.util.HeavyHitterSketch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks the links looked up the most during a sliding window, in fixed memory whatever the
+ * amount of links. The window is split in buckets, each one a {@link HeavyHitterSketch}: lookups
+ * are counted in the current bucket, and every bucket interval the oldest one is cleared and
+ * becomes the current one. A link counts over the whole window as the sum of its buckets.
+ *
+ * <p>After every rotation the links over the promotion threshold are refreshed in the URL cache
+ * if their entry would expire before the next rotation, so the hottest links never miss it all at
+ * once and send a burst of reads to the single DynamoDB partition holding them.
+ */
+@Component
+@Slf4j
+public class HotLinkTracker {
+
+  private final HotLinksConfigurationProperties hotLinksConfigurationProperties;
+  private final StorageRepositoryFacade storageRepositoryFacade;
+  private final Clock clock;
+  private final HeavyHitterSketch[] buckets;
+  private final Duration bucketInterval;
+  private final Counter promotions;
+
+  private volatile int currentBucket;
+  private volatile boolean stopped;
+  private volatile Thread rotator;
+
+  public HotLinkTracker(
+      HotLinksConfigurationProperties hotLinksConfigurationProperties,
+      StorageRepositoryFacade storageRepositoryFacade,
+      Clock clock,
+      MeterRegistry meterRegistry) {
+    this.hotLinksConfigurationProperties = hotLinksConfigurationProperties;
+    this.storageRepositoryFacade = storageRepositoryFacade;
+    this.clock = clock;
+    int windowBuckets = hotLinksConfigurationProperties.windowBuckets();
+    this.buckets = new HeavyHitterSketch[windowBuckets];
+    if (hotLinksConfigurationProperties.enabled()) {
+      for (int i = 0; i < windowBuckets; i++) {
+        buckets[i] = new HeavyHitterSketch(hotLinksConfigurationProperties.sketchWidth(),
+            hotLinksConfigurationProperties.sketchDepth(), hotLinksConfigurationProperties.topK());
+      }
+    }
+    this.bucketInterval = hotLinksConfigurationProperties.window().dividedBy(windowBuckets);
+    this.promotions = Counter.builder("url.hotlinks.promotions")
+        .description("Hot links refreshed in the URL cache before their entry expired")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    if (hotLinksConfigurationProperties.enabled()) {
+      rotator = Thread.ofVirtual().name("hot-link-rotator").start(this::rotatePeriodically);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    stopped = true;
+    Thread currentRotator = rotator;
+    if (currentRotator != null) {
+      currentRotator.interrupt();
+    }
+  }
+
+  /**
+   * Counts a lookup of the given hash. Does not block.
+   *
+   * @param hash the hash that was looked up
+   */
+  public void recordLookup(String hash) {
+    if (hotLinksConfigurationProperties.enabled()) {
+      buckets[currentBucket].add(hash);
+    }
+  }
+
+  /**
+   * Returns the links looked up the most during the window, the most looked up first.
+   *
+   * @param limit the most links to return
+   * @return the hottest links with their estimated lookups
+   */
+  public List<HotLink> hotLinks(int limit) {
+    if (!hotLinksConfigurationProperties.enabled()) {
+      return List.of();
+    }
+    Set<String> candidates = new HashSet<>();
+    for (HeavyHitterSketch bucket : buckets) {
+      bucket.candidates().forEach(candidate -> candidates.add(candidate.getKey()));
+    }
+    return candidates.stream()
+        .map(hash -> new HotLink(hash, lookups(hash)))
+        .sorted(Comparator.comparingLong(HotLink::lookups).reversed())
+        .limit(limit)
+        .toList();
+  }
+
+  public Duration window() {
+    return hotLinksConfigurationProperties.window();
+  }
+
+  /**
+   * Clears the oldest bucket and makes it the current one, forgetting the lookups older than the
+   * window.
+   */
+  void rotate() {
+    int next = (currentBucket + 1) % buckets.length;
+    buckets[next].clear();
+    currentBucket = next;
+  }
+
+  /**
+   * Refreshes the cached entries of the links over the promotion threshold that would expire
+   * before the next rotation.
+   */
+  void promote() {
+    if (!hotLinksConfigurationProperties.promotionEnabled()) {
+      return;
+    }
+    var cachedUntil = clock.instant().plus(bucketInterval);
+    for (HotLink hotLink : hotLinks(hotLinksConfigurationProperties.topK())) {
+      if (hotLink.lookups() < hotLinksConfigurationProperties.promotionThreshold()) {
+        return;
+      }
+      storageRepositoryFacade.refreshUrlEntry(hotLink.hash(), cachedUntil)
+          .toCompletableFuture()
+          .whenComplete((result, throwable) -> {
+            if (throwable != null || result.isLeft()) {
+              log.debug("Failed to refresh the hot link {}", hotLink.hash(), throwable);
+            } else if (result.getRight().isPresent()) {
+              promotions.increment();
+            }
+          });
+    }
+  }
+
+  private long lookups(String hash) {
+    long lookups = 0;
+    for (HeavyHitterSketch bucket : buckets) {
+      lookups += bucket.estimate(hash);
+    }
+    return lookups;
+  }
+
+  private void rotatePeriodically() {
+    try {
+      while (!stopped) {
+        Thread.sleep(bucketInterval);
+        try {
+          rotate();
+          promote();
+        } catch (RuntimeException e) {
+          log.error("Failed to rotate the hot links", e);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
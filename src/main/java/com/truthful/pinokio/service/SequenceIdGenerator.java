@@ -0,0 +1,118 @@
+package com.truthful.pinokio.service;
+
+import com.truthful.pinokio.config.model.IdGenerator;
+import com.truthful.pinokio.config.model.SequenceConfigurationProperties;
+import com.truthful.pinokio.repository.IdLeaseStore;
+import com.truthful.pinokio.util.Base62;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out the ids of the {@link IdGenerator#SEQUENCE} generator. Ids come from ranges
+ * leased in bulk from a counter in the {@link IdLeaseStore}, so no two nodes ever hand out the same
+ * id and taking one is a lock-free increment. The next range is leased in the background once the
+ * configured share of the current one is used, so callers only wait for the store when ids are
+ * taken faster than a range can be leased. Ids left in a range when the node stops are skipped.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application", name = "id-generator", havingValue = "SEQUENCE")
+@RequiredArgsConstructor
+@Slf4j
+public class SequenceIdGenerator implements HashGenerator {
+
+  private final IdLeaseStore idLeaseStore;
+  private final SequenceConfigurationProperties sequenceConfigurationProperties;
+  private final Executor virtualTaskExecutor;
+  private final Lock leaseLock = new ReentrantLock();
+
+  private volatile IdRange currentRange = IdRange.EMPTY;
+  // Guarded by leaseLock
+  private CompletableFuture<IdRange> nextRange;
+
+  /**
+   * Returns the next id encoded as base62.
+   *
+   * @return a code that has never been handed out before
+   */
+  public String nextCode() {
+    return Base62.encode(nextId());
+  }
+
+  /**
+   * Returns the next code, which does not depend on the URL.
+   */
+  @Override
+  public String generateHash(String longUrl) {
+    return nextCode();
+  }
+
+  long nextId() {
+    while (true) {
+      IdRange range = currentRange;
+      long id = range.next().getAndIncrement();
+      if (id < range.end()) {
+        if (id == range.prefetchAt()) {
+          prefetchNextRange();
+        }
+        return id;
+      }
+      replaceExhaustedRange(range);
+    }
+  }
+
+  private void prefetchNextRange() {
+    leaseLock.lock();
+    try {
+      if (nextRange == null) {
+        nextRange = CompletableFuture.supplyAsync(this::leaseRange, virtualTaskExecutor);
+      }
+    } finally {
+      leaseLock.unlock();
+    }
+  }
+
+  private void replaceExhaustedRange(IdRange exhausted) {
+    leaseLock.lock();
+    try {
+      if (currentRange != exhausted) {
+        // Another caller already replaced it
+        return;
+      }
+      CompletableFuture<IdRange> prefetched = nextRange;
+      nextRange = null;
+      currentRange = prefetched == null ? leaseRange() : awaitPrefetched(prefetched);
+    } finally {
+      leaseLock.unlock();
+    }
+  }
+
+  private IdRange awaitPrefetched(CompletableFuture<IdRange> prefetched) {
+    try {
+      return prefetched.join();
+    } catch (CompletionException e) {
+      log.warn("Failed to prefetch the next id range, leasing it again", e.getCause());
+      return leaseRange();
+    }
+  }
+
+  private IdRange leaseRange() {
+    long size = sequenceConfigurationProperties.leaseSize();
+    long end = idLeaseStore.leaseIds(sequenceConfigurationProperties.counterKey(), size);
+    long start = end - size;
+    long prefetchAt = start + (long) (size * sequenceConfigurationProperties.prefetchRatio());
+    return new IdRange(end, prefetchAt, new AtomicLong(start));
+  }
+
+  private record IdRange(long end, long prefetchAt, AtomicLong next) {
+
+    static final IdRange EMPTY = new IdRange(0, -1, new AtomicLong());
+  }
+}
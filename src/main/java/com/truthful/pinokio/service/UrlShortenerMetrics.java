@@ -0,0 +1,54 @@
+package com.truthful.pinokio.service;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.Try;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.OutcomeTimers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters of the {@link UrlShortenerService}: the latency of every operation by outcome, whose
+ * counts are the outcome counters, and the hash collisions met while shortening.
+ */
+@Component
+public class UrlShortenerMetrics {
+
+  private static final String REQUESTS = "url.service.requests";
+  private static final String REQUESTS_DESCRIPTION = "Latency of the URL shortener operations";
+
+  private final OutcomeTimers shortenTimers;
+  private final OutcomeTimers resolveTimers;
+  private final OutcomeTimers deleteTimers;
+  private final Counter collisions;
+
+  public UrlShortenerMetrics(MeterRegistry meterRegistry) {
+    this.shortenTimers =
+        new OutcomeTimers(meterRegistry, REQUESTS, REQUESTS_DESCRIPTION, "shorten");
+    this.resolveTimers =
+        new OutcomeTimers(meterRegistry, REQUESTS, REQUESTS_DESCRIPTION, "resolve");
+    this.deleteTimers = new OutcomeTimers(meterRegistry, REQUESTS, REQUESTS_DESCRIPTION, "delete");
+    this.collisions = Counter.builder("url.hash.collisions")
+        .description("Generated hashes that already stored another URL")
+        .register(meterRegistry);
+  }
+
+  public void recordShorten(
+      long startNanos, Either<UrlShortenerError, String> result, Throwable throwable) {
+    shortenTimers.record(startNanos, result, throwable);
+  }
+
+  public void recordResolve(
+      long startNanos, Either<UrlShortenerError, ?> result, Throwable throwable) {
+    resolveTimers.record(startNanos, result, throwable);
+  }
+
+  public void recordDelete(long startNanos, Try<Void> result, Throwable throwable) {
+    deleteTimers.recordTry(startNanos, result, throwable);
+  }
+
+  public void recordCollision() {
+    collisions.increment();
+  }
+}
@@ -1,10 +1,25 @@
 package com.truthful.pinokio.service;
 
+import static com.truthful.pinokio.util.ConcurrencyUtil.mapWithBoundedConcurrency;
+
+import com.google.common.collect.Lists;
+import com.soumakis.control.Either;
 import com.soumakis.control.EitherT;
+import com.soumakis.control.Try;
 import com.soumakis.control.TryT;
 import com.truthful.pinokio.config.model.ApplicationConfigurationProperties;
+import com.truthful.pinokio.config.model.BatchConfigurationProperties;
+import com.truthful.pinokio.config.model.ReaperConfigurationProperties;
+import com.truthful.pinokio.config.model.SequenceConfigurationProperties;
 import com.truthful.pinokio.repository.StorageRepositoryFacade;
+import com.truthful.pinokio.repository.model.UrlEntry;
 import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -16,89 +31,221 @@ public class UrlShortenerService {
 
   private final ApplicationConfigurationProperties applicationConfigurationProperties;
   private final StorageRepositoryFacade storageRepositoryFacade;
+  private final BatchConfigurationProperties batchConfigurationProperties;
+  private final HashGenerator hashGenerator;
+  private final UrlShortenerMetrics urlShortenerMetrics;
+  private final ClickCounter clickCounter;
+  private final HotLinkTracker hotLinkTracker;
+  private final SequenceConfigurationProperties sequenceConfigurationProperties;
+  private final ReaperConfigurationProperties reaperConfigurationProperties;
 
   /**
-   * Shortens the given URL. If the URL is already shortened, it tries to generate a new hash up to
-   * a configurable amount of times before giving up. If the URL is successfully shortened, it saves
-   * the hash to Redis and the URL to the storage and then returns the shortened URL.
+   * Shortens the given URL. A URL this node recently shortened is answered with its existing hash
+   * straight away, and a hash that already stores the same URL is reused. If the hash stores
+   * another URL, it tries to generate a new hash up to a configurable amount of times before
+   * giving up. If the URL is successfully shortened, it saves the hash and the URL to the storage
+   * and then returns the shortened URL.
    *
    * @param longUrl the URL to shorten
+   * @param deadline the time by which the storage must have answered
    * @return the shortened URL
    */
-  public EitherT<UrlShortenerError, String> shortenUrl(String longUrl) {
-    return generateHashWithRetry(longUrl, 0)
-        .map(generatedHash -> applicationConfigurationProperties.baseUrl() + "/" + generatedHash);
+  public EitherT<UrlShortenerError, String> shortenUrl(String longUrl, Deadline deadline) {
+    long startNanos = System.nanoTime();
+    Optional<String> existingHash = storageRepositoryFacade.findHash(longUrl);
+    EitherT<UrlShortenerError, String> hash = existingHash.isPresent()
+        ? EitherT.right(existingHash.get())
+        : generateHashWithRetry(longUrl, 0, deadline);
+    EitherT<UrlShortenerError, String> shortUrl = hash.map(
+        generatedHash -> applicationConfigurationProperties.baseUrl() + "/" + generatedHash);
+    shortUrl.toCompletableFuture().whenComplete((result, throwable) ->
+        urlShortenerMetrics.recordShorten(startNanos, result, throwable));
+    return shortUrl;
+  }
+
+  /**
+   * Fetches the entry of the given short URL. It first extracts the hash from the URL, counts it
+   * towards the hot links and then checks if the hash is in use. If the hash is in use, it fetches
+   * the entry, with the original URL and its expiry, from the storage and returns it. The keys of
+   * the items the storage keeps for itself are never looked up.
+   *
+   * @param shortUrl the short URL to fetch the entry for
+   * @param deadline the time by which the storage must have answered
+   * @return the entry if it exists
+   */
+  public EitherT<UrlShortenerError, UrlEntry> getUrlEntry(String shortUrl, Deadline deadline) {
+    long startNanos = System.nanoTime();
+    String hash = extractHashFromUrl(shortUrl);
+    if (isReserved(hash)) {
+      return EitherT.left(UrlShortenerError.HASH_NOT_FOUND);
+    }
+    hotLinkTracker.recordLookup(hash);
+    EitherT<UrlShortenerError, UrlEntry> urlEntry =
+        storageRepositoryFacade.getUrlEntry(hash, deadline);
+    urlEntry.toCompletableFuture().whenComplete((result, throwable) ->
+        urlShortenerMetrics.recordResolve(startNanos, result, throwable));
+    return urlEntry;
   }
 
   /**
-   * Fetches the original URL for the given short URL. It first extracts the hash from the URL and
-   * then checks if the hash is in use. If the hash is in use, it fetches the original URL from the
-   * storage and returns it.
+   * Fetches the click count of the given short URL, the stored clicks and the ones not flushed
+   * yet. The hash is looked up first so a short URL that is not in use is reported as such.
    *
-   * @param shortUrl the short URL to fetch the original URL for
-   * @return the original URL if it exists
+   * @param shortUrl the short URL to count the clicks of
+   * @param deadline the time by which the storage must have answered
+   * @return the clicks if the short URL exists
    */
-  public EitherT<UrlShortenerError, String> getOriginalUrl(String shortUrl) {
+  public EitherT<UrlShortenerError, Long> getClicks(String shortUrl, Deadline deadline) {
     String hash = extractHashFromUrl(shortUrl);
-    return getUrl(hash);
+    if (isReserved(hash)) {
+      return EitherT.left(UrlShortenerError.HASH_NOT_FOUND);
+    }
+    return EitherT.fromFuture(storageRepositoryFacade.getUrlEntry(hash, deadline)
+        .toCompletableFuture()
+        .thenCompose(urlEntry -> urlEntry.isRight()
+            ? clickCounter.getClicks(hash)
+            : CompletableFuture.completedFuture(Either.left(urlEntry.getLeft()))));
+  }
+
+  /**
+   * Shortens the given URLs, keeping at most a configurable amount of them in flight at once.
+   *
+   * @param longUrls the URLs to shorten
+   * @return the shortened URL or the error of every URL, in the same order as the input
+   */
+  public List<CompletableFuture<Either<UrlShortenerError, String>>> shortenUrls(
+      List<String> longUrls) {
+    return mapWithBoundedConcurrency(
+        longUrls,
+        batchConfigurationProperties.maxConcurrency(),
+        longUrl -> shortenUrl(longUrl, Deadline.none()).toCompletableFuture());
+  }
+
+  /**
+   * Fetches the original URLs for the given short URLs. The hashes are counted towards the hot
+   * links and fetched from the storage in chunks with a single batch read each, keeping at most a
+   * configurable amount of chunks in flight at once. The keys of the items the storage keeps for
+   * itself are never looked up.
+   *
+   * @param shortUrls the short URLs to fetch the original URLs for
+   * @return the original URL or the error of every short URL, in the same order as the input
+   */
+  public List<CompletableFuture<Either<UrlShortenerError, String>>> getOriginalUrls(
+      List<String> shortUrls) {
+    long startNanos = System.nanoTime();
+    List<String> hashes =
+        shortUrls.stream().map(UrlShortenerService::extractHashFromUrl).toList();
+    List<String> lookedUpHashes = new ArrayList<>(hashes.size());
+    for (String hash : hashes) {
+      if (!isReserved(hash)) {
+        hotLinkTracker.recordLookup(hash);
+        lookedUpHashes.add(hash);
+      }
+    }
+    int chunkSize = batchConfigurationProperties.resolveChunkSize();
+    List<CompletableFuture<Either<UrlShortenerError, Map<String, String>>>> chunks =
+        mapWithBoundedConcurrency(
+            Lists.partition(lookedUpHashes, chunkSize),
+            batchConfigurationProperties.maxConcurrency(),
+            chunk -> storageRepositoryFacade.getOriginalUrls(chunk).toCompletableFuture());
+
+    List<CompletableFuture<Either<UrlShortenerError, String>>> originalUrls =
+        new ArrayList<>(hashes.size());
+    int lookedUp = 0;
+    for (String hash : hashes) {
+      if (isReserved(hash)) {
+        originalUrls.add(CompletableFuture.completedFuture(
+            Either.left(UrlShortenerError.HASH_NOT_FOUND)));
+        continue;
+      }
+      CompletableFuture<Either<UrlShortenerError, String>> originalUrl = chunks
+          .get(lookedUp++ / chunkSize)
+          .thenApply(chunkResult -> findOriginalUrl(chunkResult, hash));
+      originalUrl.whenComplete((result, throwable) ->
+          urlShortenerMetrics.recordResolve(startNanos, result, throwable));
+      originalUrls.add(originalUrl);
+    }
+    return originalUrls;
   }
 
   /**
    * Deletes the URL for the given short URL. It first extracts the hash from the URL and then
    * checks if the hash is in use. If the hash is in use, it deletes the URL from the storage and
-   * Redis.
+   * Redis. The keys of the items the storage keeps for itself are never deleted, as if they did
+   * not exist.
    *
    * @param shortUrl the short URL to delete
+   * @param deadline the time by which the storage must have answered
    * @return success or error.
    */
-  public TryT<Void> deleteUrl(String shortUrl) {
+  public TryT<Void> deleteUrl(String shortUrl, Deadline deadline) {
+    long startNanos = System.nanoTime();
     String hash = extractHashFromUrl(shortUrl);
-    return storageRepositoryFacade.delete(
-        hash, applicationConfigurationProperties.maxHashRetries());
+    if (isReserved(hash)) {
+      return TryT.fromFuture(CompletableFuture.completedFuture(Try.success(null)));
+    }
+    TryT<Void> deletion = storageRepositoryFacade.delete(hash, deadline);
+    deletion.toCompletableFuture().whenComplete((result, throwable) ->
+        urlShortenerMetrics.recordDelete(startNanos, result, throwable));
+    return deletion;
   }
 
   private EitherT<UrlShortenerError, String> generateHashWithRetry(
-      String longUrl, int currentRetries) {
+      String longUrl, int currentRetries, Deadline deadline) {
     if (currentRetries >= applicationConfigurationProperties.maxHashRetries()) {
       return EitherT.left(UrlShortenerError.GENERIC_ERROR);
     }
-    String hash = generateHash(longUrl);
-    return saveHashAndReturnShortUrl(hash, longUrl, currentRetries);
+    return Try.of(() -> hashGenerator.generateHash(longUrl))
+        .onFailure(throwable -> log.error("Failed to generate a hash for {}", longUrl, throwable))
+        .fold(throwable -> EitherT.<UrlShortenerError, String>left(UrlShortenerError.GENERIC_ERROR),
+            hash -> saveHashAndReturnShortUrl(hash, longUrl, currentRetries, deadline));
   }
 
   private EitherT<UrlShortenerError, String> saveHashAndReturnShortUrl(
-      String hash, String longUrl, int currentRetries) {
+      String hash, String longUrl, int currentRetries, Deadline deadline) {
+    if (isReserved(hash)) {
+      return handleError(UrlShortenerError.HASH_ALREADY_EXISTS, longUrl, currentRetries, deadline);
+    }
     return storageRepositoryFacade
-        .saveHash(
-            hash,
-            longUrl,
-            applicationConfigurationProperties.maxHashRetries(),
-            applicationConfigurationProperties.urlExpirationInDays())
-        .recoverWith(error -> handleError(error, longUrl, currentRetries));
+        .saveHash(hash, longUrl, applicationConfigurationProperties.urlExpirationInDays(),
+            deadline)
+        .recoverWith(error -> handleError(error, longUrl, currentRetries, deadline));
   }
 
   private EitherT<UrlShortenerError, String> handleError(
-      UrlShortenerError error, String longUrl, int currentRetries) {
+      UrlShortenerError error, String longUrl, int currentRetries, Deadline deadline) {
+    if (UrlShortenerError.HASH_ALREADY_EXISTS.equals(error)) {
+      urlShortenerMetrics.recordCollision();
+    }
     if (UrlShortenerError.HASH_ALREADY_EXISTS.equals(error)
         && currentRetries < applicationConfigurationProperties.maxHashRetries()) {
-      return generateHashWithRetry(longUrl, currentRetries + 1);
+      return generateHashWithRetry(longUrl, currentRetries + 1, deadline);
     } else {
       return EitherT.left(error);
     }
   }
 
-  private String generateHash(String longUrl) {
-    return applicationConfigurationProperties
-        .algorithm()
-        .generateHash(longUrl);
+  /**
+   * Returns whether the given hash is the key of the sequence counter or of the reaper checkpoint,
+   * which share the URL table but are not URLs.
+   */
+  private boolean isReserved(String hash) {
+    return hash.equals(sequenceConfigurationProperties.counterKey())
+        || hash.equals(reaperConfigurationProperties.checkpointKey());
   }
 
-  private String extractHashFromUrl(String shortUrl) {
+  static String extractHashFromUrl(String shortUrl) {
     return shortUrl.substring(shortUrl.lastIndexOf('/') + 1);
   }
 
-  private EitherT<UrlShortenerError, String> getUrl(String hash) {
-    return storageRepositoryFacade.getOriginalUrl(
-        hash, applicationConfigurationProperties.maxHashRetries());
+  private static Either<UrlShortenerError, String> findOriginalUrl(
+      Either<UrlShortenerError, Map<String, String>> chunkResult, String hash) {
+    if (chunkResult.isLeft()) {
+      return Either.left(chunkResult.getLeft());
+    }
+    String originalUrl = chunkResult.getRight().get(hash);
+    return originalUrl == null
+        ? Either.left(UrlShortenerError.HASH_NOT_FOUND)
+        : Either.right(originalUrl);
   }
 }
@@ -0,0 +1,77 @@
+package com.truthful.pinokio.service.model;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * Text encodings of a hash. {@link #HEX} covers the whole hash and is kept for links created
+ * before the compact encodings existed. {@link #BASE62} and {@link #BASE64URL} encode at most the
+ * first 64 bits of the hash, read straight from the {@link HashCode} without copying its bytes, as
+ * a fixed-width code of the requested length.
+ */
+public enum HashEncoding {
+  HEX {
+    @Override
+    int maxLength(int bits) {
+      return bits / 4;
+    }
+
+    @Override
+    String encode(HashCode hashCode, int length) {
+      String hex = hashCode.toString();
+      return length == hex.length() ? hex : hex.substring(0, length);
+    }
+  },
+  BASE62 {
+    @Override
+    int maxLength(int bits) {
+      return (int) Math.ceil(Math.min(bits, Long.SIZE) / BASE62_BITS_PER_CHAR);
+    }
+
+    @Override
+    String encode(HashCode hashCode, int length) {
+      long value = leadingBits(hashCode);
+      char[] code = new char[length];
+      for (int i = length - 1; i >= 0; i--) {
+        code[i] = BASE62_ALPHABET[(int) Long.remainderUnsigned(value, 62)];
+        value = Long.divideUnsigned(value, 62);
+      }
+      return new String(code);
+    }
+  },
+  BASE64URL {
+    @Override
+    int maxLength(int bits) {
+      return (Math.min(bits, Long.SIZE) + 5) / 6;
+    }
+
+    @Override
+    String encode(HashCode hashCode, int length) {
+      long value = leadingBits(hashCode);
+      char[] code = new char[length];
+      for (int i = length - 1; i >= 0; i--) {
+        code[i] = BASE64URL_ALPHABET[(int) (value & 63)];
+        value >>>= 6;
+      }
+      return new String(code);
+    }
+  };
+
+  private static final double BASE62_BITS_PER_CHAR = Math.log(62) / Math.log(2);
+  private static final char[] BASE62_ALPHABET =
+      "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+  private static final char[] BASE64URL_ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+  /**
+   * Returns the longest code this encoding can produce for a hash of the given size.
+   */
+  abstract int maxLength(int bits);
+
+  abstract String encode(HashCode hashCode, int length);
+
+  private static long leadingBits(HashCode hashCode) {
+    return hashCode.bits() == Integer.SIZE
+        ? Integer.toUnsignedLong(hashCode.asInt())
+        : hashCode.asLong();
+  }
+}
@@ -1,23 +1,50 @@
 package com.truthful.pinokio.service.model;
 
+import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 
 public enum HashingAlgorithm {
   MURMUR32 {
-    public String generateHash(String input) {
-      return Hashing.murmur3_32_fixed().hashUnencodedChars(input).toString();
+    HashFunction hashFunction() {
+      return Hashing.murmur3_32_fixed();
     }
   },
   MURMUR128 {
-    public String generateHash(String input) {
-      return Hashing.murmur3_128().hashUnencodedChars(input).toString();
+    HashFunction hashFunction() {
+      return Hashing.murmur3_128();
     }
   },
   SHA256 {
-    public String generateHash(String input) {
-      return Hashing.sha256().hashUnencodedChars(input).toString();
+    HashFunction hashFunction() {
+      return Hashing.sha256();
     }
   };
 
-  public abstract String generateHash(String input);
+  /**
+   * Returns the full hash of the input as hex.
+   */
+  public String generateHash(String input) {
+    return generateHash(input, HashEncoding.HEX, maxLength(HashEncoding.HEX));
+  }
+
+  /**
+   * Returns the hash of the input as a code of the given length in the given encoding.
+   *
+   * @param input the input to hash
+   * @param encoding the encoding of the code
+   * @param length the length of the code, at most {@link #maxLength(HashEncoding)}
+   * @return the encoded hash
+   */
+  public String generateHash(String input, HashEncoding encoding, int length) {
+    return encoding.encode(hashFunction().hashUnencodedChars(input), length);
+  }
+
+  /**
+   * Returns the longest code the given encoding can produce for this algorithm.
+   */
+  public int maxLength(HashEncoding encoding) {
+    return encoding.maxLength(hashFunction().bits());
+  }
+
+  abstract HashFunction hashFunction();
 }
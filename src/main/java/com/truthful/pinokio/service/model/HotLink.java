@@ -0,0 +1,11 @@
+package com.truthful.pinokio.service.model;
+
+/**
+ * A link among the most looked up ones of the sliding window.
+ *
+ * @param hash the hash of the link
+ * @param lookups the estimated lookups of the link during the window, never below the true count
+ */
+public record HotLink(String hash, long lookups) {
+
+}
@@ -3,5 +3,7 @@ package com.truthful.pinokio.service.model;
 public enum UrlShortenerError {
   HASH_ALREADY_EXISTS,
   HASH_NOT_FOUND,
+  TRANSIENT_ERROR,
+  SERVICE_UNAVAILABLE,
   GENERIC_ERROR
 }
@@ -0,0 +1,54 @@
+package com.truthful.pinokio.util;
+
+/**
+ * Encodes non-negative numbers with the URL safe alphabet {@code [0-9A-Za-z]}, using at most 11
+ * characters for any {@code long}.
+ */
+public final class Base62 {
+
+  private static final char[] ALPHABET =
+      "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+  private static final int BASE = ALPHABET.length;
+  private static final int MAX_LENGTH = 11;
+
+  private Base62() {
+  }
+
+  public static String encode(long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Cannot encode negative value " + value);
+    }
+    if (value == 0) {
+      return String.valueOf(ALPHABET[0]);
+    }
+    char[] buffer = new char[MAX_LENGTH];
+    int position = MAX_LENGTH;
+    while (value > 0) {
+      buffer[--position] = ALPHABET[(int) (value % BASE)];
+      value /= BASE;
+    }
+    return new String(buffer, position, MAX_LENGTH - position);
+  }
+
+  public static long decode(String encoded) {
+    if (encoded.isEmpty() || encoded.length() > MAX_LENGTH) {
+      throw new IllegalArgumentException("Invalid base62 value " + encoded);
+    }
+    long value = 0;
+    for (int i = 0; i < encoded.length(); i++) {
+      value = Math.addExact(Math.multiplyExact(value, BASE), digit(encoded.charAt(i)));
+    }
+    return value;
+  }
+
+  private static int digit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'A' && c <= 'Z') {
+      return c - 'A' + 10;
+    } else if (c >= 'a' && c <= 'z') {
+      return c - 'a' + 36;
+    }
+    throw new IllegalArgumentException("Invalid base62 character " + c);
+  }
+}
@@ -0,0 +1,127 @@
+package com.truthful.pinokio.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public final class ConcurrencyUtil {
+
+  private ConcurrencyUtil() {
+  }
+
+  /**
+   * Applies the given asynchronous function to every input while keeping at most
+   * {@code maxConcurrency} calls in flight. The next input is started as soon as a call completes,
+   * without blocking the caller.
+   *
+   * @param inputs the inputs to process
+   * @param maxConcurrency the maximum amount of calls in flight
+   * @param function the asynchronous function to apply
+   * @return the results, in the same order as the inputs
+   */
+  public static <I, O> List<CompletableFuture<O>> mapWithBoundedConcurrency(
+      List<I> inputs, int maxConcurrency, Function<I, CompletableFuture<O>> function) {
+    List<CompletableFuture<O>> results = new ArrayList<>(inputs.size());
+    for (int i = 0; i < inputs.size(); i++) {
+      results.add(new CompletableFuture<>());
+    }
+    AtomicInteger nextIndex = new AtomicInteger();
+    int workers = Math.min(maxConcurrency, inputs.size());
+    for (int i = 0; i < workers; i++) {
+      runWorker(inputs, results, nextIndex, function);
+    }
+    return results;
+  }
+
+  /**
+   * Returns the given dependent future, cancelling the source it was derived from once it is
+   * cancelled itself. A {@link CompletableFuture} does not pass its cancellation on to the stages
+   * it depends on, so cancelling a future derived from the one of a client call would leave the
+   * call running.
+   *
+   * @param dependent the future derived from the source
+   * @param source the future of the underlying call
+   * @return the dependent future
+   */
+  public static <T> CompletableFuture<T> cancellingSource(
+      CompletableFuture<T> dependent, Future<?> source) {
+    dependent.whenComplete((value, throwable) -> {
+      if (dependent.isCancelled()) {
+        source.cancel(true);
+      }
+    });
+    return dependent;
+  }
+
+  /**
+   * Runs the given blocking supplier on the given executor. Unlike
+   * {@link CompletableFuture#supplyAsync(Supplier, Executor)}, cancelling the returned future
+   * interrupts the thread running the supplier, which on a virtual thread also aborts a blocking
+   * socket read or write.
+   *
+   * @param supplier the blocking work
+   * @param executor the executor to run it on
+   * @return the result of the supplier
+   */
+  public static <T> CompletableFuture<T> supplyInterruptibly(
+      Supplier<T> supplier, Executor executor) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    FutureTask<Void> task = new FutureTask<>(() -> {
+      try {
+        result.complete(supplier.get());
+      } catch (Throwable throwable) {
+        // The task swallows what it throws, so the result has to carry it
+        result.completeExceptionally(throwable);
+      }
+    }, null);
+    cancellingSource(result, task);
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  private static <I, O> void runWorker(
+      List<I> inputs,
+      List<CompletableFuture<O>> results,
+      AtomicInteger nextIndex,
+      Function<I, CompletableFuture<O>> function) {
+    int index;
+    // Calls that complete synchronously are handled in this loop rather than by recursion
+    while ((index = nextIndex.getAndIncrement()) < inputs.size()) {
+      CompletableFuture<O> result = results.get(index);
+      CompletableFuture<O> call;
+      try {
+        call = function.apply(inputs.get(index));
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+        continue;
+      }
+      if (!call.isDone()) {
+        call.whenComplete((value, throwable) -> {
+          complete(result, value, throwable);
+          runWorker(inputs, results, nextIndex, function);
+        });
+        return;
+      }
+      call.whenComplete((value, throwable) -> complete(result, value, throwable));
+    }
+  }
+
+  private static <O> void complete(CompletableFuture<O> result, O value, Throwable throwable) {
+    if (throwable != null) {
+      result.completeExceptionally(throwable);
+    } else {
+      result.complete(value);
+    }
+  }
+}
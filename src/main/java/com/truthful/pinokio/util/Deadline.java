@@ -0,0 +1,77 @@
+package com.truthful.pinokio.util;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a request must be answered, set once when it arrives and handed down to
+ * every layer that works on it. Retries and storage attempts only get the time that remains, so
+ * that no work carries on for a client that has stopped waiting.
+ */
+public final class Deadline {
+
+  private static final Deadline NONE = new Deadline(0, false);
+
+  private final long expiresAtNanos;
+  private final boolean bounded;
+
+  private Deadline(long expiresAtNanos, boolean bounded) {
+    this.expiresAtNanos = expiresAtNanos;
+    this.bounded = bounded;
+  }
+
+  /**
+   * Returns a deadline the given budget from now.
+   */
+  public static Deadline after(Duration budget) {
+    return new Deadline(System.nanoTime() + budget.toNanos(), true);
+  }
+
+  /**
+   * Returns a deadline that never passes, for work no client is waiting for.
+   */
+  public static Deadline none() {
+    return NONE;
+  }
+
+  /**
+   * Returns the time left until the deadline in nanoseconds, {@link Long#MAX_VALUE} if it never
+   * passes and zero or less once it has passed.
+   */
+  public long remainingNanos() {
+    return bounded ? expiresAtNanos - System.nanoTime() : Long.MAX_VALUE;
+  }
+
+  public boolean isExpired() {
+    return remainingNanos() <= 0;
+  }
+
+  /**
+   * Returns whether the deadline can pass at all, false for {@link #none()}.
+   */
+  public boolean isBounded() {
+    return bounded;
+  }
+
+  /**
+   * Bounds the given work by the deadline. The returned future completes with the result of the
+   * work, or with the given value once the deadline passes, in which case the work is cancelled,
+   * as it is when the returned future is.
+   * Cancelling only stops work whose future passes the cancellation on to it, as the futures of
+   * the {@link com.truthful.pinokio.repository.UrlStore} do.
+   *
+   * @param work the work to bound
+   * @param onExpiry the result of the returned future if the deadline passes first
+   * @return the bounded work
+   */
+  public <T> CompletableFuture<T> bound(CompletableFuture<T> work, T onExpiry) {
+    if (!bounded || work.isDone()) {
+      return work;
+    }
+    CompletableFuture<T> boundedWork =
+        work.copy().completeOnTimeout(onExpiry, remainingNanos(), TimeUnit.NANOSECONDS);
+    boundedWork.whenComplete((result, throwable) -> work.cancel(true));
+    return boundedWork;
+  }
+}
@@ -0,0 +1,142 @@
+package com.truthful.pinokio.util;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory estimate of how often keys were seen and of which ones were seen the most. The
+ * counts come from a Count-Min sketch of {@code depth} rows of {@code width} counters: a key
+ * increments one counter per row and its estimate is the smallest of them, which is never below
+ * the true count and above it by a fraction of the total only. The most frequent keys are tracked
+ * the Space-Saving way, as a bounded set of candidates whose least frequent member gives way to a
+ * key whose estimate has overtaken it.
+ *
+ * <p>It is thread-safe. Counting a key is lock free, only a key entering the candidates takes a
+ * lock, and cold keys are turned away by a single read of the smallest candidate count.
+ */
+public final class HeavyHitterSketch {
+
+  private final int width;
+  private final int depth;
+  private final int capacity;
+  private final AtomicLongArray counters;
+  private final Map<String, Long> candidates;
+
+  /**
+   * Smallest count among the candidates once there are {@code capacity} of them, zero before.
+   */
+  private volatile long minimumCandidate;
+
+  /**
+   * Creates an empty sketch.
+   *
+   * @param width the counters of every row, rounded up to a power of two
+   * @param depth the rows, each one a pairwise independent hash of the keys
+   * @param capacity the most frequent keys tracked
+   */
+  public HeavyHitterSketch(int width, int depth, int capacity) {
+    this.width = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+    this.depth = depth;
+    this.capacity = capacity;
+    this.counters = new AtomicLongArray(this.width * depth);
+    this.candidates = new ConcurrentHashMap<>(capacity * 2);
+  }
+
+  /**
+   * Counts the given key once.
+   *
+   * @param key the key that was seen
+   * @return the estimated count of the key, this time included
+   */
+  public long add(String key) {
+    long hash = Hashing.farmHashFingerprint64().hashString(key, StandardCharsets.UTF_8).asLong();
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counters.incrementAndGet(index(hash, row)));
+    }
+    offer(key, estimate);
+    return estimate;
+  }
+
+  /**
+   * Returns the estimated count of the given key, never below its true count.
+   */
+  public long estimate(String key) {
+    long hash = Hashing.farmHashFingerprint64().hashString(key, StandardCharsets.UTF_8).asLong();
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counters.get(index(hash, row)));
+    }
+    return estimate;
+  }
+
+  /**
+   * Returns the keys tracked as the most frequent ones. Their counts are the estimates at the time
+   * they were last seen.
+   */
+  public List<Map.Entry<String, Long>> candidates() {
+    return candidates.entrySet().stream()
+        .map(candidate -> Map.entry(candidate.getKey(), candidate.getValue()))
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+        .toList();
+  }
+
+  /**
+   * Forgets every key. Keys counted concurrently may or may not be forgotten.
+   */
+  public void clear() {
+    synchronized (candidates) {
+      for (int i = 0; i < counters.length(); i++) {
+        counters.set(i, 0);
+      }
+      candidates.clear();
+      minimumCandidate = 0;
+    }
+  }
+
+  private void offer(String key, long estimate) {
+    if (candidates.computeIfPresent(key, (candidate, count) -> Math.max(count, estimate)) != null
+        || estimate <= minimumCandidate) {
+      return;
+    }
+    synchronized (candidates) {
+      if (candidates.containsKey(key)) {
+        candidates.merge(key, estimate, Math::max);
+        return;
+      }
+      if (candidates.size() < capacity) {
+        candidates.put(key, estimate);
+      } else {
+        Map.Entry<String, Long> minimum = minimumEntry();
+        if (estimate <= minimum.getValue()) {
+          return;
+        }
+        candidates.remove(minimum.getKey());
+        candidates.put(key, estimate);
+      }
+      if (candidates.size() >= capacity) {
+        minimumCandidate = minimumEntry().getValue();
+      }
+    }
+  }
+
+  private Map.Entry<String, Long> minimumEntry() {
+    return candidates.entrySet().stream()
+        .min(Comparator.comparingLong(Map.Entry::getValue))
+        .orElseThrow();
+  }
+
+  /**
+   * Counter of the key in the given row, from the two halves of its hash combined as in
+   * Kirsch-Mitzenmacher double hashing.
+   */
+  private int index(long hash, int row) {
+    int combined = (int) hash + row * (int) (hash >>> 32);
+    return row * width + (combined & (width - 1));
+  }
+}
@@ -0,0 +1,46 @@
+package com.truthful.pinokio.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Executor} that counts the tasks submitted to its delegate which have not finished yet.
+ * With a thread-per-task delegate this is the number of threads in flight.
+ */
+public final class InFlightTrackingExecutor implements Executor, AutoCloseable {
+
+  private final ExecutorService delegate;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public InFlightTrackingExecutor(ExecutorService delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    inFlight.incrementAndGet();
+    try {
+      delegate.execute(() -> {
+        try {
+          task.run();
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.decrementAndGet();
+      throw e;
+    }
+  }
+
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+}
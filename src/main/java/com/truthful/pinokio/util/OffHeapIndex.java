@@ -0,0 +1,193 @@
+package com.truthful.pinokio.util;
+
+import com.google.common.hash.Hashing;
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Open-addressing hash table from keys to the non-negative offset of their record in some off-heap
+ * storage, kept in a direct buffer so that millions of entries cost the heap nothing. Every slot
+ * holds a 64-bit fingerprint of the key and an offset, and the keys themselves stay in the
+ * storage: a matching fingerprint is confirmed by the predicate of the caller, which compares the
+ * key stored at the offset.
+ *
+ * <p>Removed entries leave a tombstone so that the probe sequences of the others stay intact. The
+ * table is rebuilt, twice as large if needed, once entries and tombstones fill three quarters of
+ * it. It is not thread-safe.
+ */
+public final class OffHeapIndex {
+
+  private static final int SLOT_SIZE = Long.BYTES + Integer.BYTES;
+  private static final int MAX_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+  private static final long EMPTY = 0;
+  private static final int TOMBSTONE = -1;
+  private static final double MAX_LOAD = 0.75;
+
+  private ByteBuffer slots;
+  private int mask;
+  private int size;
+  private int tombstones;
+
+  /**
+   * Creates an index sized for the given number of entries before it needs to grow.
+   */
+  public OffHeapIndex(int expectedEntries) {
+    allocate(capacityFor(expectedEntries));
+  }
+
+  /**
+   * Returns the fingerprint of the given UTF-8 key, which is never zero.
+   */
+  public static long fingerprint(byte[] key) {
+    long fingerprint = Hashing.murmur3_128().hashBytes(key).asLong();
+    return fingerprint == EMPTY ? 1 : fingerprint;
+  }
+
+  /**
+   * Returns the offset stored for the key, or -1 if there is none.
+   *
+   * @param fingerprint the fingerprint of the key
+   * @param matches whether the record at an offset has the key
+   */
+  public int get(long fingerprint, IntPredicate matches) {
+    for (int slot = start(fingerprint); ; slot = next(slot)) {
+      long stored = slots.getLong(slot);
+      if (stored == EMPTY) {
+        return -1;
+      }
+      int offset = slots.getInt(slot + Long.BYTES);
+      if (stored == fingerprint && offset != TOMBSTONE && matches.test(offset)) {
+        return offset;
+      }
+    }
+  }
+
+  /**
+   * Stores the offset of the key, replacing the one it had.
+   *
+   * @return the offset replaced, or -1 if there was none
+   */
+  public int put(long fingerprint, int offset, IntPredicate matches) {
+    if (size + tombstones + 1 > (mask + 1) * MAX_LOAD) {
+      rebuild();
+    }
+    int reusable = -1;
+    for (int slot = start(fingerprint); ; slot = next(slot)) {
+      long stored = slots.getLong(slot);
+      if (stored == EMPTY) {
+        if (reusable < 0) {
+          reusable = slot;
+        } else {
+          tombstones--;
+        }
+        slots.putLong(reusable, fingerprint).putInt(reusable + Long.BYTES, offset);
+        size++;
+        return -1;
+      }
+      int storedOffset = slots.getInt(slot + Long.BYTES);
+      if (storedOffset == TOMBSTONE) {
+        if (reusable < 0) {
+          reusable = slot;
+        }
+      } else if (stored == fingerprint && matches.test(storedOffset)) {
+        slots.putInt(slot + Long.BYTES, offset);
+        return storedOffset;
+      }
+    }
+  }
+
+  /**
+   * Removes the key.
+   *
+   * @return the offset removed, or -1 if there was none
+   */
+  public int remove(long fingerprint, IntPredicate matches) {
+    for (int slot = start(fingerprint); ; slot = next(slot)) {
+      long stored = slots.getLong(slot);
+      if (stored == EMPTY) {
+        return -1;
+      }
+      int offset = slots.getInt(slot + Long.BYTES);
+      if (stored == fingerprint && offset != TOMBSTONE && matches.test(offset)) {
+        slots.putInt(slot + Long.BYTES, TOMBSTONE);
+        size--;
+        tombstones++;
+        return offset;
+      }
+    }
+  }
+
+  /**
+   * Passes the offset of every entry to the given consumer, in no particular order.
+   */
+  public void forEach(IntConsumer consumer) {
+    for (int slot = 0; slot < slots.capacity(); slot += SLOT_SIZE) {
+      int offset = slots.getInt(slot + Long.BYTES);
+      if (slots.getLong(slot) != EMPTY && offset != TOMBSTONE) {
+        consumer.accept(offset);
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Returns the direct memory taken by the table.
+   */
+  public long memoryUsage() {
+    return slots.capacity();
+  }
+
+  private void rebuild() {
+    ByteBuffer previous = slots;
+    int capacity = mask + 1;
+    allocate(size + 1 > capacity * MAX_LOAD / 2 ? grow(capacity) : capacity);
+    for (int slot = 0; slot < previous.capacity(); slot += SLOT_SIZE) {
+      long fingerprint = previous.getLong(slot);
+      int offset = previous.getInt(slot + Long.BYTES);
+      if (fingerprint != EMPTY && offset != TOMBSTONE) {
+        int target = start(fingerprint);
+        while (slots.getLong(target) != EMPTY) {
+          target = next(target);
+        }
+        slots.putLong(target, fingerprint).putInt(target + Long.BYTES, offset);
+        size++;
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+    mask = capacity - 1;
+    size = 0;
+    tombstones = 0;
+  }
+
+  private int start(long fingerprint) {
+    return ((int) (fingerprint ^ (fingerprint >>> 32)) & mask) * SLOT_SIZE;
+  }
+
+  private int next(int slot) {
+    return slot + SLOT_SIZE == slots.capacity() ? 0 : slot + SLOT_SIZE;
+  }
+
+  private static int grow(int capacity) {
+    if (capacity >= MAX_CAPACITY) {
+      throw new IllegalStateException("The index cannot hold more than " + MAX_CAPACITY
+          + " slots");
+    }
+    return capacity * 2;
+  }
+
+  private static int capacityFor(int expectedEntries) {
+    long capacity = Long.highestOneBit((long) Math.ceil(expectedEntries / MAX_LOAD) * 2 - 1);
+    return (int) Math.max(16, Math.min(capacity, MAX_CAPACITY));
+  }
+}
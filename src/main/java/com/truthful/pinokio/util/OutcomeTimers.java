@@ -0,0 +1,73 @@
+package com.truthful.pinokio.util;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.Try;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency timers of one operation, tagged with its outcome: {@code success}, the name of the
+ * {@link UrlShortenerError} it returned or {@code failure} if it threw. Every timer is registered
+ * upfront, so recording is a plain update of an existing meter and never looks one up.
+ *
+ * <p>Histogram buckets and SLOs are not set here but configured per meter name under
+ * {@code management.metrics.distribution}.
+ */
+public final class OutcomeTimers {
+
+  private final Timer success;
+  private final Timer failure;
+  private final Map<UrlShortenerError, Timer> errors = new EnumMap<>(UrlShortenerError.class);
+
+  public OutcomeTimers(
+      MeterRegistry meterRegistry, String name, String description, String operation) {
+    this.success = register(meterRegistry, name, description, operation, "success");
+    this.failure = register(meterRegistry, name, description, operation, "failure");
+    for (UrlShortenerError error : UrlShortenerError.values()) {
+      errors.put(error,
+          register(meterRegistry, name, description, operation, error.name().toLowerCase()));
+    }
+  }
+
+  /**
+   * Records the time elapsed since {@code startNanos} under the outcome of the given result.
+   *
+   * @param startNanos the {@link System#nanoTime()} at which the operation started
+   * @param result the result of the operation, {@code null} if it threw
+   * @param throwable what the operation threw, {@code null} if it completed
+   */
+  public void record(long startNanos, Either<UrlShortenerError, ?> result, Throwable throwable) {
+    Timer timer;
+    if (throwable != null || result == null) {
+      timer = failure;
+    } else {
+      timer = result.isRight() ? success : errors.get(result.getLeft());
+    }
+    timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the time elapsed since {@code startNanos} as a success or a failure.
+   *
+   * @param startNanos the {@link System#nanoTime()} at which the operation started
+   * @param result the result of the operation, {@code null} if it threw
+   * @param throwable what the operation threw, {@code null} if it completed
+   */
+  public void recordTry(long startNanos, Try<?> result, Throwable throwable) {
+    Timer timer = throwable == null && result != null && result.isSuccess() ? success : failure;
+    timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private static Timer register(MeterRegistry meterRegistry, String name, String description,
+      String operation, String outcome) {
+    return Timer.builder(name)
+        .description(description)
+        .tag("operation", operation)
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,132 @@
+package com.truthful.pinokio.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.RateLimiter;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.spi.LoggingEventBuilder;
+
+/**
+ * Logs the outcome of per-request operations without making logging a cost of every request.
+ *
+ * <p>Completed requests are logged at INFO for a random sample of them, so a low rate keeps a
+ * representative trace at a fraction of the volume. Errors are always eligible but deduplicated:
+ * the same event failing with the same exception type is logged once per window, and the next line
+ * reports how many were suppressed in between. On top of that, a global rate caps the error lines
+ * during an outage. Every line carries its fields as key-value pairs instead of formatted text.
+ */
+public final class RequestLogger {
+
+  private static final int MAX_ERROR_SIGNATURES = 1_000;
+
+  private final double sampleRate;
+  private final long errorDedupWindowNanos;
+  private final RateLimiter errorRateLimiter;
+  private final Ticker ticker;
+  private final Cache<String, ErrorWindow> errorWindows;
+
+  public RequestLogger(double sampleRate, Duration errorDedupWindow, double errorsPerSecond) {
+    this(sampleRate, errorDedupWindow, errorsPerSecond, Ticker.systemTicker());
+  }
+
+  RequestLogger(
+      double sampleRate, Duration errorDedupWindow, double errorsPerSecond, Ticker ticker) {
+    this.sampleRate = sampleRate;
+    this.errorDedupWindowNanos = errorDedupWindow.toNanos();
+    this.errorRateLimiter = RateLimiter.create(errorsPerSecond);
+    this.ticker = ticker;
+    this.errorWindows = Caffeine.newBuilder().maximumSize(MAX_ERROR_SIGNATURES).build();
+  }
+
+  /**
+   * Logs a completed request at INFO if it is part of the sample.
+   *
+   * @param logger the logger of the caller
+   * @param event what was done, e.g. {@code dynamodb.get}
+   * @param hash the hash the request was about, or {@code null}
+   * @param startNanos the {@link System#nanoTime()} at which the request started
+   * @param outcome how the request ended, e.g. {@code found}
+   */
+  public void logRequest(
+      Logger logger, String event, String hash, long startNanos, String outcome) {
+    if (!isSampled() || !logger.isInfoEnabled()) {
+      return;
+    }
+    LoggingEventBuilder builder = logger.atInfo()
+        .addKeyValue("event", event)
+        .addKeyValue("outcome", outcome)
+        .addKeyValue("latencyMicros",
+            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    if (hash != null) {
+      builder.addKeyValue("hash", hash);
+    }
+    builder.log(event);
+  }
+
+  /**
+   * Logs a failed request at ERROR unless the same failure was logged within the dedup window or
+   * the error rate is exceeded.
+   *
+   * @param logger the logger of the caller
+   * @param event what was attempted, e.g. {@code dynamodb.get}
+   * @param hash the hash the request was about, or {@code null}
+   * @param throwable the failure
+   */
+  public void logError(Logger logger, String event, String hash, Throwable throwable) {
+    String signature = event + '|' + throwable.getClass().getName();
+    ErrorWindow errorWindow = errorWindows.get(signature, ignored -> new ErrorWindow());
+    long suppressed = errorWindow.admit(ticker.read(), errorDedupWindowNanos);
+    if (suppressed < 0) {
+      return;
+    }
+    if (!errorRateLimiter.tryAcquire()) {
+      errorWindow.suppress(suppressed + 1);
+      return;
+    }
+    LoggingEventBuilder builder = logger.atError()
+        .setCause(throwable)
+        .addKeyValue("event", event)
+        .addKeyValue("outcome", "error")
+        .addKeyValue("suppressed", suppressed);
+    if (hash != null) {
+      builder.addKeyValue("hash", hash);
+    }
+    builder.log(event + " failed");
+  }
+
+  private boolean isSampled() {
+    return sampleRate >= 1
+        || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+  }
+
+  private static final class ErrorWindow {
+
+    private long lastLoggedNanos;
+    private boolean logged;
+    private long suppressed;
+
+    /**
+     * Returns the number of errors suppressed since the last logged one if this one may be
+     * logged, otherwise counts it as suppressed and returns -1.
+     */
+    synchronized long admit(long nowNanos, long windowNanos) {
+      if (logged && nowNanos - lastLoggedNanos < windowNanos) {
+        suppressed++;
+        return -1;
+      }
+      long admitted = suppressed;
+      suppressed = 0;
+      logged = true;
+      lastLoggedNanos = nowNanos;
+      return admitted;
+    }
+
+    synchronized void suppress(long count) {
+      suppressed += count;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.truthful.pinokio.util;
+
+/**
+ * Token bucket shared by every retry policy of the process. Each retry takes one token and tokens
+ * come back at a fixed rate, so during an outage the amount of retries is capped at the refill rate
+ * no matter how many requests are failing.
+ */
+public final class RetryBudget {
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+  private static final RetryBudget UNLIMITED = new RetryBudget(0, 0, true);
+
+  private final double capacity;
+  private final double tokensPerNano;
+  private final boolean unlimited;
+  private double tokens;
+  private long lastRefillNanos;
+
+  public RetryBudget(int capacity, double refillPerSecond) {
+    this(capacity, refillPerSecond, false);
+  }
+
+  private RetryBudget(int capacity, double refillPerSecond, boolean unlimited) {
+    this.capacity = capacity;
+    this.tokensPerNano = refillPerSecond / NANOS_PER_SECOND;
+    this.unlimited = unlimited;
+    this.tokens = capacity;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Returns a budget that never runs out.
+   */
+  public static RetryBudget unlimited() {
+    return UNLIMITED;
+  }
+
+  /**
+   * Takes a token if one is available.
+   *
+   * @return whether the retry may go ahead
+   */
+  public synchronized boolean tryAcquire() {
+    if (unlimited) {
+      return true;
+    }
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+    lastRefillNanos = now;
+    if (tokens < 1) {
+      return false;
+    }
+    tokens--;
+    return true;
+  }
+}
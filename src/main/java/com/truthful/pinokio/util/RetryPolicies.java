@@ -0,0 +1,8 @@
+package com.truthful.pinokio.util;
+
+/**
+ * The retry policies of the storage operations. They share a single {@link RetryBudget}.
+ */
+public record RetryPolicies(RetryPolicy save, RetryPolicy get, RetryPolicy delete) {
+
+}
@@ -0,0 +1,35 @@
+package com.truthful.pinokio.util;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How an operation is retried. It is attempted at most {@code maxAttempts} times and before each
+ * retry waits a random time between zero and {@code initialBackoff * 2^(retry - 1)}, capped at
+ * {@code maxBackoff} (exponential backoff with full jitter). Every retry also takes a token from
+ * the shared {@link RetryBudget}.
+ */
+public record RetryPolicy(
+    int maxAttempts, Duration initialBackoff, Duration maxBackoff, RetryBudget budget) {
+
+  /**
+   * Returns a policy that retries straight away and is not limited by a budget.
+   */
+  public static RetryPolicy immediate(int maxAttempts) {
+    return new RetryPolicy(maxAttempts, Duration.ZERO, Duration.ZERO, RetryBudget.unlimited());
+  }
+
+  /**
+   * Returns how long to wait before the given retry.
+   *
+   * @param retry the retry about to be made, starting at 1
+   * @return the jittered backoff in nanoseconds
+   */
+  long backoffNanos(int retry) {
+    long initial = initialBackoff.toNanos();
+    long max = maxBackoff.toNanos();
+    int shift = Math.min(retry - 1, 62);
+    long cap = initial > (max >> shift) ? max : initial << shift;
+    return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+  }
+}
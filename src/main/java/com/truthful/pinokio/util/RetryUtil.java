@@ -1,13 +1,25 @@
 package com.truthful.pinokio.util;
 
 import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
 import com.soumakis.control.Failure;
 import com.soumakis.control.Success;
 import com.soumakis.control.Try;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.repository.resilience.StorageUnavailableException;
 import com.truthful.pinokio.service.model.UrlShortenerError;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 
 @Slf4j
 public final class RetryUtil {
@@ -15,34 +27,239 @@ public final class RetryUtil {
   private RetryUtil() {
   }
 
-  public static <T> Try<T> retry(int maxRetries, Supplier<Try<T>> supplier) {
-    for (int i = 0; i < maxRetries; i++) {
+  public static <T> Try<T> retry(RetryPolicy policy, Supplier<Try<T>> supplier) {
+    return retry(policy, Deadline.none(), supplier);
+  }
+
+  /**
+   * Same as {@link #retry(RetryPolicy, Supplier)}, without retrying once the backoff would take it
+   * past the given deadline. Stopping for the deadline fails with a
+   * {@link StorageUnavailableException}.
+   */
+  public static <T> Try<T> retry(
+      RetryPolicy policy, Deadline deadline, Supplier<Try<T>> supplier) {
+    Throwable lastFailure = null;
+    for (int attempt = 1; attempt <= policy.maxAttempts(); attempt++) {
       Try<T> result = supplier.get();
       switch (result) {
         case Success<T> ignored:
           return result;
-        case Failure<T> ignored:
-          log.warn("Failed to execute, retrying");
+        case Failure<T> failure:
+          if (!isRetryable(failure.getCause())) {
+            return result;
+          }
+          lastFailure = failure.getCause();
+      }
+      if (attempt < policy.maxAttempts()) {
+        long backoffNanos = policy.backoffNanos(attempt);
+        if (backoffNanos >= deadline.remainingNanos()) {
+          return Try.failure(
+              new StorageUnavailableException("Deadline passed after " + attempt + " attempts"));
+        }
+        if (!awaitRetry(policy, backoffNanos)) {
+          return result;
+        }
       }
     }
-    return Try.failure(new RuntimeException("Failed to execute after " + maxRetries + " retries"));
+    return Try.failure(exhausted(policy.maxAttempts(), lastFailure));
   }
 
   public static <T> Either<UrlShortenerError, T> retryEither(
-      int maxRetries, Supplier<Either<UrlShortenerError, T>> supplier) {
-    for (int i = 0; i < maxRetries; i++) {
-      Either<UrlShortenerError, T> result = supplier.get();
-      if (result.isRight()) {
-        return result;
-      }
+      RetryPolicy policy, Supplier<Either<UrlShortenerError, T>> supplier) {
+    return retryEither(policy, Deadline.none(), supplier);
+  }
 
-      if (List.of(UrlShortenerError.HASH_ALREADY_EXISTS, UrlShortenerError.HASH_NOT_FOUND)
-          .contains(result.getLeft())) {
+  /**
+   * Same as {@link #retryEither(RetryPolicy, Supplier)}, without retrying once the backoff would
+   * take it past the given deadline. Stopping for the deadline returns the last error.
+   */
+  public static <T> Either<UrlShortenerError, T> retryEither(
+      RetryPolicy policy, Deadline deadline, Supplier<Either<UrlShortenerError, T>> supplier) {
+    Either<UrlShortenerError, T> result = Either.left(UrlShortenerError.GENERIC_ERROR);
+    for (int attempt = 1; attempt <= policy.maxAttempts(); attempt++) {
+      result = supplier.get();
+      if (result.isRight() || !isRetryable(result.getLeft())) {
         return result;
       }
+      if (attempt < policy.maxAttempts()) {
+        long backoffNanos = policy.backoffNanos(attempt);
+        if (backoffNanos >= deadline.remainingNanos() || !awaitRetry(policy, backoffNanos)) {
+          return result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Non-blocking counterpart of {@link #retry(RetryPolicy, Supplier)}. Each retry is started once
+   * the previous attempt has completed and the backoff has passed, without parking a thread.
+   */
+  public static <T> TryT<T> retryAsync(RetryPolicy policy, Supplier<TryT<T>> supplier) {
+    return retryAsync(policy, Deadline.none(), supplier);
+  }
 
-      log.warn("Failed to execute, retrying");
+  /**
+   * Same as {@link #retryAsync(RetryPolicy, Supplier)}, without retrying once the backoff would
+   * take it past the given deadline. Stopping for the deadline fails with a
+   * {@link StorageUnavailableException}.
+   */
+  public static <T> TryT<T> retryAsync(
+      RetryPolicy policy, Deadline deadline, Supplier<TryT<T>> supplier) {
+    return TryT.fromFuture(retryAsync(policy, deadline, 1, supplier));
+  }
+
+  /**
+   * Non-blocking counterpart of {@link #retryEither(RetryPolicy, Supplier)}. Each retry is started
+   * once the previous attempt has completed and the backoff has passed, without parking a thread.
+   */
+  public static <T> EitherT<UrlShortenerError, T> retryEitherAsync(
+      RetryPolicy policy, Supplier<EitherT<UrlShortenerError, T>> supplier) {
+    return retryEitherAsync(policy, Deadline.none(), supplier);
+  }
+
+  /**
+   * Same as {@link #retryEitherAsync(RetryPolicy, Supplier)}, without retrying once the backoff
+   * would take it past the given deadline. Stopping for the deadline returns the last error.
+   */
+  public static <T> EitherT<UrlShortenerError, T> retryEitherAsync(
+      RetryPolicy policy, Deadline deadline, Supplier<EitherT<UrlShortenerError, T>> supplier) {
+    if (policy.maxAttempts() < 1) {
+      return EitherT.left(UrlShortenerError.GENERIC_ERROR);
     }
-    return Either.left(UrlShortenerError.GENERIC_ERROR);
+    return retryEitherAsync(policy, deadline, 1, supplier);
+  }
+
+  /**
+   * Returns whether a failed attempt may succeed when made again. Only throttling, server side
+   * errors, transport failures and timeouts are. Anything else, from requests DynamoDB rejected as
+   * invalid and calls rejected by the
+   * {@link com.truthful.pinokio.repository.resilience.StorageGuard} to bugs, is not.
+   */
+  public static boolean isRetryable(Throwable throwable) {
+    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+        ? throwable.getCause()
+        : throwable;
+    if (cause instanceof SdkServiceException serviceException) {
+      return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+    }
+    return cause instanceof SdkClientException
+        || cause instanceof IOException
+        || cause instanceof UncheckedIOException
+        || cause instanceof TimeoutException;
+  }
+
+  public static boolean isRetryable(UrlShortenerError error) {
+    return error == UrlShortenerError.TRANSIENT_ERROR;
+  }
+
+  /**
+   * Maps a storage failure to {@link UrlShortenerError#TRANSIENT_ERROR} when it is retryable and
+   * to {@link UrlShortenerError#GENERIC_ERROR} otherwise.
+   */
+  public static UrlShortenerError toStorageError(Throwable throwable) {
+    return isRetryable(throwable) ? UrlShortenerError.TRANSIENT_ERROR
+        : UrlShortenerError.GENERIC_ERROR;
+  }
+
+  private static <T> CompletableFuture<Try<T>> retryAsync(
+      RetryPolicy policy, Deadline deadline, int attempt, Supplier<TryT<T>> supplier) {
+    if (policy.maxAttempts() < 1) {
+      return CompletableFuture.completedFuture(
+          Try.failure(exhausted(policy.maxAttempts(), null)));
+    }
+    return supplier.get()
+        .toCompletableFuture()
+        .thenCompose(result -> {
+          if (result instanceof Failure<T> failure && isRetryable(failure.getCause())) {
+            if (attempt >= policy.maxAttempts()) {
+              return CompletableFuture.completedFuture(
+                  Try.<T>failure(exhausted(policy.maxAttempts(), failure.getCause())));
+            }
+            long backoffNanos = policy.backoffNanos(attempt);
+            if (backoffNanos >= deadline.remainingNanos()) {
+              return CompletableFuture.completedFuture(Try.<T>failure(
+                  new StorageUnavailableException("Deadline passed after " + attempt
+                      + " attempts")));
+            }
+            if (tryAcquireRetry(policy)) {
+              return CompletableFuture.supplyAsync(() -> null, delayed(backoffNanos))
+                  .thenCompose(ignored -> retryAsync(policy, deadline, attempt + 1, supplier));
+            }
+          }
+          return CompletableFuture.completedFuture(result);
+        });
+  }
+
+  private static <T> EitherT<UrlShortenerError, T> retryEitherAsync(
+      RetryPolicy policy,
+      Deadline deadline,
+      int attempt,
+      Supplier<EitherT<UrlShortenerError, T>> supplier) {
+    return supplier.get()
+        .recoverWith(error -> {
+          if (!isRetryable(error) || attempt >= policy.maxAttempts()) {
+            return EitherT.left(error);
+          }
+          long backoffNanos = policy.backoffNanos(attempt);
+          if (backoffNanos >= deadline.remainingNanos() || !tryAcquireRetry(policy)) {
+            return EitherT.left(error);
+          }
+          return EitherT.fromFuture(
+              CompletableFuture.supplyAsync(() -> null, delayed(backoffNanos))
+                  .thenCompose(ignored -> retryEitherAsync(policy, deadline, attempt + 1, supplier)
+                      .toCompletableFuture()));
+        });
+  }
+
+  /**
+   * Waits for the backoff before the retry that follows the given attempt, on the calling thread.
+   *
+   * @param policy the policy of the retried operation
+   * @param attempt the attempt that failed, starting at 1
+   * @return whether the retry may be made, false if the retry budget is exhausted or the thread
+   *     was interrupted
+   */
+  public static boolean awaitRetry(RetryPolicy policy, int attempt) {
+    return awaitRetry(policy, policy.backoffNanos(attempt));
+  }
+
+  /**
+   * Same as {@link #awaitRetry(RetryPolicy, int)}, waiting for a backoff already drawn from the
+   * policy, so that the wait is the one checked against a deadline.
+   *
+   * @param policy the policy of the retried operation
+   * @param backoffNanos the backoff to wait for
+   * @return whether the retry may be made
+   */
+  public static boolean awaitRetry(RetryPolicy policy, long backoffNanos) {
+    if (!tryAcquireRetry(policy)) {
+      return false;
+    }
+    try {
+      // Parks a virtual thread without pinning its carrier
+      Thread.sleep(Duration.ofNanos(backoffNanos));
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static boolean tryAcquireRetry(RetryPolicy policy) {
+    if (!policy.budget().tryAcquire()) {
+      log.warn("Retry budget exhausted, not retrying");
+      return false;
+    }
+    log.debug("Failed to execute, retrying");
+    return true;
+  }
+
+  private static Executor delayed(long backoffNanos) {
+    return CompletableFuture.delayedExecutor(backoffNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private static RuntimeException exhausted(int maxRetries, Throwable lastFailure) {
+    return new RuntimeException("Failed to execute after " + maxRetries + " retries", lastFailure);
   }
 }
@@ -0,0 +1,57 @@
+package com.truthful.pinokio.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Percentile of the last samples recorded, kept in a ring of fixed size. Recording a sample is
+ * lock free, and the percentile is worked out again every tenth of the ring, so reading it is a
+ * single volatile read.
+ */
+public final class RollingPercentile {
+
+  private final double percentile;
+  private final AtomicLongArray samples;
+  private final AtomicLong recorded = new AtomicLong();
+  private final int recomputeEvery;
+
+  private volatile long value = Long.MAX_VALUE;
+
+  /**
+   * Creates an empty percentile.
+   *
+   * @param size the last samples the percentile is worked out from
+   * @param percentile the percentile, between 0 exclusive and 1 inclusive
+   */
+  public RollingPercentile(int size, double percentile) {
+    this.percentile = percentile;
+    this.samples = new AtomicLongArray(size);
+    this.recomputeEvery = Math.max(1, size / 10);
+  }
+
+  public void record(long sample) {
+    long count = recorded.incrementAndGet();
+    samples.set((int) ((count - 1) % samples.length()), sample);
+    if (count % recomputeEvery == 0) {
+      recompute((int) Math.min(count, samples.length()));
+    }
+  }
+
+  /**
+   * Returns the percentile of the last samples, {@link Long#MAX_VALUE} until a tenth of the ring
+   * has been recorded.
+   */
+  public long value() {
+    return value;
+  }
+
+  private void recompute(int count) {
+    long[] sorted = new long[count];
+    for (int i = 0; i < count; i++) {
+      sorted[i] = samples.get(i);
+    }
+    Arrays.sort(sorted);
+    value = sorted[Math.max(0, (int) Math.ceil(percentile * count) - 1)];
+  }
+}
@@ -5,4 +5,9 @@ awslocal dynamodb create-table \
    --key-schema AttributeName=UrlHash,KeyType=HASH \
    --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5
 
-echo "Executed init-dynamodb.sh"
\ No newline at end of file
+# ExpiresAt holds epoch seconds, so DynamoDB deletes expired links on its own
+awslocal dynamodb update-time-to-live \
+   --table-name pinokio \
+   --time-to-live-specification Enabled=true,AttributeName=ExpiresAt
+
+echo "Executed init-dynamodb.sh"
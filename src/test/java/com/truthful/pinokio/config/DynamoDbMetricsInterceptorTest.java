@@ -0,0 +1,84 @@
+package com.truthful.pinokio.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+
+class DynamoDbMetricsInterceptorTest {
+
+  private MeterRegistry meterRegistry;
+  private DynamoDbMetricsInterceptor interceptor;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    interceptor = new DynamoDbMetricsInterceptor(meterRegistry);
+  }
+
+  @Test
+  @DisplayName("should record the latency and the consumed capacity of a successful operation")
+  void shouldRecordLatencyAndConsumedCapacity() {
+    ExecutionAttributes executionAttributes = executionAttributes("GetItem");
+    Context.AfterExecution context = mock(Context.AfterExecution.class);
+    when(context.response()).thenReturn(GetItemResponse.builder()
+        .consumedCapacity(ConsumedCapacity.builder().capacityUnits(0.5).build())
+        .build());
+
+    interceptor.beforeExecution(mock(Context.BeforeExecution.class), executionAttributes);
+    interceptor.afterExecution(context, executionAttributes);
+
+    assertThat(meterRegistry.get("url.dynamodb.requests")
+        .tags("operation", "GetItem", "outcome", "success").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("url.dynamodb.consumed.capacity")
+        .tags("operation", "GetItem").summary().totalAmount()).isEqualTo(0.5);
+  }
+
+  @Test
+  @DisplayName("should record the capacity consumed on every table of a batch operation")
+  void shouldRecordConsumedCapacityOfBatchOperation() {
+    ExecutionAttributes executionAttributes = executionAttributes("BatchGetItem");
+    Context.AfterExecution context = mock(Context.AfterExecution.class);
+    when(context.response()).thenReturn(BatchGetItemResponse.builder()
+        .consumedCapacity(List.of(
+            ConsumedCapacity.builder().capacityUnits(1.0).build(),
+            ConsumedCapacity.builder().capacityUnits(2.0).build()))
+        .build());
+
+    interceptor.beforeExecution(mock(Context.BeforeExecution.class), executionAttributes);
+    interceptor.afterExecution(context, executionAttributes);
+
+    assertThat(meterRegistry.get("url.dynamodb.consumed.capacity")
+        .tags("operation", "BatchGetItem").summary().totalAmount()).isEqualTo(3.0);
+  }
+
+  @Test
+  @DisplayName("should record the latency of a failed operation")
+  void shouldRecordLatencyOfFailedOperation() {
+    ExecutionAttributes executionAttributes = executionAttributes("PutItem");
+
+    interceptor.beforeExecution(mock(Context.BeforeExecution.class), executionAttributes);
+    interceptor.onExecutionFailure(mock(Context.FailedExecution.class), executionAttributes);
+
+    assertThat(meterRegistry.get("url.dynamodb.requests")
+        .tags("operation", "PutItem", "outcome", "failure").timer().count()).isEqualTo(1);
+  }
+
+  private static ExecutionAttributes executionAttributes(String operation) {
+    ExecutionAttributes executionAttributes = new ExecutionAttributes();
+    executionAttributes.putAttribute(SdkExecutionAttribute.OPERATION_NAME, operation);
+    return executionAttributes;
+  }
+}
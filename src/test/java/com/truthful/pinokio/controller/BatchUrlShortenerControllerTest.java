@@ -0,0 +1,101 @@
+package com.truthful.pinokio.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soumakis.control.Either;
+import com.truthful.pinokio.config.model.BatchConfigurationProperties;
+import com.truthful.pinokio.controller.dto.BatchResolveResultDto;
+import com.truthful.pinokio.controller.dto.BatchShortenResultDto;
+import com.truthful.pinokio.controller.dto.ErrorType;
+import com.truthful.pinokio.controller.dto.ResolveUrlRequestDto;
+import com.truthful.pinokio.controller.dto.ShortenedUrlRequestDto;
+import com.truthful.pinokio.service.UrlShortenerService;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import jakarta.validation.Validation;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+@ExtendWith(MockitoExtension.class)
+class BatchUrlShortenerControllerTest {
+
+  @Mock
+  private UrlShortenerService urlShortenerService;
+
+  private BatchUrlShortenerController batchUrlShortenerController;
+
+  @BeforeEach
+  void setUp() {
+    batchUrlShortenerController = new BatchUrlShortenerController(
+        urlShortenerService,
+        new BatchConfigurationProperties(2, 4, 100, Duration.ofSeconds(5)),
+        new ObjectMapper(),
+        Validation.buildDefaultValidatorFactory().getValidator());
+  }
+
+  @Test
+  @DisplayName("should return shorten results in input order and skip invalid items")
+  void shouldReturnShortenResultsInInputOrderAndSkipInvalidItems() {
+    when(urlShortenerService.shortenUrls(List.of("http://longurl.com")))
+        .thenReturn(List.of(CompletableFuture.completedFuture(Either.right("http://short/abc"))));
+
+    List<BatchShortenResultDto> results = batchUrlShortenerController.shortenUrls(List.of(
+            new ShortenedUrlRequestDto("short"),
+            new ShortenedUrlRequestDto("http://longurl.com")))
+        .join();
+
+    assertThat(results).hasSize(2);
+    assertThat(results.get(0).shortUrl()).isNull();
+    assertThat(results.get(0).error().errorType()).isEqualTo(ErrorType.INVALID_REQUEST);
+    assertThat(results.get(1).shortUrl()).isEqualTo("http://short/abc");
+    assertThat(results.get(1).error()).isNull();
+  }
+
+  @Test
+  @DisplayName("should return a per item error when resolving an unknown short url")
+  void shouldReturnPerItemErrorWhenResolvingUnknownShortUrl() {
+    when(urlShortenerService.getOriginalUrls(List.of("http://short/abc", "http://short/def")))
+        .thenReturn(List.of(
+            CompletableFuture.completedFuture(Either.right("http://longurl.com")),
+            CompletableFuture.completedFuture(Either.left(UrlShortenerError.HASH_NOT_FOUND))));
+
+    List<BatchResolveResultDto> results = batchUrlShortenerController.resolveUrls(List.of(
+            new ResolveUrlRequestDto("http://short/abc"),
+            new ResolveUrlRequestDto("http://short/def")))
+        .join();
+
+    assertThat(results.get(0).originalUrl()).isEqualTo("http://longurl.com");
+    assertThat(results.get(1).originalUrl()).isNull();
+    assertThat(results.get(1).error().errorType()).isEqualTo(ErrorType.HASH_NOT_FOUND);
+    verify(urlShortenerService).getOriginalUrls(anyList());
+  }
+
+  @Test
+  @DisplayName("should reject batches larger than the configured maximum")
+  void shouldRejectBatchesLargerThanConfiguredMaximum() {
+    List<ResolveUrlRequestDto> requests = List.of(
+        new ResolveUrlRequestDto("http://short/a"),
+        new ResolveUrlRequestDto("http://short/b"),
+        new ResolveUrlRequestDto("http://short/c"));
+
+    assertThatThrownBy(() -> batchUrlShortenerController.resolveUrls(requests))
+        .isInstanceOf(ResponseStatusException.class)
+        .extracting(ex -> ((ResponseStatusException) ex).getStatusCode())
+        .isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    verifyNoInteractions(urlShortenerService);
+  }
+}
@@ -0,0 +1,89 @@
+package com.truthful.pinokio.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.truthful.pinokio.config.model.RedirectConfigurationProperties;
+import com.truthful.pinokio.config.model.RedirectStatus;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class RedirectResponseWriterTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-02T10:15:30.00Z");
+
+  private final Clock fixedClock = Clock.fixed(NOW, ZoneOffset.UTC);
+
+  @Test
+  @DisplayName("writeRedirect should make the redirect cacheable until the link expires")
+  void writeRedirectShouldBeCacheableUntilExpiry() {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    newWriter(RedirectStatus.MOVED_PERMANENTLY).writeRedirect(response,
+        new UrlEntry("hash", "https://example.com", NOW.plusSeconds(600)), null);
+
+    assertThat(response.getStatus()).isEqualTo(301);
+    assertThat(response.getHeader(HttpHeaders.LOCATION)).isEqualTo("https://example.com");
+    assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, max-age=600");
+    assertThat(response.getHeader(HttpHeaders.EXPIRES))
+        .isEqualTo("Tue, 02 Jul 2024 10:25:30 GMT");
+    assertThat(response.getHeader(HttpHeaders.ETAG)).startsWith("\"").endsWith("\"");
+  }
+
+  @Test
+  @DisplayName("writeRedirect should cap the cache age and use the configured status")
+  void writeRedirectShouldCapCacheAge() {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    newWriter(RedirectStatus.TEMPORARY_REDIRECT).writeRedirect(response,
+        new UrlEntry("hash", "https://example.com", null), null);
+
+    assertThat(response.getStatus()).isEqualTo(307);
+    assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, max-age=3600");
+    assertThat(response.getHeader(HttpHeaders.EXPIRES))
+        .isEqualTo("Tue, 02 Jul 2024 11:15:30 GMT");
+  }
+
+  @Test
+  @DisplayName("writeRedirect should answer a matching If-None-Match with not modified")
+  void writeRedirectShouldAnswerMatchingEtagWithNotModified() {
+    RedirectResponseWriter writer = newWriter(RedirectStatus.MOVED_PERMANENTLY);
+    UrlEntry urlEntry = new UrlEntry("hash", "https://example.com", null);
+    MockHttpServletResponse first = new MockHttpServletResponse();
+    writer.writeRedirect(first, urlEntry, null);
+    String etag = first.getHeader(HttpHeaders.ETAG);
+
+    MockHttpServletResponse revalidated = new MockHttpServletResponse();
+    writer.writeRedirect(revalidated, urlEntry, "\"other\", W/" + etag);
+    MockHttpServletResponse changed = new MockHttpServletResponse();
+    writer.writeRedirect(changed, new UrlEntry("hash", "https://other.com", null), etag);
+
+    assertThat(revalidated.getStatus()).isEqualTo(304);
+    assertThat(revalidated.getHeader(HttpHeaders.LOCATION)).isNull();
+    assertThat(revalidated.getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+    assertThat(changed.getStatus()).isEqualTo(301);
+  }
+
+  @Test
+  @DisplayName("writeRedirect should make caches revalidate links about to expire")
+  void writeRedirectShouldNotCacheLinksAboutToExpire() {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    newWriter(RedirectStatus.FOUND).writeRedirect(response,
+        new UrlEntry("hash", "https://example.com", NOW.plusMillis(500)), null);
+
+    assertThat(response.getStatus()).isEqualTo(302);
+    assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("no-cache");
+  }
+
+  private RedirectResponseWriter newWriter(RedirectStatus status) {
+    return new RedirectResponseWriter(
+        new RedirectConfigurationProperties(status, Duration.ofHours(1)), fixedClock);
+  }
+}
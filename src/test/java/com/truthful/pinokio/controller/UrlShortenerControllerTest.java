@@ -1,14 +1,33 @@
 package com.truthful.pinokio.controller;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.soumakis.control.Either;
 import com.soumakis.control.EitherT;
 import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.model.DeadlineConfigurationProperties;
+import com.truthful.pinokio.config.model.RedirectConfigurationProperties;
+import com.truthful.pinokio.config.model.RedirectStatus;
+import com.truthful.pinokio.config.model.ResilienceConfigurationProperties;
+import com.truthful.pinokio.controller.dto.ClickStatsDto;
 import com.truthful.pinokio.controller.dto.ShortenedUrlRequestDto;
 import com.truthful.pinokio.controller.dto.ShortenedUrlResponseDto;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.repository.resilience.StorageUnavailableException;
+import com.truthful.pinokio.service.ClickCounter;
 import com.truthful.pinokio.service.model.UrlShortenerError;
 import com.truthful.pinokio.service.UrlShortenerService;
+import com.truthful.pinokio.util.RequestLogger;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import org.junit.jupiter.api.DisplayName;
@@ -16,9 +35,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 @ExtendWith(MockitoExtension.class)
 class UrlShortenerControllerTest {
@@ -26,6 +48,25 @@ class UrlShortenerControllerTest {
   @Mock
   private UrlShortenerService urlShortenerService;
 
+  @Mock
+  private ResilienceConfigurationProperties resilienceConfigurationProperties;
+
+  @Mock
+  private RequestLogger requestLogger;
+
+  @Mock
+  private ClickCounter clickCounter;
+
+  @Spy
+  private RedirectResponseWriter redirectResponseWriter = new RedirectResponseWriter(
+      new RedirectConfigurationProperties(RedirectStatus.MOVED_PERMANENTLY, Duration.ofHours(1)),
+      Clock.fixed(Instant.parse("2024-07-02T10:15:30.00Z"), ZoneOffset.UTC));
+
+  @Spy
+  private DeadlineConfigurationProperties deadlineConfigurationProperties =
+      new DeadlineConfigurationProperties(true, Duration.ofSeconds(2), Duration.ofMillis(500),
+          Duration.ofSeconds(1), Duration.ofSeconds(2));
+
   @InjectMocks
   private UrlShortenerController urlShortenerController;
 
@@ -34,7 +75,7 @@ class UrlShortenerControllerTest {
   void shouldReturnShortenedUrlResponseWhenShortenUrlServiceIsSuccessful()
       throws ExecutionException, InterruptedException {
     ShortenedUrlRequestDto requestDto = new ShortenedUrlRequestDto("http://longurl.com");
-    when(urlShortenerService.shortenUrl(requestDto.longUrl()))
+    when(urlShortenerService.shortenUrl(eq(requestDto.longUrl()), any()))
         .thenReturn(EitherT.right("http://shorturl.com"));
 
     CompletableFuture<ResponseEntity<?>> response =
@@ -49,36 +90,87 @@ class UrlShortenerControllerTest {
 
   @Test
   @DisplayName("should return not found when original url is not found")
-  void shouldReturnNotFoundWhenOriginalUrlIsNotFound()
-      throws ExecutionException, InterruptedException {
-    when(urlShortenerService.getOriginalUrl("shortUrl")).thenReturn(
+  void shouldReturnNotFoundWhenOriginalUrlIsNotFound() {
+    when(urlShortenerService.getUrlEntry(eq("shortUrl"), any())).thenReturn(
         EitherT.left(UrlShortenerError.HASH_NOT_FOUND));
 
-    CompletableFuture<ResponseEntity<?>> response =
-        urlShortenerController.redirectToOriginalUrl("shortUrl");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    urlShortenerController.redirectToOriginalUrl("shortUrl", null, response).join();
 
-    assertEquals(HttpStatus.NOT_FOUND, response.get().getStatusCode());
+    assertEquals(HttpStatus.NOT_FOUND.value(), response.getStatus());
+    verify(clickCounter, never()).recordClick(any());
+  }
+
+  @Test
+  @DisplayName("should look the original url up within the redirect deadline")
+  void shouldLookOriginalUrlUpWithinRedirectDeadline() {
+    when(urlShortenerService.getUrlEntry(eq("shortUrl"), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.SERVICE_UNAVAILABLE));
+
+    urlShortenerController.redirectToOriginalUrl("shortUrl", null, new MockHttpServletResponse())
+        .join();
+
+    verify(urlShortenerService).getUrlEntry(eq("shortUrl"), argThat(deadline ->
+        deadline.remainingNanos() > 0
+            && deadline.remainingNanos() <= Duration.ofMillis(500).toNanos()));
   }
 
   @Test
   @DisplayName("should return moved permanently when original url is found")
-  void shouldReturnMovedPermanentlyWhenOriginalUrlIsFound()
-      throws ExecutionException, InterruptedException {
-    when(urlShortenerService.getOriginalUrl("shortUrl"))
-        .thenReturn(EitherT.right("http://longurl.com"));
+  void shouldReturnMovedPermanentlyWhenOriginalUrlIsFound() {
+    when(urlShortenerService.getUrlEntry(eq("shortUrl"), any()))
+        .thenReturn(EitherT.right(new UrlEntry("shortUrl", "http://longurl.com", null)));
+    MockHttpServletResponse response = new MockHttpServletResponse();
 
-    CompletableFuture<ResponseEntity<?>> response =
-        urlShortenerController.redirectToOriginalUrl("shortUrl");
+    urlShortenerController.redirectToOriginalUrl("shortUrl", null, response).join();
 
-    assertEquals(HttpStatus.MOVED_PERMANENTLY, response.get().getStatusCode());
-    assertEquals("http://longurl.com", response.get().getHeaders().getLocation().toString());
+    assertEquals(HttpStatus.MOVED_PERMANENTLY.value(), response.getStatus());
+    assertEquals("http://longurl.com", response.getHeader(HttpHeaders.LOCATION));
+    assertEquals("public, max-age=3600", response.getHeader(HttpHeaders.CACHE_CONTROL));
+    verify(clickCounter).recordClick("shortUrl");
+  }
+
+  @Test
+  @DisplayName("should answer head requests with the headers of the redirect and no body")
+  void shouldAnswerHeadRequestsWithoutBody() {
+    when(urlShortenerService.getUrlEntry(eq("shortUrl"), any()))
+        .thenReturn(EitherT.right(new UrlEntry("shortUrl", "http://longurl.com", null)));
+    when(urlShortenerService.getUrlEntry(eq("missing"), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.HASH_NOT_FOUND));
+    MockHttpServletResponse found = new MockHttpServletResponse();
+    MockHttpServletResponse missing = new MockHttpServletResponse();
+
+    urlShortenerController.headOriginalUrl("shortUrl", null, found).join();
+    urlShortenerController.headOriginalUrl("missing", null, missing).join();
+
+    assertEquals(HttpStatus.MOVED_PERMANENTLY.value(), found.getStatus());
+    assertEquals("http://longurl.com", found.getHeader(HttpHeaders.LOCATION));
+    assertEquals(HttpStatus.NOT_FOUND.value(), missing.getStatus());
+    assertEquals(0, missing.getContentLength());
+    verify(clickCounter, never()).recordClick(any());
+  }
+
+  @Test
+  @DisplayName("should return the click count of the short url")
+  void shouldReturnClickStats() throws ExecutionException, InterruptedException {
+    when(urlShortenerService.getClicks(eq("shortUrl"), any())).thenReturn(EitherT.right(42L));
+    when(urlShortenerService.getClicks(eq("missing"), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.HASH_NOT_FOUND));
+
+    ResponseEntity<?> response = urlShortenerController.getClickStats("shortUrl").get();
+    ResponseEntity<?> missing = urlShortenerController.getClickStats("missing").get();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(new ClickStatsDto("shortUrl", 42), response.getBody());
+    assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
   }
 
   @Test
   @DisplayName("should return ok when delete url service is successful")
   void shouldReturnOkWhenDeleteUrlServiceIsSuccessful()
       throws ExecutionException, InterruptedException {
-    when(urlShortenerService.deleteUrl("shortUrl")).thenReturn(TryT.of(null));
+    when(urlShortenerService.deleteUrl(eq("shortUrl"), any())).thenReturn(TryT.of(null));
 
     CompletableFuture<ResponseEntity<Void>> response = urlShortenerController.deleteUrl("shortUrl");
 
@@ -90,7 +182,7 @@ class UrlShortenerControllerTest {
   void shouldReturnInternalServerErrorWhenShortenUrlServiceFails()
       throws ExecutionException, InterruptedException {
     ShortenedUrlRequestDto requestDto = new ShortenedUrlRequestDto("http://longurl.com");
-    when(urlShortenerService.shortenUrl(requestDto.longUrl()))
+    when(urlShortenerService.shortenUrl(eq(requestDto.longUrl()), any()))
         .thenReturn(EitherT.left(UrlShortenerError.GENERIC_ERROR));
 
     CompletableFuture<ResponseEntity<?>> response =
@@ -101,26 +193,78 @@ class UrlShortenerControllerTest {
 
   @Test
   @DisplayName("should return internal server error when get original url service fails")
-  void shouldReturnInternalServerErrorWhenGetOriginalUrlServiceFails()
-      throws ExecutionException, InterruptedException {
-    when(urlShortenerService.getOriginalUrl("shortUrl"))
+  void shouldReturnInternalServerErrorWhenGetOriginalUrlServiceFails() {
+    when(urlShortenerService.getUrlEntry(eq("shortUrl"), any()))
         .thenReturn(EitherT.left(UrlShortenerError.GENERIC_ERROR));
 
-    CompletableFuture<ResponseEntity<?>> response =
-        urlShortenerController.redirectToOriginalUrl("shortUrl");
+    MockHttpServletResponse response = new MockHttpServletResponse();
 
-    assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.get().getStatusCode());
+    urlShortenerController.redirectToOriginalUrl("shortUrl", null, response).join();
+
+    assertEquals(HttpStatus.INTERNAL_SERVER_ERROR.value(), response.getStatus());
+  }
+
+  @Test
+  @DisplayName("should write internal server error when the lookup completes exceptionally")
+  void shouldWriteInternalServerErrorWhenLookupCompletesExceptionally() {
+    when(urlShortenerService.getUrlEntry(eq("shortUrl"), any()))
+        .thenReturn(EitherT.fromFuture(
+            CompletableFuture.<Either<UrlShortenerError, UrlEntry>>failedFuture(
+                new IllegalStateException("Lookup failed"))));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    urlShortenerController.headOriginalUrl("shortUrl", null, response).join();
+
+    assertEquals(HttpStatus.INTERNAL_SERVER_ERROR.value(), response.getStatus());
+    verify(requestLogger).logError(any(), eq("redirect"), eq("shortUrl"), any());
   }
 
   @Test
   @DisplayName("should return internal server error when delete url service fails")
   void shouldReturnInternalServerErrorWhenDeleteUrlServiceFails()
       throws ExecutionException, InterruptedException {
-    when(urlShortenerService.deleteUrl("shortUrl"))
+    when(urlShortenerService.deleteUrl(eq("shortUrl"), any()))
         .thenReturn(TryT.ofFailure(new RuntimeException("Failed to delete URL")));
 
     CompletableFuture<ResponseEntity<Void>> response = urlShortenerController.deleteUrl("shortUrl");
 
     assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.get().getStatusCode());
   }
+
+  @Test
+  @DisplayName("should return service unavailable with retry after when storage sheds load")
+  void shouldReturnServiceUnavailableWhenStorageShedsLoad()
+      throws ExecutionException, InterruptedException {
+    when(resilienceConfigurationProperties.retryAfter()).thenReturn(Duration.ofSeconds(5));
+    ShortenedUrlRequestDto requestDto = new ShortenedUrlRequestDto("http://longurl.com");
+    when(urlShortenerService.shortenUrl(eq(requestDto.longUrl()), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.SERVICE_UNAVAILABLE));
+
+    CompletableFuture<ResponseEntity<?>> response =
+        urlShortenerController.shortenUrl(requestDto);
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.get().getStatusCode());
+    assertEquals("5", response.get().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+  }
+
+  @Test
+  @DisplayName("should return service unavailable when the circuit of the storage is open")
+  void shouldReturnServiceUnavailableWhenCircuitIsOpen()
+      throws ExecutionException, InterruptedException {
+    when(resilienceConfigurationProperties.retryAfter()).thenReturn(Duration.ofMillis(200));
+    when(urlShortenerService.getUrlEntry(eq("shortUrl"), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.TRANSIENT_ERROR));
+    when(urlShortenerService.deleteUrl(eq("shortUrl"), any()))
+        .thenReturn(TryT.ofFailure(new StorageUnavailableException("Circuit is open")));
+
+    MockHttpServletResponse redirectResponse = new MockHttpServletResponse();
+
+    urlShortenerController.redirectToOriginalUrl("shortUrl", null, redirectResponse).join();
+    CompletableFuture<ResponseEntity<Void>> deleteResponse =
+        urlShortenerController.deleteUrl("shortUrl");
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), redirectResponse.getStatus());
+    assertEquals("1", redirectResponse.getHeader(HttpHeaders.RETRY_AFTER));
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, deleteResponse.get().getStatusCode());
+  }
 }
@@ -0,0 +1,131 @@
+package com.truthful.pinokio.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.soumakis.control.EitherT;
+import com.truthful.pinokio.config.ReactiveWebConfig;
+import com.truthful.pinokio.config.model.DeadlineConfigurationProperties;
+import com.truthful.pinokio.config.model.RedirectConfigurationProperties;
+import com.truthful.pinokio.config.model.RedirectStatus;
+import com.truthful.pinokio.config.model.ResilienceConfigurationProperties;
+import com.truthful.pinokio.controller.dto.ErrorType;
+import com.truthful.pinokio.controller.dto.ShortenedUrlRequestDto;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.ClickCounter;
+import com.truthful.pinokio.service.UrlShortenerService;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.RequestLogger;
+import jakarta.validation.Validation;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@ExtendWith(MockitoExtension.class)
+class UrlShortenerHandlerTest {
+
+  @Mock
+  private UrlShortenerService urlShortenerService;
+
+  @Mock
+  private ResilienceConfigurationProperties resilienceConfigurationProperties;
+
+  @Mock
+  private RequestLogger requestLogger;
+
+  @Mock
+  private ClickCounter clickCounter;
+
+  private WebTestClient webTestClient;
+
+  @BeforeEach
+  void setUp() {
+    UrlShortenerHandler urlShortenerHandler = new UrlShortenerHandler(
+        urlShortenerService,
+        resilienceConfigurationProperties,
+        new RedirectResponseWriter(
+            new RedirectConfigurationProperties(RedirectStatus.FOUND, Duration.ofHours(1)),
+            Clock.fixed(Instant.parse("2024-07-02T10:15:30.00Z"), ZoneOffset.UTC)),
+        requestLogger,
+        Validation.buildDefaultValidatorFactory().getValidator(),
+        clickCounter,
+        new DeadlineConfigurationProperties(true, Duration.ofSeconds(2), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofSeconds(2)));
+    webTestClient = WebTestClient
+        .bindToRouterFunction(new ReactiveWebConfig().urlShortenerRoutes(urlShortenerHandler))
+        .build();
+  }
+
+  @Test
+  @DisplayName("should redirect to the original url with the cache headers")
+  void shouldRedirectToOriginalUrl() {
+    when(urlShortenerService.getUrlEntry(eq("abc123"), any()))
+        .thenReturn(EitherT.right(new UrlEntry("abc123", "http://longurl.com", null)));
+
+    webTestClient.get().uri("/abc123").exchange()
+        .expectStatus().isEqualTo(HttpStatus.FOUND)
+        .expectHeader().valueEquals(HttpHeaders.LOCATION, "http://longurl.com")
+        .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "public, max-age=3600");
+    verify(clickCounter).recordClick("abc123");
+  }
+
+  @Test
+  @DisplayName("should return not found when the original url is not found")
+  void shouldReturnNotFoundWhenOriginalUrlIsNotFound() {
+    when(urlShortenerService.getUrlEntry(eq("abc123"), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.HASH_NOT_FOUND));
+
+    webTestClient.get().uri("/abc123").exchange()
+        .expectStatus().isNotFound()
+        .expectBody().jsonPath("$.errorType").isEqualTo(ErrorType.HASH_NOT_FOUND.name());
+  }
+
+  @Test
+  @DisplayName("should return service unavailable with retry after when storage sheds load")
+  void shouldReturnServiceUnavailableWhenStorageShedsLoad() {
+    when(resilienceConfigurationProperties.retryAfter()).thenReturn(Duration.ofSeconds(5));
+    when(urlShortenerService.getUrlEntry(eq("abc123"), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.SERVICE_UNAVAILABLE));
+
+    webTestClient.head().uri("/abc123").exchange()
+        .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+        .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "5");
+  }
+
+  @Test
+  @DisplayName("should return the shortened url when shorten url service is successful")
+  void shouldReturnShortenedUrl() {
+    when(urlShortenerService.shortenUrl(eq("http://longurl.com"), any()))
+        .thenReturn(EitherT.right("http://shorturl.com"));
+
+    webTestClient.post().uri("/api/url")
+        .bodyValue(new ShortenedUrlRequestDto("http://longurl.com"))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.shortUrl").isEqualTo("http://shorturl.com")
+        .jsonPath("$.originalUrl").isEqualTo("http://longurl.com");
+  }
+
+  @Test
+  @DisplayName("should return bad request when the long url is invalid")
+  void shouldReturnBadRequestWhenLongUrlIsInvalid() {
+    webTestClient.post().uri("/api/url")
+        .bodyValue(new ShortenedUrlRequestDto("short"))
+        .exchange()
+        .expectStatus().isBadRequest()
+        .expectBody().jsonPath("$.errorType").isEqualTo(ErrorType.INVALID_REQUEST.name());
+  }
+}
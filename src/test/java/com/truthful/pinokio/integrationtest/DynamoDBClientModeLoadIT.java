@@ -0,0 +1,184 @@
+package com.truthful.pinokio.integrationtest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties.AsyncHttpClientProperties;
+import com.truthful.pinokio.config.model.DynamoDbClientMode;
+import com.truthful.pinokio.repository.BlockingDynamoDBUrlStore;
+import com.truthful.pinokio.repository.DynamoDBAsyncRepository;
+import com.truthful.pinokio.repository.DynamoDBRepository;
+import com.truthful.pinokio.repository.DynamoDBRequestFactory;
+import com.truthful.pinokio.repository.UrlStore;
+import com.truthful.pinokio.util.RequestLogger;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.localstack.LocalStackContainer;
+import org.testcontainers.containers.localstack.LocalStackContainer.Service;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.utility.DockerImageName;
+import org.testcontainers.utility.MountableFile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+/**
+ * Compares throughput and thread usage of the blocking and the asynchronous DynamoDB client modes
+ * under the same concurrent read load. The numbers are logged, the assertions only check that every
+ * lookup succeeded.
+ */
+@Slf4j
+public class DynamoDBClientModeLoadIT {
+
+  private static final int KEYS = 200;
+  private static final int REQUESTS = 20_000;
+  private static final int CONCURRENCY = 500;
+
+  private static final LocalStackContainer localStackContainer;
+
+  private static DynamoDbClient dynamoDbClient;
+  private static DynamoDbAsyncClient dynamoDbAsyncClient;
+  private static ExecutorService virtualTaskExecutor;
+  private static UrlStore blockingUrlStore;
+  private static UrlStore asyncUrlStore;
+  private static final List<String> hashes = new ArrayList<>();
+
+  static {
+    localStackContainer = new LocalStackContainer(
+        DockerImageName.parse("localstack/localstack:latest"))
+        .withCopyFileToContainer(MountableFile.forClasspathResource("init-aws.sh", 744),
+            "/etc/localstack/init/ready.d/init-dynamodb.sh")
+        .withServices(Service.DYNAMODB)
+        .waitingFor(Wait.forLogMessage(".*Executed init-dynamodb.sh.*", 1));
+    localStackContainer.start();
+  }
+
+  @BeforeAll
+  static void setUp() {
+    DynamoDBConfigurationProperties properties = new DynamoDBConfigurationProperties(
+        "pinokio", localStackContainer.getRegion(), localStackContainer.getAccessKey(),
+        localStackContainer.getSecretKey(), localStackContainer.getEndpoint().toString(),
+        DynamoDbClientMode.SYNC,
+        new AsyncHttpClientProperties(CONCURRENCY, REQUESTS, Duration.ofSeconds(10)),
+        Duration.ofSeconds(30), Duration.ofSeconds(10));
+    StaticCredentialsProvider credentialsProvider = StaticCredentialsProvider.create(
+        AwsBasicCredentials.create(properties.accessKeyId(), properties.secretAccessKey()));
+    URI endpoint = URI.create(properties.endpointUrl());
+
+    dynamoDbClient = DynamoDbClient.builder()
+        .region(Region.of(properties.region()))
+        .credentialsProvider(credentialsProvider)
+        .endpointOverride(endpoint)
+        .build();
+    dynamoDbAsyncClient = DynamoDbAsyncClient.builder()
+        .region(Region.of(properties.region()))
+        .credentialsProvider(credentialsProvider)
+        .endpointOverride(endpoint)
+        .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+            .maxConcurrency(properties.asyncHttpClient().maxConcurrency())
+            .maxPendingConnectionAcquires(
+                properties.asyncHttpClient().maxPendingConnectionAcquires()))
+        .build();
+    virtualTaskExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    DynamoDBRequestFactory requestFactory = new DynamoDBRequestFactory(properties);
+    RequestLogger requestLogger = new RequestLogger(0.0, Duration.ofSeconds(10), 10.0);
+    DynamoDBRepository dynamoDBRepository =
+        new DynamoDBRepository(requestFactory, dynamoDbClient, requestLogger);
+    blockingUrlStore = new BlockingDynamoDBUrlStore(dynamoDBRepository, virtualTaskExecutor);
+    asyncUrlStore = new DynamoDBAsyncRepository(requestFactory, dynamoDbAsyncClient, requestLogger);
+
+    LocalDateTime createdAt = LocalDateTime.now();
+    for (int i = 0; i < KEYS; i++) {
+      String hash = UUID.randomUUID().toString();
+      dynamoDBRepository.save(hash, "https://www.catnipcoder.com/" + i, createdAt,
+          createdAt.plusDays(1));
+      hashes.add(hash);
+    }
+  }
+
+  @AfterAll
+  static void tearDown() {
+    virtualTaskExecutor.shutdown();
+    dynamoDbAsyncClient.close();
+    dynamoDbClient.close();
+  }
+
+  @Test
+  void compareClientModes() {
+    // Warm up both paths so connection setup is not measured
+    runLoad(blockingUrlStore, REQUESTS / 10);
+    runLoad(asyncUrlStore, REQUESTS / 10);
+
+    LoadResult blocking = runLoad(blockingUrlStore, REQUESTS);
+    LoadResult async = runLoad(asyncUrlStore, REQUESTS);
+
+    log.info("SYNC  mode: {} req/s, peak platform threads {}, peak parked callers {}",
+        blocking.throughput(), blocking.peakPlatformThreads(), blocking.peakParkedCallers());
+    log.info("ASYNC mode: {} req/s, peak platform threads {}, peak parked callers {}",
+        async.throughput(), async.peakPlatformThreads(), async.peakParkedCallers());
+
+    assertThat(blocking.failures(), is(0));
+    assertThat(async.failures(), is(0));
+  }
+
+  private static LoadResult runLoad(UrlStore urlStore, int requests) {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    threadMXBean.resetPeakThreadCount();
+    Semaphore inFlight = new Semaphore(CONCURRENCY);
+    AtomicInteger failures = new AtomicInteger();
+    AtomicInteger peakParkedCallers = new AtomicInteger();
+    List<CompletableFuture<?>> futures = new ArrayList<>(requests);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      inFlight.acquireUninterruptibly();
+      String hash = hashes.get(i % hashes.size());
+      futures.add(urlStore.getUrlEntry(hash)
+          .toCompletableFuture()
+          .whenComplete((result, throwable) -> {
+            if (throwable != null || result.isLeft()) {
+              failures.incrementAndGet();
+            }
+            inFlight.release();
+          }));
+      if (urlStore instanceof BlockingDynamoDBUrlStore) {
+        // Every in-flight blocking call parks one virtual thread
+        peakParkedCallers.accumulateAndGet(
+            CONCURRENCY - inFlight.availablePermits(), Math::max);
+      }
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    long elapsedNanos = System.nanoTime() - start;
+
+    return new LoadResult(
+        requests * 1_000_000_000L / elapsedNanos,
+        threadMXBean.getPeakThreadCount(),
+        peakParkedCallers.get(),
+        failures.get());
+  }
+
+  private record LoadResult(
+      long throughput, int peakPlatformThreads, int peakParkedCallers, int failures) {
+
+  }
+}
@@ -7,6 +7,7 @@ import com.soumakis.control.Either;
 import com.soumakis.control.Left;
 import com.soumakis.control.Right;
 import com.truthful.pinokio.repository.DynamoDBRepository;
+import com.truthful.pinokio.repository.model.UrlEntry;
 import com.truthful.pinokio.service.model.UrlShortenerError;
 import com.truthful.pinokio.service.model.HashingAlgorithm;
 import java.time.LocalDateTime;
@@ -61,7 +62,8 @@ public class DynamoDBRepositoryIT {
 
     assertThat(saved, is(new Right<>(hash)));
 
-    Either<UrlShortenerError, String> maybeOriginalUrl = dynamoDBRepository.getOriginalUrl(hash);
+    Either<UrlShortenerError, String> maybeOriginalUrl = dynamoDBRepository.getUrlEntry(hash)
+        .map(UrlEntry::originalUrl);
 
     assertThat(maybeOriginalUrl, is(new Right<>(originalUrl)));
   }
@@ -77,13 +79,15 @@ public class DynamoDBRepositoryIT {
 
     assertThat(saved, is(new Right<>(hash)));
 
-    Either<UrlShortenerError, String> maybeOriginalUrl = dynamoDBRepository.getOriginalUrl(hash);
+    Either<UrlShortenerError, String> maybeOriginalUrl = dynamoDBRepository.getUrlEntry(hash)
+        .map(UrlEntry::originalUrl);
 
     assertThat(maybeOriginalUrl, is(new Right<>(originalUrl)));
 
     assertThat(dynamoDBRepository.delete(hash).isSuccess(), is(true));
 
-    Either<UrlShortenerError, String> maybeDeleted = dynamoDBRepository.getOriginalUrl(hash);
+    Either<UrlShortenerError, String> maybeDeleted = dynamoDBRepository.getUrlEntry(hash)
+        .map(UrlEntry::originalUrl);
 
     assertThat(maybeDeleted, is(new Left<>(UrlShortenerError.HASH_NOT_FOUND)));
   }
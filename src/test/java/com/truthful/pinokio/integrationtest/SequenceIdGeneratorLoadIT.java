@@ -0,0 +1,134 @@
+package com.truthful.pinokio.integrationtest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.soumakis.control.Either;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties.AsyncHttpClientProperties;
+import com.truthful.pinokio.config.model.DynamoDbClientMode;
+import com.truthful.pinokio.config.model.SequenceConfigurationProperties;
+import com.truthful.pinokio.repository.DynamoDBRepository;
+import com.truthful.pinokio.repository.DynamoDBRequestFactory;
+import com.truthful.pinokio.service.SequenceIdGenerator;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.RequestLogger;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.localstack.LocalStackContainer;
+import org.testcontainers.containers.localstack.LocalStackContainer.Service;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.utility.DockerImageName;
+import org.testcontainers.utility.MountableFile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+/**
+ * Shortens URLs concurrently from two generators sharing the same counter, as two nodes would, and
+ * checks that no save is ever rejected because its hash already exists.
+ */
+@Slf4j
+public class SequenceIdGeneratorLoadIT {
+
+  private static final int NODES = 2;
+  private static final int REQUESTS_PER_NODE = 5_000;
+  private static final int CONCURRENCY = 200;
+
+  private static final LocalStackContainer localStackContainer;
+
+  private static DynamoDbClient dynamoDbClient;
+  private static ExecutorService virtualTaskExecutor;
+  private static DynamoDBRepository dynamoDBRepository;
+  private static final List<SequenceIdGenerator> generators = new ArrayList<>();
+
+  static {
+    localStackContainer = new LocalStackContainer(
+        DockerImageName.parse("localstack/localstack:latest"))
+        .withCopyFileToContainer(MountableFile.forClasspathResource("init-aws.sh", 744),
+            "/etc/localstack/init/ready.d/init-dynamodb.sh")
+        .withServices(Service.DYNAMODB)
+        .waitingFor(Wait.forLogMessage(".*Executed init-dynamodb.sh.*", 1));
+    localStackContainer.start();
+  }
+
+  @BeforeAll
+  static void setUp() {
+    DynamoDBConfigurationProperties properties = new DynamoDBConfigurationProperties(
+        "pinokio", localStackContainer.getRegion(), localStackContainer.getAccessKey(),
+        localStackContainer.getSecretKey(), localStackContainer.getEndpoint().toString(),
+        DynamoDbClientMode.SYNC,
+        new AsyncHttpClientProperties(CONCURRENCY, CONCURRENCY, Duration.ofSeconds(10)),
+        Duration.ofSeconds(30), Duration.ofSeconds(10));
+    dynamoDbClient = DynamoDbClient.builder()
+        .region(Region.of(properties.region()))
+        .credentialsProvider(StaticCredentialsProvider.create(
+            AwsBasicCredentials.create(properties.accessKeyId(), properties.secretAccessKey())))
+        .endpointOverride(URI.create(properties.endpointUrl()))
+        .build();
+    virtualTaskExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    dynamoDBRepository =
+        new DynamoDBRepository(new DynamoDBRequestFactory(properties), dynamoDbClient,
+            new RequestLogger(0.0, Duration.ofSeconds(10), 10.0));
+
+    SequenceConfigurationProperties sequenceProperties =
+        new SequenceConfigurationProperties("_sequence", 500L, 0.8);
+    for (int i = 0; i < NODES; i++) {
+      generators.add(
+          new SequenceIdGenerator(dynamoDBRepository, sequenceProperties, virtualTaskExecutor));
+    }
+  }
+
+  @AfterAll
+  static void tearDown() {
+    virtualTaskExecutor.shutdown();
+    dynamoDbClient.close();
+  }
+
+  @Test
+  void shouldNeverCollideAcrossNodes() throws Exception {
+    AtomicInteger collisions = new AtomicInteger();
+    AtomicInteger failures = new AtomicInteger();
+    LocalDateTime createdAt = LocalDateTime.now();
+    List<Future<?>> futures = new ArrayList<>();
+
+    long start = System.nanoTime();
+    try (ExecutorService callers = Executors.newFixedThreadPool(CONCURRENCY)) {
+      for (SequenceIdGenerator generator : generators) {
+        for (int i = 0; i < REQUESTS_PER_NODE; i++) {
+          String longUrl = "https://www.catnipcoder.com/" + i;
+          futures.add(callers.submit(() -> {
+            Either<UrlShortenerError, String> result = dynamoDBRepository.save(
+                generator.nextCode(), longUrl, createdAt, createdAt.plusDays(1));
+            if (result.isLeft() && result.getLeft() == UrlShortenerError.HASH_ALREADY_EXISTS) {
+              collisions.incrementAndGet();
+            } else if (result.isLeft()) {
+              failures.incrementAndGet();
+            }
+          }));
+        }
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    long elapsedNanos = System.nanoTime() - start;
+
+    log.info("Saved {} URLs in {} ms with {} collision retries",
+        futures.size(), elapsedNanos / 1_000_000, collisions.get());
+    assertThat(collisions.get(), is(0));
+    assertThat(failures.get(), is(0));
+  }
+}
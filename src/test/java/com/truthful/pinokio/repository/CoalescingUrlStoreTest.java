@@ -0,0 +1,157 @@
+package com.truthful.pinokio.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties.AsyncHttpClientProperties;
+import com.truthful.pinokio.config.model.DynamoDbClientMode;
+import com.truthful.pinokio.config.model.WriteBatchingConfigurationProperties;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.RequestLogger;
+import com.truthful.pinokio.util.RetryBudget;
+import com.truthful.pinokio.util.RetryPolicies;
+import com.truthful.pinokio.util.RetryPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+@ExtendWith(MockitoExtension.class)
+class CoalescingUrlStoreTest {
+
+  private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 7, 2, 10, 15);
+  private static final RetryPolicy RETRY_POLICY = new RetryPolicy(
+      3, Duration.ofMillis(1), Duration.ofMillis(5), RetryBudget.unlimited());
+
+  @Mock
+  private UrlStore delegate;
+
+  @Mock
+  private DynamoDbClient dynamoDbClient;
+
+  private CoalescingUrlStore coalescingUrlStore;
+
+  @BeforeEach
+  void setUp() {
+    DynamoDBConfigurationProperties dynamoDBConfigurationProperties =
+        new DynamoDBConfigurationProperties("pinokio", "us-east-1", "test", "test", null,
+            DynamoDbClientMode.SYNC, new AsyncHttpClientProperties(10, 100, Duration.ofSeconds(1)),
+            Duration.ofSeconds(2), Duration.ofMillis(500));
+    coalescingUrlStore = new CoalescingUrlStore(
+        delegate,
+        new DynamoDBRequestFactory(dynamoDBConfigurationProperties),
+        dynamoDbClient,
+        new WriteBatchingConfigurationProperties(true, 25, Duration.ofMillis(200), 3),
+        new RetryPolicies(RETRY_POLICY, RETRY_POLICY, RETRY_POLICY),
+        Executors.newVirtualThreadPerTaskExecutor(),
+        new RequestLogger(0.0, Duration.ofSeconds(10), 10.0),
+        new SimpleMeterRegistry());
+    coalescingUrlStore.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    coalescingUrlStore.stop();
+  }
+
+  @Test
+  @DisplayName("concurrent saves should be written in a single transaction")
+  void concurrentSavesShouldBeWrittenInOneTransaction() {
+    when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class)))
+        .thenReturn(TransactWriteItemsResponse.builder().build());
+
+    EitherT<UrlShortenerError, String> first = save("first");
+    EitherT<UrlShortenerError, String> second = save("second");
+    EitherT<UrlShortenerError, String> third = save("third");
+
+    assertThat(first.toCompletableFuture().join()).isEqualTo(Either.right("first"));
+    assertThat(second.toCompletableFuture().join()).isEqualTo(Either.right("second"));
+    assertThat(third.toCompletableFuture().join()).isEqualTo(Either.right("third"));
+    ArgumentCaptor<TransactWriteItemsRequest> request =
+        ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+    verify(dynamoDbClient).transactWriteItems(request.capture());
+    assertThat(request.getValue().transactItems()).hasSize(3);
+  }
+
+  @Test
+  @DisplayName("a failed condition should only fail its own save and resubmit the others")
+  void failedConditionShouldOnlyFailItsOwnSave() {
+    when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class)))
+        .thenThrow(TransactionCanceledException.builder()
+            .message("Transaction cancelled")
+            .cancellationReasons(
+                CancellationReason.builder().code("None").build(),
+                CancellationReason.builder().code("ConditionalCheckFailed").build())
+            .build())
+        .thenReturn(TransactWriteItemsResponse.builder().build());
+
+    EitherT<UrlShortenerError, String> first = save("first");
+    EitherT<UrlShortenerError, String> existing = save("existing");
+
+    assertThat(first.toCompletableFuture().join()).isEqualTo(Either.right("first"));
+    assertThat(existing.toCompletableFuture().join())
+        .isEqualTo(Either.left(UrlShortenerError.HASH_ALREADY_EXISTS));
+    verify(dynamoDbClient, times(2)).transactWriteItems(any(TransactWriteItemsRequest.class));
+  }
+
+  @Test
+  @DisplayName("a failed condition on an item storing the same URL should succeed")
+  void failedConditionOnSameUrlShouldSucceed() {
+    when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class)))
+        .thenThrow(TransactionCanceledException.builder()
+            .message("Transaction cancelled")
+            .cancellationReasons(
+                CancellationReason.builder()
+                    .code("ConditionalCheckFailed")
+                    .item(Map.of("OriginalUrl",
+                        AttributeValue.builder().s("https://example.com/repeated").build()))
+                    .build())
+            .build());
+
+    EitherT<UrlShortenerError, String> repeated = save("repeated");
+
+    assertThat(repeated.toCompletableFuture().join()).isEqualTo(Either.right("repeated"));
+  }
+
+  @Test
+  @DisplayName("a batch cancelled by conflicting transactions should be retried until it fails")
+  void conflictingTransactionsShouldBeRetriedUntilAttemptsRunOut() {
+    when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class)))
+        .thenThrow(TransactionCanceledException.builder()
+            .message("Transaction cancelled")
+            .cancellationReasons(CancellationReason.builder().code("TransactionConflict").build())
+            .build());
+
+    EitherT<UrlShortenerError, String> conflicting = save("conflicting");
+
+    assertThat(conflicting.toCompletableFuture().join())
+        .isEqualTo(Either.left(UrlShortenerError.TRANSIENT_ERROR));
+    verify(dynamoDbClient, times(3)).transactWriteItems(any(TransactWriteItemsRequest.class));
+  }
+
+  private EitherT<UrlShortenerError, String> save(String hash) {
+    return coalescingUrlStore.save(hash, "https://example.com/" + hash, CREATED_AT,
+        CREATED_AT.plusDays(1));
+  }
+}
@@ -0,0 +1,230 @@
+package com.truthful.pinokio.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.soumakis.control.Either;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties.AsyncHttpClientProperties;
+import com.truthful.pinokio.config.model.DynamoDbClientMode;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RequestLogger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+
+@ExtendWith(MockitoExtension.class)
+class DynamoDBAsyncRepositoryTest {
+
+  private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 7, 2, 10, 15);
+
+  @Mock
+  private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+  private DynamoDBAsyncRepository dynamoDBAsyncRepository;
+
+  @BeforeEach
+  void setUp() {
+    DynamoDBConfigurationProperties properties = new DynamoDBConfigurationProperties(
+        "pinokio", "us-east-1", "test", "test", null, DynamoDbClientMode.ASYNC,
+        new AsyncHttpClientProperties(10, 100, Duration.ofSeconds(1)),
+        Duration.ofSeconds(2), Duration.ofMillis(500));
+    dynamoDBAsyncRepository = new DynamoDBAsyncRepository(
+        new DynamoDBRequestFactory(properties), dynamoDbAsyncClient,
+        new RequestLogger(1.0, Duration.ofSeconds(10), 10.0));
+  }
+
+  @Test
+  @DisplayName("save should return the hash on success")
+  void saveShouldReturnHashOnSuccess() {
+    when(dynamoDbAsyncClient.putItem(any(PutItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(PutItemResponse.builder().build()));
+
+    Either<UrlShortenerError, String> result = dynamoDBAsyncRepository
+        .save("hash", "originalUrl", CREATED_AT, CREATED_AT.plusDays(1))
+        .toCompletableFuture().join();
+
+    assertThat(result).isEqualTo(Either.right("hash"));
+  }
+
+  @Test
+  @DisplayName("save should return HASH_ALREADY_EXISTS when the condition check fails")
+  void saveShouldReturnHashAlreadyExistsOnConditionalCheckFailure() {
+    when(dynamoDbAsyncClient.putItem(any(PutItemRequest.class)))
+        .thenReturn(CompletableFuture.failedFuture(
+            ConditionalCheckFailedException.builder().message("exists").build()));
+
+    Either<UrlShortenerError, String> result = dynamoDBAsyncRepository
+        .save("hash", "originalUrl", CREATED_AT, CREATED_AT.plusDays(1))
+        .toCompletableFuture().join();
+
+    assertThat(result).isEqualTo(Either.left(UrlShortenerError.HASH_ALREADY_EXISTS));
+  }
+
+  @Test
+  @DisplayName("save should return the hash when the existing item stores the same URL")
+  void saveShouldReturnHashWhenExistingItemStoresSameUrl() {
+    when(dynamoDbAsyncClient.putItem(any(PutItemRequest.class)))
+        .thenReturn(CompletableFuture.failedFuture(
+            ConditionalCheckFailedException.builder()
+                .message("exists")
+                .item(Map.of(
+                    "UrlHash", AttributeValue.builder().s("hash").build(),
+                    "OriginalUrl", AttributeValue.builder().s("originalUrl").build(),
+                    "ExpiresAt", AttributeValue.builder().n("1999999999999").build()))
+                .build()));
+
+    Either<UrlShortenerError, String> result = dynamoDBAsyncRepository
+        .save("hash", "originalUrl", CREATED_AT, CREATED_AT.plusDays(1))
+        .toCompletableFuture().join();
+
+    assertThat(result).isEqualTo(Either.right("hash"));
+  }
+
+  @Test
+  @DisplayName("save should return HASH_ALREADY_EXISTS when the existing item stores another URL")
+  void saveShouldReturnHashAlreadyExistsWhenExistingItemStoresAnotherUrl() {
+    when(dynamoDbAsyncClient.putItem(any(PutItemRequest.class)))
+        .thenReturn(CompletableFuture.failedFuture(
+            ConditionalCheckFailedException.builder()
+                .message("exists")
+                .item(Map.of(
+                    "UrlHash", AttributeValue.builder().s("hash").build(),
+                    "OriginalUrl", AttributeValue.builder().s("anotherUrl").build()))
+                .build()));
+
+    Either<UrlShortenerError, String> result = dynamoDBAsyncRepository
+        .save("hash", "originalUrl", CREATED_AT, CREATED_AT.plusDays(1))
+        .toCompletableFuture().join();
+
+    assertThat(result).isEqualTo(Either.left(UrlShortenerError.HASH_ALREADY_EXISTS));
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should map the stored item")
+  void getUrlEntryShouldMapStoredItem() {
+    GetItemResponse response = GetItemResponse.builder()
+        .item(Map.of(
+            "UrlHash", AttributeValue.builder().s("hash").build(),
+            "OriginalUrl", AttributeValue.builder().s("originalUrl").build(),
+            "ExpiresAt", AttributeValue.builder().n("1720000000000").build()))
+        .build();
+    when(dynamoDbAsyncClient.getItem(any(GetItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(response));
+
+    Either<UrlShortenerError, UrlEntry> result = dynamoDBAsyncRepository.getUrlEntry("hash")
+        .toCompletableFuture().join();
+
+    assertThat(result).isEqualTo(Either.right(
+        new UrlEntry("hash", "originalUrl", Instant.ofEpochMilli(1720000000000L))));
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should read ExpiresAt written in epoch seconds")
+  void getUrlEntryShouldReadEpochSecondsExpiry() {
+    GetItemResponse response = GetItemResponse.builder()
+        .item(Map.of(
+            "UrlHash", AttributeValue.builder().s("hash").build(),
+            "OriginalUrl", AttributeValue.builder().s("originalUrl").build(),
+            "ExpiresAt", AttributeValue.builder().n("1720000000").build()))
+        .build();
+    when(dynamoDbAsyncClient.getItem(any(GetItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(response));
+
+    Either<UrlShortenerError, UrlEntry> result = dynamoDBAsyncRepository.getUrlEntry("hash")
+        .toCompletableFuture().join();
+
+    assertThat(result).isEqualTo(Either.right(
+        new UrlEntry("hash", "originalUrl", Instant.ofEpochSecond(1720000000L))));
+  }
+
+  @Test
+  @DisplayName("save should write ExpiresAt in epoch seconds")
+  void saveShouldWriteExpiresAtInEpochSeconds() {
+    when(dynamoDbAsyncClient.putItem(any(PutItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(PutItemResponse.builder().build()));
+
+    dynamoDBAsyncRepository.save("hash", "originalUrl", CREATED_AT, CREATED_AT.plusDays(1))
+        .toCompletableFuture().join();
+
+    ArgumentCaptor<PutItemRequest> putItemRequest = ArgumentCaptor.forClass(PutItemRequest.class);
+    verify(dynamoDbAsyncClient).putItem(putItemRequest.capture());
+    assertThat(putItemRequest.getValue().item().get("ExpiresAt").n())
+        .isEqualTo(String.valueOf(CREATED_AT.plusDays(1).toEpochSecond(ZoneOffset.UTC)));
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should return HASH_NOT_FOUND when there is no item")
+  void getUrlEntryShouldReturnHashNotFound() {
+    when(dynamoDbAsyncClient.getItem(any(GetItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(GetItemResponse.builder().build()));
+
+    Either<UrlShortenerError, UrlEntry> result = dynamoDBAsyncRepository.getUrlEntry("hash")
+        .toCompletableFuture().join();
+
+    assertThat(result).isEqualTo(Either.left(UrlShortenerError.HASH_NOT_FOUND));
+  }
+
+  @Test
+  @DisplayName("delete should return failure when the SDK call fails")
+  void deleteShouldReturnFailureWhenSdkCallFails() {
+    when(dynamoDbAsyncClient.deleteItem(any(DeleteItemRequest.class)))
+        .thenReturn(CompletableFuture.<DeleteItemResponse>failedFuture(new RuntimeException()));
+
+    assertThat(dynamoDBAsyncRepository.delete("hash").toCompletableFuture().join().isFailure())
+        .isTrue();
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should bound the SDK call by the time left on the deadline")
+  void getUrlEntryShouldBoundSdkCallByDeadline() {
+    when(dynamoDbAsyncClient.getItem(any(GetItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(GetItemResponse.builder().build()));
+
+    dynamoDBAsyncRepository.getUrlEntry("hash", Deadline.after(Duration.ofMillis(300)))
+        .toCompletableFuture().join();
+
+    ArgumentCaptor<GetItemRequest> getItemRequest = ArgumentCaptor.forClass(GetItemRequest.class);
+    verify(dynamoDbAsyncClient).getItem(getItemRequest.capture());
+    assertThat(getItemRequest.getValue().overrideConfiguration()).hasValueSatisfying(config -> {
+      assertThat(config.apiCallTimeout()).hasValueSatisfying(
+          timeout -> assertThat(timeout).isLessThanOrEqualTo(Duration.ofMillis(300)));
+      assertThat(config.apiCallAttemptTimeout()).hasValueSatisfying(
+          timeout -> assertThat(timeout).isLessThanOrEqualTo(Duration.ofMillis(300)));
+    });
+  }
+
+  @Test
+  @DisplayName("cancelling getUrlEntry should cancel the SDK call")
+  void cancellingGetUrlEntryShouldCancelSdkCall() {
+    CompletableFuture<GetItemResponse> sdkCall = new CompletableFuture<>();
+    when(dynamoDbAsyncClient.getItem(any(GetItemRequest.class))).thenReturn(sdkCall);
+
+    dynamoDBAsyncRepository.getUrlEntry("hash").toCompletableFuture().cancel(true);
+
+    assertThat(sdkCall).isCancelled();
+  }
+}
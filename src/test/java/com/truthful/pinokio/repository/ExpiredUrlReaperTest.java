@@ -0,0 +1,206 @@
+package com.truthful.pinokio.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties;
+import com.truthful.pinokio.config.model.DynamoDBConfigurationProperties.AsyncHttpClientProperties;
+import com.truthful.pinokio.config.model.DynamoDbClientMode;
+import com.truthful.pinokio.config.model.ReaperConfigurationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+@ExtendWith(MockitoExtension.class)
+class ExpiredUrlReaperTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-02T10:15:30.00Z");
+
+  @Mock
+  private DynamoDbClient dynamoDbClient;
+
+  private MeterRegistry meterRegistry;
+  private DynamoDBRequestFactory dynamoDBRequestFactory;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    dynamoDBRequestFactory = new DynamoDBRequestFactory(new DynamoDBConfigurationProperties(
+        "pinokio", "us-east-1", "test", "test", null, DynamoDbClientMode.SYNC,
+        new AsyncHttpClientProperties(10, 100, Duration.ofSeconds(1)),
+        Duration.ofSeconds(2), Duration.ofMillis(500)));
+  }
+
+  @Test
+  @DisplayName("sweep should delete the expired items of every page and clear the checkpoint")
+  void sweepShouldDeleteExpiredItemsAndClearCheckpoint() {
+    givenCheckpoint(GetItemResponse.builder().build());
+    when(dynamoDbClient.scan(any(ScanRequest.class)))
+        .thenReturn(page(List.of("a", "b"), 3, "b"))
+        .thenReturn(page(List.of("c"), 2, null));
+    when(dynamoDbClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+        .thenReturn(BatchWriteItemResponse.builder().build());
+    when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+        .thenReturn(UpdateItemResponse.builder().build());
+    when(dynamoDbClient.deleteItem(any(DeleteItemRequest.class)))
+        .thenReturn(DeleteItemResponse.builder().build());
+
+    assertThat(reaper(1).sweep()).isTrue();
+
+    ArgumentCaptor<ScanRequest> scans = ArgumentCaptor.forClass(ScanRequest.class);
+    verify(dynamoDbClient, times(2)).scan(scans.capture());
+    assertThat(scans.getAllValues().get(0).exclusiveStartKey()).isEmpty();
+    assertThat(scans.getAllValues().get(1).exclusiveStartKey().get("UrlHash").s()).isEqualTo("b");
+    assertThat(scans.getAllValues().get(0).expressionAttributeValues().get(":nowSeconds").n())
+        .isEqualTo(String.valueOf(NOW.getEpochSecond()));
+
+    ArgumentCaptor<UpdateItemRequest> checkpoints =
+        ArgumentCaptor.forClass(UpdateItemRequest.class);
+    verify(dynamoDbClient, times(2)).updateItem(checkpoints.capture());
+    assertThat(checkpoints.getAllValues())
+        .extracting(request -> request.expressionAttributeValues().get(":position").s())
+        .containsExactly("b", ExpiredUrlReaper.SEGMENT_DONE);
+
+    ArgumentCaptor<DeleteItemRequest> delete = ArgumentCaptor.forClass(DeleteItemRequest.class);
+    verify(dynamoDbClient).deleteItem(delete.capture());
+    assertThat(delete.getValue().key().get("UrlHash").s()).isEqualTo("_reaper");
+
+    assertThat(meterRegistry.get("url.reaper.scanned").counter().count()).isEqualTo(5);
+    assertThat(meterRegistry.get("url.reaper.deleted").counter().count()).isEqualTo(3);
+    assertThat(meterRegistry.get("url.reaper.last.sweep").gauge().value())
+        .isEqualTo(NOW.getEpochSecond());
+  }
+
+  @Test
+  @DisplayName("sweep should resume from the checkpoint and skip the segments already done")
+  void sweepShouldResumeFromCheckpoint() {
+    givenCheckpoint(checkpoint(2, Map.of(
+        "Segment0", ExpiredUrlReaper.SEGMENT_DONE,
+        "Segment1", "x")));
+    when(dynamoDbClient.scan(any(ScanRequest.class))).thenReturn(page(List.of(), 1, null));
+    when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+        .thenReturn(UpdateItemResponse.builder().build());
+    when(dynamoDbClient.deleteItem(any(DeleteItemRequest.class)))
+        .thenReturn(DeleteItemResponse.builder().build());
+
+    reaper(2).sweep();
+
+    ArgumentCaptor<ScanRequest> scan = ArgumentCaptor.forClass(ScanRequest.class);
+    verify(dynamoDbClient).scan(scan.capture());
+    assertThat(scan.getValue().segment()).isEqualTo(1);
+    assertThat(scan.getValue().totalSegments()).isEqualTo(2);
+    assertThat(scan.getValue().exclusiveStartKey().get("UrlHash").s()).isEqualTo("x");
+  }
+
+  @Test
+  @DisplayName("sweep should start over when the checkpoint used another number of segments")
+  void sweepShouldIgnoreCheckpointOfAnotherSegmentCount() {
+    givenCheckpoint(checkpoint(4, Map.of("Segment0", ExpiredUrlReaper.SEGMENT_DONE)));
+    when(dynamoDbClient.scan(any(ScanRequest.class))).thenReturn(page(List.of(), 1, null));
+    when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+        .thenReturn(UpdateItemResponse.builder().build());
+    when(dynamoDbClient.deleteItem(any(DeleteItemRequest.class)))
+        .thenReturn(DeleteItemResponse.builder().build());
+
+    reaper(2).sweep();
+
+    verify(dynamoDbClient, times(2)).scan(any(ScanRequest.class));
+  }
+
+  @Test
+  @DisplayName("sweep should resubmit the deletes left unprocessed")
+  void sweepShouldResubmitUnprocessedDeletes() {
+    givenCheckpoint(GetItemResponse.builder().build());
+    when(dynamoDbClient.scan(any(ScanRequest.class)))
+        .thenReturn(page(List.of("a", "b"), 2, null));
+    WriteRequest unprocessed = WriteRequest.builder()
+        .deleteRequest(DeleteRequest.builder()
+            .key(Map.of("UrlHash", AttributeValue.builder().s("b").build()))
+            .build())
+        .build();
+    when(dynamoDbClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+        .thenReturn(BatchWriteItemResponse.builder()
+            .unprocessedItems(Map.of("pinokio", List.of(unprocessed)))
+            .build())
+        .thenReturn(BatchWriteItemResponse.builder().build());
+    when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+        .thenReturn(UpdateItemResponse.builder().build());
+    when(dynamoDbClient.deleteItem(any(DeleteItemRequest.class)))
+        .thenReturn(DeleteItemResponse.builder().build());
+
+    reaper(1).sweep();
+
+    ArgumentCaptor<BatchWriteItemRequest> batches =
+        ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+    verify(dynamoDbClient, times(2)).batchWriteItem(batches.capture());
+    assertThat(batches.getAllValues().get(1).requestItems().get("pinokio"))
+        .containsExactly(unprocessed);
+    assertThat(meterRegistry.get("url.reaper.deleted").counter().count()).isEqualTo(2);
+  }
+
+  private ExpiredUrlReaper reaper(int totalSegments) {
+    return new ExpiredUrlReaper(
+        dynamoDBRequestFactory,
+        dynamoDbClient,
+        new ReaperConfigurationProperties(
+            true, Duration.ofHours(1), totalSegments, 100, 1_000_000.0, 1_000_000.0, "_reaper"),
+        Runnable::run,
+        Clock.fixed(NOW, ZoneId.of("UTC")),
+        meterRegistry);
+  }
+
+  private void givenCheckpoint(GetItemResponse response) {
+    when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(response);
+  }
+
+  private static GetItemResponse checkpoint(int totalSegments, Map<String, String> positions) {
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("UrlHash", AttributeValue.builder().s("_reaper").build());
+    item.put("TotalSegments", AttributeValue.builder().n(String.valueOf(totalSegments)).build());
+    positions.forEach(
+        (segment, position) -> item.put(segment, AttributeValue.builder().s(position).build()));
+    return GetItemResponse.builder().item(item).build();
+  }
+
+  private static ScanResponse page(List<String> hashes, int scannedCount, String lastHash) {
+    ScanResponse.Builder builder = ScanResponse.builder()
+        .items(hashes.stream()
+            .map(hash -> Map.of("UrlHash", AttributeValue.builder().s(hash).build()))
+            .toList())
+        .scannedCount(scannedCount);
+    if (lastHash != null) {
+      builder.lastEvaluatedKey(Map.of("UrlHash", AttributeValue.builder().s(lastHash).build()));
+    }
+    return builder.build();
+  }
+}
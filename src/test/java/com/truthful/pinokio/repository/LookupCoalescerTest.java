@@ -0,0 +1,102 @@
+package com.truthful.pinokio.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LookupCoalescerTest {
+
+  private static final UrlEntry URL_ENTRY = new UrlEntry("hash", "originalUrl", null);
+  private static final UrlEntry OTHER = new UrlEntry("hash", "other", null);
+
+  private MeterRegistry meterRegistry;
+  private LookupCoalescer lookupCoalescer;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    lookupCoalescer = new LookupCoalescer(meterRegistry);
+  }
+
+  @Test
+  @DisplayName("should share one lookup between concurrent callers of the same hash")
+  void shouldShareLookupBetweenConcurrentCallers() {
+    AtomicInteger calls = new AtomicInteger();
+    CompletableFuture<Either<UrlShortenerError, UrlEntry>> pending = new CompletableFuture<>();
+
+    EitherT<UrlShortenerError, UrlEntry> first = lookupCoalescer.coalesce("hash", () -> {
+      calls.incrementAndGet();
+      return EitherT.fromFuture(pending);
+    });
+    EitherT<UrlShortenerError, UrlEntry> second = lookupCoalescer.coalesce("hash", () -> {
+      calls.incrementAndGet();
+      return EitherT.right(OTHER);
+    });
+    pending.complete(Either.right(URL_ENTRY));
+
+    assertThat(first.toCompletableFuture().join()).isEqualTo(Either.right(URL_ENTRY));
+    assertThat(second.toCompletableFuture().join()).isEqualTo(Either.right(URL_ENTRY));
+    assertThat(calls).hasValue(1);
+    assertThat(meterRegistry.get("url.lookup.coalescer.dedup.ratio").gauge().value())
+        .isEqualTo(0.5);
+  }
+
+  @Test
+  @DisplayName("should propagate HASH_NOT_FOUND and failures to every caller")
+  void shouldPropagateErrorsToEveryCaller() {
+    CompletableFuture<Either<UrlShortenerError, UrlEntry>> missing = new CompletableFuture<>();
+    CompletableFuture<Either<UrlShortenerError, UrlEntry>> failing = new CompletableFuture<>();
+    EitherT<UrlShortenerError, UrlEntry> firstMissing =
+        lookupCoalescer.coalesce("missing", () -> EitherT.fromFuture(missing));
+    EitherT<UrlShortenerError, UrlEntry> secondMissing =
+        lookupCoalescer.coalesce("missing", () -> EitherT.right(OTHER));
+    EitherT<UrlShortenerError, UrlEntry> firstFailing =
+        lookupCoalescer.coalesce("failing", () -> EitherT.fromFuture(failing));
+    EitherT<UrlShortenerError, UrlEntry> secondFailing =
+        lookupCoalescer.coalesce("failing", () -> EitherT.right(OTHER));
+
+    missing.complete(Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    failing.completeExceptionally(new IllegalStateException("Failure"));
+
+    assertThat(firstMissing.toCompletableFuture().join())
+        .isEqualTo(Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    assertThat(secondMissing.toCompletableFuture().join())
+        .isEqualTo(Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    assertThatThrownBy(() -> firstFailing.toCompletableFuture().join())
+        .isInstanceOf(CompletionException.class)
+        .hasCauseInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(() -> secondFailing.toCompletableFuture().join())
+        .isInstanceOf(CompletionException.class)
+        .hasCauseInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  @DisplayName("should start a new lookup once the previous one completed")
+  void shouldStartNewLookupAfterCompletion() {
+    AtomicInteger calls = new AtomicInteger();
+
+    lookupCoalescer.coalesce("hash", () -> {
+      calls.incrementAndGet();
+      return EitherT.right(URL_ENTRY);
+    }).toCompletableFuture().join();
+    lookupCoalescer.coalesce("hash", () -> {
+      calls.incrementAndGet();
+      return EitherT.right(URL_ENTRY);
+    }).toCompletableFuture().join();
+
+    assertThat(calls).hasValue(2);
+    assertThat(meterRegistry.get("url.lookup.coalescer.in.flight").gauge().value()).isZero();
+  }
+}
@@ -2,18 +2,35 @@ package com.truthful.pinokio.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.soumakis.control.Either;
 import com.soumakis.control.EitherT;
-import com.soumakis.control.Try;
 import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.model.HedgingConfigurationProperties;
+import com.truthful.pinokio.config.model.ResilienceConfigurationProperties;
+import com.truthful.pinokio.repository.cache.LongUrlCache;
+import com.truthful.pinokio.repository.cache.NegativeLookupFilter;
+import com.truthful.pinokio.repository.cache.UrlCache;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.repository.resilience.Hedger;
+import com.truthful.pinokio.repository.resilience.StorageGuard;
 import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.RetryPolicies;
+import com.truthful.pinokio.util.RetryPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -24,70 +41,200 @@ import org.mockito.junit.jupiter.MockitoExtension;
 @ExtendWith(MockitoExtension.class)
 class StorageRepositoryFacadeTest {
 
+  private static final UrlEntry URL_ENTRY = new UrlEntry("hash", "originalUrl", null);
+
+  @Mock
+  private UrlStore urlStore;
+
+  @Mock
+  private UrlCache urlCache;
+
   @Mock
-  private DynamoDBRepository dynamoDBRepository;
+  private LongUrlCache longUrlCache;
+
+  @Mock
+  private NegativeLookupFilter negativeLookupFilter;
 
   private StorageRepositoryFacade storageRepositoryFacade;
 
   @BeforeEach
   void setUp() {
-    Executor executor = Executors.newSingleThreadExecutor();
     Clock fixedClock = Clock.fixed(Instant.parse("2024-07-02T10:15:30.00Z"), ZoneId.of("UTC"));
-    storageRepositoryFacade = new StorageRepositoryFacade(dynamoDBRepository, fixedClock, executor);
+    RetryPolicy retryPolicy = RetryPolicy.immediate(3);
+    StorageGuard storageGuard = new StorageGuard(
+        new ResilienceConfigurationProperties(
+            new ResilienceConfigurationProperties.CircuitBreakerProperties(
+                true, 10, 4, 0.5, Duration.ofSeconds(5), 1),
+            new ResilienceConfigurationProperties.ConcurrencyLimitProperties(
+                true, 100, 10, 100, Duration.ofSeconds(1), 0.9),
+            new ResilienceConfigurationProperties.BulkheadProperties(false, null, null, null),
+            Duration.ofSeconds(5)),
+        fixedClock,
+        new SimpleMeterRegistry());
+    storageRepositoryFacade = new StorageRepositoryFacade(urlStore, urlCache, longUrlCache,
+        negativeLookupFilter, new RetryPolicies(retryPolicy, retryPolicy, retryPolicy),
+        storageGuard,
+        new Hedger(new HedgingConfigurationProperties(false, 0.95, Duration.ofMillis(1), 0.05, 100),
+            new SimpleMeterRegistry()),
+        new LookupCoalescer(new SimpleMeterRegistry()), fixedClock);
   }
 
   @Test
   @DisplayName("saveHash should return shortened URL on success")
   void saveHashShouldReturnShortenedUrlOnSuccess() {
-    when(dynamoDBRepository.save(any(), any(), any(), any())).thenReturn(Either.right("shortUrl"));
+    when(urlStore.save(any(), any(), any(), any(), any())).thenReturn(EitherT.right("shortUrl"));
     EitherT<UrlShortenerError, String> result =
-        storageRepositoryFacade.saveHash("hash", "longUrl", 3, 7);
+        storageRepositoryFacade.saveHash("hash", "longUrl", 7);
     assertThat(result.toCompletableFuture().join()).isEqualTo(Either.right("shortUrl"));
+    verify(negativeLookupFilter).recordSaved("hash");
+    verify(longUrlCache).put("longUrl", "hash");
   }
 
   @Test
-  @DisplayName("saveHash should return error on failure")
+  @DisplayName("saveHash should retry transient errors and return the last error")
   void saveHashShouldReturnErrorOnFailure() {
-    when(dynamoDBRepository.save(any(), any(), any(), any()))
-        .thenReturn(Either.left(UrlShortenerError.GENERIC_ERROR));
+    when(urlStore.save(any(), any(), any(), any(), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.TRANSIENT_ERROR));
+    EitherT<UrlShortenerError, String> result =
+        storageRepositoryFacade.saveHash("hash", "longUrl", 7);
+    assertThat(result.toCompletableFuture().join()).isEqualTo(
+        Either.left(UrlShortenerError.TRANSIENT_ERROR));
+    verify(urlStore, times(3)).save(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  @DisplayName("saveHash should not retry permanent errors")
+  void saveHashShouldNotRetryPermanentErrors() {
+    when(urlStore.save(any(), any(), any(), any(), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.GENERIC_ERROR));
     EitherT<UrlShortenerError, String> result =
-        storageRepositoryFacade.saveHash("hash", "longUrl", 3, 7);
+        storageRepositoryFacade.saveHash("hash", "longUrl", 7);
     assertThat(result.toCompletableFuture().join()).isEqualTo(
         Either.left(UrlShortenerError.GENERIC_ERROR));
+    verify(urlStore, times(1)).save(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should return the entry if present")
+  void getUrlEntryShouldReturnUrlIfPresent() {
+    when(urlStore.getUrlEntry(any(), any())).thenReturn(EitherT.right(URL_ENTRY));
+    EitherT<UrlShortenerError, UrlEntry> result = storageRepositoryFacade.getUrlEntry("hash");
+    assertThat(result.toCompletableFuture().join()).isEqualTo(Either.right(URL_ENTRY));
+    verify(urlCache).put(URL_ENTRY);
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should return the cached entry without reaching the storage")
+  void getUrlEntryShouldReturnCachedUrl() {
+    when(urlCache.getEntry("hash")).thenReturn(Optional.of(URL_ENTRY));
+    EitherT<UrlShortenerError, UrlEntry> result = storageRepositoryFacade.getUrlEntry("hash");
+    assertThat(result.toCompletableFuture().join()).isEqualTo(Either.right(URL_ENTRY));
+    verifyNoInteractions(urlStore);
+  }
+
+  @Test
+  @DisplayName("refreshUrlEntry should only reload entries cached for too short a time")
+  void refreshUrlEntryShouldReloadEntriesAboutToExpire() {
+    Instant cachedUntil = Instant.parse("2024-07-02T10:15:40.00Z");
+    when(urlCache.isCachedUntil("hash", cachedUntil.toEpochMilli())).thenReturn(false);
+    when(urlCache.isCachedUntil("cached", cachedUntil.toEpochMilli())).thenReturn(true);
+    when(urlStore.getUrlEntry(eq("hash"), any())).thenReturn(EitherT.right(URL_ENTRY));
+
+    assertThat(storageRepositoryFacade.refreshUrlEntry("hash", cachedUntil)
+        .toCompletableFuture().join()).isEqualTo(Either.right(Optional.of(URL_ENTRY)));
+    assertThat(storageRepositoryFacade.refreshUrlEntry("cached", cachedUntil)
+        .toCompletableFuture().join()).isEqualTo(Either.right(Optional.empty()));
+    verify(urlCache).put(URL_ENTRY);
+    verify(urlStore, never()).getUrlEntry(eq("cached"), any());
   }
 
   @Test
-  @DisplayName("getOriginalUrl should return URL if present")
-  void getOriginalUrlShouldReturnUrlIfPresent() {
-    when(dynamoDBRepository.getOriginalUrl(any()))
-        .thenReturn(Either.right("originalUrl"));
-    EitherT<UrlShortenerError, String> result = storageRepositoryFacade.getOriginalUrl("hash", 3);
-    assertThat(result.toCompletableFuture().join()).isEqualTo(Either.right("originalUrl"));
+  @DisplayName("getUrlEntry should return HASH_NOT_FOUND if URL not found")
+  void getUrlEntryShouldReturnHashNotFound() {
+    when(urlStore.getUrlEntry(any(), any())).thenReturn(
+        EitherT.left(UrlShortenerError.HASH_NOT_FOUND));
+    EitherT<UrlShortenerError, UrlEntry> result = storageRepositoryFacade.getUrlEntry("hash");
+    assertThat(result.toCompletableFuture().join()).isEqualTo(
+        Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    verify(urlStore, times(1)).getUrlEntry(eq("hash"), any());
+    verify(negativeLookupFilter).recordMissing("hash");
   }
 
   @Test
-  @DisplayName("getOriginalUrl should return HASH_NOT_FOUND if URL not found")
-  void getOriginalUrlShouldReturnHashNotFound() {
-    when(dynamoDBRepository.getOriginalUrl(any())).thenReturn(
+  @DisplayName("getUrlEntry should return HASH_NOT_FOUND for stored entries past ExpiresAt")
+  void getUrlEntryShouldReturnHashNotFoundForExpiredEntries() {
+    when(urlStore.getUrlEntry(any(), any())).thenReturn(EitherT.right(new UrlEntry(
+        "hash", "originalUrl", Instant.parse("2024-07-02T10:15:29.00Z"))));
+    EitherT<UrlShortenerError, UrlEntry> result = storageRepositoryFacade.getUrlEntry("hash");
+    assertThat(result.toCompletableFuture().join()).isEqualTo(
         Either.left(UrlShortenerError.HASH_NOT_FOUND));
-    EitherT<UrlShortenerError, String> result = storageRepositoryFacade.getOriginalUrl("hash", 3);
+    verify(urlCache, never()).put(any());
+    verify(negativeLookupFilter).recordMissing("hash");
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should return HASH_NOT_FOUND for known missing hashes without"
+      + " reaching the storage")
+  void getUrlEntryShouldShortCircuitKnownMissingHashes() {
+    when(negativeLookupFilter.isKnownMissing("hash")).thenReturn(true);
+    EitherT<UrlShortenerError, UrlEntry> result = storageRepositoryFacade.getUrlEntry("hash");
     assertThat(result.toCompletableFuture().join()).isEqualTo(
         Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    verifyNoInteractions(urlStore);
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should issue one storage call for concurrent lookups of a hash")
+  void getUrlEntryShouldCoalesceConcurrentLookups() {
+    CompletableFuture<Either<UrlShortenerError, UrlEntry>> pending = new CompletableFuture<>();
+    when(urlStore.getUrlEntry(eq("hash"), any())).thenReturn(EitherT.fromFuture(pending));
+
+    EitherT<UrlShortenerError, UrlEntry> first = storageRepositoryFacade.getUrlEntry("hash");
+    EitherT<UrlShortenerError, UrlEntry> second = storageRepositoryFacade.getUrlEntry("hash");
+    pending.complete(Either.left(UrlShortenerError.HASH_NOT_FOUND));
+
+    assertThat(first.toCompletableFuture().join()).isEqualTo(
+        Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    assertThat(second.toCompletableFuture().join()).isEqualTo(
+        Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    verify(urlStore, times(1)).getUrlEntry(eq("hash"), any());
+    verify(negativeLookupFilter, times(1)).recordMissing("hash");
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should keep serving cached entries while the circuit is open")
+  void getUrlEntryShouldServeCacheWhileCircuitIsOpen() {
+    when(urlStore.getUrlEntry(eq("missing"), any()))
+        .thenReturn(EitherT.left(UrlShortenerError.TRANSIENT_ERROR));
+    storageRepositoryFacade.getUrlEntry("missing").toCompletableFuture().join();
+    storageRepositoryFacade.getUrlEntry("missing").toCompletableFuture().join();
+
+    EitherT<UrlShortenerError, UrlEntry> rejected = storageRepositoryFacade.getUrlEntry("other");
+    assertThat(rejected.toCompletableFuture().join()).isEqualTo(
+        Either.left(UrlShortenerError.SERVICE_UNAVAILABLE));
+    verify(urlStore, times(4)).getUrlEntry(eq("missing"), any());
+    verify(urlStore, never()).getUrlEntry(eq("other"), any());
+
+    when(urlCache.getEntry("hash")).thenReturn(Optional.of(URL_ENTRY));
+    EitherT<UrlShortenerError, UrlEntry> cached = storageRepositoryFacade.getUrlEntry("hash");
+    assertThat(cached.toCompletableFuture().join()).isEqualTo(Either.right(URL_ENTRY));
   }
 
   @Test
   @DisplayName("delete should return success on successful deletion")
   void deleteShouldReturnSuccessOnSuccessfulDeletion() {
-    when(dynamoDBRepository.delete(any())).thenReturn(Try.success(null));
-    TryT<Void> result = storageRepositoryFacade.delete("hash", 3);
+    when(urlStore.delete(any(), any())).thenReturn(TryT.of(null));
+    TryT<Void> result = storageRepositoryFacade.delete("hash");
     assertThat(result.toCompletableFuture().join().isSuccess()).isTrue();
+    verify(urlCache, atLeastOnce()).invalidate("hash");
+    verify(longUrlCache).invalidateHash("hash");
   }
 
   @Test
   @DisplayName("delete should return failure on unsuccessful deletion")
   void deleteShouldReturnFailureOnUnsuccessfulDeletion() {
-    when(dynamoDBRepository.delete(any())).thenReturn(Try.failure(new RuntimeException()));
-    TryT<Void> result = storageRepositoryFacade.delete("hash", 3);
+    when(urlStore.delete(any(), any())).thenReturn(TryT.ofFailure(new RuntimeException()));
+    TryT<Void> result = storageRepositoryFacade.delete("hash");
     assertThat(result.toCompletableFuture().join().isFailure()).isTrue();
   }
 }
@@ -0,0 +1,129 @@
+package com.truthful.pinokio.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.truthful.pinokio.config.model.CacheConfigurationProperties;
+import com.truthful.pinokio.config.model.CacheWarmUpConfigurationProperties;
+import com.truthful.pinokio.repository.cache.UrlCache;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.util.unit.DataSize;
+
+@ExtendWith(MockitoExtension.class)
+class UrlCacheWarmerTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-02T10:15:30.00Z");
+  private static final Instant SINCE = NOW.minus(Duration.ofHours(24));
+
+  private final Clock fixedClock = Clock.fixed(NOW, ZoneOffset.UTC);
+
+  @Mock
+  private UrlStore urlStore;
+
+  @TempDir
+  Path directory;
+
+  private UrlCache urlCache;
+
+  @BeforeEach
+  void setUp() {
+    urlCache = newUrlCache();
+  }
+
+  @Test
+  @DisplayName("warmUp should load the snapshot written by the previous shutdown")
+  void warmUpShouldLoadSnapshot() {
+    urlCache.put(new UrlEntry("hash", "https://example.com", null));
+    newWarmer(urlCache, 10).stop();
+
+    UrlCache restartedCache = newUrlCache();
+    UrlCacheWarmer warmer = newWarmer(restartedCache, 10);
+    warmer.warmUp();
+
+    assertThat(restartedCache.get("hash")).contains("https://example.com");
+    assertThat(warmer.health().getStatus()).isEqualTo(Status.UP);
+    verify(urlStore, never()).scanCreatedSince(any(), anyInt(), anyInt());
+  }
+
+  @Test
+  @DisplayName("warmUp should scan every segment for recent entries without a snapshot")
+  void warmUpShouldScanWithoutSnapshot() {
+    when(urlStore.scanCreatedSince(SINCE, 0, 2)).thenReturn(Stream.of(
+        new UrlEntry("abc", "https://example.com", null),
+        new UrlEntry("exp", "https://expired.com", NOW.minusSeconds(1))));
+    when(urlStore.scanCreatedSince(SINCE, 1, 2)).thenReturn(Stream.of(
+        new UrlEntry("abd", "https://example.org", NOW.plusSeconds(60))));
+
+    UrlCacheWarmer warmer = newWarmer(urlCache, 10);
+    warmer.warmUp();
+
+    assertThat(urlCache.get("abc")).contains("https://example.com");
+    assertThat(urlCache.get("abd")).contains("https://example.org");
+    assertThat(urlCache.get("exp")).isEmpty();
+    assertThat(warmer.health().getDetails()).containsEntry("loaded", 2);
+  }
+
+  @Test
+  @DisplayName("the scan should stop once the maximum number of entries is loaded")
+  void scanShouldStopAtMaximumEntries() {
+    when(urlStore.scanCreatedSince(eq(SINCE), anyInt(), eq(2))).thenAnswer(invocation ->
+        Stream.iterate(0, i -> i + 1)
+            .map(i -> new UrlEntry(invocation.getArgument(1) + "-" + i, "https://example.com",
+                null)));
+
+    UrlCacheWarmer warmer = newWarmer(urlCache, 5);
+    warmer.warmUp();
+
+    assertThat(warmer.health().getDetails()).containsEntry("loaded", 5);
+  }
+
+  @Test
+  @DisplayName("health should be out of service until the warm-up is done")
+  void healthShouldBeOutOfServiceUntilWarm() {
+    UrlCacheWarmer warmer = newWarmer(urlCache, 10);
+
+    assertThat(warmer.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+  }
+
+  private UrlCacheWarmer newWarmer(UrlCache cache, int scanMaximumEntries) {
+    return new UrlCacheWarmer(
+        new CacheWarmUpConfigurationProperties(true,
+            directory.resolve("url-cache.snapshot").toString(), 100, Duration.ofHours(24),
+            scanMaximumEntries, 2, 1000.0, 0.8, Duration.ofMinutes(1)),
+        cacheConfigurationProperties(),
+        cache,
+        urlStore,
+        Runnable::run,
+        fixedClock,
+        new SimpleMeterRegistry());
+  }
+
+  private UrlCache newUrlCache() {
+    return new UrlCache(cacheConfigurationProperties(), fixedClock, new SimpleMeterRegistry());
+  }
+
+  private static CacheConfigurationProperties cacheConfigurationProperties() {
+    return new CacheConfigurationProperties(true, DataSize.ofMegabytes(1), DataSize.ofBytes(0),
+        DataSize.ofKilobytes(64), Duration.ofMinutes(10));
+  }
+}
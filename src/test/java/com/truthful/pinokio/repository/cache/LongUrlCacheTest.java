@@ -0,0 +1,57 @@
+package com.truthful.pinokio.repository.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.truthful.pinokio.config.model.LongUrlCacheConfigurationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LongUrlCacheTest {
+
+  private LongUrlCache longUrlCache;
+
+  @BeforeEach
+  void setUp() {
+    longUrlCache = new LongUrlCache(
+        new LongUrlCacheConfigurationProperties(true, 100L, Duration.ofMinutes(10)),
+        new SimpleMeterRegistry());
+  }
+
+  @Test
+  @DisplayName("get should return the hash the long URL was shortened to")
+  void getShouldReturnCachedHash() {
+    longUrlCache.put("https://example.com", "hash");
+
+    assertThat(longUrlCache.get("https://example.com")).contains("hash");
+    assertThat(longUrlCache.get("https://example.org")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("invalidateHash should forget every long URL shortened to the hash")
+  void invalidateHashShouldForgetLongUrls() {
+    longUrlCache.put("https://example.com", "hash");
+    longUrlCache.put("https://example.com/", "hash");
+    longUrlCache.put("https://example.org", "other");
+
+    longUrlCache.invalidateHash("hash");
+
+    assertThat(longUrlCache.get("https://example.com")).isEmpty();
+    assertThat(longUrlCache.get("https://example.com/")).isEmpty();
+    assertThat(longUrlCache.get("https://example.org")).contains("other");
+  }
+
+  @Test
+  @DisplayName("get should return nothing when the cache is disabled")
+  void getShouldReturnNothingWhenDisabled() {
+    longUrlCache = new LongUrlCache(
+        new LongUrlCacheConfigurationProperties(false, 100L, Duration.ofMinutes(10)),
+        new SimpleMeterRegistry());
+
+    longUrlCache.put("https://example.com", "hash");
+
+    assertThat(longUrlCache.get("https://example.com")).isEmpty();
+  }
+}
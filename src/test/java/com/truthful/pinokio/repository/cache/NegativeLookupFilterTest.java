@@ -0,0 +1,74 @@
+package com.truthful.pinokio.repository.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.truthful.pinokio.config.model.NegativeLookupConfigurationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class NegativeLookupFilterTest {
+
+  private MeterRegistry meterRegistry;
+  private NegativeLookupFilter negativeLookupFilter;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    negativeLookupFilter = new NegativeLookupFilter(
+        new NegativeLookupConfigurationProperties(true, 1000L, 0.01, true, 100L,
+            Duration.ofSeconds(30)),
+        meterRegistry);
+  }
+
+  @Test
+  @DisplayName("isKnownMissing should let every hash through before the filter is rebuilt")
+  void isKnownMissingShouldLetEverythingThroughBeforeRebuild() {
+    assertThat(negativeLookupFilter.isKnownMissing("hash")).isFalse();
+  }
+
+  @Test
+  @DisplayName("isKnownMissing should reject hashes that are not in the rebuilt filter")
+  void isKnownMissingShouldRejectUnknownHashes() {
+    negativeLookupFilter.rebuild(Stream.of("known"));
+
+    assertThat(negativeLookupFilter.isKnownMissing("known")).isFalse();
+    assertThat(negativeLookupFilter.isKnownMissing("unknown")).isTrue();
+  }
+
+  @Test
+  @DisplayName("recordSaved should add the hash to the filter and forget it was missing")
+  void recordSavedShouldAddHashToFilter() {
+    negativeLookupFilter.rebuild(Stream.empty());
+    negativeLookupFilter.recordMissing("hash");
+
+    negativeLookupFilter.recordSaved("hash");
+
+    assertThat(negativeLookupFilter.isKnownMissing("hash")).isFalse();
+  }
+
+  @Test
+  @DisplayName("recordDeleted should remember the hash as missing")
+  void recordDeletedShouldRememberHashAsMissing() {
+    negativeLookupFilter.rebuild(Stream.of("hash"));
+
+    negativeLookupFilter.recordDeleted("hash");
+
+    assertThat(negativeLookupFilter.isKnownMissing("hash")).isTrue();
+  }
+
+  @Test
+  @DisplayName("recordMissing should count a false positive when the filter let the hash through")
+  void recordMissingShouldCountFalsePositives() {
+    negativeLookupFilter.rebuild(Stream.of("hash"));
+
+    negativeLookupFilter.recordMissing("hash");
+
+    assertThat(meterRegistry.get("url.filter.false.positives").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("url.filter.size").gauge().value()).isEqualTo(1);
+  }
+}
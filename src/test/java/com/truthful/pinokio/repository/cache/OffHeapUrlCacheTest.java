@@ -0,0 +1,98 @@
+package com.truthful.pinokio.repository.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.truthful.pinokio.repository.model.UrlEntry;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OffHeapUrlCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-02T10:15:30.00Z");
+  private static final long CACHED_UNTIL = NOW.plusSeconds(60).toEpochMilli();
+
+  private final Clock fixedClock = Clock.fixed(NOW, ZoneOffset.UTC);
+  private final OffHeapUrlCache offHeapUrlCache = new OffHeapUrlCache(16 * 1024, 1024, fixedClock);
+
+  @Test
+  @DisplayName("get should return the cached entry with its expiry")
+  void getShouldReturnCachedEntry() {
+    CachedUrl cachedUrl = cachedUrl("hash", "https://example.com", NOW.plusSeconds(3600));
+
+    offHeapUrlCache.put(cachedUrl);
+
+    assertThat(offHeapUrlCache.get("hash")).contains(cachedUrl);
+    assertThat(offHeapUrlCache.get("unknown")).isEmpty();
+    assertThat(offHeapUrlCache.hitCount()).isEqualTo(1);
+    assertThat(offHeapUrlCache.missCount()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("put should replace the entry of the same hash")
+  void putShouldReplaceEntryOfSameHash() {
+    offHeapUrlCache.put(cachedUrl("hash", "https://example.com", null));
+    offHeapUrlCache.put(cachedUrl("hash", "https://other.com", null));
+
+    assertThat(offHeapUrlCache.get("hash").map(cached -> cached.urlEntry().originalUrl()))
+        .contains("https://other.com");
+    assertThat(offHeapUrlCache.size()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("get should drop entries that may no longer be served")
+  void getShouldDropEntriesPastCachedUntil() {
+    offHeapUrlCache.put(new CachedUrl(new UrlEntry("hash", "https://example.com", null),
+        NOW.toEpochMilli()));
+
+    assertThat(offHeapUrlCache.get("hash")).isEmpty();
+    assertThat(offHeapUrlCache.size()).isZero();
+    assertThat(offHeapUrlCache.usedBytes()).isZero();
+  }
+
+  @Test
+  @DisplayName("invalidate should remove the entry")
+  void invalidateShouldRemoveEntry() {
+    offHeapUrlCache.put(cachedUrl("hash", "https://example.com", null));
+
+    offHeapUrlCache.invalidate("hash");
+
+    assertThat(offHeapUrlCache.get("hash")).isEmpty();
+    assertThat(offHeapUrlCache.usedBytes()).isZero();
+  }
+
+  @Test
+  @DisplayName("a full cache should evict unread entries and give read ones a second chance")
+  void fullCacheShouldKeepReadEntries() {
+    for (int i = 0; i < 10; i++) {
+      offHeapUrlCache.put(cachedUrl("hot" + i, "https://example.com/" + i, null));
+    }
+
+    for (int i = 0; i < 5000; i++) {
+      for (int j = 0; j < 10; j++) {
+        offHeapUrlCache.get("hot" + j);
+      }
+      offHeapUrlCache.put(cachedUrl("cold" + i, "https://example.com/cold/" + i, null));
+    }
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(offHeapUrlCache.get("hot" + i)).isPresent();
+    }
+    assertThat(offHeapUrlCache.evictionCount()).isPositive();
+    assertThat(offHeapUrlCache.usedBytes()).isLessThanOrEqualTo(offHeapUrlCache.maximumSize());
+  }
+
+  @Test
+  @DisplayName("put should skip entries larger than a slab")
+  void putShouldSkipEntriesLargerThanSlab() {
+    offHeapUrlCache.put(cachedUrl("hash", "https://example.com/" + "a".repeat(1024), null));
+
+    assertThat(offHeapUrlCache.get("hash")).isEmpty();
+  }
+
+  private static CachedUrl cachedUrl(String hash, String originalUrl, Instant expiresAt) {
+    return new CachedUrl(new UrlEntry(hash, originalUrl, expiresAt), CACHED_UNTIL);
+  }
+}
@@ -0,0 +1,214 @@
+package com.truthful.pinokio.repository.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.truthful.pinokio.config.model.CacheConfigurationProperties;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class UrlCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-02T10:15:30.00Z");
+
+  private final Clock fixedClock = Clock.fixed(NOW, ZoneId.of("UTC"));
+
+  private MeterRegistry meterRegistry;
+  private UrlCache urlCache;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    urlCache = new UrlCache(
+        properties(true), fixedClock,
+        meterRegistry);
+  }
+
+  @Test
+  @DisplayName("get should return the cached original URL")
+  void getShouldReturnCachedOriginalUrl() {
+    urlCache.put(new UrlEntry("hash", "originalUrl", NOW.plusSeconds(60)));
+
+    assertThat(urlCache.get("hash")).contains("originalUrl");
+  }
+
+  @Test
+  @DisplayName("put should ignore entries that have already expired")
+  void putShouldIgnoreExpiredEntries() {
+    urlCache.put(new UrlEntry("hash", "originalUrl", NOW.minusSeconds(1)));
+
+    assertThat(urlCache.get("hash")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("get should not return entries that expired while cached")
+  void getShouldNotReturnEntriesExpiredWhileCached() {
+    MutableClock clock = new MutableClock(NOW);
+    UrlCache cache = new UrlCache(
+        properties(true), clock,
+        meterRegistry);
+    cache.put(new UrlEntry("hash", "originalUrl", NOW.plusSeconds(60)));
+
+    clock.instant = NOW.plusSeconds(60);
+
+    assertThat(cache.get("hash")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("invalidate should remove the cached entry")
+  void invalidateShouldRemoveCachedEntry() {
+    urlCache.put(new UrlEntry("hash", "originalUrl", null));
+
+    urlCache.invalidate("hash");
+
+    assertThat(urlCache.get("hash")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("get should return empty when the cache is disabled")
+  void getShouldReturnEmptyWhenDisabled() {
+    UrlCache disabledCache = new UrlCache(
+        properties(false), fixedClock,
+        meterRegistry);
+
+    disabledCache.put(new UrlEntry("hash", "originalUrl", null));
+
+    assertThat(disabledCache.get("hash")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("hits and misses should be reported to the meter registry")
+  void hitsAndMissesShouldBeReported() {
+    urlCache.put(new UrlEntry("hash", "originalUrl", null));
+
+    urlCache.get("hash");
+    urlCache.get("unknown");
+
+    assertThat(gets("url.cache.hot", "hit")).isEqualTo(1);
+    assertThat(gets("url.cache.hot", "miss")).isEqualTo(1);
+    assertThat(gets("url.cache.warm", "miss")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("entries evicted from the hot tier should still be found in the warm tier")
+  void evictedEntriesShouldBeFoundInWarmTier() {
+    UrlCache smallCache = new UrlCache(new CacheConfigurationProperties(true,
+        DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), DataSize.ofKilobytes(4),
+        Duration.ofMinutes(10)), fixedClock, meterRegistry);
+
+    for (int i = 0; i < 1000; i++) {
+      smallCache.put(new UrlEntry("hash" + i, "originalUrl" + i, null));
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(smallCache.get("hash" + i)).contains("originalUrl" + i);
+    }
+    assertThat(gets("url.cache.warm", "hit")).isPositive();
+    assertThat(meterRegistry.get("url.cache.used").tag("tier", "hot").gauge().value())
+        .isPositive()
+        .isLessThanOrEqualTo(DataSize.ofKilobytes(4).toBytes());
+  }
+
+  @Test
+  @DisplayName("invalidate should remove the entry from both tiers")
+  void invalidateShouldRemoveEntryFromBothTiers() {
+    UrlCache smallCache = new UrlCache(new CacheConfigurationProperties(true,
+        DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), DataSize.ofKilobytes(4),
+        Duration.ofMinutes(10)), fixedClock, meterRegistry);
+    for (int i = 0; i < 1000; i++) {
+      smallCache.put(new UrlEntry("hash" + i, "originalUrl" + i, null));
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      smallCache.invalidate("hash" + i);
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(smallCache.get("hash" + i)).isEmpty();
+    }
+  }
+
+  @Test
+  @DisplayName("a snapshot should restore the entries that may still be served")
+  void snapshotShouldRestoreEntries(@TempDir Path directory) throws IOException {
+    Path snapshot = directory.resolve("url-cache.snapshot");
+    urlCache.put(new UrlEntry("hash", "originalUrl", NOW.plusSeconds(3600)));
+    urlCache.put(new UrlEntry("other", "otherUrl", null));
+    urlCache.put(new UrlEntry("soon", "soonUrl", NOW.plusSeconds(60)));
+
+    assertThat(urlCache.writeSnapshot(snapshot, 10)).isEqualTo(3);
+
+    MutableClock clock = new MutableClock(NOW.plusSeconds(60));
+    UrlCache restarted = new UrlCache(properties(true), clock, new SimpleMeterRegistry());
+    assertThat(restarted.loadSnapshot(snapshot)).isEqualTo(2);
+    assertThat(restarted.get("hash")).contains("originalUrl");
+    assertThat(restarted.get("other")).contains("otherUrl");
+    assertThat(restarted.get("soon")).isEmpty();
+
+    clock.instant = NOW.plus(Duration.ofMinutes(10));
+    assertThat(restarted.get("hash")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("loadSnapshot should reject a truncated snapshot")
+  void loadSnapshotShouldRejectTruncatedSnapshot(@TempDir Path directory) throws IOException {
+    Path snapshot = directory.resolve("url-cache.snapshot");
+    urlCache.put(new UrlEntry("hash", "originalUrl", null));
+    urlCache.writeSnapshot(snapshot, 10);
+    byte[] content = Files.readAllBytes(snapshot);
+    Files.write(snapshot, Arrays.copyOf(content, content.length - 1));
+
+    assertThatThrownBy(() -> urlCache.loadSnapshot(snapshot)).isInstanceOf(IOException.class);
+  }
+
+  private double gets(String cacheName, String result) {
+    return meterRegistry.get("cache.gets")
+        .tag("cache", cacheName)
+        .tag("result", result)
+        .functionCounter()
+        .count();
+  }
+
+  private static CacheConfigurationProperties properties(boolean enabled) {
+    return new CacheConfigurationProperties(enabled, DataSize.ofMegabytes(1),
+        DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), Duration.ofMinutes(10));
+  }
+
+  private static final class MutableClock extends Clock {
+
+    private Instant instant;
+
+    private MutableClock(Instant instant) {
+      this.instant = instant;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneId.of("UTC");
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
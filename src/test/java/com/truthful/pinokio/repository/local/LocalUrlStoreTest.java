@@ -0,0 +1,223 @@
+package com.truthful.pinokio.repository.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.soumakis.control.Either;
+import com.truthful.pinokio.config.model.StorageConfigurationProperties;
+import com.truthful.pinokio.config.model.StorageConfigurationProperties.LocalStoreProperties;
+import com.truthful.pinokio.config.model.StorageType;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.RequestLogger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class LocalUrlStoreTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-02T10:15:30.00Z");
+  private static final LocalDateTime CREATED_AT = LocalDateTime.ofInstant(NOW, ZoneOffset.UTC);
+  private static final LocalDateTime EXPIRES_AT = CREATED_AT.plusDays(90);
+
+  @TempDir
+  Path directory;
+
+  private MeterRegistry meterRegistry;
+  private LocalUrlStore localUrlStore;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    localUrlStore = newStore();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException, InterruptedException {
+    localUrlStore.stop();
+  }
+
+  @Test
+  @DisplayName("getUrlEntry should return the saved entry with its expiry")
+  void getUrlEntryShouldReturnSavedEntry() {
+    assertThat(save("abc", "https://example.com")).isEqualTo(Either.right("abc"));
+
+    assertThat(get("abc")).isEqualTo(Either.right(
+        new UrlEntry("abc", "https://example.com", EXPIRES_AT.toInstant(ZoneOffset.UTC))));
+    assertThat(get("abd")).isEqualTo(Either.left(UrlShortenerError.HASH_NOT_FOUND));
+  }
+
+  @Test
+  @DisplayName("save should only succeed again for the same URL")
+  void saveShouldRejectExistingHashOfAnotherUrl() {
+    save("abc", "https://example.com");
+
+    assertThat(save("abc", "https://example.com")).isEqualTo(Either.right("abc"));
+    assertThat(save("abc", "https://other.com"))
+        .isEqualTo(Either.left(UrlShortenerError.HASH_ALREADY_EXISTS));
+  }
+
+  @Test
+  @DisplayName("getUrlEntries should leave out the hashes that do not exist")
+  void getUrlEntriesShouldLeaveOutMissingHashes() {
+    save("abc", "https://example.com");
+
+    Either<UrlShortenerError, Map<String, UrlEntry>> result = localUrlStore
+        .getUrlEntries(List.of("abc", "abd")).toCompletableFuture().join();
+
+    assertThat(result.getRight()).containsOnlyKeys("abc");
+  }
+
+  @Test
+  @DisplayName("delete should remove the hash so that it can be saved again")
+  void deleteShouldRemoveHash() {
+    save("abc", "https://example.com");
+
+    assertThat(localUrlStore.delete("abc").toCompletableFuture().join().isSuccess()).isTrue();
+
+    assertThat(get("abc")).isEqualTo(Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    assertThat(save("abc", "https://other.com")).isEqualTo(Either.right("abc"));
+  }
+
+  @Test
+  @DisplayName("a restart should recover the saves, deletes and leases from the log")
+  void restartShouldRecoverFromLog() throws IOException, InterruptedException {
+    save("abc", "https://example.com");
+    save("abd", "https://example.org");
+    localUrlStore.delete("abd").toCompletableFuture().join();
+    localUrlStore.leaseIds("_sequence", 100);
+
+    restart();
+
+    assertThat(get("abc").isRight()).isTrue();
+    assertThat(get("abd")).isEqualTo(Either.left(UrlShortenerError.HASH_NOT_FOUND));
+    assertThat(localUrlStore.leaseIds("_sequence", 100)).isEqualTo(200);
+    assertThat(localUrlStore.scanHashes()).containsExactly("abc");
+  }
+
+  @Test
+  @DisplayName("addClicks should add up the clicks of stored hashes across compactions")
+  void addClicksShouldAddUpClicksOfStoredHashes() throws IOException, InterruptedException {
+    save("abc", "https://example.com");
+    save("abd", "https://example.org");
+    for (int i = 0; i < 20; i++) {
+      localUrlStore.addClicks("abc", 5, "flush-" + i);
+    }
+    localUrlStore.addClicks("abd", 3, "flush-abd");
+    localUrlStore.addClicks("missing", 7, "flush-missing");
+    localUrlStore.delete("abd").toCompletableFuture().join();
+
+    assertThat(localUrlStore.compact()).isTrue();
+    restart();
+
+    assertThat(localUrlStore.getClicks("abc")).isEqualTo(100);
+    assertThat(localUrlStore.getClicks("abd")).isZero();
+    assertThat(localUrlStore.getClicks("missing")).isZero();
+  }
+
+  @Test
+  @DisplayName("a restart should drop a torn record and append after the last valid one")
+  void restartShouldDropTornRecord() throws IOException, InterruptedException {
+    save("abc", "https://example.com");
+    int end = (int) meterRegistry.get("url.local.log.size").gauge().value();
+    localUrlStore.stop();
+    try (FileChannel channel = FileChannel.open(logFile(0), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(12).putInt(64).putInt(42).putInt(7).flip(), end);
+    }
+
+    localUrlStore = newStore();
+    save("abd", "https://example.org");
+    restart();
+
+    assertThat(localUrlStore.scanHashes()).containsExactlyInAnyOrder("abc", "abd");
+  }
+
+  @Test
+  @DisplayName("compact should drop deleted, expired and superseded records and keep the rest")
+  void compactShouldDropDeadRecords() throws IOException, InterruptedException {
+    save("abc", "https://example.com");
+    localUrlStore.save("exp", "https://expired.com", CREATED_AT.minusDays(2),
+        CREATED_AT.minusDays(1)).toCompletableFuture().join();
+    for (int i = 0; i < 10; i++) {
+      save("d" + i, "https://deleted.com");
+      localUrlStore.delete("d" + i).toCompletableFuture().join();
+    }
+    localUrlStore.leaseIds("_sequence", 100);
+    localUrlStore.leaseIds("_sequence", 100);
+    double sizeBefore = meterRegistry.get("url.local.log.size").gauge().value();
+
+    assertThat(localUrlStore.compact()).isTrue();
+
+    assertThat(meterRegistry.get("url.local.log.size").gauge().value())
+        .isLessThan(sizeBefore)
+        .isEqualTo(meterRegistry.get("url.local.log.live").gauge().value());
+    assertThat(localUrlStore.scanHashes()).containsExactly("abc");
+    assertThat(localUrlStore.compact()).isFalse();
+
+    restart();
+
+    assertThat(Files.exists(logFile(0))).isFalse();
+    assertThat(localUrlStore.scanHashes()).containsExactly("abc");
+    assertThat(localUrlStore.leaseIds("_sequence", 100)).isEqualTo(300);
+  }
+
+  @Test
+  @DisplayName("a restart should ignore a compaction interrupted before it completed")
+  void restartShouldIgnoreIncompleteCompaction() throws IOException, InterruptedException {
+    save("abc", "https://example.com");
+    localUrlStore.stop();
+    Files.write(directory.resolve("urls-1.log.compacting"), new byte[] {1, 2, 3});
+
+    localUrlStore = newStore();
+
+    assertThat(localUrlStore.scanHashes()).containsExactly("abc");
+    assertThat(Files.exists(directory.resolve("urls-1.log.compacting"))).isFalse();
+  }
+
+  private void restart() throws IOException, InterruptedException {
+    localUrlStore.stop();
+    localUrlStore = newStore();
+  }
+
+  private LocalUrlStore newStore() throws IOException {
+    meterRegistry = new SimpleMeterRegistry();
+    LocalUrlStore store = new LocalUrlStore(
+        new StorageConfigurationProperties(StorageType.LOCAL, new LocalStoreProperties(
+            directory.toString(), DataSize.ofKilobytes(64), 16, 0.5, Duration.ofHours(1), false)),
+        new RequestLogger(0.0, Duration.ofSeconds(10), 10.0),
+        Clock.fixed(NOW, ZoneOffset.UTC),
+        meterRegistry);
+    store.start();
+    return store;
+  }
+
+  private Path logFile(long generation) {
+    return directory.resolve("urls-" + generation + ".log");
+  }
+
+  private Either<UrlShortenerError, String> save(String hash, String originalUrl) {
+    return localUrlStore.save(hash, originalUrl, CREATED_AT, EXPIRES_AT)
+        .toCompletableFuture()
+        .join();
+  }
+
+  private Either<UrlShortenerError, UrlEntry> get(String hash) {
+    return localUrlStore.getUrlEntry(hash).toCompletableFuture().join();
+  }
+}
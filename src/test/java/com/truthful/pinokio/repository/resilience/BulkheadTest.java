@@ -0,0 +1,72 @@
+package com.truthful.pinokio.repository.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class BulkheadTest {
+
+  @Test
+  @DisplayName("should grant the permits straight away and queue the calls beyond them")
+  void shouldQueueCallsBeyondPermits() {
+    Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofSeconds(5));
+
+    CompletableFuture<Boolean> first = bulkhead.acquire();
+    CompletableFuture<Boolean> second = bulkhead.acquire();
+
+    assertThat(first).isCompletedWithValue(true);
+    assertThat(second).isNotDone();
+    assertThat(bulkhead.availablePermits()).isZero();
+    assertThat(bulkhead.queueDepth()).isEqualTo(1);
+
+    bulkhead.release();
+
+    assertThat(second).isCompletedWithValue(true);
+    assertThat(bulkhead.queueDepth()).isZero();
+    assertThat(bulkhead.availablePermits()).isZero();
+
+    bulkhead.release();
+
+    assertThat(bulkhead.availablePermits()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should reject the calls once the queue is full")
+  void shouldRejectCallsWhenQueueIsFull() {
+    Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofSeconds(5));
+    bulkhead.acquire();
+    bulkhead.acquire();
+
+    assertThat(bulkhead.acquire()).isCompletedWithValue(false);
+    assertThat(new Bulkhead(0, 0, Duration.ofSeconds(5)).acquire()).isCompletedWithValue(false);
+  }
+
+  @Test
+  @DisplayName("should reject the calls that waited too long and keep their permit for later")
+  void shouldRejectCallsAfterMaxWait() {
+    Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofMillis(10));
+    bulkhead.acquire();
+
+    assertThat(bulkhead.acquire().join()).isFalse();
+    assertThat(bulkhead.queueDepth()).isZero();
+
+    bulkhead.release();
+
+    assertThat(bulkhead.availablePermits()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should drop the cancelled calls from the queue straight away")
+  void shouldDropCancelledCallsFromQueue() {
+    Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofSeconds(5));
+    bulkhead.acquire();
+
+    bulkhead.acquire().cancel(true);
+
+    assertThat(bulkhead.queueDepth()).isZero();
+    assertThat(bulkhead.acquire()).isNotDone();
+  }
+}
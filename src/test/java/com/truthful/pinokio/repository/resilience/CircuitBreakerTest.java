@@ -0,0 +1,135 @@
+package com.truthful.pinokio.repository.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.truthful.pinokio.repository.resilience.CircuitBreaker.State;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class CircuitBreakerTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-02T10:15:30.00Z");
+  private static final Duration OPEN_DURATION = Duration.ofSeconds(5);
+
+  @Mock
+  private Clock clock;
+
+  private CircuitBreaker circuitBreaker;
+
+  @BeforeEach
+  void setUp() {
+    circuitBreaker = new CircuitBreaker("get", 10, 4, 0.5, OPEN_DURATION, 2, clock);
+  }
+
+  @Test
+  @DisplayName("should stay closed until the minimum amount of calls was recorded")
+  void shouldStayClosedBelowMinimumCalls() {
+    fail(3);
+
+    assertThat(circuitBreaker.state()).isEqualTo(State.CLOSED);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+  }
+
+  @Test
+  @DisplayName("should open and reject calls once the failure rate reaches the threshold")
+  void shouldOpenWhenFailureRateReachesThreshold() {
+    when(clock.instant()).thenReturn(NOW);
+    succeed(2);
+    fail(2);
+
+    assertThat(circuitBreaker.state()).isEqualTo(State.OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+  }
+
+  @Test
+  @DisplayName("should compute the failure rate over the sliding window only")
+  void shouldOnlyCountSlidingWindow() {
+    when(clock.instant()).thenReturn(NOW);
+    circuitBreaker = new CircuitBreaker("get", 4, 4, 0.5, OPEN_DURATION, 2, clock);
+    fail(1);
+    succeed(4);
+    fail(1);
+
+    assertThat(circuitBreaker.state()).isEqualTo(State.CLOSED);
+
+    // 3 failures out of 7 calls overall, but 2 out of the last 4
+    fail(1);
+
+    assertThat(circuitBreaker.state()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  @DisplayName("should let the probes through after the open duration and close if they succeed")
+  void shouldCloseAfterSuccessfulProbes() {
+    open();
+    when(clock.instant()).thenReturn(NOW.plus(OPEN_DURATION));
+
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+    assertThat(circuitBreaker.state()).isEqualTo(State.HALF_OPEN);
+
+    circuitBreaker.onSuccess();
+    circuitBreaker.onSuccess();
+
+    assertThat(circuitBreaker.state()).isEqualTo(State.CLOSED);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+  }
+
+  @Test
+  @DisplayName("should open again as soon as a probe fails")
+  void shouldReopenWhenProbeFails() {
+    open();
+    when(clock.instant()).thenReturn(NOW.plus(OPEN_DURATION));
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+
+    circuitBreaker.onFailure();
+
+    assertThat(circuitBreaker.state()).isEqualTo(State.OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+  }
+
+  @Test
+  @DisplayName("should give back the permission of a cancelled probe")
+  void shouldGiveBackCancelledProbe() {
+    open();
+    when(clock.instant()).thenReturn(NOW.plus(OPEN_DURATION));
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+
+    circuitBreaker.onCancelled();
+
+    assertThat(circuitBreaker.state()).isEqualTo(State.HALF_OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+  }
+
+  private void open() {
+    when(clock.instant()).thenReturn(NOW);
+    fail(4);
+    assertThat(circuitBreaker.state()).isEqualTo(State.OPEN);
+  }
+
+  private void succeed(int calls) {
+    for (int i = 0; i < calls; i++) {
+      circuitBreaker.tryAcquirePermission();
+      circuitBreaker.onSuccess();
+    }
+  }
+
+  private void fail(int calls) {
+    for (int i = 0; i < calls; i++) {
+      circuitBreaker.tryAcquirePermission();
+      circuitBreaker.onFailure();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.truthful.pinokio.repository.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.truthful.pinokio.config.model.HedgingConfigurationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class HedgerTest {
+
+  private SimpleMeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @Test
+  @DisplayName("hedge should answer with the hedge of a slow read and cancel the read")
+  void hedgeShouldAnswerWithHedgeOfSlowRead() {
+    Hedger hedger = hedger(true, 1.0);
+    warmUp(hedger);
+    CompletableFuture<String> slowRead = new CompletableFuture<>();
+    List<CompletableFuture<String>> reads =
+        new ArrayList<>(List.of(slowRead, CompletableFuture.completedFuture("hedged")));
+
+    CompletableFuture<String> result = hedger.hedge(() -> reads.removeFirst());
+
+    assertThat(result).succeedsWithin(Duration.ofSeconds(5)).isEqualTo("hedged");
+    assertThat(slowRead).isCancelled();
+    assertThat(meterRegistry.counter("url.storage.hedges").count()).isEqualTo(1);
+    assertThat(meterRegistry.counter("url.storage.hedge.wins").count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("hedge should not hedge a slow read once the hedge budget is exhausted")
+  void hedgeShouldNotHedgeWhenBudgetIsExhausted() throws InterruptedException {
+    Hedger hedger = hedger(true, 0.0);
+    warmUp(hedger);
+    CompletableFuture<String> slowRead = new CompletableFuture<>();
+    List<CompletableFuture<String>> reads = new ArrayList<>(List.of(slowRead));
+
+    CompletableFuture<String> result = hedger.hedge(() -> reads.removeFirst());
+    Thread.sleep(50);
+    slowRead.complete("read");
+
+    assertThat(result.join()).isEqualTo("read");
+    assertThat(meterRegistry.counter("url.storage.hedges").count()).isZero();
+    assertThat(meterRegistry.counter("url.storage.hedge.budget.exhausted").count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("hedge should not answer with a hedge that failed")
+  void hedgeShouldNotAnswerWithFailedHedge() throws InterruptedException {
+    Hedger hedger = hedger(true, 1.0);
+    warmUp(hedger);
+    CompletableFuture<String> slowRead = new CompletableFuture<>();
+    List<CompletableFuture<String>> reads =
+        new ArrayList<>(List.of(slowRead, CompletableFuture.completedFuture("unavailable")));
+
+    CompletableFuture<String> result =
+        hedger.hedge(() -> reads.removeFirst(), "unavailable"::equals);
+    Thread.sleep(50);
+    slowRead.complete("read");
+
+    assertThat(result.join()).isEqualTo("read");
+    assertThat(meterRegistry.counter("url.storage.hedges").count()).isEqualTo(1);
+    assertThat(meterRegistry.counter("url.storage.hedge.wins").count()).isZero();
+  }
+
+  @Test
+  @DisplayName("hedge should make the read once only when hedging is disabled")
+  void hedgeShouldPassThroughWhenDisabled() {
+    Hedger hedger = hedger(false, 1.0);
+    CompletableFuture<String> slowRead = new CompletableFuture<>();
+
+    assertThat(hedger.hedge(() -> slowRead)).isSameAs(slowRead);
+    assertThat(meterRegistry.counter("url.storage.hedge.reads").count()).isZero();
+  }
+
+  private Hedger hedger(boolean enabled, double maxHedgeRatio) {
+    return new Hedger(new HedgingConfigurationProperties(
+        enabled, 0.95, Duration.ofMillis(1), maxHedgeRatio, 10), meterRegistry);
+  }
+
+  private static void warmUp(Hedger hedger) {
+    for (int i = 0; i < 10; i++) {
+      hedger.hedge(() -> CompletableFuture.completedFuture("warm"));
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package com.truthful.pinokio.repository.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
+import com.soumakis.control.Failure;
+import com.soumakis.control.Try;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.config.model.ResilienceConfigurationProperties;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import com.truthful.pinokio.util.Deadline;
+import com.truthful.pinokio.util.RetryPolicy;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+class StorageGuardTest {
+
+  private final Clock fixedClock =
+      Clock.fixed(Instant.parse("2024-07-02T10:15:30.00Z"), ZoneId.of("UTC"));
+
+  private MeterRegistry meterRegistry;
+  private StorageGuard storageGuard;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    storageGuard = storageGuard(meterRegistry);
+  }
+
+  @Test
+  @DisplayName("should open the circuit after repeated transient errors and stop calling storage")
+  void shouldOpenCircuitAfterTransientErrors() {
+    AtomicInteger calls = new AtomicInteger();
+
+    Either<UrlShortenerError, String> result = storageGuard.<String>execute(
+            StorageOperation.GET, RetryPolicy.immediate(10), () -> {
+              calls.incrementAndGet();
+              return EitherT.left(UrlShortenerError.TRANSIENT_ERROR);
+            })
+        .toCompletableFuture().join();
+
+    assertThat(result.getLeft()).isEqualTo(UrlShortenerError.SERVICE_UNAVAILABLE);
+    assertThat(calls).hasValue(4);
+    assertThat(meterRegistry.get("url.storage.circuit.breaker.state")
+        .tags("operation", "get", "state", "open").gauge().value()).isEqualTo(1);
+    assertThat(meterRegistry.get("url.storage.circuit.breaker.rejections")
+        .tags("operation", "get").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should record the retries and the latency of the request by outcome")
+  void shouldRecordRetriesAndLatencyByOutcome() {
+    AtomicInteger calls = new AtomicInteger();
+
+    storageGuard.<String>execute(StorageOperation.SAVE, RetryPolicy.immediate(3), () ->
+            calls.incrementAndGet() < 3
+                ? EitherT.left(UrlShortenerError.TRANSIENT_ERROR)
+                : EitherT.right("hash"))
+        .toCompletableFuture().join();
+    storageGuard.<String>execute(StorageOperation.SAVE, RetryPolicy.immediate(3),
+        () -> EitherT.left(UrlShortenerError.HASH_ALREADY_EXISTS)).toCompletableFuture().join();
+
+    assertThat(meterRegistry.get("url.storage.retries")
+        .tags("operation", "save").counter().count()).isEqualTo(2);
+    assertThat(meterRegistry.get("url.storage.requests")
+        .tags("operation", "save", "outcome", "success").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("url.storage.requests")
+        .tags("operation", "save", "outcome", "hash_already_exists").timer().count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should not count missing hashes as failures")
+  void shouldNotCountMissingHashesAsFailures() {
+    for (int i = 0; i < 10; i++) {
+      storageGuard.<String>execute(StorageOperation.GET, RetryPolicy.immediate(1),
+          () -> EitherT.left(UrlShortenerError.HASH_NOT_FOUND)).toCompletableFuture().join();
+    }
+
+    assertThat(meterRegistry.get("url.storage.circuit.breaker.state")
+        .tags("operation", "get", "state", "closed").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should keep the circuits of the operations apart")
+  void shouldKeepCircuitsApart() {
+    storageGuard.<Void>executeTry(StorageOperation.DELETE, RetryPolicy.immediate(4),
+        () -> TryT.ofFailure(SdkClientException.create("Failure"))).toCompletableFuture().join();
+
+    Either<UrlShortenerError, String> result = storageGuard.<String>execute(
+            StorageOperation.SAVE, RetryPolicy.immediate(1), () -> EitherT.right("hash"))
+        .toCompletableFuture().join();
+
+    assertThat(result.getRight()).isEqualTo("hash");
+    Try<Void> deleteResult = storageGuard.<Void>executeTry(StorageOperation.DELETE,
+        RetryPolicy.immediate(1), () -> TryT.of(null)).toCompletableFuture().join();
+    assertThat(((Failure<Void>) deleteResult).getCause())
+        .isInstanceOf(StorageUnavailableException.class);
+  }
+
+  @Test
+  @DisplayName("should reject requests beyond the concurrency limit")
+  void shouldRejectRequestsBeyondConcurrencyLimit() {
+    CompletableFuture<Either<UrlShortenerError, String>> pending = new CompletableFuture<>();
+    storageGuard.execute(StorageOperation.GET, RetryPolicy.immediate(1),
+        () -> EitherT.fromFuture(pending));
+    storageGuard.execute(StorageOperation.GET, RetryPolicy.immediate(1),
+        () -> EitherT.fromFuture(pending));
+
+    Either<UrlShortenerError, String> rejected = storageGuard.<String>execute(
+            StorageOperation.GET, RetryPolicy.immediate(1), () -> EitherT.right("url"))
+        .toCompletableFuture().join();
+
+    assertThat(rejected.getLeft()).isEqualTo(UrlShortenerError.SERVICE_UNAVAILABLE);
+    assertThat(meterRegistry.get("url.storage.concurrency.limit.rejections").counter().count())
+        .isEqualTo(1);
+
+    pending.complete(Either.right("url"));
+
+    assertThat(meterRegistry.get("url.storage.concurrency.in.flight").gauge().value())
+        .isZero();
+  }
+
+  @Test
+  @DisplayName("should keep serving reads straight away while a write storm fills its bulkhead")
+  void shouldServeReadsDuringWriteStorm() {
+    CompletableFuture<Either<UrlShortenerError, String>> pending = new CompletableFuture<>();
+    List<CompletableFuture<Either<UrlShortenerError, String>>> writes = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      writes.add(storageGuard.<String>execute(StorageOperation.SAVE, RetryPolicy.immediate(1),
+          () -> EitherT.fromFuture(pending)).toCompletableFuture());
+    }
+
+    for (int i = 0; i < 100; i++) {
+      CompletableFuture<Either<UrlShortenerError, String>> read = storageGuard.<String>execute(
+          StorageOperation.GET, RetryPolicy.immediate(1), () -> EitherT.right("url"))
+          .toCompletableFuture();
+      assertThat(read).isDone();
+      assertThat(read.join().getRight()).isEqualTo("url");
+    }
+
+    assertThat(meterRegistry.get("url.storage.bulkhead.queue.depth")
+        .tags("operation", "save").gauge().value()).isEqualTo(1);
+    assertThat(meterRegistry.get("url.storage.bulkhead.rejections")
+        .tags("operation", "save").counter().count()).isEqualTo(98);
+    assertThat(meterRegistry.get("url.storage.bulkhead.rejections")
+        .tags("operation", "get").counter().count()).isZero();
+    assertThat(meterRegistry.get("url.storage.bulkhead.wait")
+        .tags("operation", "get").timer().count()).isEqualTo(100);
+    assertThat(meterRegistry.get("url.storage.concurrency.limit.rejections").counter().count())
+        .isZero();
+
+    pending.complete(Either.right("hash"));
+
+    assertThat(writes.stream().filter(write -> write.join().isRight())).hasSize(2);
+    assertThat(meterRegistry.get("url.storage.bulkhead.available")
+        .tags("operation", "save").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should keep the read p99 flat while a write storm runs against a slow storage")
+  void shouldKeepReadP99FlatDuringWriteStorm() {
+    double baselineP99 = readP99(0);
+    double stormP99 = readP99(10);
+
+    assertThat(stormP99).isLessThan(baselineP99 + 20);
+  }
+
+  @Test
+  @DisplayName("should give up on the attempt still running when the deadline passes")
+  void shouldGiveUpOnAttemptWhenDeadlinePasses() {
+    AtomicInteger calls = new AtomicInteger();
+    CompletableFuture<Either<UrlShortenerError, String>> pending = new CompletableFuture<>();
+
+    Either<UrlShortenerError, String> result = storageGuard.<String>execute(
+            StorageOperation.GET, RetryPolicy.immediate(3), Deadline.after(Duration.ofMillis(50)),
+            () -> {
+              calls.incrementAndGet();
+              return EitherT.fromFuture(pending);
+            })
+        .toCompletableFuture().join();
+
+    assertThat(result.getLeft()).isEqualTo(UrlShortenerError.SERVICE_UNAVAILABLE);
+    assertThat(calls).hasValue(1);
+    assertThat(meterRegistry.get("url.storage.deadline.expirations")
+        .tags("operation", "get").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("attempts cut short by their deadline should not open the circuit")
+  void deadlineExpirationsShouldNotOpenCircuit() {
+    for (int i = 0; i < 4; i++) {
+      storageGuard.<String>execute(StorageOperation.GET, RetryPolicy.immediate(1),
+              Deadline.after(Duration.ofMillis(10)),
+              () -> EitherT.fromFuture(new CompletableFuture<>()))
+          .toCompletableFuture().join();
+    }
+
+    assertThat(meterRegistry.get("url.storage.circuit.breaker.state")
+        .tags("operation", "get", "state", "closed").gauge().value()).isEqualTo(1);
+    assertThat(meterRegistry.get("url.storage.deadline.expirations")
+        .tags("operation", "get").counter().count()).isEqualTo(4);
+  }
+
+  @Test
+  @DisplayName("should not call the storage once the deadline has passed")
+  void shouldNotCallStorageOnceDeadlinePassed() {
+    AtomicInteger calls = new AtomicInteger();
+
+    Try<Void> result = storageGuard.<Void>executeTry(StorageOperation.DELETE,
+        RetryPolicy.immediate(3), Deadline.after(Duration.ZERO), () -> {
+          calls.incrementAndGet();
+          return TryT.of(null);
+        }).toCompletableFuture().join();
+
+    assertThat(((Failure<Void>) result).getCause())
+        .isInstanceOf(StorageUnavailableException.class);
+    assertThat(calls).hasValue(0);
+  }
+
+  @Test
+  @DisplayName("cancelling requests should cancel their storage calls without failing the circuit")
+  void cancellingRequestsShouldCancelStorageCalls() {
+    List<CompletableFuture<Either<UrlShortenerError, String>>> calls = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      CompletableFuture<Either<UrlShortenerError, String>> call = new CompletableFuture<>();
+      calls.add(call);
+      storageGuard.<String>execute(StorageOperation.GET, RetryPolicy.immediate(3),
+          () -> EitherT.fromFuture(call)).toCompletableFuture().cancel(true);
+    }
+
+    assertThat(calls).allMatch(CompletableFuture::isCancelled);
+    assertThat(meterRegistry.get("url.storage.circuit.breaker.state")
+        .tags("operation", "get", "state", "closed").gauge().value()).isEqualTo(1);
+    assertThat(meterRegistry.get("url.storage.bulkhead.available")
+        .tags("operation", "get").gauge().value()).isEqualTo(4);
+    assertThat(meterRegistry.get("url.storage.concurrency.in.flight").gauge().value()).isZero();
+    assertThat(meterRegistry.get("url.storage.concurrency.limit").gauge().value()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("cancelling a queued request should give up its place in the bulkhead queue")
+  void cancellingQueuedRequestShouldLeaveQueue() {
+    storageGuard.<String>execute(StorageOperation.SAVE, RetryPolicy.immediate(1),
+        () -> EitherT.fromFuture(new CompletableFuture<>()));
+
+    storageGuard.<String>execute(StorageOperation.SAVE, RetryPolicy.immediate(1),
+        () -> EitherT.right("hash")).toCompletableFuture().cancel(true);
+
+    assertThat(meterRegistry.get("url.storage.bulkhead.queue.depth")
+        .tags("operation", "save").gauge().value()).isZero();
+  }
+
+  private StorageGuard storageGuard(MeterRegistry meterRegistry) {
+    return new StorageGuard(
+        new ResilienceConfigurationProperties(
+            new ResilienceConfigurationProperties.CircuitBreakerProperties(
+                true, 10, 4, 0.5, Duration.ofSeconds(5), 1),
+            new ResilienceConfigurationProperties.ConcurrencyLimitProperties(
+                true, 2, 1, 4, Duration.ofSeconds(1), 0.5),
+            new ResilienceConfigurationProperties.BulkheadProperties(true,
+                new ResilienceConfigurationProperties.OperationBulkheadProperties(
+                    4, 0, Duration.ZERO),
+                new ResilienceConfigurationProperties.OperationBulkheadProperties(
+                    1, 1, Duration.ofSeconds(5)),
+                new ResilienceConfigurationProperties.OperationBulkheadProperties(
+                    1, 0, Duration.ZERO)),
+            Duration.ofSeconds(5)),
+        fixedClock,
+        meterRegistry);
+  }
+
+  /**
+   * Makes reads of 5ms one after another, sending the given number of 50ms writes before each, and
+   * returns the p99 of the successful reads in milliseconds as recorded by the request timer.
+   */
+  private double readP99(int writesPerRead) {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    registry.config().meterFilter(new MeterFilter() {
+      @Override
+      public DistributionStatisticConfig configure(
+          Meter.Id id, DistributionStatisticConfig config) {
+        return id.getName().equals("url.storage.requests")
+            ? DistributionStatisticConfig.builder().percentiles(0.99).build().merge(config)
+            : config;
+      }
+    });
+    StorageGuard guard = storageGuard(registry);
+    Either<UrlShortenerError, String> saved = Either.right("hash");
+    Either<UrlShortenerError, String> found = Either.right("url");
+    for (int i = 0; i < 50; i++) {
+      for (int j = 0; j < writesPerRead; j++) {
+        guard.<String>execute(StorageOperation.SAVE, RetryPolicy.immediate(1),
+            () -> EitherT.fromFuture(delayed(50, saved)));
+      }
+      Either<UrlShortenerError, String> read = guard.<String>execute(StorageOperation.GET,
+              RetryPolicy.immediate(1), () -> EitherT.fromFuture(delayed(5, found)))
+          .toCompletableFuture().join();
+      assertThat(read.getRight()).isEqualTo("url");
+    }
+    Timer reads = registry.get("url.storage.requests")
+        .tags("operation", "get", "outcome", "success").timer();
+    assertThat(reads.count()).isEqualTo(50);
+    return reads.takeSnapshot().percentileValues()[0].value(TimeUnit.MILLISECONDS);
+  }
+
+  private static <R> CompletableFuture<R> delayed(long millis, R result) {
+    return CompletableFuture.supplyAsync(
+        () -> result, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS));
+  }
+}
@@ -0,0 +1,125 @@
+package com.truthful.pinokio.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.soumakis.control.Either;
+import com.truthful.pinokio.config.model.ClickCountingConfigurationProperties;
+import com.truthful.pinokio.repository.ClickCountStore;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+@ExtendWith(MockitoExtension.class)
+class ClickCounterTest {
+
+  @Mock
+  private ClickCountStore clickCountStore;
+
+  private MeterRegistry meterRegistry;
+  private ClickCounter clickCounter;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    clickCounter = new ClickCounter(clickCountStore,
+        new ClickCountingConfigurationProperties(true, Duration.ofSeconds(10), 2, 4),
+        Runnable::run, meterRegistry);
+  }
+
+  @Test
+  @DisplayName("flush should add the clicks recorded since the previous flush")
+  void flushShouldAddRecordedClicks() {
+    clickCounter.recordClick("abc");
+    clickCounter.recordClick("abc");
+    clickCounter.recordClick("abd");
+
+    clickCounter.flush();
+    clickCounter.recordClick("abc");
+    clickCounter.flush();
+
+    verify(clickCountStore).addClicks(eq("abc"), eq(2L), anyString());
+    verify(clickCountStore).addClicks(eq("abd"), eq(1L), anyString());
+    verify(clickCountStore).addClicks(eq("abc"), eq(1L), anyString());
+    assertThat(meterRegistry.get("url.clicks.flushed").counter().count()).isEqualTo(4);
+  }
+
+  @Test
+  @DisplayName("flush should send a failed flush again with the same token")
+  void flushShouldSendFailedFlushAgainWithSameToken() {
+    clickCounter.recordClick("abc");
+    doThrow(SdkClientException.create("timeout")).doNothing()
+        .when(clickCountStore).addClicks(eq("abc"), eq(1L), anyString());
+
+    clickCounter.flush();
+    clickCounter.recordClick("abc");
+    clickCounter.flush();
+    clickCounter.flush();
+
+    ArgumentCaptor<String> flushTokens = ArgumentCaptor.forClass(String.class);
+    verify(clickCountStore, times(3))
+        .addClicks(eq("abc"), eq(1L), flushTokens.capture());
+    assertThat(flushTokens.getAllValues().get(1)).isEqualTo(flushTokens.getAllValues().get(0));
+    assertThat(flushTokens.getAllValues().get(2)).isNotEqualTo(flushTokens.getAllValues().get(0));
+    assertThat(meterRegistry.get("url.clicks.flush.failures").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("url.clicks.flushed").counter().count()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("recordClick should drop the clicks of new hashes once the maximum is tracked")
+  void recordClickShouldBoundTrackedHashes() {
+    clickCounter.recordClick("abc");
+    clickCounter.recordClick("abd");
+    clickCounter.recordClick("abe");
+    clickCounter.recordClick("abc");
+
+    assertThat(meterRegistry.get("url.clicks.tracked").gauge().value()).isEqualTo(2);
+    assertThat(meterRegistry.get("url.clicks.dropped").counter().count()).isEqualTo(1);
+
+    // The first flush adds the clicks, the second one evicts the hashes left idle
+    clickCounter.flush();
+    clickCounter.flush();
+    clickCounter.recordClick("abe");
+    clickCounter.flush();
+
+    assertThat(meterRegistry.get("url.clicks.tracked").gauge().value()).isEqualTo(1);
+    verify(clickCountStore).addClicks(eq("abc"), eq(2L), anyString());
+    verify(clickCountStore).addClicks(eq("abe"), eq(1L), anyString());
+  }
+
+  @Test
+  @DisplayName("getClicks should add the clicks not flushed yet to the stored ones")
+  void getClicksShouldAddUnflushedClicks() {
+    when(clickCountStore.getClicks("abc")).thenReturn(40L);
+    clickCounter.recordClick("abc");
+    clickCounter.recordClick("abc");
+
+    assertThat(clickCounter.getClicks("abc").join()).isEqualTo(Either.right(42L));
+  }
+
+  @Test
+  @DisplayName("getClicks should map a storage failure to an error")
+  void getClicksShouldMapStorageFailure() {
+    when(clickCountStore.getClicks("abc")).thenThrow(SdkClientException.create("timeout"));
+
+    assertThat(clickCounter.getClicks("abc").join())
+        .isEqualTo(Either.left(UrlShortenerError.TRANSIENT_ERROR));
+    verify(clickCountStore, never()).addClicks(anyString(), anyLong(), anyString());
+  }
+}
@@ -0,0 +1,94 @@
+package com.truthful.pinokio.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.soumakis.control.EitherT;
+import com.truthful.pinokio.config.model.HotLinksConfigurationProperties;
+import com.truthful.pinokio.repository.StorageRepositoryFacade;
+import com.truthful.pinokio.repository.model.UrlEntry;
+import com.truthful.pinokio.service.model.HotLink;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class HotLinkTrackerTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-02T10:15:30.00Z");
+
+  @Mock
+  private StorageRepositoryFacade storageRepositoryFacade;
+
+  private MeterRegistry meterRegistry;
+  private HotLinkTracker hotLinkTracker;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    hotLinkTracker = new HotLinkTracker(
+        new HotLinksConfigurationProperties(
+            true, Duration.ofSeconds(30), 3, 1024, 4, 10, true, 5L),
+        storageRepositoryFacade, Clock.fixed(NOW, ZoneOffset.UTC), meterRegistry);
+  }
+
+  @Test
+  @DisplayName("hotLinks should rank the links by their lookups over the whole window")
+  void hotLinksShouldRankLinksOverWindow() {
+    record("abc", 3);
+    record("abd", 2);
+    hotLinkTracker.rotate();
+    record("abd", 4);
+
+    assertThat(hotLinkTracker.hotLinks(10))
+        .containsExactly(new HotLink("abd", 6), new HotLink("abc", 3));
+    assertThat(hotLinkTracker.hotLinks(1)).containsExactly(new HotLink("abd", 6));
+  }
+
+  @Test
+  @DisplayName("hotLinks should forget the lookups once they leave the window")
+  void hotLinksShouldForgetLookupsOutsideWindow() {
+    record("abc", 3);
+    hotLinkTracker.rotate();
+    record("abd", 1);
+    hotLinkTracker.rotate();
+    hotLinkTracker.rotate();
+
+    assertThat(hotLinkTracker.hotLinks(10)).containsExactly(new HotLink("abd", 1));
+  }
+
+  @Test
+  @DisplayName("promote should refresh the links over the threshold only")
+  void promoteShouldRefreshHotLinks() {
+    record("abc", 5);
+    record("abd", 4);
+    when(storageRepositoryFacade.refreshUrlEntry(eq("abc"), any()))
+        .thenReturn(EitherT.right(Optional.of(new UrlEntry("abc", "https://example.com", null))));
+
+    hotLinkTracker.promote();
+
+    verify(storageRepositoryFacade).refreshUrlEntry("abc", NOW.plusSeconds(10));
+    verify(storageRepositoryFacade, never()).refreshUrlEntry(eq("abd"), any());
+    assertThat(meterRegistry.get("url.hotlinks.promotions").counter().count()).isEqualTo(1);
+  }
+
+  private void record(String hash, int lookups) {
+    for (int i = 0; i < lookups; i++) {
+      hotLinkTracker.recordLookup(hash);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.truthful.pinokio.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.truthful.pinokio.config.model.SequenceConfigurationProperties;
+import com.truthful.pinokio.repository.IdLeaseStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class SequenceIdGeneratorTest {
+
+  private static final String COUNTER_KEY = "_sequence";
+  private static final long LEASE_SIZE = 100;
+
+  @Mock
+  private IdLeaseStore idLeaseStore;
+
+  private final AtomicLong counter = new AtomicLong();
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(idLeaseStore.leaseIds(eq(COUNTER_KEY), eq(LEASE_SIZE)))
+        .thenAnswer(invocation -> counter.addAndGet(LEASE_SIZE));
+  }
+
+  @Test
+  @DisplayName("should hand out consecutive ids across leased ranges")
+  void shouldHandOutConsecutiveIdsAcrossLeasedRanges() {
+    SequenceIdGenerator generator = newGenerator(1.0);
+
+    for (long expected = 0; expected < 3 * LEASE_SIZE; expected++) {
+      assertThat(generator.nextId()).isEqualTo(expected);
+    }
+    verify(idLeaseStore, times(3)).leaseIds(COUNTER_KEY, LEASE_SIZE);
+  }
+
+  @Test
+  @DisplayName("should lease the next range before the current one is exhausted")
+  void shouldLeaseNextRangeBeforeCurrentOneIsExhausted() {
+    SequenceIdGenerator generator = newGenerator(0.5);
+
+    for (int i = 0; i <= LEASE_SIZE / 2; i++) {
+      generator.nextId();
+    }
+
+    verify(idLeaseStore, times(2)).leaseIds(COUNTER_KEY, LEASE_SIZE);
+    assertThat(generator.nextCode()).isEqualTo("p");
+  }
+
+  @Test
+  @DisplayName("should never hand out the same id twice under concurrent use")
+  void shouldNeverHandOutSameIdTwiceUnderConcurrentUse() throws Exception {
+    SequenceIdGenerator generator = newGenerator(0.8);
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    int threads = 32;
+    int idsPerThread = 5_000;
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < idsPerThread; j++) {
+            ids.add(generator.nextId());
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+
+    assertThat(ids).hasSize(threads * idsPerThread);
+  }
+
+  @Test
+  @DisplayName("should lease again after a failed lease")
+  void shouldLeaseAgainAfterFailedLease() {
+    doThrow(new IllegalStateException("Throttled"))
+        .doAnswer(invocation -> counter.addAndGet(LEASE_SIZE))
+        .when(idLeaseStore).leaseIds(COUNTER_KEY, LEASE_SIZE);
+    SequenceIdGenerator generator = newGenerator(1.0);
+
+    assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+    assertThat(generator.nextId()).isZero();
+  }
+
+  private SequenceIdGenerator newGenerator(double prefetchRatio) {
+    return new SequenceIdGenerator(
+        idLeaseStore,
+        new SequenceConfigurationProperties(COUNTER_KEY, LEASE_SIZE, prefetchRatio),
+        Runnable::run);
+  }
+}
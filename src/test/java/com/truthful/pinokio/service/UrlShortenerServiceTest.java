@@ -4,23 +4,40 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.soumakis.control.Either;
 import com.soumakis.control.EitherT;
 import com.soumakis.control.TryT;
 import com.truthful.pinokio.repository.StorageRepositoryFacade;
+import com.truthful.pinokio.repository.model.UrlEntry;
 import com.truthful.pinokio.service.model.UrlShortenerError;
 import com.truthful.pinokio.config.model.ApplicationConfigurationProperties;
+import com.truthful.pinokio.config.model.BatchConfigurationProperties;
+import com.truthful.pinokio.config.model.ReaperConfigurationProperties;
+import com.truthful.pinokio.config.model.SequenceConfigurationProperties;
 import com.truthful.pinokio.service.model.HashingAlgorithm;
+import com.truthful.pinokio.util.Deadline;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,6 +47,7 @@ public class UrlShortenerServiceTest {
   private static final String SHORTEN_BASE_URL = "http://short.com/";
   private static final int MAX_RETRIES = 3;
   private static final int URL_EXPIRATION_IN_DAYS = 30;
+  private static final Deadline DEADLINE = Deadline.after(Duration.ofSeconds(5));
 
   @Mock
   private ApplicationConfigurationProperties applicationConfigurationProperties;
@@ -37,6 +55,31 @@ public class UrlShortenerServiceTest {
   @Mock
   private StorageRepositoryFacade storageRepositoryFacade;
 
+  @Mock
+  private HashGenerator hashGenerator;
+
+  @Mock
+  private UrlShortenerMetrics urlShortenerMetrics;
+
+  @Mock
+  private ClickCounter clickCounter;
+
+  @Mock
+  private HotLinkTracker hotLinkTracker;
+
+  @Spy
+  private SequenceConfigurationProperties sequenceConfigurationProperties =
+      new SequenceConfigurationProperties("_sequence", 1000L, 0.8);
+
+  @Spy
+  private BatchConfigurationProperties batchConfigurationProperties =
+      new BatchConfigurationProperties(100, 4, 2, Duration.ofSeconds(30));
+
+  @Spy
+  private ReaperConfigurationProperties reaperConfigurationProperties =
+      new ReaperConfigurationProperties(false, Duration.ofHours(1), 4, 500, 2000.0, 200.0,
+          "_reaper");
+
   @InjectMocks
   private UrlShortenerService urlShortenerService;
 
@@ -48,32 +91,47 @@ public class UrlShortenerServiceTest {
         .when(applicationConfigurationProperties.urlExpirationInDays())
         .thenReturn(URL_EXPIRATION_IN_DAYS);
     lenient()
-        .when(applicationConfigurationProperties.algorithm())
-        .thenReturn(HashingAlgorithm.MURMUR32);
+        .when(hashGenerator.generateHash(LONG_URL))
+        .thenAnswer(invocation -> HashingAlgorithm.MURMUR32.generateHash(LONG_URL));
   }
 
   @Test
   @DisplayName("shortenUrl should return a shortened URL")
   void shortenUrlShouldReturnShortenedUrl() {
     when(storageRepositoryFacade.saveHash(
-        any(), any(), eq(MAX_RETRIES), eq(URL_EXPIRATION_IN_DAYS)))
+        any(), any(), eq(URL_EXPIRATION_IN_DAYS), eq(DEADLINE)))
         .thenReturn(EitherT.right("hash"));
 
-    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL)
+    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL, DEADLINE)
         .toCompletableFuture().join();
 
     assertTrue(result.isRight());
     assertThat(result.getRight()).contains(SHORTEN_BASE_URL);
+    verify(urlShortenerMetrics).recordCollision();
+    verify(urlShortenerMetrics).recordShorten(anyLong(), eq(result), isNull());
+  }
+
+  @Test
+  @DisplayName("shortenUrl should reuse the hash of a recently shortened URL")
+  void shortenUrlShouldReuseHashOfRecentlyShortenedUrl() {
+    when(storageRepositoryFacade.findHash(LONG_URL)).thenReturn(Optional.of("hash"));
+
+    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL, DEADLINE)
+        .toCompletableFuture().join();
+
+    assertThat(result.getRight()).endsWith("/hash");
+    verify(storageRepositoryFacade, never()).saveHash(any(), any(), anyInt(), any());
+    verifyNoInteractions(hashGenerator);
   }
 
   @Test
   @DisplayName("shortenUrl should return a failure if the URL is not shortened")
   void shortenUrlShouldReturnFailureIfUrlNotShortened() {
     when(storageRepositoryFacade.saveHash(
-        any(), any(), eq(MAX_RETRIES), eq(URL_EXPIRATION_IN_DAYS)))
+        any(), any(), eq(URL_EXPIRATION_IN_DAYS), eq(DEADLINE)))
         .thenReturn(EitherT.left(UrlShortenerError.GENERIC_ERROR));
 
-    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL)
+    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL, DEADLINE)
         .toCompletableFuture().join();
 
     assertTrue(result.isLeft());
@@ -83,11 +141,11 @@ public class UrlShortenerServiceTest {
   @DisplayName("shortenUrl should retry if the hash already exists")
   void shortenUrlShouldRetryIfHashAlreadyExists() {
     when(storageRepositoryFacade.saveHash(
-        any(), any(), eq(MAX_RETRIES), eq(URL_EXPIRATION_IN_DAYS)))
+        any(), any(), eq(URL_EXPIRATION_IN_DAYS), eq(DEADLINE)))
         .thenReturn(EitherT.left(UrlShortenerError.HASH_ALREADY_EXISTS))
         .thenReturn(EitherT.right("hash"));
 
-    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL)
+    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL, DEADLINE)
         .toCompletableFuture().join();
 
     assertTrue(result.isRight());
@@ -95,22 +153,124 @@ public class UrlShortenerServiceTest {
   }
 
   @Test
-  @DisplayName("getOriginalUrl returns original url")
-  public void getOriginalUrl_returnsOriginalUrl() {
+  @DisplayName("shortenUrl should save a new hash on every retry")
+  void shortenUrlShouldSaveNewHashOnEveryRetry() {
+    when(hashGenerator.generateHash(LONG_URL)).thenReturn("a", "b");
+    when(storageRepositoryFacade.saveHash(
+        eq("a"), any(), eq(URL_EXPIRATION_IN_DAYS), eq(DEADLINE)))
+        .thenReturn(EitherT.left(UrlShortenerError.HASH_ALREADY_EXISTS));
+    when(storageRepositoryFacade.saveHash(
+        eq("b"), any(), eq(URL_EXPIRATION_IN_DAYS), eq(DEADLINE)))
+        .thenReturn(EitherT.right("b"));
+
+    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL, DEADLINE)
+        .toCompletableFuture().join();
+
+    assertEquals(SHORTEN_BASE_URL + "/b", result.getRight());
+  }
+
+  @Test
+  @DisplayName("shortenUrl should return a generic error if no hash can be generated")
+  void shortenUrlShouldReturnGenericErrorIfNoHashCanBeGenerated() {
+    when(hashGenerator.generateHash(LONG_URL))
+        .thenThrow(new IllegalStateException("Counter unavailable"));
+
+    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL, DEADLINE)
+        .toCompletableFuture().join();
+
+    assertEquals(UrlShortenerError.GENERIC_ERROR, result.getLeft());
+    verifyNoInteractions(storageRepositoryFacade);
+  }
+
+  @Test
+  @DisplayName("getUrlEntry returns the entry of the original url")
+  public void getUrlEntry_returnsUrlEntry() {
     String hash = "abc123";
-    when(storageRepositoryFacade.getOriginalUrl(eq(hash), eq(MAX_RETRIES)))
-        .thenReturn(EitherT.right(LONG_URL));
-    EitherT<UrlShortenerError, String> result = urlShortenerService.getOriginalUrl(
-        SHORTEN_BASE_URL + hash);
-    assertEquals(LONG_URL, result.toCompletableFuture().join().getRight());
+    when(storageRepositoryFacade.getUrlEntry(hash, DEADLINE))
+        .thenReturn(EitherT.right(new UrlEntry(hash, LONG_URL, null)));
+    EitherT<UrlShortenerError, UrlEntry> result = urlShortenerService.getUrlEntry(
+        SHORTEN_BASE_URL + hash, DEADLINE);
+    assertEquals(LONG_URL, result.toCompletableFuture().join().getRight().originalUrl());
+    verify(hotLinkTracker).recordLookup(hash);
+  }
+
+  @Test
+  @DisplayName("getUrlEntry and getClicks treat the reserved keys as not found")
+  public void getUrlEntry_treatsReservedKeysAsNotFound() {
+    assertEquals(UrlShortenerError.HASH_NOT_FOUND, urlShortenerService
+        .getUrlEntry(SHORTEN_BASE_URL + "_sequence", DEADLINE).toCompletableFuture().join()
+        .getLeft());
+    assertEquals(UrlShortenerError.HASH_NOT_FOUND, urlShortenerService
+        .getClicks(SHORTEN_BASE_URL + "_reaper", DEADLINE).toCompletableFuture().join()
+        .getLeft());
+    verifyNoInteractions(storageRepositoryFacade, hotLinkTracker, clickCounter);
+  }
+
+  @Test
+  @DisplayName("getOriginalUrls counts the lookups and treats the reserved keys as not found")
+  public void getOriginalUrls_countsLookupsAndTreatsReservedKeysAsNotFound() {
+    when(storageRepositoryFacade.getOriginalUrls(List.of("abc123", "def456")))
+        .thenReturn(EitherT.right(Map.of("abc123", LONG_URL)));
+
+    List<CompletableFuture<Either<UrlShortenerError, String>>> result =
+        urlShortenerService.getOriginalUrls(List.of(SHORTEN_BASE_URL + "abc123",
+            SHORTEN_BASE_URL + "_sequence", SHORTEN_BASE_URL + "def456"));
+
+    assertEquals(LONG_URL, result.get(0).join().getRight());
+    assertEquals(UrlShortenerError.HASH_NOT_FOUND, result.get(1).join().getLeft());
+    assertEquals(UrlShortenerError.HASH_NOT_FOUND, result.get(2).join().getLeft());
+    verify(hotLinkTracker).recordLookup("abc123");
+    verify(hotLinkTracker).recordLookup("def456");
+    verify(hotLinkTracker, never()).recordLookup("_sequence");
+  }
+
+  @Test
+  @DisplayName("getClicks returns the clicks of a stored hash only")
+  public void getClicks_returnsClicksOfStoredHash() {
+    when(storageRepositoryFacade.getUrlEntry("abc123", DEADLINE))
+        .thenReturn(EitherT.right(new UrlEntry("abc123", LONG_URL, null)));
+    when(storageRepositoryFacade.getUrlEntry("missing", DEADLINE))
+        .thenReturn(EitherT.left(UrlShortenerError.HASH_NOT_FOUND));
+    when(clickCounter.getClicks("abc123"))
+        .thenReturn(CompletableFuture.completedFuture(Either.right(7L)));
+
+    assertEquals(7L, urlShortenerService.getClicks(SHORTEN_BASE_URL + "abc123", DEADLINE)
+        .toCompletableFuture().join().getRight());
+    assertEquals(UrlShortenerError.HASH_NOT_FOUND, urlShortenerService
+        .getClicks(SHORTEN_BASE_URL + "missing", DEADLINE).toCompletableFuture().join().getLeft());
+    verify(clickCounter, never()).getClicks("missing");
   }
 
   @Test
   @DisplayName("deleteUrl deletes url")
   public void deleteUrl_deletesUrl() {
     String hash = "abc123";
-    when(storageRepositoryFacade.delete(hash, 3)).thenReturn(TryT.of(null));
-    TryT<Void> result = urlShortenerService.deleteUrl(SHORTEN_BASE_URL + hash);
+    when(storageRepositoryFacade.delete(hash, DEADLINE)).thenReturn(TryT.of(null));
+    TryT<Void> result = urlShortenerService.deleteUrl(SHORTEN_BASE_URL + hash, DEADLINE);
     assertTrue(result.toCompletableFuture().join().isSuccess());
   }
+
+  @Test
+  @DisplayName("deleteUrl never deletes the reserved keys")
+  public void deleteUrl_neverDeletesReservedKeys() {
+    TryT<Void> result = urlShortenerService.deleteUrl(SHORTEN_BASE_URL + "_sequence", DEADLINE);
+
+    assertTrue(result.toCompletableFuture().join().isSuccess());
+    verifyNoInteractions(storageRepositoryFacade);
+  }
+
+  @Test
+  @DisplayName("shortenUrl treats a generated reserved key as a collision")
+  public void shortenUrl_treatsGeneratedReservedKeyAsCollision() {
+    when(hashGenerator.generateHash(LONG_URL)).thenReturn("_reaper", "hash");
+    when(storageRepositoryFacade.saveHash(
+        eq("hash"), any(), eq(URL_EXPIRATION_IN_DAYS), eq(DEADLINE)))
+        .thenReturn(EitherT.right("hash"));
+
+    Either<UrlShortenerError, String> result = urlShortenerService.shortenUrl(LONG_URL, DEADLINE)
+        .toCompletableFuture().join();
+
+    assertThat(result.getRight()).endsWith("/hash");
+    verify(storageRepositoryFacade, never()).saveHash(eq("_reaper"), any(), anyInt(), any());
+  }
 }
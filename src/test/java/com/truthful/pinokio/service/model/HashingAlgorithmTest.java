@@ -0,0 +1,57 @@
+package com.truthful.pinokio.service.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.hash.Hashing;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class HashingAlgorithmTest {
+
+  private static final String LONG_URL = "https://www.catnipcoder.com/posts/compact-hashes";
+
+  @Test
+  @DisplayName("should keep generating the full hex hash by default")
+  void shouldKeepGeneratingFullHexHashByDefault() {
+    assertThat(HashingAlgorithm.MURMUR32.generateHash(LONG_URL))
+        .isEqualTo(Hashing.murmur3_32_fixed().hashUnencodedChars(LONG_URL).toString());
+    assertThat(HashingAlgorithm.SHA256.generateHash(LONG_URL)).hasSize(64);
+  }
+
+  @ParameterizedTest
+  @EnumSource(HashingAlgorithm.class)
+  @DisplayName("should generate compact base62 codes of the requested length")
+  void shouldGenerateCompactBase62Codes(HashingAlgorithm algorithm) {
+    int maxLength = algorithm.maxLength(HashEncoding.BASE62);
+
+    assertThat(algorithm.generateHash(LONG_URL, HashEncoding.BASE62, maxLength))
+        .hasSize(maxLength)
+        .matches("[0-9A-Za-z]+");
+    assertThat(algorithm.generateHash(LONG_URL, HashEncoding.BASE62, 7))
+        .hasSize(7)
+        .isEqualTo(algorithm.generateHash(LONG_URL, HashEncoding.BASE62, 7));
+  }
+
+  @ParameterizedTest
+  @EnumSource(HashingAlgorithm.class)
+  @DisplayName("should generate url safe base64 codes of the requested length")
+  void shouldGenerateUrlSafeBase64Codes(HashingAlgorithm algorithm) {
+    int maxLength = algorithm.maxLength(HashEncoding.BASE64URL);
+
+    assertThat(algorithm.generateHash(LONG_URL, HashEncoding.BASE64URL, maxLength))
+        .hasSize(maxLength)
+        .matches("[0-9A-Za-z_-]+");
+  }
+
+  @Test
+  @DisplayName("should allow at most 64 bits in the compact encodings")
+  void shouldAllowAtMost64BitsInCompactEncodings() {
+    assertThat(HashingAlgorithm.MURMUR32.maxLength(HashEncoding.BASE62)).isEqualTo(6);
+    assertThat(HashingAlgorithm.MURMUR32.maxLength(HashEncoding.BASE64URL)).isEqualTo(6);
+    assertThat(HashingAlgorithm.SHA256.maxLength(HashEncoding.BASE62)).isEqualTo(11);
+    assertThat(HashingAlgorithm.SHA256.maxLength(HashEncoding.BASE64URL)).isEqualTo(11);
+    assertThat(HashingAlgorithm.SHA256.maxLength(HashEncoding.HEX)).isEqualTo(64);
+  }
+}
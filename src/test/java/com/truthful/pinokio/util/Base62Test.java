@@ -0,0 +1,35 @@
+package com.truthful.pinokio.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class Base62Test {
+
+  @Test
+  @DisplayName("should encode numbers with the base62 alphabet")
+  void shouldEncodeNumbersWithBase62Alphabet() {
+    assertThat(Base62.encode(0)).isEqualTo("0");
+    assertThat(Base62.encode(61)).isEqualTo("z");
+    assertThat(Base62.encode(62)).isEqualTo("10");
+    assertThat(Base62.encode(Long.MAX_VALUE)).isEqualTo("AzL8n0Y58m7");
+  }
+
+  @Test
+  @DisplayName("should decode what it encodes")
+  void shouldDecodeWhatItEncodes() {
+    for (long value : new long[]{0, 1, 61, 62, 3843, 1_000_000_007L, Long.MAX_VALUE}) {
+      assertThat(Base62.decode(Base62.encode(value))).isEqualTo(value);
+    }
+  }
+
+  @Test
+  @DisplayName("should reject negative numbers and invalid characters")
+  void shouldRejectNegativeNumbersAndInvalidCharacters() {
+    assertThatThrownBy(() -> Base62.encode(-1)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> Base62.decode("_sequence"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
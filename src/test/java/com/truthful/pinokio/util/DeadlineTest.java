@@ -0,0 +1,58 @@
+package com.truthful.pinokio.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DeadlineTest {
+
+  @Test
+  @DisplayName("bound should answer with the result of the work done in time")
+  void boundShouldAnswerWithResultOfWorkDoneInTime() {
+    CompletableFuture<String> work = new CompletableFuture<>();
+
+    CompletableFuture<String> bounded =
+        Deadline.after(Duration.ofSeconds(5)).bound(work, "expired");
+    work.complete("done");
+
+    assertThat(bounded.join()).isEqualTo("done");
+  }
+
+  @Test
+  @DisplayName("bound should cancel the work still running when the deadline passes")
+  void boundShouldCancelWorkWhenDeadlinePasses() {
+    CompletableFuture<String> work = new CompletableFuture<>();
+
+    CompletableFuture<String> bounded =
+        Deadline.after(Duration.ofMillis(10)).bound(work, "expired");
+
+    assertThat(bounded.join()).isEqualTo("expired");
+    assertThat(work).isCancelled();
+  }
+
+  @Test
+  @DisplayName("cancelling the bounded work should cancel the work")
+  void cancellingBoundedWorkShouldCancelWork() {
+    CompletableFuture<String> work = new CompletableFuture<>();
+
+    Deadline.after(Duration.ofSeconds(5)).bound(work, "expired").cancel(true);
+
+    assertThat(work).isCancelled();
+  }
+
+  @Test
+  @DisplayName("none should never pass nor bound the work")
+  void noneShouldNeverPass() {
+    CompletableFuture<String> work = new CompletableFuture<>();
+
+    assertThat(Deadline.none().isExpired()).isFalse();
+    assertThat(Deadline.none().remainingNanos()).isEqualTo(Long.MAX_VALUE);
+    assertThat(Deadline.none().bound(work, "expired")).isSameAs(work);
+    assertThat(Deadline.none().isBounded()).isFalse();
+    assertThat(Deadline.after(Duration.ofSeconds(5)).isBounded()).isTrue();
+    assertThat(Deadline.after(Duration.ZERO).isExpired()).isTrue();
+  }
+}
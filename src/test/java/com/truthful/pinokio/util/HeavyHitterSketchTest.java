@@ -0,0 +1,60 @@
+package com.truthful.pinokio.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class HeavyHitterSketchTest {
+
+  @Test
+  @DisplayName("estimate should never fall below the true count")
+  void estimateShouldNotUnderestimate() {
+    HeavyHitterSketch sketch = new HeavyHitterSketch(256, 4, 10);
+    for (int i = 0; i < 1_000; i++) {
+      for (int j = 0; j <= i % 5; j++) {
+        sketch.add("key" + i);
+      }
+    }
+
+    for (int i = 0; i < 1_000; i++) {
+      assertThat(sketch.estimate("key" + i)).isGreaterThanOrEqualTo(i % 5 + 1);
+    }
+    assertThat(sketch.estimate("never")).isLessThan(100);
+  }
+
+  @Test
+  @DisplayName("candidates should hold the most frequent keys among many rare ones")
+  void candidatesShouldHoldHeavyHitters() {
+    HeavyHitterSketch sketch = new HeavyHitterSketch(1024, 4, 5);
+    for (int round = 0; round < 200; round++) {
+      sketch.add("hot1");
+      sketch.add("hot2");
+      if (round % 2 == 0) {
+        sketch.add("hot3");
+      }
+      for (int rare = 0; rare < 20; rare++) {
+        sketch.add("rare" + round + "-" + rare);
+      }
+    }
+
+    assertThat(sketch.candidates()).hasSizeLessThanOrEqualTo(5)
+        .extracting(Map.Entry::getKey)
+        .contains("hot1", "hot2", "hot3");
+    assertThat(sketch.candidates().get(2).getKey()).isEqualTo("hot3");
+  }
+
+  @Test
+  @DisplayName("clear should forget every key")
+  void clearShouldForgetEveryKey() {
+    HeavyHitterSketch sketch = new HeavyHitterSketch(64, 2, 5);
+    sketch.add("key");
+    sketch.add("key");
+
+    sketch.clear();
+
+    assertThat(sketch.estimate("key")).isZero();
+    assertThat(sketch.candidates()).isEmpty();
+  }
+}
@@ -0,0 +1,92 @@
+package com.truthful.pinokio.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OffHeapIndexTest {
+
+  private static final long FINGERPRINT = 42;
+
+  @Test
+  @DisplayName("keys sharing a fingerprint should be told apart by the predicate")
+  void keysSharingFingerprintShouldBeToldApart() {
+    OffHeapIndex index = new OffHeapIndex(16);
+
+    assertThat(index.put(FINGERPRINT, 10, offset -> false)).isEqualTo(-1);
+    assertThat(index.put(FINGERPRINT, 20, offset -> false)).isEqualTo(-1);
+
+    assertThat(index.get(FINGERPRINT, offset -> offset == 10)).isEqualTo(10);
+    assertThat(index.get(FINGERPRINT, offset -> offset == 20)).isEqualTo(20);
+    assertThat(index.get(FINGERPRINT, offset -> false)).isEqualTo(-1);
+  }
+
+  @Test
+  @DisplayName("put should replace the offset of an existing key and return the previous one")
+  void putShouldReplaceExistingKey() {
+    OffHeapIndex index = new OffHeapIndex(16);
+    index.put(FINGERPRINT, 10, offset -> false);
+
+    assertThat(index.put(FINGERPRINT, 30, offset -> offset == 10)).isEqualTo(10);
+
+    assertThat(index.get(FINGERPRINT, offset -> offset == 30)).isEqualTo(30);
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("remove should keep the keys probed past the removed one reachable")
+  void removeShouldKeepLaterKeysReachable() {
+    OffHeapIndex index = new OffHeapIndex(16);
+    index.put(FINGERPRINT, 10, offset -> false);
+    index.put(FINGERPRINT, 20, offset -> false);
+
+    assertThat(index.remove(FINGERPRINT, offset -> offset == 10)).isEqualTo(10);
+
+    assertThat(index.get(FINGERPRINT, offset -> offset == 10)).isEqualTo(-1);
+    assertThat(index.get(FINGERPRINT, offset -> offset == 20)).isEqualTo(20);
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("the index should grow to hold more keys than it was sized for")
+  void indexShouldGrow() {
+    OffHeapIndex index = new OffHeapIndex(16);
+
+    for (int i = 0; i < 10_000; i++) {
+      index.put(OffHeapIndex.fingerprint(key(i)), i, offset -> false);
+    }
+
+    assertThat(index.size()).isEqualTo(10_000);
+    for (int i = 0; i < 10_000; i++) {
+      int expected = i;
+      assertThat(index.get(OffHeapIndex.fingerprint(key(i)), offset -> offset == expected))
+          .isEqualTo(i);
+    }
+    List<Integer> offsets = new ArrayList<>();
+    index.forEach(offsets::add);
+    assertThat(offsets).hasSize(10_000);
+  }
+
+  @Test
+  @DisplayName("tombstones left by removals should be reclaimed without growing the index")
+  void tombstonesShouldBeReclaimed() {
+    OffHeapIndex index = new OffHeapIndex(1);
+    int capacity = index.capacity();
+
+    for (int i = 0; i < 10_000; i++) {
+      long fingerprint = OffHeapIndex.fingerprint(key(i));
+      index.put(fingerprint, i, offset -> false);
+      index.remove(fingerprint, offset -> true);
+    }
+
+    assertThat(index.size()).isZero();
+    assertThat(index.capacity()).isEqualTo(capacity);
+  }
+
+  private static byte[] key(int i) {
+    return Integer.toString(i).getBytes();
+  }
+}
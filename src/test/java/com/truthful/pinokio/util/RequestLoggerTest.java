@@ -0,0 +1,99 @@
+package com.truthful.pinokio.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.google.common.base.Ticker;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RequestLoggerTest {
+
+  private static final Duration DEDUP_WINDOW = Duration.ofSeconds(10);
+
+  private final AtomicLong nowNanos = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return nowNanos.get();
+    }
+  };
+
+  private Logger logger;
+  private ListAppender<ILoggingEvent> appender;
+
+  @BeforeEach
+  void setUp() {
+    logger = new LoggerContext().getLogger(RequestLoggerTest.class);
+    logger.setLevel(Level.INFO);
+    appender = new ListAppender<>();
+    appender.start();
+    logger.addAppender(appender);
+  }
+
+  @Test
+  @DisplayName("logRequest should log the hash, the latency and the outcome as key-value pairs")
+  void logRequestShouldLogStructuredFields() {
+    RequestLogger requestLogger = new RequestLogger(1.0, DEDUP_WINDOW, 100.0, ticker);
+
+    requestLogger.logRequest(logger, "dynamodb.get", "abc", System.nanoTime(), "found");
+
+    assertThat(appender.list).singleElement().satisfies(event -> {
+      assertThat(event.getLevel()).isEqualTo(Level.INFO);
+      assertThat(event.getMessage()).isEqualTo("dynamodb.get");
+      assertThat(keyValues(event))
+          .containsEntry("event", "dynamodb.get")
+          .containsEntry("hash", "abc")
+          .containsEntry("outcome", "found")
+          .containsKey("latencyMicros");
+    });
+  }
+
+  @Test
+  @DisplayName("logRequest should log nothing when the sample rate is zero")
+  void logRequestShouldLogNothingWhenNotSampled() {
+    RequestLogger requestLogger = new RequestLogger(0.0, DEDUP_WINDOW, 100.0, ticker);
+
+    for (int i = 0; i < 1_000; i++) {
+      requestLogger.logRequest(logger, "dynamodb.get", "abc", System.nanoTime(), "found");
+    }
+
+    assertThat(appender.list).isEmpty();
+  }
+
+  @Test
+  @DisplayName("logError should log the same failure once per window and report the suppressed")
+  void logErrorShouldDeduplicateWithinWindow() {
+    RequestLogger requestLogger = new RequestLogger(0.0, DEDUP_WINDOW, 100.0, ticker);
+    IllegalStateException failure = new IllegalStateException("boom");
+
+    requestLogger.logError(logger, "dynamodb.get", "a", failure);
+    requestLogger.logError(logger, "dynamodb.get", "b", failure);
+    requestLogger.logError(logger, "dynamodb.get", "c", failure);
+    requestLogger.logError(logger, "dynamodb.delete", "d", failure);
+    nowNanos.addAndGet(DEDUP_WINDOW.toNanos());
+    requestLogger.logError(logger, "dynamodb.get", "e", failure);
+
+    assertThat(appender.list)
+        .extracting(
+            event -> keyValues(event).get("hash"), event -> keyValues(event).get("suppressed"))
+        .containsExactly(tuple("a", "0"), tuple("d", "0"), tuple("e", "2"));
+    assertThat(appender.list.getFirst().getLevel()).isEqualTo(Level.ERROR);
+    assertThat(appender.list.getFirst().getThrowableProxy().getMessage()).isEqualTo("boom");
+  }
+
+  private static Map<String, String> keyValues(ILoggingEvent event) {
+    return event.getKeyValuePairs().stream()
+        .collect(Collectors.toMap(pair -> pair.key, pair -> String.valueOf(pair.value)));
+  }
+}
@@ -1,17 +1,28 @@
 package com.truthful.pinokio.util;
 
+import com.soumakis.control.Either;
+import com.soumakis.control.EitherT;
 import com.soumakis.control.Failure;
 import com.soumakis.control.Try;
+import com.soumakis.control.TryT;
+import com.truthful.pinokio.repository.resilience.StorageUnavailableException;
+import com.truthful.pinokio.service.model.UrlShortenerError;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import java.util.function.Supplier;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
 
 public class RetryUtilTest {
 
   @Test
   public void retrySuccessfullyOnFirstAttempt() {
     Supplier<Try<String>> supplier = () -> Try.success("Success");
-    Try<String> result = RetryUtil.retry(3, supplier);
+    Try<String> result = RetryUtil.retry(RetryPolicy.immediate(3), supplier);
     Assertions.assertTrue(result.isSuccess());
     Assertions.assertEquals("Success", result.get());
   }
@@ -25,21 +36,21 @@ public class RetryUtilTest {
       public Try<String> get() {
         if (count < 2) {
           count++;
-          return Try.failure(new RuntimeException("Failure"));
+          return Try.failure(SdkClientException.create("Failure"));
         } else {
           return Try.success("Success");
         }
       }
     };
-    Try<String> result = RetryUtil.retry(3, supplier);
+    Try<String> result = RetryUtil.retry(RetryPolicy.immediate(3), supplier);
     Assertions.assertTrue(result.isSuccess());
     Assertions.assertEquals("Success", result.get());
   }
 
   @Test
   public void retryExceedsMaxRetries() {
-    Supplier<Try<String>> supplier = () -> Try.failure(new RuntimeException("Failure"));
-    Try<String> result = RetryUtil.retry(3, supplier);
+    Supplier<Try<String>> supplier = () -> Try.failure(SdkClientException.create("Failure"));
+    Try<String> result = RetryUtil.retry(RetryPolicy.immediate(3), supplier);
     Assertions.assertTrue(result.isFailure());
     Assertions.assertEquals("Failed to execute after 3 retries",
         ((Failure<String>) result).getCause().getMessage());
@@ -47,10 +58,188 @@ public class RetryUtilTest {
 
   @Test
   public void retryWithZeroMaxRetries() {
-    Supplier<Try<String>> supplier = () -> Try.failure(new RuntimeException("Failure"));
-    Try<String> result = RetryUtil.retry(0, supplier);
+    Supplier<Try<String>> supplier = () -> Try.failure(SdkClientException.create("Failure"));
+    Try<String> result = RetryUtil.retry(RetryPolicy.immediate(0), supplier);
     Assertions.assertTrue(result.isFailure());
     Assertions.assertEquals("Failed to execute after 0 retries",
         ((Failure<String>) result).getCause().getMessage());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void retryEitherAsyncSuccessfullyOnSubsequentAttempt() {
+    AtomicInteger attempts = new AtomicInteger();
+    Supplier<EitherT<UrlShortenerError, String>> supplier = () ->
+        attempts.incrementAndGet() < 3
+            ? EitherT.left(UrlShortenerError.TRANSIENT_ERROR)
+            : EitherT.right("Success");
+    Either<UrlShortenerError, String> result =
+        RetryUtil.retryEitherAsync(RetryPolicy.immediate(3), supplier).toCompletableFuture().join();
+    Assertions.assertTrue(result.isRight());
+    Assertions.assertEquals("Success", result.getRight());
+  }
+
+  @Test
+  public void retryEitherAsyncDoesNotRetryHashNotFound() {
+    AtomicInteger attempts = new AtomicInteger();
+    Supplier<EitherT<UrlShortenerError, String>> supplier = () -> {
+      attempts.incrementAndGet();
+      return EitherT.left(UrlShortenerError.HASH_NOT_FOUND);
+    };
+    Either<UrlShortenerError, String> result =
+        RetryUtil.retryEitherAsync(RetryPolicy.immediate(3), supplier).toCompletableFuture().join();
+    Assertions.assertEquals(UrlShortenerError.HASH_NOT_FOUND, result.getLeft());
+    Assertions.assertEquals(1, attempts.get());
+  }
+
+  @Test
+  public void retryAsyncExceedsMaxRetries() {
+    Supplier<TryT<String>> supplier = () -> TryT.ofFailure(SdkClientException.create("Failure"));
+    Try<String> result =
+        RetryUtil.retryAsync(RetryPolicy.immediate(3), supplier).toCompletableFuture().join();
+    Assertions.assertTrue(result.isFailure());
+    Assertions.assertEquals("Failed to execute after 3 retries",
+        ((Failure<String>) result).getCause().getMessage());
+  }
+
+  @Test
+  public void retryDoesNotRetryNonRetryableFailure() {
+    AtomicInteger attempts = new AtomicInteger();
+    Supplier<Try<String>> supplier = () -> {
+      attempts.incrementAndGet();
+      return Try.failure(new IllegalArgumentException("Invalid"));
+    };
+    Try<String> result = RetryUtil.retry(RetryPolicy.immediate(3), supplier);
+    Assertions.assertTrue(result.isFailure());
+    Assertions.assertEquals("Invalid", ((Failure<String>) result).getCause().getMessage());
+    Assertions.assertEquals(1, attempts.get());
+  }
+
+  @Test
+  public void retryDoesNotRetryUnknownFailure() {
+    AtomicInteger attempts = new AtomicInteger();
+    Supplier<Try<String>> supplier = () -> {
+      attempts.incrementAndGet();
+      return Try.failure(new IllegalStateException("Bug"));
+    };
+    Try<String> result = RetryUtil.retry(RetryPolicy.immediate(3), supplier);
+    Assertions.assertTrue(result.isFailure());
+    Assertions.assertEquals("Bug", ((Failure<String>) result).getCause().getMessage());
+    Assertions.assertEquals(1, attempts.get());
+  }
+
+  @Test
+  public void retryExhaustionKeepsLastFailureAsCause() {
+    SdkClientException lastFailure = SdkClientException.create("Failure");
+    Try<String> result = RetryUtil.retry(RetryPolicy.immediate(3), () -> Try.failure(lastFailure));
+    Assertions.assertSame(lastFailure, ((Failure<String>) result).getCause().getCause());
+  }
+
+  @Test
+  public void retryStopsOnceDeadlinePassed() {
+    AtomicInteger attempts = new AtomicInteger();
+    Try<String> result = RetryUtil.retry(RetryPolicy.immediate(3), Deadline.after(Duration.ZERO),
+        () -> {
+          attempts.incrementAndGet();
+          return Try.failure(SdkClientException.create("Failure"));
+        });
+    Assertions.assertEquals(1, attempts.get());
+    Assertions.assertInstanceOf(StorageUnavailableException.class,
+        ((Failure<String>) result).getCause());
+  }
+
+  @Test
+  public void retryEitherStopsOnceDeadlinePassed() {
+    AtomicInteger attempts = new AtomicInteger();
+    Either<UrlShortenerError, String> result = RetryUtil.retryEither(RetryPolicy.immediate(3),
+        Deadline.after(Duration.ZERO), () -> {
+          attempts.incrementAndGet();
+          return Either.left(UrlShortenerError.TRANSIENT_ERROR);
+        });
+    Assertions.assertEquals(1, attempts.get());
+    Assertions.assertEquals(UrlShortenerError.TRANSIENT_ERROR, result.getLeft());
+  }
+
+  @Test
+  public void retryEitherAsyncDoesNotRetryGenericError() {
+    AtomicInteger attempts = new AtomicInteger();
+    Supplier<EitherT<UrlShortenerError, String>> supplier = () -> {
+      attempts.incrementAndGet();
+      return EitherT.left(UrlShortenerError.GENERIC_ERROR);
+    };
+    Either<UrlShortenerError, String> result =
+        RetryUtil.retryEitherAsync(RetryPolicy.immediate(3), supplier).toCompletableFuture().join();
+    Assertions.assertEquals(UrlShortenerError.GENERIC_ERROR, result.getLeft());
+    Assertions.assertEquals(1, attempts.get());
+  }
+
+  @Test
+  public void retryEitherAsyncStopsWhenBudgetIsExhausted() {
+    AtomicInteger attempts = new AtomicInteger();
+    RetryPolicy policy =
+        new RetryPolicy(5, Duration.ZERO, Duration.ZERO, new RetryBudget(1, 0.0001));
+    Supplier<EitherT<UrlShortenerError, String>> supplier = () -> {
+      attempts.incrementAndGet();
+      return EitherT.left(UrlShortenerError.TRANSIENT_ERROR);
+    };
+    Either<UrlShortenerError, String> result =
+        RetryUtil.retryEitherAsync(policy, supplier).toCompletableFuture().join();
+    Assertions.assertEquals(UrlShortenerError.TRANSIENT_ERROR, result.getLeft());
+    Assertions.assertEquals(2, attempts.get());
+  }
+
+  @Test
+  public void retryEitherAsyncStopsOnceDeadlinePassed() {
+    AtomicInteger attempts = new AtomicInteger();
+    Supplier<EitherT<UrlShortenerError, String>> supplier = () -> {
+      attempts.incrementAndGet();
+      return EitherT.left(UrlShortenerError.TRANSIENT_ERROR);
+    };
+    Either<UrlShortenerError, String> result = RetryUtil.retryEitherAsync(
+            RetryPolicy.immediate(3), Deadline.after(Duration.ZERO), supplier)
+        .toCompletableFuture().join();
+    Assertions.assertEquals(UrlShortenerError.TRANSIENT_ERROR, result.getLeft());
+    Assertions.assertEquals(1, attempts.get());
+  }
+
+  @Test
+  public void retryAsyncFailsAsUnavailableOnceDeadlinePassed() {
+    AtomicInteger attempts = new AtomicInteger();
+    Supplier<TryT<String>> supplier = () -> {
+      attempts.incrementAndGet();
+      return TryT.ofFailure(SdkClientException.create("Failure"));
+    };
+    Try<String> result = RetryUtil.retryAsync(
+            RetryPolicy.immediate(3), Deadline.after(Duration.ZERO), supplier)
+        .toCompletableFuture().join();
+    Assertions.assertInstanceOf(StorageUnavailableException.class,
+        ((Failure<String>) result).getCause());
+    Assertions.assertEquals(1, attempts.get());
+  }
+
+  @Test
+  public void backoffIsCappedAtMaxBackoff() {
+    RetryPolicy policy = new RetryPolicy(
+        100, Duration.ofMillis(10), Duration.ofMillis(200), RetryBudget.unlimited());
+    for (int retry = 1; retry < 100; retry++) {
+      long backoffNanos = policy.backoffNanos(retry);
+      Assertions.assertTrue(backoffNanos >= 0);
+      Assertions.assertTrue(backoffNanos <= Duration.ofMillis(200).toNanos());
+    }
+    Assertions.assertTrue(policy.backoffNanos(1) <= Duration.ofMillis(10).toNanos());
+  }
+
+  @Test
+  public void throttlingIsRetryableButValidationIsNot() {
+    Assertions.assertTrue(RetryUtil.isRetryable(
+        ProvisionedThroughputExceededException.builder().statusCode(400)
+            .awsErrorDetails(AwsErrorDetails.builder()
+                .errorCode("ProvisionedThroughputExceededException").build())
+            .build()));
+    Assertions.assertFalse(RetryUtil.isRetryable(
+        DynamoDbException.builder().statusCode(400)
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ValidationException").build())
+            .build()));
+    Assertions.assertTrue(RetryUtil.isRetryable(
+        DynamoDbException.builder().statusCode(500).build()));
+  }
+}
@@ -0,0 +1,39 @@
+package com.truthful.pinokio.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RollingPercentileTest {
+
+  @Test
+  @DisplayName("value should be unknown until a tenth of the samples is recorded")
+  void valueShouldBeUnknownUntilWarm() {
+    RollingPercentile percentile = new RollingPercentile(100, 0.95);
+
+    for (int i = 0; i < 9; i++) {
+      percentile.record(i);
+    }
+    assertThat(percentile.value()).isEqualTo(Long.MAX_VALUE);
+
+    percentile.record(9);
+    assertThat(percentile.value()).isEqualTo(9);
+  }
+
+  @Test
+  @DisplayName("value should be the percentile of the last samples only")
+  void valueShouldBeThePercentileOfTheLastSamples() {
+    RollingPercentile percentile = new RollingPercentile(100, 0.95);
+
+    for (int i = 1; i <= 100; i++) {
+      percentile.record(i);
+    }
+    assertThat(percentile.value()).isEqualTo(95);
+
+    for (int i = 0; i < 100; i++) {
+      percentile.record(1);
+    }
+    assertThat(percentile.value()).isEqualTo(1);
+  }
+}